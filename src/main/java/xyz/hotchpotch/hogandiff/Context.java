@@ -17,6 +17,8 @@ import java.util.stream.Stream;
 
 import org.apache.poi.ss.usermodel.IndexedColors;
 
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+
 /**
  * 現在のアプリケーション実行条件を表す不変クラスです。<br>
  * 
@@ -91,6 +93,14 @@ public class Context {
                 Boolean::valueOf,
                 String::valueOf);
         
+        /** 比較対象とするシート上の範囲（例えば "A1:AZ20000"）。範囲外のセルは読み込まない */
+        public static final Props<SheetRegion> APP_TARGET_REGION = new Props<>(
+                true,
+                "application.compare.targetRegion",
+                SheetRegion.ALL,
+                SheetRegion::of,
+                SheetRegion::toString);
+        
         /** 比較結果のレポートとして、差分箇所に色を付けたシートを表示するか */
         public static final Props<Boolean> APP_SHOW_PAINTED_SHEETS = new Props<>(
                 true,
@@ -115,6 +125,19 @@ public class Context {
                 Short::valueOf,
                 String::valueOf);
         
+        /**
+         * 比較結果のレポートにおいて、差分箇所のないシートは条件付き書式の削除などの変換を行わずにそのまま書き写すか
+         * （.xlsx/.xlsm 形式のExcelブックにのみ適用されます）<br>
+         * ただし、セルの塗りつぶしや文字、罫線の色のクリアは全てのシートで共有される書式（xl/styles.xml）と
+         * 共有文字列（xl/sharedStrings.xml）に対して行われるため、そのまま書き写したシートの色もクリアされます。
+         */
+        public static final Props<Boolean> APP_COPY_UNCHANGED_SHEETS = new Props<>(
+                true,
+                "application.report.copyUnchangedSheets",
+                false,
+                Boolean::valueOf,
+                String::valueOf);
+        
         /** 比較結果のレポートとして、差分内容を記したテキストを表示するか */
         public static final Props<Boolean> APP_SHOW_RESULT_TEXT = new Props<>(
                 true,
@@ -123,6 +146,14 @@ public class Context {
                 Boolean::valueOf,
                 String::valueOf);
         
+        /** 比較結果のレポートとして、差分箇所だけを一覧にした新しいExcelブックを表示するか */
+        public static final Props<Boolean> APP_SHOW_DIFF_BOOK = new Props<>(
+                true,
+                "application.report.showDiffBook",
+                false,
+                Boolean::valueOf,
+                String::valueOf);
+        
         /** 比較が完了したらこのアプリケーションを終了するか */
         public static final Props<Boolean> APP_EXIT_WHEN_FINISHED = new Props<>(
                 true,
@@ -141,6 +172,68 @@ public class Context {
                 Paths::get,
                 Path::toString);
         
+        /** 読み込み済みのシートデータをメモリ上にキャッシュする際の上限サイズ（MB）。0 の場合はキャッシュしない */
+        public static final Props<Integer> SYS_SHEET_CACHE_SIZE = new Props<>(
+                true,
+                "system.sheetCacheSizeMB",
+                256,
+                Integer::valueOf,
+                String::valueOf);
+        
+        /** シートデータのスナップショットをファイルに保存する際の合計の上限サイズ（MB）。0 の場合は保存しない */
+        public static final Props<Integer> SYS_SNAPSHOT_CACHE_SIZE = new Props<>(
+                true,
+                "system.snapshotCacheSizeMB",
+                1024,
+                Integer::valueOf,
+                String::valueOf);
+        
+        /** .xlsx/.xlsm 形式のシートデータの読み込みに、SAXではなくStAXのカーソルAPIを使用するか */
+        public static final Props<Boolean> SYS_USE_STAX_LOADER = new Props<>(
+                true,
+                "system.useStaxLoader",
+                false,
+                Boolean::valueOf,
+                String::valueOf);
+        
+        /**
+         * sheet#.xml エントリを行単位のチャンクに分割して並列に解析する際の、エントリの最小サイズ（MB）
+         * （0 の場合は並列に解析しない）
+         */
+        public static final Props<Integer> SYS_PARALLEL_PARSING_THRESHOLD = new Props<>(
+                true,
+                "system.parallelParsingThresholdMB",
+                0,
+                Integer::valueOf,
+                String::valueOf);
+        
+        /** 比較結果のExcelブックを作成する際に、複数のシートに並行して色を付けるか */
+        public static final Props<Boolean> SYS_PARALLEL_PAINTING = new Props<>(
+                true,
+                "system.parallelPainting",
+                true,
+                Boolean::valueOf,
+                String::valueOf);
+        
+        /** 比較結果のExcelブックを作成する際に、シートデータの変換にStAXのイベントAPIではなくカーソルAPIを使用するか */
+        public static final Props<Boolean> SYS_USE_CURSOR_PAINTER = new Props<>(
+                true,
+                "system.useCursorPainter",
+                true,
+                Boolean::valueOf,
+                String::valueOf);
+        
+        /**
+         * 比較結果のExcelブックを作成する際に、書き換えたエントリを圧縮するレベル（1～9）
+         * （0 の場合は圧縮せずに格納し、-1 の場合は既定のレベルで圧縮する）
+         */
+        public static final Props<Integer> SYS_PAINTING_COMPRESSION_LEVEL = new Props<>(
+                true,
+                "system.paintingCompressionLevel",
+                -1,
+                Integer::valueOf,
+                String::valueOf);
+        
         private static final Props<?>[] values;
         static {
             values = Arrays.stream(Props.class.getFields())
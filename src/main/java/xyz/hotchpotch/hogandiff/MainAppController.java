@@ -108,6 +108,9 @@ public class MainAppController {
     @FXML
     private CheckBox showResultText;
     
+    @FXML
+    private CheckBox showDiffBook;
+    
     @FXML
     private CheckBox exitWhenFinished;
     
@@ -207,6 +210,7 @@ public class MainAppController {
         compareOnValue.setOnAction(event -> settingsChanged.set(true));
         showPaintedSheets.setOnAction(event -> settingsChanged.set(true));
         showResultText.setOnAction(event -> settingsChanged.set(true));
+        showDiffBook.setOnAction(event -> settingsChanged.set(true));
         exitWhenFinished.setOnAction(event -> settingsChanged.set(true));
         
         saveSettings.setOnAction(event -> {
@@ -240,6 +244,7 @@ public class MainAppController {
         compareOnValue.setSelected(context.get(Props.APP_COMPARE_ON_VALUE));
         showPaintedSheets.setSelected(context.get(Props.APP_SHOW_PAINTED_SHEETS));
         showResultText.setSelected(context.get(Props.APP_SHOW_RESULT_TEXT));
+        showDiffBook.setSelected(context.get(Props.APP_SHOW_DIFF_BOOK));
         exitWhenFinished.setSelected(context.get(Props.APP_EXIT_WHEN_FINISHED));
     }
     
@@ -335,6 +340,7 @@ public class MainAppController {
                 .set(Props.APP_COMPARE_ON_VALUE, compareOnValue.isSelected())
                 .set(Props.APP_SHOW_PAINTED_SHEETS, showPaintedSheets.isSelected())
                 .set(Props.APP_SHOW_RESULT_TEXT, showResultText.isSelected())
+                .set(Props.APP_SHOW_DIFF_BOOK, showDiffBook.isSelected())
                 .set(Props.APP_EXIT_WHEN_FINISHED, exitWhenFinished.isSelected())
                 .build();
     }
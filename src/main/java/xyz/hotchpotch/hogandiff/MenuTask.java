@@ -9,11 +9,15 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javafx.concurrent.Task;
@@ -25,6 +29,7 @@ import xyz.hotchpotch.hogandiff.diff.excel.SResult;
 import xyz.hotchpotch.hogandiff.excel.BookPainter;
 import xyz.hotchpotch.hogandiff.excel.CellReplica;
 import xyz.hotchpotch.hogandiff.excel.ExcelUtils;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFDiffBookWriter;
 
 /**
  * {@link Menu} を実行するためのタスクです。<br>
@@ -67,6 +72,15 @@ public class MenuTask extends Task<Path> {
         }
     }
     
+    private static ApplicationException toApplicationException(CompletionException e, String msg) {
+        assert e != null;
+        assert msg != null;
+        
+        return e.getCause() instanceof ApplicationException
+                ? (ApplicationException) e.getCause()
+                : new ApplicationException(msg, e.getCause());
+    }
+    
     // [instance members] ******************************************************
     
     private final Context context;
@@ -83,6 +97,7 @@ public class MenuTask extends Task<Path> {
     @Override
     protected Path call() throws Exception {
         str = new StringBuilder();
+        ExcelUtils.configureCache(context);
         try {
             // 1.作業用フォルダの作成
             Path workDir = createWorkDirectory(0, 2);
@@ -94,17 +109,44 @@ public class MenuTask extends Task<Path> {
             BResult bResult = compareSheets(pairs, 5, 70);
             
             // 4. 比較結果の表示（テキスト）
+            //    テキストファイルの保存と表示は、後続のExcelブックの処理と並行して行う。
+            CompletableFuture<Void> resultText = null;
             if (context.get(Props.APP_SHOW_RESULT_TEXT)) {
-                showResultText(workDir, bResult, 70, 75);
+                resultText = showResultText(workDir, bResult, 70, 75);
             }
             
-            // 5. 比較結果の表示（Excel）
-            if (context.get(Props.APP_SHOW_PAINTED_SHEETS)) {
-                if (context.get(Props.CURR_FILE1).equals(context.get(Props.CURR_FILE2))) {
-                    showResultBook1(workDir, bResult, 75, 98);
-                } else {
-                    showResultBooks2(workDir, bResult, 75, 98);
+            try {
+                // 5. 比較結果の表示（Excel）
+                //    差分箇所の一覧ブックを作成しない場合は、その分の進捗もここで進める。
+                if (context.get(Props.APP_SHOW_PAINTED_SHEETS)) {
+                    int progressAfter = context.get(Props.APP_SHOW_DIFF_BOOK) ? 95 : 98;
+                    if (context.get(Props.CURR_FILE1).equals(context.get(Props.CURR_FILE2))) {
+                        showResultBook1(workDir, bResult, 75, progressAfter);
+                    } else {
+                        showResultBooks2(workDir, bResult, 75, progressAfter);
+                    }
                 }
+                
+                // 6. 比較結果の表示（差分箇所の一覧ブック）
+                if (context.get(Props.APP_SHOW_DIFF_BOOK)) {
+                    showDiffBook(workDir, bResult, 95, 98);
+                }
+                
+            } catch (ApplicationException | RuntimeException e) {
+                // 後続の処理が失敗した場合も、テキストファイルの処理の完了を待ち、その失敗を報告する。
+                if (resultText != null) {
+                    try {
+                        awaitResultText(resultText);
+                    } catch (ApplicationException e2) {
+                        e.addSuppressed(e2);
+                    }
+                }
+                throw e;
+            }
+            
+            // 7. 比較結果の表示（テキスト）の完了を待つ
+            if (resultText != null) {
+                awaitResultText(resultText);
             }
             
             str.append("処理が完了しました。").append(BR);
@@ -210,7 +252,6 @@ public class MenuTask extends Task<Path> {
             updateProgress(progressBefore, PROGRESS_MAX);
             
             int total = progressAfter - progressBefore;
-            boolean extractCachedValue = context.get(Props.APP_COMPARE_ON_VALUE);
             File file1 = context.get(Props.CURR_FILE1);
             File file2 = context.get(Props.CURR_FILE2);
             SComparator comparator = SComparator.of(context);
@@ -230,8 +271,8 @@ public class MenuTask extends Task<Path> {
                         i, pairedPairs.size(), sheetName1, sheetName2));
                 updateMessage(str.toString());
                 
-                Set<CellReplica> cells1 = ExcelUtils.loadSheet(file1, sheetName1, extractCachedValue);
-                Set<CellReplica> cells2 = ExcelUtils.loadSheet(file2, sheetName2, extractCachedValue);
+                Set<CellReplica> cells1 = ExcelUtils.loadSheet(file1, sheetName1, context);
+                Set<CellReplica> cells2 = ExcelUtils.loadSheet(file2, sheetName2, context);
                 SResult sResult = comparator.compare(cells1, cells2);
                 sResults.put(pair, sResult);
                 
@@ -256,38 +297,45 @@ public class MenuTask extends Task<Path> {
     }
     
     /**
-     * 4. 比較結果をテキストファイルとして保存して表示します。<br>
+     * 4. 比較結果をテキストファイルとして保存して表示する処理を開始します。<br>
+     * 処理は別スレッドで行われるため、完了を待たずに制御を返します。
+     * 処理の完了は {@link #awaitResultText(CompletableFuture)} で待ち合わせます。<br>
      * 
      * @param workDir 作業用フォルダ
      * @param bResult Excelブック同士の比較結果
      * @param progressBefore 処理前進捗率
      * @param progressAfter 処理後進捗率
-     * @throws ApplicationException 処理に失敗した場合
+     * @return 処理の完了を表す {@link CompletableFuture}
      */
-    private void showResultText(Path workDir, BResult bResult, int progressBefore, int progressAfter)
-            throws ApplicationException {
+    private CompletableFuture<Void> showResultText(
+            Path workDir,
+            BResult bResult,
+            int progressBefore,
+            int progressAfter) {
         
-        Path filePath = null;
-        try {
-            updateProgress(progressBefore, PROGRESS_MAX);
-            
-            filePath = workDir.resolve("result.txt");
-            
-            str.append(String.format(
-                    "比較結果のテキストファイルを保存して表示しています...\n  - %s\n\n", filePath.toString()));
-            updateMessage(str.toString());
-            
-            try (BufferedWriter writer = Files.newBufferedWriter(filePath, Charset.forName("UTF-8"))) {
-                writer.write(bResult.toString());
+        updateProgress(progressBefore, PROGRESS_MAX);
+        
+        Path filePath = workDir.resolve("result.txt");
+        
+        str.append(String.format(
+                "比較結果のテキストファイルを保存して表示しています...\n  - %s\n\n", filePath.toString()));
+        updateMessage(str.toString());
+        
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(filePath, Charset.forName("UTF-8"))) {
+                    writer.write(bResult.toString());
+                }
+                Desktop.getDesktop().open(filePath.toFile());
+                
+            } catch (Exception e) {
+                throw new CompletionException(new ApplicationException(
+                        "比較結果テキストの保存と表示に失敗しました。\n" + filePath, e));
             }
-            Desktop.getDesktop().open(filePath.toFile());
-            updateProgress(progressAfter, PROGRESS_MAX);
-            
-        } catch (Exception e) {
-            str.append("比較結果テキストの保存と表示に失敗しました。").append(BR).append(BR);
-            updateMessage(str.toString());
-            throw new ApplicationException("比較結果テキストの保存と表示に失敗しました。\n" + filePath);
-        }
+        });
+        
+        updateProgress(progressAfter, PROGRESS_MAX);
+        return future;
     }
     
     /**
@@ -354,25 +402,47 @@ public class MenuTask extends Task<Path> {
             updateProgress(progressBefore, PROGRESS_MAX);
             int total = progressAfter - progressBefore;
             
-            str.append("Excelブックに比較結果の色を付けて保存しています(1/2)...").append(BR);
+            str.append("2つのExcelブックに比較結果の色を付けて保存しています...").append(BR);
             updateMessage(str.toString());
             File file1 = context.get(Props.CURR_FILE1);
-            Path copy1 = workDir.resolve("【A】" + file1.getName());
-            BookPainter painter1 = BookPainter.of(file1, context);
-            painter1.paintAndSave(file1, copy1, bResult.getResults(file1));
-            str.append(String.format("  - %s\n\n", copy1.toString()));
-            updateMessage(str.toString());
-            updateProgress(progressBefore + total * 2 / 5, PROGRESS_MAX);
-            
-            str.append("Excelブックに比較結果の色を付けて保存しています(2/2)...").append(BR);
-            updateMessage(str.toString());
             File file2 = context.get(Props.CURR_FILE2);
+            Path copy1 = workDir.resolve("【A】" + file1.getName());
             Path copy2 = workDir.resolve("【B】" + file2.getName());
-            BookPainter painter2 = BookPainter.of(file2, context);
-            painter2.paintAndSave(file2, copy2, bResult.getResults(file2));
-            str.append(String.format("  - %s\n\n", copy2.toString()));
+            
+            // 2つのExcelブックの処理は互いに独立しているため、並行して行う。
+            List<CompletableFuture<Path>> futures = Arrays.asList(
+                    paintAndSaveAsync(file1, copy1, bResult),
+                    paintAndSaveAsync(file2, copy2, bResult));
+            
+            // どちらのExcelブックが先に完了しても進捗が進むように、完了した順に進捗を更新する。
+            AtomicInteger completed = new AtomicInteger();
+            futures.forEach(future -> future.whenComplete((copy, e) -> {
+                synchronized (completed) {
+                    updateProgress(progressBefore + total * 2 * completed.incrementAndGet() / 5, PROGRESS_MAX);
+                }
+            }));
+            
+            ApplicationException failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Path copy = futures.get(i).join();
+                    str.append(String.format("  - %s\n", copy.toString()));
+                    updateMessage(str.toString());
+                    
+                } catch (CompletionException e) {
+                    ApplicationException cause = toApplicationException(e, "比較結果Excelブックの保存に失敗しました。");
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            str.append(BR);
             updateMessage(str.toString());
-            updateProgress(progressBefore + total * 4 / 5, PROGRESS_MAX);
             
             str.append("比較結果のExcelブックを表示しています...").append(BR).append(BR);
             updateMessage(str.toString());
@@ -381,7 +451,11 @@ public class MenuTask extends Task<Path> {
             updateProgress(progressAfter, PROGRESS_MAX);
             
         } catch (ApplicationException e) {
-            str.append(e.getMessage()).append(BR).append(BR);
+            str.append(e.getMessage()).append(BR);
+            for (Throwable suppressed : e.getSuppressed()) {
+                str.append(suppressed.getMessage()).append(BR);
+            }
+            str.append(BR);
             updateMessage(str.toString());
             throw e;
         } catch (Exception e) {
@@ -390,4 +464,88 @@ public class MenuTask extends Task<Path> {
             throw new ApplicationException("比較結果Excelブックの保存と表示に失敗しました。", e);
         }
     }
+    
+    /**
+     * 6. 比較結果の差分箇所だけを一覧にしたExcelブックを作成し、保存して表示します。<br>
+     * 比較対象のExcelブックは読み込まず、比較結果だけから作成します。<br>
+     * 
+     * @param workDir 作業用フォルダ
+     * @param bResult Excelブック同士の比較結果
+     * @param progressBefore 処理前進捗率
+     * @param progressAfter 処理後進捗率
+     * @throws ApplicationException 処理に失敗した場合
+     */
+    private void showDiffBook(Path workDir, BResult bResult, int progressBefore, int progressAfter)
+            throws ApplicationException {
+        
+        try {
+            updateProgress(progressBefore, PROGRESS_MAX);
+            int total = progressAfter - progressBefore;
+            
+            Path filePath = workDir.resolve("result.xlsx");
+            str.append(String.format(
+                    "差分箇所の一覧ブックを保存しています...\n  - %s\n\n", filePath.toString()));
+            updateMessage(str.toString());
+            XSSFDiffBookWriter.of(context).writeAndSave(bResult, filePath);
+            updateProgress(progressBefore + total * 4 / 5, PROGRESS_MAX);
+            
+            str.append("差分箇所の一覧ブックを表示しています...").append(BR).append(BR);
+            updateMessage(str.toString());
+            Desktop.getDesktop().open(filePath.toFile());
+            updateProgress(progressAfter, PROGRESS_MAX);
+            
+        } catch (ApplicationException e) {
+            str.append(e.getMessage()).append(BR).append(BR);
+            updateMessage(str.toString());
+            throw e;
+        } catch (Exception e) {
+            str.append("差分箇所の一覧ブックの保存と表示に失敗しました。").append(BR).append(BR);
+            updateMessage(str.toString());
+            throw new ApplicationException("差分箇所の一覧ブックの保存と表示に失敗しました。", e);
+        }
+    }
+    
+    /**
+     * 7. 比較結果をテキストファイルとして保存して表示する処理の完了を待ちます。<br>
+     * 
+     * @param future {@link #showResultText(Path, BResult, int, int)} が返した {@link CompletableFuture}
+     * @throws ApplicationException 処理に失敗した場合
+     */
+    private void awaitResultText(CompletableFuture<Void> future) throws ApplicationException {
+        assert future != null;
+        
+        try {
+            future.join();
+            
+        } catch (CompletionException e) {
+            str.append("比較結果テキストの保存と表示に失敗しました。").append(BR).append(BR);
+            updateMessage(str.toString());
+            throw toApplicationException(e, "比較結果テキストの保存と表示に失敗しました。");
+        }
+    }
+    
+    /**
+     * 別スレッドでExcelブックに比較結果の色を付けて保存する処理を開始します。<br>
+     * 
+     * @param file 比較対象のExcelブック
+     * @param copy 比較結果のExcelブックの保存先
+     * @param bResult Excelブック同士の比較結果
+     * @return 比較結果のExcelブックの保存先を返す {@link CompletableFuture}
+     */
+    private CompletableFuture<Path> paintAndSaveAsync(File file, Path copy, BResult bResult) {
+        assert file != null;
+        assert copy != null;
+        assert bResult != null;
+        
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                BookPainter painter = BookPainter.of(file, context);
+                painter.paintAndSave(file, copy, bResult.getResults(file));
+                return copy;
+                
+            } catch (ApplicationException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 }
@@ -63,9 +63,12 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
         Objects.requireNonNull(cellsA, "cellsA");
         Objects.requireNonNull(cellsB, "cellsB");
         
+        // 行同士、列同士の対応付けの際にセル値を整数で比較するために、両シートのセル値にIdを割り当てる。
+        ValueDictionary dictionary = ValueDictionary.of(cellsA, cellsB);
+        
         // シート1とシート2の行同士、列同士の対応関係を求める。
-        List<Pair<Integer>> rowPairs = rowStrategy.pairing(cellsA, cellsB);
-        List<Pair<Integer>> columnPairs = columnStrategy.pairing(cellsA, cellsB);
+        List<Pair<Integer>> rowPairs = rowStrategy.pairing(cellsA, cellsB, dictionary);
+        List<Pair<Integer>> columnPairs = columnStrategy.pairing(cellsA, cellsB, dictionary);
         
         // 余剰行を収集する。
         List<Integer> redundantRowsA = rowPairs.stream()
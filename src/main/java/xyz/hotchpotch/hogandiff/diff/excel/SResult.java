@@ -64,6 +64,16 @@ public class SResult {
             this.redundantColumns = Collections.unmodifiableList(new ArrayList<>(redundantColumns));
             this.diffCells = Collections.unmodifiableList(new ArrayList<>(diffCells));
         }
+        
+        /**
+         * このシート上に差分箇所が無いかを返します。<br>
+         * 
+         * @return 余剰行、余剰列、差分セルのいずれも無い場合は {@code true}
+         * @since 0.5.0
+         */
+        public boolean isEmpty() {
+            return redundantRows.isEmpty() && redundantColumns.isEmpty() && diffCells.isEmpty();
+        }
     }
     
     private static final String BR = System.lineSeparator();
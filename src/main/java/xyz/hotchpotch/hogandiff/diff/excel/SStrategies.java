@@ -1,8 +1,5 @@
 package xyz.hotchpotch.hogandiff.diff.excel;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,19 +30,21 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
     public static final SStrategy columnStrategy0 = strategy0(CellReplica::column);
     
     /** 行の余剰/欠損は考慮するが列の余剰/欠損は考慮しない場合の行関連付け戦略 */
-    public static final SStrategy rowStrategy1 = strategy12(CellReplica::row, CellReplica::column);
+    public static final SStrategy rowStrategy1 = strategy12(CellReplica::row, (c, d) -> c.column());
     
     /** 列の余剰/欠損は考慮するが行の余剰/欠損は考慮しない場合の列関連付け戦略 */
-    public static final SStrategy columnStrategy1 = strategy12(CellReplica::column, CellReplica::row);
+    public static final SStrategy columnStrategy1 = strategy12(CellReplica::column, (c, d) -> c.row());
     
     /** 行の余剰/欠損と列の余剰/欠損をともに考慮する場合の行関連付け戦略 */
-    public static final SStrategy rowStrategy2 = strategy12(CellReplica::row, CellReplica::value);
+    public static final SStrategy rowStrategy2 = strategy12(CellReplica::row, (c, d) -> d.idOf(c));
     
     /** 行の余剰/欠損と列の余剰/欠損をともに考慮する場合の列関連付け戦略 */
-    public static final SStrategy columnStrategy2 = strategy12(CellReplica::column, CellReplica::value);
+    public static final SStrategy columnStrategy2 = strategy12(CellReplica::column, (c, d) -> d.idOf(c));
+    
+    private static final long[] EMPTY_LINE = new long[0];
     
     private static SStrategy strategy0(ToIntFunction<CellReplica> verticality) {
-        return (cellsA, cellsB) -> {
+        return (cellsA, cellsB, dictionary) -> {
             assert cellsA != null;
             assert cellsB != null;
             
@@ -57,17 +56,26 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
         };
     }
     
-    private static <H extends Comparable<H>> SStrategy strategy12(
+    /**
+     * 行（列）ごとのセルの並びを、水平方向のキーとセル値のIdを1つの {@code long} 値に詰めた配列で表して、
+     * 行（列）同士の比較を整数の比較で行う関連付け戦略を返します。<br>
+     * 
+     * @param verticality 行（列）のインデックスを返す関数
+     * @param horizontality 行（列）の中でのセルの並び順を決めるキーを返す関数（0以上）
+     * @return 関連付け戦略
+     */
+    private static SStrategy strategy12(
             ToIntFunction<CellReplica> verticality,
-            Function<CellReplica, H> horizontality) {
+            ToIntBiFunction<CellReplica, ValueDictionary> horizontality) {
         
-        return (cellsA, cellsB) -> {
+        return (cellsA, cellsB, dictionary) -> {
             assert cellsA != null;
             assert cellsB != null;
+            assert dictionary != null;
             
             int start = range(cellsA, cellsB, verticality).a();
             
-            Function<Set<CellReplica>, List<List<CellReplica>>> converter = cells -> {
+            Function<Set<CellReplica>, List<long[]>> converter = cells -> {
                 int end = range(cells, verticality).b();
                 Map<Integer, List<CellReplica>> map = cells.stream()
                         .filter(c -> !"".equals(c.value()))
@@ -76,22 +84,24 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
                 return IntStream.rangeClosed(start, end).parallel()
                         .mapToObj(i -> {
                             if (map.containsKey(i)) {
-                                List<CellReplica> list = map.get(i);
-                                list.sort(Comparator.comparing(horizontality));
-                                return list;
+                                return map.get(i).stream()
+                                        .mapToLong(c -> ((long) horizontality.applyAsInt(c, dictionary) << 32)
+                                                | dictionary.idOf(c))
+                                        .sorted()
+                                        .toArray();
                             } else {
-                                return Collections.<CellReplica>emptyList();
+                                return EMPTY_LINE;
                             }
                         })
                         .collect(Collectors.toList());
             };
             
-            List<List<CellReplica>> listA = converter.apply(cellsA);
-            List<List<CellReplica>> listB = converter.apply(cellsB);
+            List<long[]> listA = converter.apply(cellsA);
+            List<long[]> listB = converter.apply(cellsB);
             
-            Correlator<List<CellReplica>> correlator = Correlator.consideringGaps(
+            Correlator<long[]> correlator = Correlator.consideringGaps(
                     gapEvaluator(),
-                    diffEvaluator(horizontality));
+                    diffEvaluator());
             
             return correlator.correlate(listA, listB).stream()
                     .map(p -> p.map(i -> i + start))
@@ -99,50 +109,36 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
         };
     }
     
-    private static ToIntFunction<List<CellReplica>> gapEvaluator() {
-        return List::size;
+    private static ToIntFunction<long[]> gapEvaluator() {
+        return line -> line.length;
     }
     
-    private static <K extends Comparable<K>> ToIntBiFunction<List<CellReplica>, List<CellReplica>> diffEvaluator(
-            Function<CellReplica, K> keyExtractor) {
-        
+    private static ToIntBiFunction<long[], long[]> diffEvaluator() {
+        // 各要素の上位32ビットは水平方向のキー、下位32ビットはセル値のIdである。
         return (cellsA, cellsB) -> {
-            Iterator<CellReplica> itrA = cellsA.iterator();
-            Iterator<CellReplica> itrB = cellsB.iterator();
-            
+            int i = 0;
+            int j = 0;
             int diff = 0;
             int c = 0;
-            K keyA = null;
-            K keyB = null;
-            String valueA = null;
-            String valueB = null;
+            long cellA = 0;
+            long cellB = 0;
             
-            while (itrA.hasNext() && itrB.hasNext()) {
+            while (i < cellsA.length && j < cellsB.length) {
                 if (c <= 0) {
-                    CellReplica cellA = itrA.next();
-                    keyA = keyExtractor.apply(cellA);
-                    valueA = cellA.value();
+                    cellA = cellsA[i++];
                 }
                 if (0 <= c) {
-                    CellReplica cellB = itrB.next();
-                    keyB = keyExtractor.apply(cellB);
-                    valueB = cellB.value();
+                    cellB = cellsB[j++];
                 }
-                c = keyA.compareTo(keyB);
-                if (c == 0 && !valueA.equals(valueB)) {
+                c = Integer.compare((int) (cellA >>> 32), (int) (cellB >>> 32));
+                if (c == 0 && (int) cellA != (int) cellB) {
                     diff += 2;
                 } else if (c != 0) {
                     diff++;
                 }
             }
-            while (itrA.hasNext()) {
-                diff++;
-                itrA.next();
-            }
-            while (itrB.hasNext()) {
-                diff++;
-                itrB.next();
-            }
+            diff += cellsA.length - i;
+            diff += cellsB.length - j;
             
             return diff;
         };
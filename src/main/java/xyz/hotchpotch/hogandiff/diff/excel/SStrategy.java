@@ -8,7 +8,7 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
 
 /**
  * 2つのExcelシートの行同士または列同士を対応づける戦略を表します。<br>
- * これは、{@link #pairing(Set, Set)} を関数メソッドに持つ関数型インタフェースです。<br>
+ * これは、{@link #pairing(Set, Set, ValueDictionary)} を関数メソッドに持つ関数型インタフェースです。<br>
  * 
  * @author nmby
  * @since 0.3.2
@@ -25,7 +25,11 @@ import xyz.hotchpotch.hogandiff.excel.CellReplica;
      * 
      * @param cellsA 比較対象ExcelシートAのセルセット
      * @param cellsB 比較対象ExcelシートBのセルセット
+     * @param dictionary 2つのセルセットに含まれるセル値の辞書
      * @return 行同士または列同士の対応関係を表す、インデックスのペアのリスト
      */
-    List<Pair<Integer>> pairing(Set<CellReplica> cellsA, Set<CellReplica> cellsB);
+    List<Pair<Integer>> pairing(
+            Set<CellReplica> cellsA,
+            Set<CellReplica> cellsB,
+            ValueDictionary dictionary);
 }
@@ -0,0 +1,107 @@
+package xyz.hotchpotch.hogandiff.diff.excel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+/**
+ * 比較対象の2つのExcelシートに現れるセル値に、整数のIdを割り当てる辞書です。<br>
+ * 1回のシート比較の間だけ使用され、セル値同士の比較をIdの比較に置き換えるために用います。<br>
+ * <br>
+ * Idは値の辞書順（{@link String#compareTo(String)}）に割り当てられるため、
+ * Idの大小関係は値の大小関係と一致します。また、空文字列のIdは常に {@code 0} です。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class ValueDictionary {
+    
+    // [static members] ********************************************************
+    
+    /** 空文字列のId */
+    public static final int EMPTY = 0;
+    
+    /**
+     * 2つのセルセットに含まれるセル値の辞書を生成して返します。<br>
+     * 
+     * @param cellsA 比較対象ExcelシートAのセルセット
+     * @param cellsB 比較対象ExcelシートBのセルセット
+     * @return 新しい辞書
+     * @throws NullPointerException {@code cellsA}, {@code cellsB} のいずれかが {@code null} の場合
+     */
+    public static ValueDictionary of(Set<CellReplica> cellsA, Set<CellReplica> cellsB) {
+        Objects.requireNonNull(cellsA, "cellsA");
+        Objects.requireNonNull(cellsB, "cellsB");
+        
+        Set<String> distinct = new HashSet<>();
+        distinct.add("");
+        cellsA.forEach(c -> distinct.add(c.value()));
+        cellsB.forEach(c -> distinct.add(c.value()));
+        
+        // 空文字列は辞書順で最小のため、Id 0 が割り当てられる。
+        String[] values = distinct.toArray(new String[distinct.size()]);
+        Arrays.sort(values);
+        
+        Map<String, Integer> ids = new HashMap<>(values.length * 4 / 3 + 1);
+        for (int i = 0; i < values.length; i++) {
+            ids.put(values[i], i);
+        }
+        return new ValueDictionary(ids);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final Map<String, Integer> ids;
+    
+    private ValueDictionary(Map<String, Integer> ids) {
+        assert ids != null;
+        assert ids.get("") == EMPTY;
+        
+        this.ids = ids;
+    }
+    
+    /**
+     * 指定された値のIdを返します。<br>
+     * 
+     * @param value 値
+     * @return 値のId
+     * @throws NullPointerException {@code value} が {@code null} の場合
+     * @throws IllegalArgumentException {@code value} がこの辞書に含まれない場合
+     */
+    public int idOf(String value) {
+        Objects.requireNonNull(value, "value");
+        
+        Integer id = ids.get(value);
+        if (id == null) {
+            throw new IllegalArgumentException("value: " + value);
+        }
+        return id;
+    }
+    
+    /**
+     * 指定されたセルの値のIdを返します。<br>
+     * 
+     * @param cell セル
+     * @return セルの値のId
+     * @throws NullPointerException {@code cell} が {@code null} の場合
+     * @throws IllegalArgumentException {@code cell} の値がこの辞書に含まれない場合
+     */
+    public int idOf(CellReplica cell) {
+        Objects.requireNonNull(cell, "cell");
+        return idOf(cell.value());
+    }
+    
+    /**
+     * この辞書に含まれる値の数を返します。<br>
+     * 
+     * @return 値の数
+     */
+    public int size() {
+        return ids.size();
+    }
+}
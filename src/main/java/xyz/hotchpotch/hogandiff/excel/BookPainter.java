@@ -9,6 +9,7 @@ import java.util.Objects;
 import xyz.hotchpotch.hogandiff.ApplicationException;
 import xyz.hotchpotch.hogandiff.Context;
 import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.excel.hssf.HSSFBookPainterWithRecordApi;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFBookPainterWithStaxApi;
 
 /**
@@ -39,6 +40,9 @@ public interface BookPainter {
         if (XSSFBookPainterWithStaxApi.isSupported(book)) {
             return XSSFBookPainterWithStaxApi.of(context);
         }
+        if (HSSFBookPainterWithRecordApi.isSupported(book)) {
+            return HSSFBookPainterWithRecordApi.of(context);
+        }
         if (BookPainterWithUserApi.isSupported(book)) {
             return BookPainterWithUserApi.of(context);
         }
@@ -112,10 +112,11 @@ import xyz.hotchpotch.hogandiff.diff.excel.SResult;
             
             // 3. 色を付ける。
             ExcelUtils.clearColors(wb);
+            PaintedStyles styles = PaintedStyles.of(wb);
             for (Map.Entry<String, SResult.Piece> result : results) {
                 String sheetName = result.getKey();
                 SResult.Piece piece = result.getValue();
-                paintSheet(wb.getSheet(sheetName), piece);
+                paintSheet(wb.getSheet(sheetName), piece, styles);
             }
             
             // 4. 着色したExcelブックをコピーしたファイルに上書き保存する。
@@ -135,16 +136,17 @@ import xyz.hotchpotch.hogandiff.diff.excel.SResult;
      * 
      * @param sheet 対象のシート
      * @param piece 対象シート上の差分箇所
+     * @param styles 対象ブックのための {@link PaintedStyles} オブジェクト
      */
-    private void paintSheet(Sheet sheet, SResult.Piece piece) {
+    private void paintSheet(Sheet sheet, SResult.Piece piece, PaintedStyles styles) {
         assert sheet != null;
         assert piece != null;
+        assert styles != null;
         
-        ExcelUtils.paintRows(sheet, piece.redundantRows, redundantColor);
-        ExcelUtils.paintColumns(sheet, piece.redundantColumns, redundantColor);
         Set<CellAddress> addresses = piece.diffCells.stream()
                 .map(cell -> new CellAddress(cell.row(), cell.column()))
                 .collect(Collectors.toSet());
-        ExcelUtils.paintCells(sheet, addresses, diffColor);
+        ExcelUtils.paintSheet(sheet, piece.redundantRows, piece.redundantColumns, redundantColor,
+                addresses, diffColor, styles);
     }
 }
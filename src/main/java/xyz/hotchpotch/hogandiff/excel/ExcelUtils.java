@@ -5,16 +5,16 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
-import java.util.stream.StreamSupport;
 
 import org.apache.poi.hssf.usermodel.HSSFSheetConditionalFormatting;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -30,11 +30,13 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellAddress;
-import org.apache.poi.ss.util.CellUtil;
 import org.apache.poi.xssf.usermodel.XSSFSheetConditionalFormatting;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetLoaderWithStaxApi;
 
 /**
  * ExcelブックやExcelシートに対する各種操作をExcelブックの形式に関わりなく透過的に提供するユーティリティクラスです。<br>
@@ -49,6 +51,32 @@ public class ExcelUtils {
     private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter
             .ofPattern("yyyy/MM/dd HH:mm:ss.SSS");
     
+    /** 数式文字列の標準化に用いる作業用バッファ（スレッドごとに再利用する） */
+    private static final ThreadLocal<char[]> formulaBuffer = ThreadLocal.withInitial(() -> new char[256]);
+    
+    /** 読み込み済みのシートデータおよびシート名の一覧のキャッシュ */
+    private static final SheetCache cache = SheetCache.of(256L * 1024 * 1024);
+    
+    /**
+     * 指定されたコンテキストに従ってシートデータのキャッシュを構成します。<br>
+     * メモリ上のキャッシュに加えて、作業用フォルダの作成場所にシートデータのスナップショットを保存します。<br>
+     * 
+     * @param context コンテキスト
+     * @throws NullPointerException {@code context} が {@code null} の場合
+     * @since 0.5.0
+     */
+    public static void configureCache(Context context) {
+        Objects.requireNonNull(context, "context");
+        
+        int sizeMB = context.get(Props.SYS_SHEET_CACHE_SIZE);
+        cache.setCapacity(Math.max(0, sizeMB) * 1024L * 1024L);
+        
+        int snapshotSizeMB = context.get(Props.SYS_SNAPSHOT_CACHE_SIZE);
+        cache.setSnapshotStore(
+                context.get(Props.SYS_WORK_DIR_BASE).resolve("snapshots"),
+                Math.max(0, snapshotSizeMB) * 1024L * 1024L);
+    }
+    
     /**
      * セルの形式が何であれ、セルの格納値を表す文字列を返します。<br>
      * セルの形式が数式であり {@code returnCachedValue} が{@code true} の場合は、計算結果の値の文字列表現を返します。
@@ -103,13 +131,9 @@ public class ExcelUtils {
                         .ofInstant(date.toInstant(), ZoneId.systemDefault());
                 return dateTimeFormatter.format(localDateTime);
             } else {
-                String val = String.valueOf(cell.getNumericCellValue());
-                if (val.endsWith(".0")) {
-                    val = val.substring(0, val.length() - 2);
-                }
-                return val;
+                return NumericTextConverter.toPlainText(cell.getNumericCellValue());
             }
-            
+        
         case ERROR:
             return ErrorEval.getText(cell.getErrorCellValue());
         
@@ -118,7 +142,7 @@ public class ExcelUtils {
         
         case _NONE:
             throw new IllegalStateException("cell type is _NONE.");
-            
+        
         default:
             throw new AssertionError("unexpected cell type. cellTypeEnum: " + cell.getCellTypeEnum());
         }
@@ -129,27 +153,62 @@ public class ExcelUtils {
      * 例えばセルに「= 1 + 2」と入力されている場合、POIの各種APIによって
      * " 1 + 2" と取得されたり "1+2" と取得されたりするため、
      * 不要なスペースを取り除くことでこれらを標準化します。<br>
+     * 取り除くべき文字が無い場合は、{@code original} そのものを返します。<br>
      * 
      * @param original 元の数式文字列
      * @return 標準化された数式文字列
+     * @throws NullPointerException {@code original} が {@code null} の場合
      */
     public static String normalizeFormula(String original) {
-        StringBuilder str = new StringBuilder(original.trim());
+        Objects.requireNonNull(original, "original");
+        
+        int begin = 0;
+        int end = original.length();
+        while (begin < end && original.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (begin < end && original.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        
+        // 文字列リテラルの外にある最初のスペースを探す。
         boolean inString = false;
-        int n = 0;
+        int n = begin;
+        for (; n < end; n++) {
+            char c = original.charAt(n);
+            if (c == '"') {
+                inString = !inString;
+            } else if (c == ' ' && !inString) {
+                break;
+            }
+        }
+        if (n == end) {
+            assert !inString;
+            return begin == 0 && end == original.length()
+                    ? original
+                    : original.substring(begin, end);
+        }
         
-        while (n < str.length()) {
-            if (str.charAt(n) == '"') {
+        char[] buf = formulaBuffer.get();
+        if (buf.length < end - begin) {
+            buf = new char[Math.max(end - begin, buf.length * 2)];
+            formulaBuffer.set(buf);
+        }
+        original.getChars(begin, n, buf, 0);
+        int len = n - begin;
+        
+        for (n++; n < end; n++) {
+            char c = original.charAt(n);
+            if (c == '"') {
                 inString = !inString;
-            } else if (str.charAt(n) == ' ' && !inString) {
-                str.deleteCharAt(n);
-                n--;
+            } else if (c == ' ' && !inString) {
+                continue;
             }
-            n++;
+            buf[len++] = c;
         }
         assert !inString;
         
-        return str.toString();
+        return new String(buf, 0, len);
     }
     
     /**
@@ -160,12 +219,16 @@ public class ExcelUtils {
      * @throws ApplicationException 処理に失敗した場合
      */
     public static List<String> getSheetNames(File book) throws ApplicationException {
-        SheetLister lister = SheetLister.of(book);
-        return lister.getSheetNames(book);
+        return cache.getSheetNames(book, () -> {
+            SheetLister lister = SheetLister.of(book);
+            return lister.getSheetNames(book);
+        });
     }
     
     /**
      * 指定されたExcelブックからシートデータを読み込んでセルデータのセットとして返します。<br>
+     * 同じ条件で読み込み済みのシートデータがキャッシュに存在し、かつExcelブックが更新されていない場合は、
+     * Excelブックを読み込まずにキャッシュの内容を返します。返されるセットは変更できません。<br>
      * 
      * @param book 対象のExcelブック
      * @param sheetName 対象のシート名
@@ -179,8 +242,102 @@ public class ExcelUtils {
             boolean extractCachedValue)
             throws ApplicationException {
         
+        return loadSheet(book, sheetName, extractCachedValue, SheetRegion.ALL);
+    }
+    
+    /**
+     * 指定されたExcelブックからシートデータのうち指定された範囲のセルデータを読み込んで、セルデータのセットとして返します。<br>
+     * 同じ条件で読み込み済みのシートデータがキャッシュに存在し、かつExcelブックが更新されていない場合は、
+     * Excelブックを読み込まずにキャッシュの内容を返します。返されるセットは変更できません。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 指定された範囲に含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @since 0.5.0
+     */
+    public static Set<CellReplica> loadSheet(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region)
+            throws ApplicationException {
+        
+        SheetLoader loader = SheetLoader.of(book, extractCachedValue, region);
+        return cache.getCells(book, sheetName, extractCachedValue, region, loaderId(loader, 0),
+                () -> loader.loadSheet(book, sheetName));
+    }
+    
+    /**
+     * 指定されたExcelブックから、指定されたコンテキストに従ってシートデータを読み込んでセルデータのセットとして返します。<br>
+     * 同じ条件で読み込み済みのシートデータがキャッシュに存在し、かつExcelブックが更新されていない場合は、
+     * Excelブックを読み込まずにキャッシュの内容を返します。返されるセットは変更できません。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param context コンテキスト
+     * @return シートに含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code context} が {@code null} の場合
+     * @see SheetLoader#of(File, Context)
+     * @since 0.5.0
+     */
+    public static Set<CellReplica> loadSheet(
+            File book,
+            String sheetName,
+            Context context)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(context, "context");
+        
+        boolean extractCachedValue = context.get(Props.APP_COMPARE_ON_VALUE);
+        SheetRegion region = context.get(Props.APP_TARGET_REGION);
+        int parallelThresholdMB = context.get(Props.SYS_PARALLEL_PARSING_THRESHOLD);
+        SheetLoader loader = SheetLoader.of(book, context);
+        return cache.getCells(book, sheetName, extractCachedValue, region, loaderId(loader, parallelThresholdMB),
+                () -> loader.loadSheet(book, sheetName));
+    }
+    
+    /**
+     * キャッシュのキーに含める、ローダーの種類と読み込み方式を識別する文字列を返します。<br>
+     * 同じシートであっても、ローダーの種類や並列解析の有無によって読み込まれるセルデータが異なり得るためです。<br>
+     * 
+     * @param loader ローダー
+     * @param parallelThresholdMB 並列解析の閾値（MB）。0 以下の場合は並列に解析しない
+     * @return ローダーの種類と読み込み方式を識別する文字列
+     */
+    private static String loaderId(SheetLoader loader, int parallelThresholdMB) {
+        assert loader != null;
+        
+        return loader instanceof XSSFSheetLoaderWithStaxApi
+                ? loader.getClass().getName() + ":" + Math.max(0, parallelThresholdMB)
+                : loader.getClass().getName();
+    }
+    
+    /**
+     * 指定されたExcelブックからシートデータを読み込み、セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * セルデータは行優先の順序で渡されます。
+     * シートデータ全体をメモリ上に保持しないため、ダイジェストや統計情報の算出のみを行いたい場合に適しています。<br>
+     * このメソッドはキャッシュを利用しません。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @since 0.5.0
+     */
+    public static void loadSheet(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
         SheetLoader loader = SheetLoader.of(book, extractCachedValue);
-        return loader.loadSheet(book, sheetName);
+        loader.loadSheet(book, sheetName, consumer);
     }
     
     /**
@@ -314,30 +471,32 @@ public class ExcelUtils {
         Objects.requireNonNull(sheet, "sheet");
         Objects.requireNonNull(rows, "rows");
         
-        if (rows.isEmpty()) {
-            return;
-        }
-        
-        CellStyle newStyle = sheet.getWorkbook().createCellStyle();
-        newStyle.setFillForegroundColor(color);
-        newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        paintRows(sheet, rows, color, PaintedStyles.of(sheet.getWorkbook()));
+    }
+    
+    /**
+     * 指定された行に指定された色を付けます。<br>
+     * スタイルは {@code styles} を経由して作成・再利用されるため、
+     * 1つのブックに対しては同じ {@code styles} を指定してください。<br>
+     * 
+     * @param sheet 対象のExcelシート
+     * @param rows 対象行インデックス（0開始）のセット
+     * @param color {@link IndexedColors} で定義された色インデックス
+     * @param styles 対象のExcelブックのための {@link PaintedStyles} オブジェクト
+     * @throws NullPointerException {@code sheet}, {@code rows}, {@code styles} のいずれかが {@code null} の場合
+     */
+    public static void paintRows(
+            Sheet sheet,
+            Collection<Integer> rows,
+            short color,
+            PaintedStyles styles) {
         
-        rows.forEach(i -> {
-            Row row = sheet.getRow(i);
-            if (row == null) {
-                row = sheet.createRow(i);
-                // おまじない。これをしないと、空行の高さがデフォルト値に変更されてしまう。
-                row.setHeight(row.getHeight());
-            }
-            row.setRowStyle(newStyle);
-        });
+        Objects.requireNonNull(sheet, "sheet");
+        Objects.requireNonNull(rows, "rows");
+        Objects.requireNonNull(styles, "styles");
         
-        Set<CellAddress> cellAddresses = rows.stream()
-                .map(sheet::getRow)
-                .flatMap(row -> StreamSupport.stream(row.spliterator(), false))
-                .map(CellAddress::new)
-                .collect(Collectors.toSet());
-        paintCells(sheet, cellAddresses, color);
+        paintSheet(sheet, rows, Collections.emptySet(), color,
+                Collections.emptySet(), color, styles);
     }
     
     /**
@@ -352,26 +511,32 @@ public class ExcelUtils {
         Objects.requireNonNull(sheet, "sheet");
         Objects.requireNonNull(columns, "columns");
         
-        if (columns.isEmpty()) {
-            return;
-        }
+        paintColumns(sheet, columns, color, PaintedStyles.of(sheet.getWorkbook()));
+    }
+    
+    /**
+     * 指定された列に指定された色を付けます。<br>
+     * スタイルは {@code styles} を経由して作成・再利用されるため、
+     * 1つのブックに対しては同じ {@code styles} を指定してください。<br>
+     * 
+     * @param sheet 対象のExcelシート
+     * @param columns 対象列インデックス（0開始）のセット
+     * @param color {@link IndexedColors} で定義された色インデックス
+     * @param styles 対象のExcelブックのための {@link PaintedStyles} オブジェクト
+     * @throws NullPointerException {@code sheet}, {@code columns}, {@code styles} のいずれかが {@code null} の場合
+     */
+    public static void paintColumns(
+            Sheet sheet,
+            Collection<Integer> columns,
+            short color,
+            PaintedStyles styles) {
+        
+        Objects.requireNonNull(sheet, "sheet");
+        Objects.requireNonNull(columns, "columns");
+        Objects.requireNonNull(styles, "styles");
         
-        CellStyle newStyle = sheet.getWorkbook().createCellStyle();
-        newStyle.setFillForegroundColor(color);
-        newStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        
-        // XSSFSheetでstyleの設定されていないカラムの場合、
-        // 次のコードにより列の幅がデフォルト幅に変更されてしまうという問題がある。
-        // しかし変更前の元の列幅を取得する方法が不明なため、今のところ解消策なし。
-        // TODO: XSSFSheetでstyleの設定されていない列の幅が変更される問題を解消する。
-        columns.forEach(j -> sheet.setDefaultColumnStyle(j, newStyle));
-        
-        Set<CellAddress> cellAddresses = StreamSupport.stream(sheet.spliterator(), false)
-                .flatMap(row -> StreamSupport.stream(row.spliterator(), false))
-                .filter(cell -> columns.contains(cell.getColumnIndex()))
-                .map(CellAddress::new)
-                .collect(Collectors.toSet());
-        paintCells(sheet, cellAddresses, color);
+        paintSheet(sheet, Collections.emptySet(), columns, color,
+                Collections.emptySet(), color, styles);
     }
     
     /**
@@ -386,40 +551,117 @@ public class ExcelUtils {
         Objects.requireNonNull(sheet, "sheet");
         Objects.requireNonNull(addresses, "addresses");
         
-        if (addresses.isEmpty()) {
-            return;
+        paintCells(sheet, addresses, color, PaintedStyles.of(sheet.getWorkbook()));
+    }
+    
+    /**
+     * 指定されたセルに指定された色を付けます。<br>
+     * スタイルは {@code styles} を経由して作成・再利用されるため、
+     * 1つのブックに対しては同じ {@code styles} を指定してください。<br>
+     * 
+     * @param sheet 対象のExcelシート
+     * @param addresses 対象セルアドレスのセット
+     * @param color {@link IndexedColors} で定義された色インデックス
+     * @param styles 対象のExcelブックのための {@link PaintedStyles} オブジェクト
+     * @throws NullPointerException {@code sheet}, {@code addresses}, {@code styles} のいずれかが {@code null} の場合
+     */
+    public static void paintCells(
+            Sheet sheet,
+            Collection<CellAddress> addresses,
+            short color,
+            PaintedStyles styles) {
+        
+        Objects.requireNonNull(sheet, "sheet");
+        Objects.requireNonNull(addresses, "addresses");
+        Objects.requireNonNull(styles, "styles");
+        
+        paintSheet(sheet, Collections.emptySet(), Collections.emptySet(), color,
+                addresses, color, styles);
+    }
+    
+    /**
+     * 指定されたシートの行・列・セルに色を付けます。<br>
+     * 行と列にはそれぞれの既定スタイルを設定したうえで、
+     * 色を付けるべき全てのセルのスタイルの付け替えを1回の走査でまとめて行います。
+     * 余剰行・余剰列に含まれる差分セルには、差分セルの色が優先されます。<br>
+     * スタイルは {@code styles} を経由して作成・再利用されるため、
+     * 1つのブックに対しては同じ {@code styles} を指定してください。<br>
+     * 
+     * @param sheet 対象のExcelシート
+     * @param rows 対象行インデックス（0開始）のセット
+     * @param columns 対象列インデックス（0開始）のセット
+     * @param redundantColor 行・列に付ける色（{@link IndexedColors} で定義された色インデックス）
+     * @param addresses 対象セルアドレスのセット
+     * @param diffColor セルに付ける色（{@link IndexedColors} で定義された色インデックス）
+     * @param styles 対象のExcelブックのための {@link PaintedStyles} オブジェクト
+     * @throws NullPointerException
+     *          {@code sheet}, {@code rows}, {@code columns}, {@code addresses}, {@code styles}
+     *          のいずれかが {@code null} の場合
+     */
+    public static void paintSheet(
+            Sheet sheet,
+            Collection<Integer> rows,
+            Collection<Integer> columns,
+            short redundantColor,
+            Collection<CellAddress> addresses,
+            short diffColor,
+            PaintedStyles styles) {
+        
+        Objects.requireNonNull(sheet, "sheet");
+        Objects.requireNonNull(rows, "rows");
+        Objects.requireNonNull(columns, "columns");
+        Objects.requireNonNull(addresses, "addresses");
+        Objects.requireNonNull(styles, "styles");
+        
+        Map<CellAddress, Short> colors = new HashMap<>();
+        
+        // 1. 行の既定スタイルを設定し、行に含まれるセルを着色対象とする。
+        if (!rows.isEmpty()) {
+            CellStyle rowStyle = styles.plain(redundantColor);
+            rows.forEach(i -> {
+                Row row = sheet.getRow(i);
+                if (row == null) {
+                    row = sheet.createRow(i);
+                    // おまじない。これをしないと、空行の高さがデフォルト値に変更されてしまう。
+                    row.setHeight(row.getHeight());
+                }
+                row.setRowStyle(rowStyle);
+                row.forEach(cell -> colors.put(new CellAddress(cell), redundantColor));
+            });
         }
         
-        // 指定された位置の行・セルが存在しない場合は、色を付けるために行・セルを作成する。
-        addresses.forEach(address -> {
+        // 2. 列の既定スタイルを設定し、列に含まれるセルを着色対象とする。
+        if (!columns.isEmpty()) {
+            // XSSFSheetでstyleの設定されていないカラムの場合、
+            // 次のコードにより列の幅がデフォルト幅に変更されてしまうという問題がある。
+            // しかし変更前の元の列幅を取得する方法が不明なため、今のところ解消策なし。
+            // TODO: XSSFSheetでstyleの設定されていない列の幅が変更される問題を解消する。
+            CellStyle columnStyle = styles.plain(redundantColor);
+            columns.forEach(j -> sheet.setDefaultColumnStyle(j, columnStyle));
+            
+            Set<Integer> columnSet = columns instanceof Set ? (Set<Integer>) columns : new HashSet<>(columns);
+            sheet.forEach(row -> row.forEach(cell -> {
+                if (columnSet.contains(cell.getColumnIndex())) {
+                    colors.put(new CellAddress(cell), redundantColor);
+                }
+            }));
+        }
+        
+        // 3. 差分セルを着色対象とする。余剰行・余剰列と重なる場合は差分セルの色を優先する。
+        addresses.forEach(address -> colors.put(address, diffColor));
+        
+        // 4. 着色対象の全セルのスタイルを付け替える。
+        //    指定された位置の行・セルが存在しない場合は、色を付けるために行・セルを作成する。
+        colors.forEach((address, color) -> {
             Row row = sheet.getRow(address.getRow());
             if (row == null) {
                 row = sheet.createRow(address.getRow());
             }
-            if (row.getCell(address.getColumn()) == null) {
-                row.createCell(address.getColumn());
+            Cell cell = row.getCell(address.getColumn());
+            if (cell == null) {
+                cell = row.createCell(address.getColumn());
             }
-        });
-        
-        // 同じスタイルを持つセルごとにグルーピングする。
-        Map<CellStyle, List<Cell>> map = addresses.stream()
-                .map(address -> sheet.getRow(address.getRow()).getCell(address.getColumn()))
-                .collect(Collectors.groupingBy(Cell::getCellStyle));
-        
-        Map<String, Object> styleModifier = new HashMap<>();
-        styleModifier.put(CellUtil.FILL_FOREGROUND_COLOR, color);
-        styleModifier.put(CellUtil.FILL_PATTERN, FillPatternType.SOLID_FOREGROUND);
-        
-        // 同じスタイルごとに新スタイルへの付け替えを行う。
-        map.forEach((style, cells) -> {
-            Iterator<Cell> itr = cells.iterator();
-            
-            assert itr.hasNext();
-            Cell first = itr.next();
-            CellUtil.setCellStyleProperties(first, styleModifier);
-            CellStyle newStyle = first.getCellStyle();
-            
-            itr.forEachRemaining(cell -> cell.setCellStyle(newStyle));
+            cell.setCellStyle(styles.painted(cell.getCellStyle(), color));
         });
     }
     
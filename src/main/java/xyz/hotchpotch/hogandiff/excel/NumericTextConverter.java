@@ -0,0 +1,117 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.util.function.DoubleFunction;
+
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+/**
+ * 数値セルの値を文字列に変換するためのユーティリティクラスです。<br>
+ * <br>
+ * 数値の多いシートでは数値から文字列への変換がシートデータの読み込み処理の大半を占めるため、
+ * 整数値については直接変換し、それ以外の値については直近に変換した結果を
+ * {@code double} 値のビット列をキーとする小さなキャッシュに保持して再利用します。
+ * いずれの場合も、変換結果は元の変換方法と完全に一致します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class NumericTextConverter {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * {@code double} 値とその変換結果の組を保持する不変クラスです。<br>
+     * 配列の要素の書き換えはアトミックに行われるため、
+     * 複数のスレッドから同期なしにキャッシュを読み書きしても、キーと値の組が食い違うことはありません。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Entry {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final long bits;
+        private final String text;
+        
+        private Entry(long bits, String text) {
+            this.bits = bits;
+            this.text = text;
+        }
+    }
+    
+    /** キャッシュのサイズ（2の累乗） */
+    private static final int CACHE_SIZE = 1 << 12;
+    
+    /** Excelの表示形式の変換で、整数値をそのまま10進数で表せる絶対値の上限（この値は含まない） */
+    private static final double EXCEL_INTEGER_LIMIT = 1e15;
+    
+    /** {@link String#valueOf(double)} が整数値を指数表記せずに返す絶対値の上限（この値は含まない） */
+    private static final double PLAIN_INTEGER_LIMIT = 1e7;
+    
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0d);
+    
+    private static final Entry[] excelCache = new Entry[CACHE_SIZE];
+    private static final Entry[] plainCache = new Entry[CACHE_SIZE];
+    
+    /**
+     * 数値をExcelと同様の形式の文字列に変換して返します。<br>
+     * 戻り値は {@link NumberToTextConverter#toText(double)} と同じです。<br>
+     * 
+     * @param value 数値
+     * @return 文字列
+     */
+    public static String toText(double value) {
+        if (isInteger(value, EXCEL_INTEGER_LIMIT)) {
+            return Long.toString((long) value);
+        }
+        return convert(excelCache, value, NumberToTextConverter::toText);
+    }
+    
+    /**
+     * 数値を {@link String#valueOf(double)} で文字列に変換し、末尾の {@code ".0"} を取り除いて返します。<br>
+     * 
+     * @param value 数値
+     * @return 文字列
+     */
+    public static String toPlainText(double value) {
+        if (isInteger(value, PLAIN_INTEGER_LIMIT)) {
+            return Long.toString((long) value);
+        }
+        return convert(plainCache, value, v -> {
+            String text = String.valueOf(v);
+            return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+        });
+    }
+    
+    private static boolean isInteger(double value, double limit) {
+        // -0.0 は、いずれの変換方法でも "0" 以外の文字列に変換される。
+        return -limit < value && value < limit
+                && value == (long) value
+                && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS;
+    }
+    
+    private static String convert(Entry[] cache, double value, DoubleFunction<String> converter) {
+        assert cache != null;
+        assert converter != null;
+        
+        long bits = Double.doubleToRawLongBits(value);
+        int hash = (int) (bits ^ (bits >>> 32));
+        int idx = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        
+        Entry entry = cache[idx];
+        if (entry != null && entry.bits == bits) {
+            return entry.text;
+        }
+        String text = converter.apply(value);
+        cache[idx] = new Entry(bits, text);
+        return text;
+    }
+    
+    // [instance members] ******************************************************
+    
+    private NumericTextConverter() {
+    }
+}
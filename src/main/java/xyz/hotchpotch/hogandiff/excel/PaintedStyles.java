@@ -0,0 +1,108 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Excelブックに色を付ける際に作成するセルスタイルを、ブックごとに使い回すためのクラスです。<br>
+ * <br>
+ * 着色後のスタイルを（元のスタイルのインデックス, 色）の組をキーとして保持し、
+ * 同じ組に対しては二度目以降はスタイルを新たに作成せずに既存のものを返します。
+ * ブック内のスタイルを線形探索して同じ書式のスタイルを探すこともしないため、
+ * 元のスタイルの種類が多いブックでもスタイル数とスタイルの検索時間が増え続けることはありません。<br>
+ * 1つのブックに対する着色は、全て同じ {@link PaintedStyles} オブジェクトを経由して行ってください。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class PaintedStyles {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 指定されたExcelブックのための {@link PaintedStyles} オブジェクトを生成して返します。<br>
+     * 
+     * @param book 着色対象のExcelブック
+     * @return 新しい {@link PaintedStyles} オブジェクト
+     * @throws NullPointerException {@code book} が {@code null} の場合
+     */
+    public static PaintedStyles of(Workbook book) {
+        Objects.requireNonNull(book, "book");
+        
+        return new PaintedStyles(book);
+    }
+    
+    private static int key(int originalIdx, short color) {
+        return (originalIdx << 16) | (color & 0xFFFF);
+    }
+    
+    private static void fill(CellStyle style, short color) {
+        assert style != null;
+        
+        style.setFillForegroundColor(color);
+        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final Workbook book;
+    
+    /** 色のみを設定した行・列用のスタイル（キーは色） */
+    private final Map<Short, CellStyle> plainStyles = new HashMap<>();
+    
+    /** 着色後のスタイル（キーは元のスタイルのインデックスと色の組） */
+    private final Map<Integer, CellStyle> paintedStyles = new HashMap<>();
+    
+    /** 着色後のスタイルのインデックスから、元のスタイルのインデックスへの対応 */
+    private final Map<Integer, Integer> originals = new HashMap<>();
+    
+    private PaintedStyles(Workbook book) {
+        assert book != null;
+        
+        this.book = book;
+    }
+    
+    /**
+     * 行や列の既定スタイルとして用いる、指定された色で塗りつぶしたスタイルを返します。<br>
+     * 
+     * @param color {@link org.apache.poi.ss.usermodel.IndexedColors} で定義された色インデックス
+     * @return 塗りつぶしたスタイル
+     */
+    public CellStyle plain(short color) {
+        return plainStyles.computeIfAbsent(color, c -> {
+            CellStyle style = book.createCellStyle();
+            fill(style, c);
+            return style;
+        });
+    }
+    
+    /**
+     * 指定されたスタイルを指定された色で塗りつぶしたスタイルを返します。<br>
+     * {@code original} がこのオブジェクトの返した着色後のスタイルである場合は、
+     * その元のスタイルを指定された色で塗りつぶしたスタイルを返します。<br>
+     * 
+     * @param original 元のスタイル
+     * @param color {@link org.apache.poi.ss.usermodel.IndexedColors} で定義された色インデックス
+     * @return 着色後のスタイル
+     * @throws NullPointerException {@code original} が {@code null} の場合
+     */
+    public CellStyle painted(CellStyle original, short color) {
+        Objects.requireNonNull(original, "original");
+        
+        int idx = Short.toUnsignedInt(original.getIndex());
+        int originalIdx = originals.getOrDefault(idx, idx);
+        
+        return paintedStyles.computeIfAbsent(key(originalIdx, color), k -> {
+            CellStyle style = book.createCellStyle();
+            style.cloneStyleFrom(book.getCellStyleAt(originalIdx));
+            fill(style, color);
+            originals.put(Short.toUnsignedInt(style.getIndex()), originalIdx);
+            return style;
+        });
+    }
+}
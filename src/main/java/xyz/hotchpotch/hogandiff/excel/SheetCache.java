@@ -0,0 +1,420 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+
+/**
+ * 読み込み済みのシートデータおよびシート名の一覧をメモリ上に保持するLRUキャッシュです。<br>
+ * キャッシュのキーにはファイルの正規パス、サイズ、最終更新日時が含まれるため、
+ * ファイルが更新された場合は自動的に再読み込みされます。<br>
+ * ローダーによって読み込まれるセルデータが異なり得るため、シートデータのキーにはローダーの識別子も含まれます。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class SheetCache {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * キャッシュに存在しない場合にデータを読み込む関数を表します。<br>
+     * 
+     * @param <T> 読み込むデータの型
+     * @author nmby
+     * @since 0.5.0
+     */
+    @FunctionalInterface
+    /*package*/ static interface Loader<T> {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        /**
+         * データを読み込みます。<br>
+         * 
+         * @return 読み込んだデータ
+         * @throws ApplicationException 処理に失敗した場合
+         */
+        T load() throws ApplicationException;
+    }
+    
+    /**
+     * キャッシュ対象のExcelブックを識別するための不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class BookKey {
+        
+        // [static members] ----------------------------------------------------
+        
+        private static BookKey of(File book) {
+            assert book != null;
+            
+            String path;
+            try {
+                path = book.getCanonicalPath();
+            } catch (IOException e) {
+                path = book.getAbsolutePath();
+            }
+            return new BookKey(path, book.length(), book.lastModified());
+        }
+        
+        // [instance members] --------------------------------------------------
+        
+        private final String canonicalPath;
+        private final long size;
+        private final long lastModified;
+        
+        private BookKey(String canonicalPath, long size, long lastModified) {
+            assert canonicalPath != null;
+            
+            this.canonicalPath = canonicalPath;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof BookKey) {
+                BookKey other = (BookKey) o;
+                return canonicalPath.equals(other.canonicalPath)
+                        && size == other.size
+                        && lastModified == other.lastModified;
+            }
+            return false;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(canonicalPath, size, lastModified);
+        }
+    }
+    
+    /**
+     * キャッシュ対象のシートデータを識別するための不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class SheetKey {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final BookKey book;
+        private final String sheetName;
+        private final boolean extractCachedValue;
+        private final SheetRegion region;
+        private final String loaderId;
+        
+        private SheetKey(
+                BookKey book,
+                String sheetName,
+                boolean extractCachedValue,
+                SheetRegion region,
+                String loaderId) {
+            
+            assert book != null;
+            assert sheetName != null;
+            assert region != null;
+            assert loaderId != null;
+            
+            this.book = book;
+            this.sheetName = sheetName;
+            this.extractCachedValue = extractCachedValue;
+            this.region = region;
+            this.loaderId = loaderId;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof SheetKey) {
+                SheetKey other = (SheetKey) o;
+                return book.equals(other.book)
+                        && sheetName.equals(other.sheetName)
+                        && extractCachedValue == other.extractCachedValue
+                        && region.equals(other.region)
+                        && loaderId.equals(other.loaderId);
+            }
+            return false;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(book, sheetName, extractCachedValue, region, loaderId);
+        }
+    }
+    
+    /**
+     * キャッシュされたシートデータとその推定メモリ使用量を保持します。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class SheetEntry {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final Set<CellReplica> cells;
+        private final long weight;
+        
+        private SheetEntry(Set<CellReplica> cells, long weight) {
+            assert cells != null;
+            
+            this.cells = cells;
+            this.weight = weight;
+        }
+    }
+    
+    /** セル1つあたりの、セル値を除くおおよそのメモリ使用量（バイト） */
+    private static final long BYTES_PER_CELL = 96;
+    
+    /** シート名の一覧をキャッシュするExcelブックの最大数 */
+    private static final int MAX_BOOKS = 32;
+    
+    /**
+     * 指定されたセルデータのセットのおおよそのメモリ使用量（バイト）を返します。<br>
+     * 
+     * @param cells セルデータのセット
+     * @return おおよそのメモリ使用量（バイト）
+     */
+    private static long weigh(Set<CellReplica> cells) {
+        assert cells != null;
+        
+        long weight = 0;
+        for (CellReplica cell : cells) {
+            weight += BYTES_PER_CELL + 2L * cell.value().length();
+        }
+        return weight;
+    }
+    
+    /**
+     * 新しいキャッシュを生成して返します。<br>
+     * 
+     * @param capacity シートデータのキャッシュに使用するメモリの上限（バイト）。{@code 0} の場合はキャッシュしません。
+     * @return 新しいキャッシュ
+     * @throws IllegalArgumentException {@code capacity} が {@code 0} 未満の場合
+     */
+    public static SheetCache of(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        return new SheetCache(capacity);
+    }
+    
+    // [instance members] ******************************************************
+    
+    // アクセス順に並ぶ LinkedHashMap を利用して、最も長く使われていないものから追い出す。
+    private final Map<SheetKey, SheetEntry> sheets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<BookKey, List<String>> sheetNames = new LinkedHashMap<BookKey, List<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BookKey, List<String>> eldest) {
+            return MAX_BOOKS < size();
+        }
+    };
+    
+    private long capacity;
+    private long totalWeight;
+    private SheetSnapshotStore store;
+    
+    private SheetCache(long capacity) {
+        assert 0 <= capacity;
+        this.capacity = capacity;
+    }
+    
+    /**
+     * シートデータのキャッシュに使用するメモリの上限を変更します。<br>
+     * 
+     * @param capacity シートデータのキャッシュに使用するメモリの上限（バイト）。{@code 0} の場合はキャッシュしません。
+     * @throws IllegalArgumentException {@code capacity} が {@code 0} 未満の場合
+     */
+    public synchronized void setCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        evict();
+    }
+    
+    /**
+     * メモリ上のキャッシュに存在しないシートデータを、ファイルに保存されたスナップショットから読み込むように設定します。<br>
+     * 新たに読み込んだシートデータは、スナップショットとして指定されたフォルダに保存されます。<br>
+     * 
+     * @param dir スナップショットの保存先フォルダのパス。{@code null} の場合はスナップショットを利用しません。
+     * @param capacity スナップショットの合計サイズの上限（バイト）。{@code 0} の場合はスナップショットを利用しません。
+     * @throws IllegalArgumentException {@code capacity} が {@code 0} 未満の場合
+     */
+    public synchronized void setSnapshotStore(Path dir, long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (dir == null || capacity == 0) {
+            store = null;
+        } else if (store == null || !store.dir().equals(dir) || store.capacity() != capacity) {
+            store = SheetSnapshotStore.of(dir, capacity);
+        }
+    }
+    
+    /**
+     * キャッシュの内容を全て破棄します。<br>
+     */
+    public synchronized void clear() {
+        sheets.clear();
+        sheetNames.clear();
+        totalWeight = 0;
+    }
+    
+    /**
+     * 指定されたシートのセルデータをキャッシュから返します。
+     * キャッシュに存在しない場合は {@code loader} を使って読み込み、キャッシュに格納したうえで返します。<br>
+     * 返されるセットは変更できません。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @param loaderId セルデータを読み込むローダーの種類と読み込み方式を識別する文字列
+     * @param loader キャッシュに存在しない場合にセルデータを読み込む関数
+     * @return シートに含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException
+     *          {@code book}, {@code sheetName}, {@code region}, {@code loaderId}, {@code loader}
+     *          のいずれかが {@code null} の場合
+     */
+    public Set<CellReplica> getCells(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region,
+            String loaderId,
+            Loader<Set<CellReplica>> loader)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(region, "region");
+        Objects.requireNonNull(loaderId, "loaderId");
+        Objects.requireNonNull(loader, "loader");
+        
+        SheetKey key = new SheetKey(BookKey.of(book), sheetName, extractCachedValue, region, loaderId);
+        SheetSnapshotStore store;
+        synchronized (this) {
+            SheetEntry entry = sheets.get(key);
+            if (entry != null) {
+                return entry.cells;
+            }
+            store = this.store;
+        }
+        
+        // 読み込みには時間がかかるため、ロックを保持せずに行う。
+        Set<CellReplica> cells = Collections.unmodifiableSet(store == null
+                ? loader.load()
+                : loadThrough(store, book, sheetName, extractCachedValue, region, loaderId, loader));
+        long weight = weigh(cells);
+        
+        synchronized (this) {
+            if (weight <= capacity) {
+                SheetEntry prev = sheets.put(key, new SheetEntry(cells, weight));
+                if (prev != null) {
+                    totalWeight -= prev.weight;
+                }
+                totalWeight += weight;
+                evict();
+            }
+        }
+        return cells;
+    }
+    
+    /**
+     * 指定されたExcelブックのシート名の一覧をキャッシュから返します。
+     * キャッシュに存在しない場合は {@code loader} を使って読み込み、キャッシュに格納したうえで返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param loader キャッシュに存在しない場合にシート名の一覧を読み込む関数
+     * @return シート名の一覧
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {@code loader} のいずれかが {@code null} の場合
+     */
+    public List<String> getSheetNames(File book, Loader<List<String>> loader) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(loader, "loader");
+        
+        BookKey key = BookKey.of(book);
+        synchronized (this) {
+            List<String> names = sheetNames.get(key);
+            if (names != null) {
+                return new ArrayList<>(names);
+            }
+        }
+        
+        List<String> names = new ArrayList<>(loader.load());
+        synchronized (this) {
+            sheetNames.put(key, names);
+        }
+        return new ArrayList<>(names);
+    }
+    
+    private Set<CellReplica> loadThrough(
+            SheetSnapshotStore store,
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region,
+            String loaderId,
+            Loader<Set<CellReplica>> loader)
+            throws ApplicationException {
+        
+        assert store != null;
+        assert book != null;
+        assert sheetName != null;
+        assert region != null;
+        assert loaderId != null;
+        assert loader != null;
+        
+        // スナップショットはあくまでもキャッシュであるため、
+        // 読み書きに失敗した場合は無視してExcelブックからの読み込み結果を優先する。
+        try {
+            Optional<Set<CellReplica>> snapshot = store.read(book, sheetName, extractCachedValue, region, loaderId);
+            if (snapshot.isPresent()) {
+                return snapshot.get();
+            }
+        } catch (IOException e) {
+            // nop
+        }
+        
+        Set<CellReplica> cells = loader.load();
+        try {
+            store.write(book, sheetName, extractCachedValue, region, loaderId, cells);
+        } catch (IOException e) {
+            // nop
+        }
+        return cells;
+    }
+    
+    private void evict() {
+        assert Thread.holdsLock(this);
+        
+        Iterator<SheetEntry> itr = sheets.values().iterator();
+        while (capacity < totalWeight && itr.hasNext()) {
+            totalWeight -= itr.next().weight;
+            itr.remove();
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package xyz.hotchpotch.hogandiff.excel;
 
 import java.io.File;
+import java.util.Comparator;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
 import xyz.hotchpotch.hogandiff.excel.hssf.HSSFSheetLoaderWithEventApi;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetLoaderWithEventApi;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetLoaderWithStaxApi;
 
 /**
  * Excelブックからシートデータを読み込みローダーを表します。<br>
  * これは、{@link #loadSheet(File, String)} を関数メソッドに持つ関数型インタフェースです。<br>
+ * <br>
+ * シートデータ全体をメモリ上に保持する必要がない場合は、
+ * 読み込んだセルデータを順次コンシューマに渡す {@link #loadSheet(File, String, Consumer)} を利用できます。<br>
  * 
  * @author nmby
  * @since 0.3.2
@@ -30,20 +39,71 @@ public interface SheetLoader {
      * @throws NullPointerException {@code book} が {@code null} の場合
      */
     public static SheetLoader of(File book, boolean extractCachedValue) {
+        return of(book, extractCachedValue, SheetRegion.ALL);
+    }
+    
+    /**
+     * 指定されたExcelブックに適した、指定された範囲のセルデータのみを読み込むローダーを返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 指定されたExcelブックに適したローダー
+     * @throws UnsupportedOperationException 指定されたExcelブックに適合するローダーが無い場合
+     * @throws NullPointerException {@code book}, {@code region} のいずれかが {@code null} の場合
+     * @since 0.5.0
+     */
+    public static SheetLoader of(File book, boolean extractCachedValue, SheetRegion region) {
         Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(region, "region");
         
         if (XSSFSheetLoaderWithEventApi.isSupported(book)) {
-            return XSSFSheetLoaderWithEventApi.of(extractCachedValue);
+            return XSSFSheetLoaderWithEventApi.of(extractCachedValue, region);
         }
         if (HSSFSheetLoaderWithEventApi.isSupported(book) && extractCachedValue) {
-            return HSSFSheetLoaderWithEventApi.of(extractCachedValue);
+            return HSSFSheetLoaderWithEventApi.of(extractCachedValue, region);
         }
         if (SheetLoaderWithUserApi.isSupported(book)) {
-            return SheetLoaderWithUserApi.of(extractCachedValue);
+            return SheetLoaderWithUserApi.of(extractCachedValue, region);
         }
         throw new UnsupportedOperationException(book.getPath());
     }
     
+    /**
+     * 指定されたExcelブックに適した、指定されたコンテキストに従うローダーを返します。<br>
+     * 数式セルの扱い（{@link Props#APP_COMPARE_ON_VALUE}）、読み込み対象の範囲（{@link Props#APP_TARGET_REGION}）、
+     * .xlsx/.xlsm 形式の場合にStAXを使用するか（{@link Props#SYS_USE_STAX_LOADER}）、
+     * シートデータを並列に解析するか（{@link Props#SYS_PARALLEL_PARSING_THRESHOLD}）がコンテキストから決定されます。<br>
+     * 並列解析が有効な場合は、.xlsx/.xlsm 形式のシートデータの読み込みに常にStAXを使用し、
+     * 並列解析のための一時ファイルを作業用フォルダ（{@link Props#SYS_WORK_DIR_BASE}）に作成します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param context コンテキスト
+     * @return 指定されたExcelブックに適したローダー
+     * @throws UnsupportedOperationException 指定されたExcelブックに適合するローダーが無い場合
+     * @throws NullPointerException {@code book}, {@code context} のいずれかが {@code null} の場合
+     * @since 0.5.0
+     */
+    public static SheetLoader of(File book, Context context) {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(context, "context");
+        
+        boolean extractCachedValue = context.get(Props.APP_COMPARE_ON_VALUE);
+        SheetRegion region = context.get(Props.APP_TARGET_REGION);
+        int parallelThresholdMB = context.get(Props.SYS_PARALLEL_PARSING_THRESHOLD);
+        
+        if ((context.get(Props.SYS_USE_STAX_LOADER) || 0 < parallelThresholdMB)
+                && XSSFSheetLoaderWithStaxApi.isSupported(book)) {
+            
+            return XSSFSheetLoaderWithStaxApi.of(
+                    extractCachedValue,
+                    region,
+                    Math.max(0, parallelThresholdMB) * 1024L * 1024L,
+                    context.get(Props.SYS_WORK_DIR_BASE));
+        }
+        return of(book, extractCachedValue, region);
+    }
+    
     // [instance members] ******************************************************
     
     /**
@@ -55,4 +115,48 @@ public interface SheetLoader {
      * @throws ApplicationException 処理に失敗した場合
      */
     Set<CellReplica> loadSheet(File book, String sheetName) throws ApplicationException;
+    
+    /**
+     * シートデータを読み込み、セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * セルデータは行優先の順序（行インデックスの昇順、同一行の中では列インデックスの昇順）で渡されます。<br>
+     * <br>
+     * このインタフェースのデフォルト実装は、{@link #loadSheet(File, String)} でシートデータ全体を読み込んだ後に
+     * 並べ替えてコンシューマに渡します。
+     * 実装クラスは、シートデータ全体をメモリ上に保持せずに読み込みと並行してコンシューマに渡すように
+     * このメソッドをオーバーライドすることが推奨されます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code consumer} が {@code null} の場合
+     * @since 0.5.0
+     */
+    default void loadSheet(File book, String sheetName, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(consumer, "consumer");
+        
+        loadSheet(book, sheetName).stream()
+                .sorted(Comparator.comparingInt(CellReplica::row).thenComparingInt(CellReplica::column))
+                .forEachOrdered(consumer);
+    }
+    
+    /**
+     * セルデータを読み込まずに、シートの統計情報を読み込んで返します。<br>
+     * 比較処理に先立って、シートの規模に応じた処理方式を選択するために利用できます。<br>
+     * <br>
+     * このインタフェースのデフォルト実装は、常に空の {@link Optional} を返します。
+     * 実装クラスは、シートデータ全体を読み込むよりも十分に低いコストで統計情報を得られる場合に、
+     * このメソッドをオーバーライドすることが推奨されます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @return シートの統計情報（統計情報が記録されていない場合や、低いコストで得られない場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @since 0.5.0
+     */
+    default Optional<SheetStats> loadStats(File book, String sheetName) throws ApplicationException {
+        return Optional.empty();
+    }
 }
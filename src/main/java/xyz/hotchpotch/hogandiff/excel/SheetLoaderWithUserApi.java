@@ -5,7 +5,9 @@ import java.util.EnumSet;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.apache.poi.ss.usermodel.CellType;
@@ -51,15 +53,33 @@ import xyz.hotchpotch.hogandiff.ApplicationException;
      * @return 新しいローダー
      */
     public static SheetLoaderWithUserApi of(boolean extractCachedValue) {
-        return new SheetLoaderWithUserApi(extractCachedValue);
+        return new SheetLoaderWithUserApi(extractCachedValue, SheetRegion.ALL);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込むローダーオブジェクトを生成して返します。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     * @since 0.5.0
+     */
+    public static SheetLoaderWithUserApi of(boolean extractCachedValue, SheetRegion region) {
+        Objects.requireNonNull(region, "region");
+        return new SheetLoaderWithUserApi(extractCachedValue, region);
     }
     
     // [instance members] ******************************************************
     
     private final boolean extractCachedValue;
+    private final SheetRegion region;
     
-    private SheetLoaderWithUserApi(boolean extractCachedValue) {
+    private SheetLoaderWithUserApi(boolean extractCachedValue, SheetRegion region) {
+        assert region != null;
+        
         this.extractCachedValue = extractCachedValue;
+        this.region = region;
     }
     
     /**
@@ -83,15 +103,7 @@ import xyz.hotchpotch.hogandiff.ApplicationException;
                 throw new NoSuchElementException(sheetName);
             }
             
-            return StreamSupport.stream(sheet.spliterator(), true)
-                    .flatMap(row -> StreamSupport.stream(row.spliterator(), false))
-                    .filter(cell -> cell.getCellTypeEnum() != CellType.BLANK)
-                    .map(cell -> CellReplica.of(
-                            cell.getRowIndex(),
-                            cell.getColumnIndex(),
-                            ExcelUtils.getValue(cell, extractCachedValue)))
-                    .filter(cell -> !"".equals(cell.value()))
-                    .collect(Collectors.toSet());
+            return cells(sheet, true).collect(Collectors.toSet());
             
         } catch (NoSuchElementException e) {
             throw e;
@@ -101,4 +113,57 @@ import xyz.hotchpotch.hogandiff.ApplicationException;
             throw new ApplicationException(msg, e);
         }
     }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、ユーザーモデルAPIの制約によりExcelブック全体をメモリ上に読み込みますが、
+     * セルデータの変換とコンシューマへの受け渡しは1行ずつ行います。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public void loadSheet(File book, String sheetName, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(consumer, "consumer");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (Workbook wb = WorkbookFactory.create(book)) {
+            Sheet sheet = wb.getSheet(sheetName);
+            if (sheet == null) {
+                throw new NoSuchElementException(sheetName);
+            }
+            
+            cells(sheet, false).forEachOrdered(consumer);
+            
+        } catch (NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            String msg = String.format("シートの読み込みに失敗しました。book:%s, sheetName:%s",
+                    book.getPath(), sheetName);
+            throw new ApplicationException(msg, e);
+        }
+    }
+    
+    private Stream<CellReplica> cells(Sheet sheet, boolean parallel) {
+        assert sheet != null;
+        
+        return StreamSupport.stream(sheet.spliterator(), parallel)
+                .filter(row -> region.containsRow(row.getRowNum()))
+                .flatMap(row -> StreamSupport.stream(row.spliterator(), false))
+                .filter(cell -> region.contains(cell.getRowIndex(), cell.getColumnIndex()))
+                .filter(cell -> cell.getCellTypeEnum() != CellType.BLANK)
+                .map(cell -> CellReplica.of(
+                        cell.getRowIndex(),
+                        cell.getColumnIndex(),
+                        ExcelUtils.getValue(cell, extractCachedValue)))
+                .filter(cell -> !"".equals(cell.value()));
+    }
 }
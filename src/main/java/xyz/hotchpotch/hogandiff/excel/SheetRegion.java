@@ -0,0 +1,280 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import xyz.hotchpotch.hogandiff.common.Pair;
+
+/**
+ * シートデータの読み込み対象とする範囲を表す不変クラスです。<br>
+ * 読み込み対象の矩形範囲と、そこから除外する0個以上の矩形範囲から構成されます。<br>
+ * <br>
+ * 文字列表現は、読み込み対象の範囲に続けて除外する範囲を {@code "-"} を付けてカンマ区切りで並べたものです。
+ * 例えば {@code "A1:AZ20000,-A1:AZ3"} は、範囲 {@code A1:AZ20000} のうち {@code A1:AZ3} を除いた範囲を表します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class SheetRegion {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 矩形範囲を表す不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Range {
+        
+        // [static members] ----------------------------------------------------
+        
+        private static Range of(String range) {
+            assert range != null;
+            
+            String[] addresses = range.trim().toUpperCase().split(":", -1);
+            if (addresses.length != 1 && addresses.length != 2) {
+                throw new IllegalArgumentException("range: " + range);
+            }
+            Pair<Integer> first = CellReplica.getIndex(addresses[0].trim());
+            Pair<Integer> last = addresses.length == 1
+                    ? first
+                    : CellReplica.getIndex(addresses[1].trim());
+            return of(first.a(), first.b(), last.a(), last.b());
+        }
+        
+        private static Range of(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            if (firstRow < 0 || lastRow < firstRow || MAX_ROW < lastRow
+                    || firstColumn < 0 || lastColumn < firstColumn || MAX_COLUMN < lastColumn) {
+                
+                throw new IllegalArgumentException(String.format("(%d, %d) - (%d, %d)",
+                        firstRow, firstColumn, lastRow, lastColumn));
+            }
+            return new Range(firstRow, firstColumn, lastRow, lastColumn);
+        }
+        
+        // [instance members] --------------------------------------------------
+        
+        private final int firstRow;
+        private final int firstColumn;
+        private final int lastRow;
+        private final int lastColumn;
+        
+        private Range(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            this.firstRow = firstRow;
+            this.firstColumn = firstColumn;
+            this.lastRow = lastRow;
+            this.lastColumn = lastColumn;
+        }
+        
+        private boolean contains(int row, int column) {
+            return firstRow <= row && row <= lastRow
+                    && firstColumn <= column && column <= lastColumn;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Range) {
+                Range other = (Range) o;
+                return firstRow == other.firstRow
+                        && firstColumn == other.firstColumn
+                        && lastRow == other.lastRow
+                        && lastColumn == other.lastColumn;
+            }
+            return false;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(firstRow, firstColumn, lastRow, lastColumn);
+        }
+        
+        @Override
+        public String toString() {
+            return CellReplica.getAddress(firstRow, firstColumn)
+                    + ":" + CellReplica.getAddress(lastRow, lastColumn);
+        }
+    }
+    
+    /** 行インデックスの最大値（.xlsx/.xlsm 形式の最大値） */
+    private static final int MAX_ROW = 1048576 - 1;
+    
+    /** 列インデックスの最大値（.xlsx/.xlsm 形式の最大値） */
+    private static final int MAX_COLUMN = 16384 - 1;
+    
+    /** シート全体を表す {@link SheetRegion} */
+    public static final SheetRegion ALL = new SheetRegion(
+            Range.of(0, 0, MAX_ROW, MAX_COLUMN),
+            Collections.emptyList());
+    
+    /**
+     * 文字列表現（例えば {@code "A1:AZ20000"} や {@code "A1:AZ20000,-A1:AZ3"}）から
+     * {@link SheetRegion} オブジェクトを生成して返します。<br>
+     * 空文字列が指定された場合は {@link #ALL} を返します。<br>
+     * 
+     * @param region 読み込み対象の範囲の文字列表現
+     * @return 新しい {@link SheetRegion} オブジェクト
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     * @throws IllegalArgumentException {@code region} の値が不正な場合
+     */
+    public static SheetRegion of(String region) {
+        Objects.requireNonNull(region, "region");
+        if (region.trim().isEmpty()) {
+            return ALL;
+        }
+        
+        String[] ranges = region.split(",");
+        if (ranges[0].trim().startsWith("-")) {
+            throw new IllegalArgumentException("region: " + region);
+        }
+        
+        SheetRegion result = new SheetRegion(Range.of(ranges[0]), Collections.emptyList());
+        for (int i = 1; i < ranges.length; i++) {
+            String range = ranges[i].trim();
+            if (!range.startsWith("-")) {
+                throw new IllegalArgumentException("region: " + region);
+            }
+            result = result.excluding(range.substring(1));
+        }
+        return result;
+    }
+    
+    /**
+     * 行インデックス（0開始）と列インデックス（0開始）で指定された矩形範囲を表す
+     * {@link SheetRegion} オブジェクトを生成して返します。<br>
+     * 
+     * @param firstRow 先頭行のインデックス（0開始）
+     * @param firstColumn 先頭列のインデックス（0開始）
+     * @param lastRow 最終行のインデックス（0開始）
+     * @param lastColumn 最終列のインデックス（0開始）
+     * @return 新しい {@link SheetRegion} オブジェクト
+     * @throws IllegalArgumentException 範囲の指定が不正な場合
+     */
+    public static SheetRegion of(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        return new SheetRegion(
+                Range.of(firstRow, firstColumn, lastRow, lastColumn),
+                Collections.emptyList());
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final Range bounds;
+    private final List<Range> exclusions;
+    
+    private SheetRegion(Range bounds, List<Range> exclusions) {
+        assert bounds != null;
+        assert exclusions != null;
+        
+        this.bounds = bounds;
+        this.exclusions = Collections.unmodifiableList(new ArrayList<>(exclusions));
+    }
+    
+    /**
+     * この範囲から指定された矩形範囲（例えば {@code "A1:AZ3"}）を除外した
+     * {@link SheetRegion} オブジェクトを返します。<br>
+     * 
+     * @param range 除外する矩形範囲
+     * @return 新しい {@link SheetRegion} オブジェクト
+     * @throws NullPointerException {@code range} が {@code null} の場合
+     * @throws IllegalArgumentException {@code range} の値が不正な場合
+     */
+    public SheetRegion excluding(String range) {
+        Objects.requireNonNull(range, "range");
+        
+        List<Range> newExclusions = new ArrayList<>(exclusions);
+        newExclusions.add(Range.of(range));
+        return new SheetRegion(bounds, newExclusions);
+    }
+    
+    /**
+     * この範囲が指定されたセルを含むかを返します。<br>
+     * 
+     * @param row 行インデックス（0開始）
+     * @param column 列インデックス（0開始）
+     * @return この範囲が指定されたセルを含む場合は {@code true}
+     */
+    public boolean contains(int row, int column) {
+        if (!bounds.contains(row, column)) {
+            return false;
+        }
+        for (Range exclusion : exclusions) {
+            if (exclusion.contains(row, column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * この範囲が指定された行のセルを1つでも含むかを返します。<br>
+     * このメソッドが {@code false} を返す行は、セルを1つずつ検査することなく読み飛ばすことができます。<br>
+     * 
+     * @param row 行インデックス（0開始）
+     * @return この範囲が指定された行のセルを1つでも含む場合は {@code true}
+     */
+    public boolean containsRow(int row) {
+        if (row < bounds.firstRow || bounds.lastRow < row) {
+            return false;
+        }
+        for (Range exclusion : exclusions) {
+            if (exclusion.firstRow <= row && row <= exclusion.lastRow
+                    && exclusion.firstColumn <= bounds.firstColumn
+                    && bounds.lastColumn <= exclusion.lastColumn) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * この範囲の最終行のインデックス（0開始）を返します。<br>
+     * これより後ろの行にこの範囲に含まれるセルはないため、シートデータの読み込みを打ち切ることができます。<br>
+     * 
+     * @return この範囲の最終行のインデックス（0開始）
+     */
+    public int lastRow() {
+        return bounds.lastRow;
+    }
+    
+    /**
+     * この範囲の外枠と指定された矩形範囲が重なる部分のセルの数を返します。<br>
+     * 除外する範囲は考慮しません。<br>
+     * 
+     * @param firstRow 矩形範囲の先頭行のインデックス（0開始）
+     * @param firstColumn 矩形範囲の先頭列のインデックス（0開始）
+     * @param lastRow 矩形範囲の最終行のインデックス（0開始）
+     * @param lastColumn 矩形範囲の最終列のインデックス（0開始）
+     * @return 重なる部分のセルの数
+     */
+    /*package*/ long countOverlap(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        long rows = Math.min(lastRow, bounds.lastRow) - Math.max(firstRow, bounds.firstRow) + 1;
+        long columns = Math.min(lastColumn, bounds.lastColumn) - Math.max(firstColumn, bounds.firstColumn) + 1;
+        return rows <= 0 || columns <= 0 ? 0 : rows * columns;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SheetRegion) {
+            SheetRegion other = (SheetRegion) o;
+            return bounds.equals(other.bounds)
+                    && exclusions.equals(other.exclusions);
+        }
+        return false;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(bounds, exclusions);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(bounds.toString());
+        for (Range exclusion : exclusions) {
+            str.append(",-").append(exclusion);
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,416 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 読み込み済みのシートデータをコンパクトなバイナリ形式でファイルに保存し、
+ * 次回以降の読み込みをExcelブックの解析ではなくスナップショットファイルの読み込みで済ませるためのストアです。<br>
+ * <br>
+ * スナップショットはExcelブックの内容のハッシュ値、シート名、数式セルの扱い、読み込み対象の範囲、
+ * ローダーの識別子とローダーの読み込み結果のバージョンの組み合わせをキーとして保存されるため、
+ * Excelブックの内容が変更された場合やローダーの読み込み結果が変わった場合は自動的に無効となります。<br>
+ * ストア全体のサイズが上限を超えた場合は、最も長く使われていないスナップショットから削除します。<br>
+ * <br>
+ * スナップショットの形式は次の通りです。<br>
+ * <pre>
+ * int    マジックナンバー
+ * int    形式のバージョン
+ * int    文字列プールの要素数 n
+ * n 回   int バイト長 + UTF-8 バイト列
+ * int    セル数 m
+ * m 回   long (行インデックス &lt;&lt; 32 | 列インデックス) + int 文字列プールのインデックス
+ * </pre>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class SheetSnapshotStore {
+    
+    // [static members] ********************************************************
+    
+    private static final int MAGIC = 0x48444353;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".snapshot";
+    
+    /**
+     * ローダーの読み込み結果のバージョン<br>
+     * ローダーが同じExcelブックから読み込むセルデータが変わる修正を行った場合は、この値を増やしてください。
+     * 修正前に保存されたスナップショットが使われなくなります。<br>
+     */
+    /*package*/ static final int LOADER_VERSION = 3;
+    
+    /** 内容のハッシュ値を保持するExcelブックの最大数 */
+    private static final int MAX_HASHES = 64;
+    
+    /**
+     * 新しいストアを生成して返します。<br>
+     * 
+     * @param dir スナップショットを保存するフォルダのパス
+     * @param capacity スナップショットの合計サイズの上限（バイト）
+     * @return 新しいストア
+     * @throws NullPointerException {@code dir} が {@code null} の場合
+     * @throws IllegalArgumentException {@code capacity} が {@code 0} 以下の場合
+     */
+    public static SheetSnapshotStore of(Path dir, long capacity) {
+        Objects.requireNonNull(dir, "dir");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        return new SheetSnapshotStore(dir, capacity);
+    }
+    
+    private static String toHex(byte[] bytes) {
+        assert bytes != null;
+        
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16));
+            str.append(Character.forDigit(b & 0xF, 16));
+        }
+        return str.toString();
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 は全てのJava実装でサポートされることになっている。
+            throw new AssertionError(e);
+        }
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final Path dir;
+    private final long capacity;
+    
+    // ハッシュ値の算出にはExcelブック全体の読み込みが必要なため、
+    // パス、サイズ、最終更新日時が変わらない限りは算出済みの値を使い回す。
+    private final Map<String, String> hashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return MAX_HASHES < size();
+        }
+    };
+    
+    private SheetSnapshotStore(Path dir, long capacity) {
+        assert dir != null;
+        assert 0 < capacity;
+        
+        this.dir = dir;
+        this.capacity = capacity;
+    }
+    
+    /**
+     * このストアのスナップショットの保存先フォルダのパスを返します。<br>
+     * 
+     * @return スナップショットの保存先フォルダのパス
+     */
+    public Path dir() {
+        return dir;
+    }
+    
+    /**
+     * このストアのスナップショットの合計サイズの上限（バイト）を返します。<br>
+     * 
+     * @return スナップショットの合計サイズの上限（バイト）
+     */
+    public long capacity() {
+        return capacity;
+    }
+    
+    /**
+     * 指定されたシートのスナップショットを読み込んで返します。<br>
+     * スナップショットが存在しない場合や壊れている場合は空の {@link Optional} を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @param loaderId セルデータを読み込むローダーの種類と読み込み方式を識別する文字列
+     * @return シートに含まれるセルデータのセット
+     * @throws IOException 入出力エラーが発生した場合
+     * @throws NullPointerException
+     *          {@code book}, {@code sheetName}, {@code region}, {@code loaderId} のいずれかが {@code null} の場合
+     */
+    public Optional<Set<CellReplica>> read(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region,
+            String loaderId)
+            throws IOException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(region, "region");
+        Objects.requireNonNull(loaderId, "loaderId");
+        
+        Path snapshot = resolve(book, sheetName, extractCachedValue, region, loaderId);
+        if (!Files.isRegularFile(snapshot)) {
+            return Optional.empty();
+        }
+        
+        // メモリマップドファイルは明示的に解放できず、解放されるまでファイルの削除や置き換えができない環境があるため、
+        // 通常の読み込みでファイルの内容を取得し、ファイルを閉じてから解析する。
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buf = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    break;
+                }
+            }
+            buf.flip();
+        }
+        
+        Set<CellReplica> cells;
+        try {
+            cells = decode(buf);
+            
+        } catch (RuntimeException e) {
+            // 壊れたスナップショットは削除して、読み込み直してもらう。
+            Files.deleteIfExists(snapshot);
+            return Optional.empty();
+        }
+        
+        // 最終更新日時を使用順の管理に利用する。
+        Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+        return Optional.of(cells);
+    }
+    
+    /**
+     * 指定されたシートのスナップショットを保存します。<br>
+     * 保存によってストア全体のサイズが上限を超えた場合は、古いスナップショットを削除します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @param loaderId セルデータを読み込んだローダーの種類と読み込み方式を識別する文字列
+     * @param cells シートに含まれるセルデータのセット
+     * @throws IOException 入出力エラーが発生した場合
+     * @throws NullPointerException
+     *          {@code book}, {@code sheetName}, {@code region}, {@code loaderId}, {@code cells}
+     *          のいずれかが {@code null} の場合
+     */
+    public void write(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region,
+            String loaderId,
+            Set<CellReplica> cells)
+            throws IOException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(region, "region");
+        Objects.requireNonNull(loaderId, "loaderId");
+        Objects.requireNonNull(cells, "cells");
+        
+        Path snapshot = resolve(book, sheetName, extractCachedValue, region, loaderId);
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, null, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                encode(cells, out);
+            }
+            try {
+                Files.move(tmp, snapshot,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        
+        evict();
+    }
+    
+    private Path resolve(
+            File book,
+            String sheetName,
+            boolean extractCachedValue,
+            SheetRegion region,
+            String loaderId)
+            throws IOException {
+        
+        assert book != null;
+        assert sheetName != null;
+        assert region != null;
+        assert loaderId != null;
+        
+        MessageDigest digest = sha256();
+        digest.update(contentHash(book).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+        digest.update(sheetName.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update((byte) (extractCachedValue ? 1 : 0));
+        digest.update(region.toString().getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+        digest.update(loaderId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Integer.toString(LOADER_VERSION).getBytes(StandardCharsets.US_ASCII));
+        return dir.resolve(toHex(digest.digest()) + EXTENSION);
+    }
+    
+    private String contentHash(File book) throws IOException {
+        assert book != null;
+        
+        String key = book.getCanonicalPath() + "|" + book.length() + "|" + book.lastModified();
+        synchronized (hashes) {
+            String hash = hashes.get(key);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        
+        MessageDigest digest = sha256();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(book.toPath())) {
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                digest.update(buf, 0, len);
+            }
+        }
+        String hash = toHex(digest.digest());
+        synchronized (hashes) {
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+    
+    private void encode(Set<CellReplica> cells, DataOutputStream out) throws IOException {
+        assert cells != null;
+        assert out != null;
+        
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+        int[] valueIds = new int[cells.size()];
+        int i = 0;
+        for (CellReplica cell : cells) {
+            Integer id = ids.get(cell.value());
+            if (id == null) {
+                id = pool.size();
+                ids.put(cell.value(), id);
+                pool.add(cell.value());
+            }
+            valueIds[i++] = id;
+        }
+        
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(pool.size());
+        for (String value : pool) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(cells.size());
+        i = 0;
+        for (CellReplica cell : cells) {
+            out.writeLong(((long) cell.row() << 32) | cell.column());
+            out.writeInt(valueIds[i++]);
+        }
+    }
+    
+    private Set<CellReplica> decode(ByteBuffer buf) {
+        assert buf != null;
+        
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IllegalStateException("unsupported snapshot format.");
+        }
+        
+        // 壊れたスナップショットの要素数を信用して巨大な配列を確保しないように、残りのバイト数と照合する。
+        int poolSize = buf.getInt();
+        if (poolSize < 0 || buf.remaining() / 4 < poolSize) {
+            throw new IllegalStateException("broken snapshot.");
+        }
+        String[] pool = new String[poolSize];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < pool.length; i++) {
+            int len = buf.getInt();
+            if (bytes.length < len) {
+                bytes = new byte[len];
+            }
+            buf.get(bytes, 0, len);
+            pool[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+        
+        int count = buf.getInt();
+        if (count < 0 || buf.remaining() != count * 12L) {
+            throw new IllegalStateException("broken snapshot.");
+        }
+        Set<CellReplica> cells = new HashSet<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            long coordinate = buf.getLong();
+            cells.add(CellReplica.of(
+                    (int) (coordinate >>> 32),
+                    (int) coordinate,
+                    pool[buf.getInt()]));
+        }
+        return cells;
+    }
+    
+    private synchronized void evict() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path snapshot : stream) {
+                snapshots.add(snapshot);
+                total += Files.size(snapshot);
+            }
+        }
+        if (total <= capacity) {
+            return;
+        }
+        
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path snapshot : snapshots) {
+            times.put(snapshot, Files.getLastModifiedTime(snapshot));
+        }
+        snapshots.sort(Comparator.comparing(times::get));
+        
+        for (Path snapshot : snapshots) {
+            if (total <= capacity) {
+                break;
+            }
+            try {
+                long size = Files.size(snapshot);
+                Files.deleteIfExists(snapshot);
+                total -= size;
+            } catch (IOException e) {
+                // 他のスレッドやプロセスが使用中の場合は、次の機会に削除する。
+            }
+        }
+    }
+}
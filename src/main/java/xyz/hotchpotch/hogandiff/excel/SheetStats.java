@@ -0,0 +1,164 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * セルデータを読み込まずに得られるExcelシートの統計情報を表す不変クラスです。<br>
+ * .xlsx/.xlsm 形式の場合は {@code <dimension>} 要素、.xls 形式の場合は DIMENSIONS レコードに記録された、
+ * シートの使用範囲（値や書式を持つセルを含む最小の矩形範囲）を保持します。<br>
+ * <br>
+ * 使用範囲はExcelが記録した値であり、実際に値を持つセルの範囲より広い場合があります。
+ * シートデータを格納するコレクションの初期容量の見積りや、比較処理の方式の選択に利用することを想定しています。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class SheetStats {
+    
+    // [static members] ********************************************************
+    
+    /** セルデータを格納するセットの初期容量の見積りの上限（セル数） */
+    private static final int MAX_EXPECTED_CELLS = 1 << 20;
+    
+    /** 空のシートを表す統計情報 */
+    public static final SheetStats EMPTY = new SheetStats(0, 0, -1, -1);
+    
+    /**
+     * シートの使用範囲を指定して統計情報を生成します。<br>
+     * 
+     * @param firstRow 使用範囲の先頭行のインデックス（0開始）
+     * @param firstColumn 使用範囲の先頭列のインデックス（0開始）
+     * @param lastRow 使用範囲の最終行のインデックス（0開始）
+     * @param lastColumn 使用範囲の最終列のインデックス（0開始）
+     * @return 新しい統計情報
+     * @throws IllegalArgumentException 範囲の指定が不正な場合
+     */
+    public static SheetStats of(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        if (firstRow < 0 || lastRow < firstRow || firstColumn < 0 || lastColumn < firstColumn) {
+            throw new IllegalArgumentException(String.format("(%d, %d) - (%d, %d)",
+                    firstRow, firstColumn, lastRow, lastColumn));
+        }
+        return new SheetStats(firstRow, firstColumn, lastRow, lastColumn);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final int firstRow;
+    private final int firstColumn;
+    private final int lastRow;
+    private final int lastColumn;
+    
+    private SheetStats(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        this.firstRow = firstRow;
+        this.firstColumn = firstColumn;
+        this.lastRow = lastRow;
+        this.lastColumn = lastColumn;
+    }
+    
+    /**
+     * 使用範囲の先頭行のインデックス（0開始）を返します。<br>
+     * 
+     * @return 使用範囲の先頭行のインデックス（0開始）
+     */
+    public int firstRow() {
+        return firstRow;
+    }
+    
+    /**
+     * 使用範囲の先頭列のインデックス（0開始）を返します。<br>
+     * 
+     * @return 使用範囲の先頭列のインデックス（0開始）
+     */
+    public int firstColumn() {
+        return firstColumn;
+    }
+    
+    /**
+     * 使用範囲の最終行のインデックス（0開始）を返します。<br>
+     * 
+     * @return 使用範囲の最終行のインデックス（0開始）
+     */
+    public int lastRow() {
+        return lastRow;
+    }
+    
+    /**
+     * 使用範囲の最終列のインデックス（0開始）を返します。<br>
+     * 
+     * @return 使用範囲の最終列のインデックス（0開始）
+     */
+    public int lastColumn() {
+        return lastColumn;
+    }
+    
+    /**
+     * 使用範囲の行数を返します。<br>
+     * 
+     * @return 使用範囲の行数（空のシートの場合は {@code 0}）
+     */
+    public int rows() {
+        return lastRow - firstRow + 1;
+    }
+    
+    /**
+     * 使用範囲の列数を返します。<br>
+     * 
+     * @return 使用範囲の列数（空のシートの場合は {@code 0}）
+     */
+    public int columns() {
+        return lastColumn - firstColumn + 1;
+    }
+    
+    /**
+     * 使用範囲に含まれるセルの数、すなわち、シートに含まれ得るセルデータの数の上限を返します。<br>
+     * 
+     * @return 使用範囲に含まれるセルの数
+     */
+    public long cells() {
+        return (long) rows() * columns();
+    }
+    
+    /**
+     * 指定された範囲のセルデータを格納するのに十分な初期容量を持つ、空のセットを返します。<br>
+     * 初期容量は使用範囲と読み込み対象範囲の重なりから見積もられますが、一定の上限で打ち切られます。<br>
+     * 
+     * @param region 読み込み対象の範囲
+     * @return 空のセット
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     */
+    public Set<CellReplica> newCellSet(SheetRegion region) {
+        Objects.requireNonNull(region, "region");
+        
+        long expected = Math.min(
+                region.countOverlap(firstRow, firstColumn, lastRow, lastColumn),
+                MAX_EXPECTED_CELLS);
+        return new HashSet<>((int) (expected * 4 / 3) + 1);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SheetStats) {
+            SheetStats other = (SheetStats) o;
+            return firstRow == other.firstRow
+                    && firstColumn == other.firstColumn
+                    && lastRow == other.lastRow
+                    && lastColumn == other.lastColumn;
+        }
+        return false;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(firstRow, firstColumn, lastRow, lastColumn);
+    }
+    
+    @Override
+    public String toString() {
+        return this == EMPTY
+                ? "(empty)"
+                : CellReplica.getAddress(firstRow, firstColumn)
+                        + ":" + CellReplica.getAddress(lastRow, lastColumn);
+    }
+}
@@ -0,0 +1,1260 @@
+package xyz.hotchpotch.hogandiff.excel.hssf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.poi.hssf.record.ArrayRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CFHeader12Record;
+import org.apache.poi.hssf.record.CFHeaderRecord;
+import org.apache.poi.hssf.record.CFRule12Record;
+import org.apache.poi.hssf.record.CFRuleRecord;
+import org.apache.poi.hssf.record.ColumnInfoRecord;
+import org.apache.poi.hssf.record.ContinueRecord;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.DefaultColWidthRecord;
+import org.apache.poi.hssf.record.DefaultRowHeightRecord;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtSSTRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FontRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.PaletteRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.record.TableRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.Entry;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.OPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.LittleEndian;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.BookPainter;
+import xyz.hotchpotch.hogandiff.excel.BookType;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+/**
+ * HSSF（.xls）形式のExcelブックにBIFFレコードを逐次読み書きすることで色を付けるための
+ * {@link BookPainter} の実装です。<br>
+ * Excelブック全体をメモリ上にロードせず、レコードを読み込んだそばから書き出すため、
+ * 使用するメモリ量はExcelブックの大きさに比例しません。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class HSSFBookPainterWithRecordApi implements BookPainter {
+    
+    // [static members] ********************************************************
+    
+    /** レコードヘッダ（sidとデータ部の長さ）のバイト数 */
+    private static final int HEADER_SIZE = 4;
+    
+    /** XFレコードのデータ部のバイト数 */
+    private static final int XF_DATA_SIZE = 20;
+    
+    /** ROWレコードのデータ部のバイト数 */
+    private static final int ROW_DATA_SIZE = 16;
+    
+    /** COLINFOレコードのデータ部のバイト数 */
+    private static final int COLINFO_DATA_SIZE = 12;
+    
+    /** BIFF8形式のExcelブックが保持できる書式（XFレコード）の最大数 */
+    private static final int MAX_XF_COUNT = 4050;
+    
+    /** BIFF8形式のシートの最大列数 */
+    private static final int MAX_COLUMNS = 256;
+    
+    /** ひとつの行ブロックに含める行の最大数 */
+    private static final int ROWS_PER_BLOCK = 32;
+    
+    /** 既定のセル書式のインデックス */
+    private static final int DEFAULT_XF = 0x0F;
+    
+    /** 既定の行の高さ（1/20ポイント単位） */
+    private static final int DEFAULT_ROW_HEIGHT = 0xFF;
+    
+    /** 既定の列の幅（1/256文字単位）。POIのユーザーモデルAPIと同じ値を用います。 */
+    private static final int DEFAULT_COLUMN_WIDTH = 2275;
+    
+    /** RSTRING レコードのsid（POIには対応するレコードクラスが無いため） */
+    private static final int RSTRING_SID = 0x00D6;
+    
+    /** CFEX レコードのsid（POIには対応するレコードクラスが無いため） */
+    private static final int CFEX_SID = 0x087B;
+    
+    /** セルを表すレコードのsid */
+    private static final Set<Integer> cellSids = new HashSet<>(Arrays.asList(
+            (int) BlankRecord.sid,
+            (int) NumberRecord.sid,
+            (int) LabelRecord.sid,
+            (int) BoolErrRecord.sid,
+            (int) FormulaRecord.sid,
+            (int) RKRecord.sid,
+            (int) MulRKRecord.sid,
+            (int) MulBlankRecord.sid,
+            (int) LabelSSTRecord.sid,
+            RSTRING_SID));
+    
+    /** 直前のセルのレコードに付随するレコードのsid */
+    private static final Set<Integer> attachedSids = new HashSet<>(Arrays.asList(
+            (int) StringRecord.sid,
+            (int) ArrayRecord.sid,
+            (int) SharedFormulaRecord.sid,
+            (int) TableRecord.sid,
+            (int) ContinueRecord.sid));
+    
+    /** 条件付き書式を表すレコードのsid */
+    private static final Set<Integer> conditionalFormattingSids = new HashSet<>(Arrays.asList(
+            (int) CFHeaderRecord.sid,
+            (int) CFRuleRecord.sid,
+            (int) CFHeader12Record.sid,
+            (int) CFRule12Record.sid,
+            CFEX_SID));
+    
+    private static int sidOf(byte[] rec) {
+        return LittleEndian.getUShort(rec, 0);
+    }
+    
+    private static byte[] newRecord(int sid, int dataSize) {
+        byte[] rec = new byte[HEADER_SIZE + dataSize];
+        LittleEndian.putUShort(rec, 0, sid);
+        LittleEndian.putUShort(rec, 2, dataSize);
+        return rec;
+    }
+    
+    /**
+     * セルのレコードが表すセルのうち、最初の列のインデックスを返します。<br>
+     * 
+     * @param cell セルのレコード
+     * @return 最初の列のインデックス
+     */
+    private static int firstColumnOf(byte[] cell) {
+        return LittleEndian.getUShort(cell, HEADER_SIZE + 2);
+    }
+    
+    /**
+     * セルのレコードが表すセルのうち、最後の列のインデックスを返します。<br>
+     * MULRK, MULBLANK レコードは複数のセルを表し、それ以外のセルのレコードはひとつのセルを表します。<br>
+     * 
+     * @param cell セルのレコード
+     * @return 最後の列のインデックス
+     */
+    private static int lastColumnOf(byte[] cell) {
+        int sid = sidOf(cell);
+        return sid == MulRKRecord.sid || sid == MulBlankRecord.sid
+                ? LittleEndian.getUShort(cell, cell.length - 2)
+                : firstColumnOf(cell);
+    }
+    
+    /**
+     * 指定されたXFレコードの罫線の色とセル背景色をリセットします。<br>
+     * {@link xyz.hotchpotch.hogandiff.excel.ExcelUtils#clearColors(org.apache.poi.ss.usermodel.Workbook)}
+     * がHSSFのスタイルに対して行う処理と同じ結果になるようにします。<br>
+     * 
+     * @param xf XFレコード
+     */
+    private static void clearXf(byte[] xf) {
+        final int automatic = IndexedColors.AUTOMATIC.getIndex();
+        
+        // 罫線の色（左・右）
+        int palette = LittleEndian.getUShort(xf, HEADER_SIZE + 12);
+        palette = (palette & ~0x3FFF) | (automatic << 7) | automatic;
+        LittleEndian.putUShort(xf, HEADER_SIZE + 12, palette);
+        
+        // 罫線の色（上・下）とパターン
+        int adtl = LittleEndian.getInt(xf, HEADER_SIZE + 14);
+        adtl = (adtl & ~0x3FFF) | (automatic << 7) | automatic;
+        if ((adtl >>> 26) == 1) {
+            adtl &= ~0xFC000000;
+        }
+        LittleEndian.putInt(xf, HEADER_SIZE + 14, adtl);
+        
+        // セルの前景色と背景色
+        // HSSFCellStyle と同様に、前景色が自動の場合は背景色を「自動 + 1」にする。
+        int fill = LittleEndian.getUShort(xf, HEADER_SIZE + 18);
+        fill = (fill & ~0x3FFF) | ((automatic + 1) << 7) | automatic;
+        LittleEndian.putUShort(xf, HEADER_SIZE + 18, fill);
+    }
+    
+    /**
+     * 指定されたXFレコードを、セル背景を指定された色で塗りつぶす書式に変更します。<br>
+     * 
+     * @param xf XFレコード
+     * @param color 塗りつぶす色の {@link IndexedColors} で定義された色インデックス
+     */
+    private static void fillXf(byte[] xf, int color) {
+        final int automatic = IndexedColors.AUTOMATIC.getIndex();
+        
+        // 親のスタイルではなくこの書式のパターンを用いることを示すフラグ
+        int indention = LittleEndian.getUShort(xf, HEADER_SIZE + 8);
+        LittleEndian.putUShort(xf, HEADER_SIZE + 8, indention | 0x4000);
+        
+        // パターン：塗りつぶし
+        // 追加する書式には XFEXT レコードが無いため、その存在を示すフラグも落とす。
+        int adtl = LittleEndian.getInt(xf, HEADER_SIZE + 14);
+        LittleEndian.putInt(xf, HEADER_SIZE + 14, (adtl & ~0xFE000000) | (1 << 26));
+        
+        // セルの前景色と背景色
+        int fill = LittleEndian.getUShort(xf, HEADER_SIZE + 18);
+        fill = (fill & ~0x3FFF) | (automatic << 7) | (color & 0x7F);
+        LittleEndian.putUShort(xf, HEADER_SIZE + 18, fill);
+    }
+    
+    /**
+     * ブック全体のレイアウトを表します。<br>
+     * 1回目の読み書き（下見）で収集し、2回目の読み書き（本番）で参照します。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class BookLayout {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        /** 追加する書式。（色 &lt;&lt; 16 | 元の書式のインデックス）から追加順へのマップ */
+        private final Map<Integer, Integer> newXfs = new LinkedHashMap<>();
+        
+        /** 各サブストリームのレイアウト */
+        private final List<SheetLayout> sheets = new ArrayList<>();
+        
+        /** 元のブックの書式の数 */
+        private int xfCount;
+        
+        /** 書き出すストリームのバイト数 */
+        private long size;
+        
+        /** ブックが暗号化されているか */
+        private boolean encrypted;
+        
+        /**
+         * 下見で得た位置を、本番で書き出される位置に補正します。<br>
+         * 下見では、追加する書式を書き出さず、INDEX レコードを行ブロックの数が0であるものとして書き出しているため、
+         * それらの分だけ後続のレコードの位置がずれています。<br>
+         */
+        private void resolve() {
+            long shift = (long) newXfs.size() * (HEADER_SIZE + XF_DATA_SIZE);
+            for (SheetLayout sheet : sheets) {
+                shift += sheet.resolve(shift);
+            }
+            size += shift;
+        }
+    }
+    
+    /**
+     * ひとつのサブストリーム（シート）のレイアウトを表します。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class SheetLayout {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final List<Long> dbCells = new ArrayList<>();
+        
+        private long bof;
+        private long index = -1;
+        private long defColWidth = -1;
+        private int blocks;
+        private int firstRow = -1;
+        private int lastRow = -1;
+        
+        /**
+         * 下見で得た位置を補正します。<br>
+         * 
+         * @param shift このサブストリームより前のレコードの増分
+         * @return このサブストリームの INDEX レコードの増分
+         */
+        private long resolve(long shift) {
+            long idx = index;
+            long extra = idx < 0 ? 0 : 4L * blocks;
+            
+            bof += shift;
+            if (0 <= idx) {
+                index += shift;
+            }
+            if (0 <= defColWidth) {
+                defColWidth += shift + (0 <= idx && idx < defColWidth ? extra : 0);
+            }
+            dbCells.replaceAll(pos -> pos + shift + (0 <= idx && idx < pos ? extra : 0));
+            return extra;
+        }
+    }
+    
+    /**
+     * 行ブロックに含まれる1行分のレコードを保持します。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class RowEntry {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final int row;
+        
+        /** セルのレコードと、それに付随するレコードのリストのリスト */
+        private List<List<byte[]>> cells = new ArrayList<>();
+        
+        /** ROW レコード（元のブックに存在しない場合は {@code null}） */
+        private byte[] rowRecord;
+        
+        private RowEntry(int row) {
+            this.row = row;
+        }
+    }
+    
+    /** このクラスがサポートするブック形式 */
+    private static final Set<BookType> supported = EnumSet.of(BookType.XLS);
+    
+    /**
+     * このクラスが指定されたファイルの形式をサポートするかを返します。<br>
+     * 
+     * @param file 検査対象のファイル
+     * @return このクラスが指定されたファイルをサポートする場合は {@code true}
+     * @throws NullPointerException {@code file} が {@code null} の場合
+     */
+    public static boolean isSupported(File file) {
+        Objects.requireNonNull(file);
+        return supported.stream()
+                .map(BookType::extension)
+                .anyMatch(file.getName()::endsWith);
+    }
+    
+    /**
+     * ペインターオブジェクトを生成して返します。<br>
+     * 
+     * @param context コンテキスト
+     * @return 新しいペインター
+     * @throws NullPointerException {@code context} が {@code null} の場合
+     */
+    public static HSSFBookPainterWithRecordApi of(Context context) {
+        Objects.requireNonNull(context, "context");
+        return new HSSFBookPainterWithRecordApi(context);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final short redundantColor;
+    private final short diffColor;
+    
+    private HSSFBookPainterWithRecordApi(Context context) {
+        assert context != null;
+        
+        redundantColor = context.get(Props.APP_REDUNDANT_COLOR);
+        diffColor = context.get(Props.APP_DIFF_COLOR);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、Workbook ストリームを2回読み込みます。
+     * 1回目は書き出さずに、追加する書式と各レコードの書き出し位置を調べるために読み込み、
+     * 2回目に色を付けながら新しいExcelブックに書き出します。<br>
+     * 
+     * @throws NullPointerException {@code book}, {@code copy}, {@code results} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のファイル形式がこのクラスのサポート対象外の場合
+     */
+    @Override
+    public void paintAndSave(
+            File book,
+            Path copy,
+            List<Map.Entry<String, Piece>> results)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(copy, "copy");
+        Objects.requireNonNull(results, "results");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getPath());
+        }
+        
+        Map<String, Piece> pieces = new HashMap<>();
+        results.forEach(result -> pieces.put(result.getKey(), result.getValue()));
+        
+        try (NPOIFSFileSystem src = new NPOIFSFileSystem(book, true)) {
+            String name = HSSFWorkbook.getWorkbookDirEntryName(src.getRoot());
+            
+            // 1. 下見：追加する書式と、各レコードの書き出し位置を調べる。
+            BookLayout layout = new BookLayout();
+            try (InputStream is = src.createDocumentInputStream(name)) {
+                new Transformer(layout, pieces, is, null).transform();
+            }
+            if (layout.encrypted) {
+                throw new ApplicationException(
+                        "暗号化されたExcelブックには比較結果の色を付けられません。\n" + book.getPath());
+            }
+            layout.resolve();
+            if (MAX_XF_COUNT < layout.xfCount + layout.newXfs.size()) {
+                throw new ApplicationException(
+                        "書式の数がExcelの上限を超えるため、比較結果の色を付けられません。\n" + book.getPath());
+            }
+            
+            // 2. 本番：Workbook ストリーム以外のエントリはそのまま書き写し、
+            //    Workbook ストリームは色を付けながら書き出す。
+            //    いずれも OPOIFSFileSystem の書き出し時に、読み込み元から直接ストリームで書き写す。
+            OPOIFSFileSystem dst = new OPOIFSFileSystem();
+            copyEntries(src.getRoot(), dst.getRoot(), name, (int) layout.size, event -> {
+                try (InputStream is = src.createDocumentInputStream(name)) {
+                    OutputStream os = new BufferedOutputStream(event.getStream());
+                    new Transformer(layout, pieces, is, os).transform();
+                    os.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(copy))) {
+                dst.writeFilesystem(os);
+            }
+            
+            File f = copy.toFile();
+            f.setReadable(true, false);
+            f.setWritable(true, false);
+            
+        } catch (ApplicationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ApplicationException("比較結果Excelブックの作成と保存に失敗しました。\n" + copy.toString(), e);
+        }
+    }
+    
+    /**
+     * 読み込み元のディレクトリ配下のエントリを、書き出し先のディレクトリに再帰的に登録します。<br>
+     * エントリの内容は、書き出し先のファイルシステムが書き出される際に読み込み元から書き写されます。<br>
+     * 
+     * @param src 読み込み元のディレクトリ
+     * @param dst 書き出し先のディレクトリ
+     * @param workbookName Workbook ストリームの名前
+     * @param workbookSize 書き出す Workbook ストリームのバイト数
+     * @param workbookWriter Workbook ストリームを書き出すリスナー
+     * @throws IOException 入出力エラーが発生した場合
+     */
+    private void copyEntries(
+            DirectoryNode src,
+            DirectoryEntry dst,
+            String workbookName,
+            int workbookSize,
+            POIFSWriterListener workbookWriter)
+            throws IOException {
+        
+        assert src != null;
+        assert dst != null;
+        
+        dst.setStorageClsid(src.getStorageClsid());
+        for (Entry entry : src) {
+            if (entry.isDirectoryEntry()) {
+                copyEntries((DirectoryNode) entry, dst.createDirectory(entry.getName()),
+                        workbookName, workbookSize, workbookWriter);
+                
+            } else if (src.getParent() == null && workbookName.equals(entry.getName())) {
+                dst.createDocument(workbookName, workbookSize, workbookWriter);
+                
+            } else {
+                DocumentEntry document = (DocumentEntry) entry;
+                dst.createDocument(document.getName(), document.getSize(), event -> {
+                    try (InputStream is = src.createDocumentInputStream(document)) {
+                        IOUtils.copy(is, event.getStream());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * Workbook ストリームを1回読み書きします。<br>
+     * 書き出し先が {@code null} の場合は下見として、書き出す代わりに {@link BookLayout} を収集します。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private class Transformer {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final BookLayout layout;
+        private final Map<String, Piece> pieces;
+        private final InputStream in;
+        private final OutputStream out;
+        private final boolean dryRun;
+        private final byte[] header = new byte[HEADER_SIZE];
+        
+        private final List<String> sheetNames = new ArrayList<>();
+        private final Map<Integer, byte[]> xfSources = new HashMap<>();
+        private final Set<Integer> xfSourceIdxs = new HashSet<>();
+        
+        /** 読み込んだバイト数 */
+        private long inPos;
+        
+        /** 書き出したバイト数 */
+        private long pos;
+        
+        private int depth;
+        private boolean globals = true;
+        private int xfCount;
+        private boolean readingXfs;
+        private int boundSheetIdx;
+        private long sstInPos = -1;
+        private long sstPos = -1;
+        private int sheetIdx = -1;
+        private SheetProcessor sheet;
+        
+        private Transformer(
+                BookLayout layout,
+                Map<String, Piece> pieces,
+                InputStream in,
+                OutputStream out) {
+            
+            assert layout != null;
+            assert pieces != null;
+            assert in != null;
+            
+            this.layout = layout;
+            this.pieces = pieces;
+            this.in = in;
+            this.out = out;
+            this.dryRun = out == null;
+            
+            if (!dryRun) {
+                layout.newXfs.keySet().forEach(key -> xfSourceIdxs.add(key & 0xFFFF));
+            }
+        }
+        
+        private void transform() throws IOException {
+            byte[] rec;
+            while (!layout.encrypted && (rec = readRecord()) != null) {
+                int sid = sidOf(rec);
+                long recInPos = inPos - rec.length;
+                
+                if (depth == 0) {
+                    if (sid == BOFRecord.sid) {
+                        beginSubstream(rec);
+                    }
+                    write(rec);
+                } else if (depth == 1 && globals) {
+                    processGlobalsRecord(sid, rec, recInPos);
+                } else if (depth == 1 && sheet != null) {
+                    sheet.process(sid, rec);
+                } else {
+                    write(rec);
+                }
+                
+                if (sid == BOFRecord.sid) {
+                    depth++;
+                } else if (sid == EOFRecord.sid && 0 < depth) {
+                    depth--;
+                    if (depth == 0) {
+                        globals = false;
+                        sheet = null;
+                    }
+                }
+            }
+            
+            if (dryRun) {
+                layout.xfCount = xfCount;
+                layout.size = pos;
+            } else if (pos != layout.size) {
+                throw new IllegalStateException(String.format(
+                        "size mismatch. expected:%d, actual:%d", layout.size, pos));
+            }
+        }
+        
+        private byte[] readRecord() throws IOException {
+            int n = IOUtils.readFully(in, header);
+            if (n < HEADER_SIZE) {
+                return null;
+            }
+            int size = LittleEndian.getUShort(header, 2);
+            byte[] rec = new byte[HEADER_SIZE + size];
+            System.arraycopy(header, 0, rec, 0, HEADER_SIZE);
+            if (IOUtils.readFully(in, rec, HEADER_SIZE, size) < size) {
+                throw new IOException("unexpected end of stream.");
+            }
+            inPos += rec.length;
+            return rec;
+        }
+        
+        private void write(byte[] rec) throws IOException {
+            if (!dryRun) {
+                out.write(rec);
+            }
+            pos += rec.length;
+        }
+        
+        /**
+         * 指定された書式に指定された色を付けた書式のインデックスを返します。<br>
+         * 下見の場合は、追加する書式として登録し、仮の値を返します。<br>
+         * 
+         * @param xf 元の書式のインデックス
+         * @param color {@link IndexedColors} で定義された色インデックス
+         * @return 色を付けた書式のインデックス
+         */
+        private int painted(int xf, short color) {
+            int key = (color & 0xFFFF) << 16 | xf;
+            if (dryRun) {
+                layout.newXfs.putIfAbsent(key, layout.newXfs.size());
+                return 0;
+            }
+            Integer order = layout.newXfs.get(key);
+            assert order != null;
+            return layout.xfCount + order;
+        }
+        
+        private void beginSubstream(byte[] bof) {
+            if (globals) {
+                return;
+            }
+            sheetIdx++;
+            SheetLayout sheetLayout;
+            if (dryRun) {
+                sheetLayout = new SheetLayout();
+                sheetLayout.bof = pos;
+                layout.sheets.add(sheetLayout);
+            } else {
+                sheetLayout = layout.sheets.get(sheetIdx);
+                assert sheetLayout.bof == pos;
+            }
+            
+            int type = LittleEndian.getUShort(bof, HEADER_SIZE + 2);
+            if (type == BOFRecord.TYPE_WORKSHEET || type == BOFRecord.TYPE_EXCEL_4_MACRO) {
+                Piece piece = sheetIdx < sheetNames.size() ? pieces.get(sheetNames.get(sheetIdx)) : null;
+                sheet = new SheetProcessor(sheetLayout, piece);
+            } else {
+                sheet = null;
+            }
+        }
+        
+        private void processGlobalsRecord(int sid, byte[] rec, long recInPos) throws IOException {
+            if (readingXfs && sid != ExtendedFormatRecord.sid) {
+                // XF レコードは連続して置かれるため、最後の XF レコードの後ろに追加する書式を書き出す。
+                readingXfs = false;
+                writeNewXfs();
+            }
+            
+            switch (sid) {
+            case FilePassRecord.sid:
+                // 以降のレコードは暗号化されていて読み込めないため、下見を打ち切る。
+                layout.encrypted = true;
+                return;
+            
+            case FontRecord.sid:
+                LittleEndian.putUShort(rec, HEADER_SIZE + 4, Font.COLOR_NORMAL);
+                break;
+            
+            case ExtendedFormatRecord.sid:
+                clearXf(rec);
+                if (xfSourceIdxs.contains(xfCount)) {
+                    xfSources.put(xfCount, rec.clone());
+                }
+                xfCount++;
+                readingXfs = true;
+                break;
+            
+            case PaletteRecord.sid:
+                resetPalette(rec);
+                break;
+            
+            case BoundSheetRecord.sid:
+                sheetNames.add(sheetNameOf(rec));
+                if (!dryRun && boundSheetIdx < layout.sheets.size()) {
+                    LittleEndian.putInt(rec, HEADER_SIZE, (int) layout.sheets.get(boundSheetIdx).bof);
+                }
+                boundSheetIdx++;
+                break;
+            
+            case SSTRecord.sid:
+                sstInPos = recInPos;
+                sstPos = pos;
+                break;
+            
+            case ExtSSTRecord.sid:
+                // EXTSST レコードは SST レコード内の文字列の絶対位置を保持しているため、SST レコードの移動量だけずらす。
+                if (0 <= sstInPos) {
+                    int shift = (int) (sstPos - sstInPos);
+                    for (int i = HEADER_SIZE + 2; i + 4 <= rec.length; i += 8) {
+                        LittleEndian.putInt(rec, i, LittleEndian.getInt(rec, i) + shift);
+                    }
+                }
+                break;
+            
+            default:
+                // nop
+            }
+            write(rec);
+        }
+        
+        private void writeNewXfs() throws IOException {
+            if (dryRun) {
+                return;
+            }
+            for (int key : layout.newXfs.keySet()) {
+                byte[] source = xfSources.get(key & 0xFFFF);
+                if (source == null) {
+                    throw new IllegalStateException("no such xf: " + (key & 0xFFFF));
+                }
+                byte[] xf = source.clone();
+                fillXf(xf, key >>> 16);
+                write(xf);
+            }
+        }
+        
+        /**
+         * カスタムパレットのうち、比較結果の色に使うインデックスの色を既定の色に戻します。<br>
+         * 既存の書式の色はリセットされるため、この変更が比較結果以外の見た目に影響することはありません。<br>
+         * 
+         * @param palette PALETTE レコード
+         */
+        private void resetPalette(byte[] palette) {
+            PaletteRecord defaults = new PaletteRecord();
+            int count = LittleEndian.getUShort(palette, HEADER_SIZE);
+            for (short color : new short[] { redundantColor, diffColor }) {
+                int i = color - PaletteRecord.FIRST_COLOR_INDEX;
+                byte[] rgb = defaults.getColor(color);
+                if (0 <= i && i < count && rgb != null) {
+                    System.arraycopy(rgb, 0, palette, HEADER_SIZE + 2 + 4 * i, 3);
+                }
+            }
+        }
+        
+        private String sheetNameOf(byte[] boundSheet) {
+            int cch = boundSheet[HEADER_SIZE + 6] & 0xFF;
+            boolean highByte = (boundSheet[HEADER_SIZE + 7] & 0x01) != 0;
+            return highByte
+                    ? new String(boundSheet, HEADER_SIZE + 8, cch * 2, StandardCharsets.UTF_16LE)
+                    : new String(boundSheet, HEADER_SIZE + 8, cch, StandardCharsets.ISO_8859_1);
+        }
+        
+        /**
+         * ワークシートのサブストリームのレコードを処理します。<br>
+         * セルのレコードは行ブロック単位でバッファリングし、行ブロックを組み直して書き出します。<br>
+         * 
+         * @author nmby
+         * @since 0.5.0
+         */
+        private class SheetProcessor {
+            
+            // [static members] ------------------------------------------------
+            
+            // [instance members] ----------------------------------------------
+            
+            private final SheetLayout sheetLayout;
+            private final Set<Integer> redundantRows;
+            private final Set<Integer> redundantColumns;
+            private final Map<Integer, NavigableSet<Integer>> diffColumns = new HashMap<>();
+            
+            /** まだ現れていない、存在する必要のある行 */
+            private final NavigableSet<Integer> pendingRows = new TreeSet<>();
+            
+            private final int[] columnXfs = new int[MAX_COLUMNS];
+            private final TreeMap<Integer, RowEntry> rows = new TreeMap<>();
+            
+            private int defaultRowHeight = DEFAULT_ROW_HEIGHT;
+            private int defaultRowOptions;
+            private List<byte[]> colInfos;
+            private boolean colInfoArea;
+            private boolean inTable;
+            private RowEntry lastEntry;
+            private int dbCellIdx;
+            
+            private SheetProcessor(SheetLayout sheetLayout, Piece piece) {
+                assert sheetLayout != null;
+                
+                this.sheetLayout = sheetLayout;
+                Arrays.fill(columnXfs, DEFAULT_XF);
+                
+                if (piece == null) {
+                    redundantRows = Collections.emptySet();
+                    redundantColumns = Collections.emptySet();
+                    return;
+                }
+                redundantRows = new HashSet<>(piece.redundantRows);
+                redundantColumns = new HashSet<>(piece.redundantColumns);
+                for (CellReplica cell : piece.diffCells) {
+                    diffColumns.computeIfAbsent(cell.row(), k -> new TreeSet<>()).add(cell.column());
+                }
+                pendingRows.addAll(redundantRows);
+                pendingRows.addAll(diffColumns.keySet());
+                if (!redundantColumns.isEmpty()) {
+                    colInfos = new ArrayList<>();
+                }
+            }
+            
+            private void process(int sid, byte[] rec) throws IOException {
+                if (inTable) {
+                    if (sid == RowRecord.sid || sid == DBCellRecord.sid
+                            || cellSids.contains(sid) || attachedSids.contains(sid)) {
+                        absorb(sid, rec);
+                        return;
+                    }
+                    closeTable();
+                    
+                } else if (sid == RowRecord.sid || cellSids.contains(sid)) {
+                    inTable = true;
+                    absorb(sid, rec);
+                    return;
+                }
+                
+                if (colInfos != null) {
+                    if (sid == ColumnInfoRecord.sid) {
+                        // 余剰列の COLINFO レコードは、既存の COLINFO レコードを分割してから書き出す。
+                        colInfos.add(rec);
+                        recordColumnXfs(rec);
+                        colInfoArea = true;
+                        return;
+                    }
+                    if (sid == DimensionsRecord.sid || (colInfoArea && sid != DefaultColWidthRecord.sid)) {
+                        flushColInfos();
+                    }
+                }
+                
+                switch (sid) {
+                case IndexRecord.sid:
+                    writeIndex();
+                    return;
+                
+                case DefaultRowHeightRecord.sid:
+                    defaultRowOptions = LittleEndian.getUShort(rec, HEADER_SIZE);
+                    defaultRowHeight = LittleEndian.getUShort(rec, HEADER_SIZE + 2);
+                    break;
+                
+                case DefaultColWidthRecord.sid:
+                    if (dryRun) {
+                        sheetLayout.defColWidth = pos;
+                    } else {
+                        assert sheetLayout.defColWidth == pos;
+                    }
+                    colInfoArea = true;
+                    break;
+                
+                case ColumnInfoRecord.sid:
+                    recordColumnXfs(rec);
+                    break;
+                
+                case DimensionsRecord.sid:
+                    // DIMENSIONS レコードの直後からセルのレコードが始まる。
+                    // 元のブックにセルのレコードが無い場合も、作成する行とセルをここに書き出せるようにする。
+                    expandDimensions(rec);
+                    write(rec);
+                    inTable = true;
+                    return;
+                
+                default:
+                    if (conditionalFormattingSids.contains(sid)) {
+                        // 条件付き書式は全て削除する。
+                        // （BookPainterWithUserApi が ExcelUtils#clearColors で行っている処理と同じ）
+                        return;
+                    }
+                }
+                write(rec);
+            }
+            
+            private void writeIndex() throws IOException {
+                int blocks = dryRun ? 0 : sheetLayout.blocks;
+                byte[] rec = newRecord(IndexRecord.sid, 16 + 4 * blocks);
+                if (dryRun) {
+                    sheetLayout.index = pos;
+                } else {
+                    assert sheetLayout.index == pos;
+                    if (0 <= sheetLayout.firstRow) {
+                        LittleEndian.putInt(rec, HEADER_SIZE + 4, sheetLayout.firstRow);
+                        LittleEndian.putInt(rec, HEADER_SIZE + 8, sheetLayout.lastRow + 1);
+                    }
+                    if (0 <= sheetLayout.defColWidth) {
+                        LittleEndian.putInt(rec, HEADER_SIZE + 12, (int) sheetLayout.defColWidth);
+                    }
+                    for (int i = 0; i < blocks; i++) {
+                        LittleEndian.putInt(rec, HEADER_SIZE + 16 + 4 * i, sheetLayout.dbCells.get(i).intValue());
+                    }
+                }
+                write(rec);
+            }
+            
+            private void recordColumnXfs(byte[] colInfo) {
+                int first = LittleEndian.getUShort(colInfo, HEADER_SIZE);
+                int last = Math.min(LittleEndian.getUShort(colInfo, HEADER_SIZE + 2), MAX_COLUMNS - 1);
+                int xf = LittleEndian.getUShort(colInfo, HEADER_SIZE + 6);
+                for (int c = first; c <= last; c++) {
+                    columnXfs[c] = xf;
+                }
+            }
+            
+            private void flushColInfos() throws IOException {
+                int xf = painted(DEFAULT_XF, redundantColor);
+                boolean[] covered = new boolean[MAX_COLUMNS];
+                List<byte[]> result = new ArrayList<>();
+                
+                // 既存の COLINFO レコードを、余剰列とそれ以外の列とに分割する。
+                for (byte[] colInfo : colInfos) {
+                    int first = LittleEndian.getUShort(colInfo, HEADER_SIZE);
+                    int last = LittleEndian.getUShort(colInfo, HEADER_SIZE + 2);
+                    int c = first;
+                    while (c <= last) {
+                        boolean target = redundantColumns.contains(c);
+                        int end = c;
+                        while (end < last && redundantColumns.contains(end + 1) == target) {
+                            end++;
+                        }
+                        byte[] part = colInfo.clone();
+                        LittleEndian.putUShort(part, HEADER_SIZE, c);
+                        LittleEndian.putUShort(part, HEADER_SIZE + 2, end);
+                        if (target) {
+                            LittleEndian.putUShort(part, HEADER_SIZE + 6, xf);
+                        }
+                        result.add(part);
+                        c = end + 1;
+                    }
+                    Arrays.fill(covered, Math.min(first, MAX_COLUMNS), Math.min(last + 1, MAX_COLUMNS), true);
+                }
+                
+                // COLINFO レコードの無い余剰列には、新たに COLINFO レコードを作成する。
+                Iterator<Integer> itr = new TreeSet<>(redundantColumns).iterator();
+                int first = -1;
+                int last = -1;
+                while (true) {
+                    Integer c = itr.hasNext() ? itr.next() : null;
+                    if (c != null && (MAX_COLUMNS <= c || covered[c])) {
+                        continue;
+                    }
+                    if (c != null && 0 <= first && c == last + 1) {
+                        last = c;
+                        continue;
+                    }
+                    if (0 <= first) {
+                        byte[] colInfo = newRecord(ColumnInfoRecord.sid, COLINFO_DATA_SIZE);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE, first);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE + 2, last);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE + 4, DEFAULT_COLUMN_WIDTH);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE + 6, xf);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE + 8, 0x0002);
+                        LittleEndian.putUShort(colInfo, HEADER_SIZE + 10, 0x0002);
+                        result.add(colInfo);
+                    }
+                    if (c == null) {
+                        break;
+                    }
+                    first = c;
+                    last = c;
+                }
+                
+                result.sort(Comparator.comparingInt(colInfo -> LittleEndian.getUShort(colInfo, HEADER_SIZE)));
+                for (byte[] colInfo : result) {
+                    write(colInfo);
+                }
+                colInfos = null;
+            }
+            
+            private void expandDimensions(byte[] dimensions) {
+                if (!pendingRows.isEmpty()) {
+                    int firstRow = LittleEndian.getInt(dimensions, HEADER_SIZE);
+                    int lastRow = LittleEndian.getInt(dimensions, HEADER_SIZE + 4);
+                    LittleEndian.putInt(dimensions, HEADER_SIZE, Math.min(firstRow, pendingRows.first()));
+                    LittleEndian.putInt(dimensions, HEADER_SIZE + 4, Math.max(lastRow, pendingRows.last() + 1));
+                }
+                if (!diffColumns.isEmpty()) {
+                    int firstCol = LittleEndian.getUShort(dimensions, HEADER_SIZE + 8);
+                    int lastCol = LittleEndian.getUShort(dimensions, HEADER_SIZE + 10);
+                    for (NavigableSet<Integer> columns : diffColumns.values()) {
+                        firstCol = Math.min(firstCol, columns.first());
+                        lastCol = Math.max(lastCol, columns.last() + 1);
+                    }
+                    LittleEndian.putUShort(dimensions, HEADER_SIZE + 8, firstCol);
+                    LittleEndian.putUShort(dimensions, HEADER_SIZE + 10, lastCol);
+                }
+            }
+            
+            /**
+             * セルの表（ROW レコード、セルのレコード、DBCELL レコード）に属するレコードを取り込みます。<br>
+             * 行ブロックの行数分の行が揃うごとに、それらの行を行ブロックとして書き出します。
+             * 元のブックに DBCELL レコードが無い場合も、保持する行が行ブロック数個分を超えることはありません。<br>
+             * 
+             * @param sid レコードのsid
+             * @param rec レコード
+             * @throws IOException 入出力エラーが発生した場合
+             */
+            private void absorb(int sid, byte[] rec) throws IOException {
+                if (sid == DBCellRecord.sid) {
+                    // DBCELL レコードは行ブロックを組み直す際に作り直す。
+                    writeBlocks(Integer.MAX_VALUE, false);
+                    lastEntry = null;
+                    
+                } else if (sid == RowRecord.sid) {
+                    RowEntry entry = entryOf(LittleEndian.getUShort(rec, HEADER_SIZE));
+                    entry.rowRecord = rec;
+                    
+                } else if (cellSids.contains(sid)) {
+                    int row = LittleEndian.getUShort(rec, HEADER_SIZE);
+                    if (lastEntry == null || lastEntry.row != row) {
+                        // セルのレコードは行の昇順に現れるため、これより前の行は揃っている。
+                        addPendingRows(row);
+                        writeBlocks(row, false);
+                    }
+                    RowEntry entry = entryOf(row);
+                    List<byte[]> cell = new ArrayList<>(1);
+                    cell.add(rec);
+                    entry.cells.add(cell);
+                    lastEntry = entry;
+                    
+                } else if (lastEntry != null) {
+                    // STRING レコードなどは、直前のセルのレコードと一緒に書き出す。
+                    lastEntry.cells.get(lastEntry.cells.size() - 1).add(rec);
+                    
+                } else {
+                    write(rec);
+                }
+            }
+            
+            private RowEntry entryOf(int row) {
+                RowEntry entry = rows.get(row);
+                if (entry == null) {
+                    // 行は昇順に現れるため、これより前の存在する必要のある行は元のブックに存在しない。
+                    addPendingRows(row);
+                    pendingRows.remove(row);
+                    entry = new RowEntry(row);
+                    rows.put(row, entry);
+                }
+                return entry;
+            }
+            
+            private void addPendingRows(int limit) {
+                while (!pendingRows.isEmpty() && pendingRows.first() < limit) {
+                    int row = pendingRows.pollFirst();
+                    rows.putIfAbsent(row, new RowEntry(row));
+                }
+            }
+            
+            private void closeTable() throws IOException {
+                addPendingRows(Integer.MAX_VALUE);
+                writeBlocks(Integer.MAX_VALUE, true);
+                lastEntry = null;
+                inTable = false;
+            }
+            
+            /**
+             * 揃った行を行ブロックとして書き出します。<br>
+             * 
+             * @param limit この行インデックスより前の行が揃っていることを表す値
+             * @param all 行ブロックの行数に満たない残りの行も書き出す場合は {@code true}
+             * @throws IOException 入出力エラーが発生した場合
+             */
+            private void writeBlocks(int limit, boolean all) throws IOException {
+                while (hasBlock(limit) || (all && !rows.isEmpty())) {
+                    List<RowEntry> block = new ArrayList<>(ROWS_PER_BLOCK);
+                    while (block.size() < ROWS_PER_BLOCK && !rows.isEmpty()) {
+                        block.add(rows.pollFirstEntry().getValue());
+                    }
+                    writeBlock(block);
+                }
+            }
+            
+            private boolean hasBlock(int limit) {
+                if (rows.size() < ROWS_PER_BLOCK) {
+                    return false;
+                }
+                Iterator<Integer> itr = rows.keySet().iterator();
+                for (int i = 1; i < ROWS_PER_BLOCK; i++) {
+                    itr.next();
+                }
+                return itr.next() < limit;
+            }
+            
+            private void writeBlock(List<RowEntry> block) throws IOException {
+                long first = pos;
+                for (RowEntry entry : block) {
+                    paintRow(entry);
+                    write(entry.rowRecord);
+                }
+                
+                // DBCELL レコードには、2行目の ROW レコードから最初のセルまでのオフセットと、
+                // 各行の最初のセルから次の行の最初のセルまでのオフセットを記録する。
+                List<Integer> offsets = new ArrayList<>();
+                int offset = (int) (pos - first) - (HEADER_SIZE + ROW_DATA_SIZE);
+                for (RowEntry entry : block) {
+                    if (entry.cells.isEmpty()) {
+                        continue;
+                    }
+                    long start = pos;
+                    for (List<byte[]> cell : entry.cells) {
+                        for (byte[] rec : cell) {
+                            write(rec);
+                        }
+                    }
+                    offsets.add(offset);
+                    offset = (int) (pos - start);
+                }
+                
+                byte[] dbCell = newRecord(DBCellRecord.sid, 4 + 2 * offsets.size());
+                LittleEndian.putInt(dbCell, HEADER_SIZE, (int) (pos - first));
+                for (int i = 0; i < offsets.size(); i++) {
+                    LittleEndian.putUShort(dbCell, HEADER_SIZE + 4 + 2 * i, offsets.get(i) & 0xFFFF);
+                }
+                
+                if (dryRun) {
+                    sheetLayout.dbCells.add(pos);
+                    sheetLayout.blocks++;
+                    if (sheetLayout.firstRow < 0) {
+                        sheetLayout.firstRow = block.get(0).row;
+                    }
+                    sheetLayout.lastRow = block.get(block.size() - 1).row;
+                } else {
+                    assert sheetLayout.dbCells.get(dbCellIdx) == pos;
+                    dbCellIdx++;
+                }
+                write(dbCell);
+            }
+            
+            /**
+             * 1行分のセルに色を付け、存在しない差分セルを作成し、ROW レコードを更新します。<br>
+             * 
+             * @param entry 対象の行
+             */
+            private void paintRow(RowEntry entry) {
+                NavigableSet<Integer> diffs = diffColumns.getOrDefault(entry.row, Collections.emptyNavigableSet());
+                boolean redundantRow = redundantRows.contains(entry.row);
+                boolean changed = entry.rowRecord == null;
+                
+                // 既存のセルの書式を付け替える。
+                for (List<byte[]> cell : entry.cells) {
+                    paintCell(cell.get(0), diffs, redundantRow);
+                }
+                
+                // 存在しない差分セルを BLANK レコードとして作成する。
+                if (!diffs.isEmpty()) {
+                    List<List<byte[]>> cells = new ArrayList<>(entry.cells.size() + diffs.size());
+                    Iterator<Integer> itr = diffs.iterator();
+                    Integer next = itr.next();
+                    for (List<byte[]> cell : entry.cells) {
+                        int first = firstColumnOf(cell.get(0));
+                        int last = lastColumnOf(cell.get(0));
+                        while (next != null && next < first) {
+                            cells.add(Collections.singletonList(newBlank(entry.row, next)));
+                            changed = true;
+                            next = itr.hasNext() ? itr.next() : null;
+                        }
+                        while (next != null && next <= last) {
+                            next = itr.hasNext() ? itr.next() : null;
+                        }
+                        cells.add(cell);
+                    }
+                    while (next != null) {
+                        cells.add(Collections.singletonList(newBlank(entry.row, next)));
+                        changed = true;
+                        next = itr.hasNext() ? itr.next() : null;
+                    }
+                    entry.cells = cells;
+                }
+                
+                // ROW レコードを作成・更新する。
+                if (entry.rowRecord == null) {
+                    entry.rowRecord = newRow(entry.row);
+                }
+                if (changed && !entry.cells.isEmpty()) {
+                    LittleEndian.putUShort(entry.rowRecord, HEADER_SIZE + 2,
+                            firstColumnOf(entry.cells.get(0).get(0)));
+                    LittleEndian.putUShort(entry.rowRecord, HEADER_SIZE + 4,
+                            lastColumnOf(entry.cells.get(entry.cells.size() - 1).get(0)) + 1);
+                }
+                if (redundantRow) {
+                    int options = LittleEndian.getUShort(entry.rowRecord, HEADER_SIZE + 12);
+                    LittleEndian.putUShort(entry.rowRecord, HEADER_SIZE + 12, options | 0x0080);
+                    int xf = LittleEndian.getUShort(entry.rowRecord, HEADER_SIZE + 14);
+                    xf = (xf & ~0x0FFF) | painted(DEFAULT_XF, redundantColor);
+                    LittleEndian.putUShort(entry.rowRecord, HEADER_SIZE + 14, xf);
+                }
+            }
+            
+            private void paintCell(byte[] cell, NavigableSet<Integer> diffs, boolean redundantRow) {
+                int sid = sidOf(cell);
+                int step = sid == MulRKRecord.sid ? 6 : sid == MulBlankRecord.sid ? 2 : 0;
+                int first = firstColumnOf(cell);
+                int last = lastColumnOf(cell);
+                for (int c = first, offset = HEADER_SIZE + 4; c <= last; c++, offset += step) {
+                    short color;
+                    if (diffs.contains(c)) {
+                        color = diffColor;
+                    } else if (redundantRow || redundantColumns.contains(c)) {
+                        color = redundantColor;
+                    } else {
+                        continue;
+                    }
+                    LittleEndian.putUShort(cell, offset, painted(LittleEndian.getUShort(cell, offset), color));
+                }
+            }
+            
+            private byte[] newBlank(int row, int column) {
+                // POIのユーザーモデルAPIと同様に、新たなセルには列の書式を適用する。
+                byte[] blank = newRecord(BlankRecord.sid, 6);
+                LittleEndian.putUShort(blank, HEADER_SIZE, row);
+                LittleEndian.putUShort(blank, HEADER_SIZE + 2, column);
+                LittleEndian.putUShort(blank, HEADER_SIZE + 4, painted(columnXfs[column], diffColor));
+                return blank;
+            }
+            
+            private byte[] newRow(int row) {
+                // 新たな行の高さは、シートの既定の行の高さに揃える。
+                byte[] rec = newRecord(RowRecord.sid, ROW_DATA_SIZE);
+                LittleEndian.putUShort(rec, HEADER_SIZE, row);
+                LittleEndian.putUShort(rec, HEADER_SIZE + 6, defaultRowHeight);
+                LittleEndian.putUShort(rec, HEADER_SIZE + 12, 0x0100 | ((defaultRowOptions & 0x0001) << 6));
+                LittleEndian.putUShort(rec, HEADER_SIZE + 14, DEFAULT_XF);
+                return rec;
+            }
+        }
+    }
+}
@@ -7,17 +7,21 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
 import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
-import org.apache.poi.hssf.eventusermodel.HSSFListener;
 import org.apache.poi.hssf.eventusermodel.HSSFRequest;
 import org.apache.poi.hssf.record.BOFRecord;
 import org.apache.poi.hssf.record.BoolErrRecord;
 import org.apache.poi.hssf.record.BoundSheetRecord;
 import org.apache.poi.hssf.record.CellRecord;
+import org.apache.poi.hssf.record.DimensionsRecord;
 import org.apache.poi.hssf.record.EOFRecord;
 import org.apache.poi.hssf.record.FormulaRecord;
 import org.apache.poi.hssf.record.LabelSSTRecord;
@@ -31,13 +35,15 @@ import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.FormulaError;
-import org.apache.poi.ss.util.NumberToTextConverter;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
 import xyz.hotchpotch.hogandiff.excel.BookType;
 import xyz.hotchpotch.hogandiff.excel.CellReplica;
 import xyz.hotchpotch.hogandiff.excel.ExcelUtils;
+import xyz.hotchpotch.hogandiff.excel.NumericTextConverter;
 import xyz.hotchpotch.hogandiff.excel.SheetLoader;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
 
 /**
  * HSSF（.xls）形式のExcelブックからPOIのイベントモデルAPIを使用してシートデータを読み込むための
@@ -63,7 +69,7 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
         // [instance members] --------------------------------------------------
     }
     
-    private static class HSSFSheetLoadingListener implements HSSFListener {
+    private static class HSSFSheetLoadingListener extends AbortableHSSFListener {
         
         // [static members] ----------------------------------------------------
         
@@ -71,23 +77,48 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
         
         private final String sheetName;
         private final boolean extractCachedValue;
+        private final SheetRegion region;
+        private final Consumer<? super SheetStats> statsConsumer;
+        private final Consumer<? super CellReplica> consumer;
+        private final boolean statsOnly;
         
         private ProcessingPhase phase = ProcessingPhase.SEARCHING_SHEET;
         private int sheetIdx;
         private int currIdx;
         private FormulaRecord prevFormula;
         private List<String> sst;
-        private Set<CellReplica> cells = new HashSet<>();
         
-        private HSSFSheetLoadingListener(String sheetName, boolean extractCachedValue) {
+        /**
+         * コンストラクタ。<br>
+         * 
+         * @param sheetName 対象のシート名
+         * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+         * @param region 読み込み対象の範囲
+         * @param statsConsumer シートの統計情報を受け取るコンシューマ
+         * @param consumer セルデータを受け取るコンシューマ（統計情報のみを読み込む場合は {@code null}）
+         */
+        private HSSFSheetLoadingListener(
+                String sheetName,
+                boolean extractCachedValue,
+                SheetRegion region,
+                Consumer<? super SheetStats> statsConsumer,
+                Consumer<? super CellReplica> consumer) {
+            
             assert sheetName != null;
+            assert region != null;
+            assert statsConsumer != null;
+            
             this.sheetName = sheetName;
             this.extractCachedValue = extractCachedValue;
+            this.region = region;
+            this.statsConsumer = statsConsumer;
+            this.consumer = consumer;
+            this.statsOnly = consumer == null;
         }
         
         // 我ながらこの醜いコードはもうちょっとどうにかならないんだろうか・・・ orz
         @Override
-        public void processRecord(Record record) {
+        public short abortableProcessRecord(Record record) {
             switch (phase) {
             case SEARCHING_SHEET:
                 if (record.getSid() == BoundSheetRecord.sid) {
@@ -125,6 +156,7 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                             phase = ProcessingPhase.READING_SHEET_DATA;
                         } else if (currIdx == sheetIdx && bofRec.getType() == BOFRecord.TYPE_CHART) {
                             // グラフシートの場合は空のセルデータセットを返すこととする。
+                            statsConsumer.accept(SheetStats.EMPTY);
                             phase = ProcessingPhase.COMPLETED;
                         } else if (currIdx < sheetIdx) {
                             currIdx++;
@@ -136,8 +168,28 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                 break;
             
             case READING_SHEET_DATA:
-                if (record instanceof CellRecord) {
+                if (record.getSid() == DimensionsRecord.sid) {
+                    // DIMENSIONS レコードはセルのレコードより前に置かれる。
+                    statsConsumer.accept(toStats((DimensionsRecord) record));
+                    if (statsOnly) {
+                        phase = ProcessingPhase.COMPLETED;
+                    }
+                    
+                } else if (statsOnly && record instanceof CellRecord) {
+                    // DIMENSIONS レコードを持たないシートの場合
+                    phase = ProcessingPhase.COMPLETED;
+                    
+                } else if (record instanceof CellRecord) {
                     CellRecord cellRec = (CellRecord) record;
+                    if (region.lastRow() < cellRec.getRow()) {
+                        // セルレコードは行の昇順に並ぶため、これ以降に読み込み対象のセルは存在しない。
+                        phase = ProcessingPhase.COMPLETED;
+                        break;
+                    }
+                    if (!region.contains(cellRec.getRow(), cellRec.getColumn())) {
+                        // 範囲外のセルは、値の文字列を生成することなく読み飛ばす。
+                        break;
+                    }
                     String value = null;
                     
                     switch (cellRec.getSid()) {
@@ -148,12 +200,12 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                     
                     case NumberRecord.sid:
                         NumberRecord numberRec = (NumberRecord) cellRec;
-                        value = NumberToTextConverter.toText(numberRec.getValue());
+                        value = NumericTextConverter.toText(numberRec.getValue());
                         break;
                     
                     case RKRecord.sid:
                         RKRecord rKRec = (RKRecord) cellRec;
-                        value = NumberToTextConverter.toText(rKRec.getRKNumber());
+                        value = NumericTextConverter.toText(rKRec.getRKNumber());
                         break;
                     
                     case BoolErrRecord.sid:
@@ -174,7 +226,7 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                             switch (type) {
                             // see org.apache.poi.hssf.record.FormulaRecord.SpecialCachedValue#getValueType()
                             case NUMERIC:
-                                value = NumberToTextConverter.toText(formulaRec.getValue());
+                                value = NumericTextConverter.toText(formulaRec.getValue());
                                 break;
                             case STRING:
                                 assert formulaRec.hasCachedResultString();
@@ -200,7 +252,7 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                     
                     if (prevFormula == null) {
                         assert value != null;
-                        cells.add(CellReplica.of(
+                        consumer.accept(CellReplica.of(
                                 cellRec.getRow(),
                                 cellRec.getColumn(),
                                 value));
@@ -208,7 +260,7 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                     
                 } else if (record instanceof StringRecord && prevFormula != null) {
                     StringRecord stringRec = (StringRecord) record;
-                    cells.add(CellReplica.of(
+                    consumer.accept(CellReplica.of(
                             prevFormula.getRow(),
                             prevFormula.getColumn(),
                             stringRec.getString()));
@@ -226,9 +278,22 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
             default:
                 throw new AssertionError(phase);
             }
+            
+            // 対象シートの読み込みが完了したら、残りのレコードは処理せずに打ち切る。
+            return phase == ProcessingPhase.COMPLETED ? (short) 1 : 0;
         }
     }
     
+    private static SheetStats toStats(DimensionsRecord rec) {
+        assert rec != null;
+        
+        // DIMENSIONS レコードの最終行・最終列は、使用範囲の次の行・列を表す。
+        if (rec.getLastRow() <= rec.getFirstRow() || rec.getLastCol() <= rec.getFirstCol()) {
+            return SheetStats.EMPTY;
+        }
+        return SheetStats.of(rec.getFirstRow(), rec.getFirstCol(), rec.getLastRow() - 1, rec.getLastCol() - 1);
+    }
+    
     private static String getFormulaString(FormulaRecord rec) {
         // 次のサイトに貴重な参考情報があるものの、数式文字列を得るためにユーザーモデルAPI（HSSFWorkbook）を
         // 利用する必要があり、わざわざイベントモデルAPIで頑張っている意味がなくなってしまう。
@@ -262,15 +327,34 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
      * @return 新しいローダー
      */
     public static HSSFSheetLoaderWithEventApi of(boolean extractCachedValue) {
-        return new HSSFSheetLoaderWithEventApi(extractCachedValue);
+        return new HSSFSheetLoaderWithEventApi(extractCachedValue, SheetRegion.ALL);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込むローダーオブジェクトを生成して返します。<br>
+     * 範囲外のセルのレコードは値の文字列を生成せずに読み飛ばし、範囲の最終行を過ぎた時点で読み込みを打ち切ります。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     * @since 0.5.0
+     */
+    public static HSSFSheetLoaderWithEventApi of(boolean extractCachedValue, SheetRegion region) {
+        Objects.requireNonNull(region, "region");
+        return new HSSFSheetLoaderWithEventApi(extractCachedValue, region);
     }
     
     // [instance members] ******************************************************
     
     private final boolean extractCachedValue;
+    private final SheetRegion region;
     
-    private HSSFSheetLoaderWithEventApi(boolean extractCachedValue) {
+    private HSSFSheetLoaderWithEventApi(boolean extractCachedValue, SheetRegion region) {
+        assert region != null;
+        
         this.extractCachedValue = extractCachedValue;
+        this.region = region;
     }
     
     /**
@@ -282,6 +366,73 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
      */
     @Override
     public Set<CellReplica> loadSheet(File book, String sheetName) throws ApplicationException {
+        // 何度も再ハッシュが行われることのないように、DIMENSIONS レコードを読み込んだ時点で
+        // シートの使用範囲から初期容量を見積もったセットに差し替える。
+        AtomicReference<Set<CellReplica>> cells = new AtomicReference<>(new HashSet<>());
+        load(book, sheetName,
+                stats -> {
+                    assert cells.get().isEmpty();
+                    cells.set(stats.newCellSet(region));
+                },
+                cell -> cells.get().add(cell));
+        return cells.get();
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、シートデータ全体をメモリ上に保持せずに、読み込みと並行してセルデータをコンシューマに渡します。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public void loadSheet(File book, String sheetName, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(consumer, "consumer");
+        load(book, sheetName, stats -> {
+        }, consumer);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、対象シートの DIMENSIONS レコードから統計情報を読み込み、セルのレコードは読み込みません。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public Optional<SheetStats> loadStats(File book, String sheetName) throws ApplicationException {
+        AtomicReference<SheetStats> stats = new AtomicReference<>();
+        load(book, sheetName, stats::set, null);
+        return Optional.ofNullable(stats.get());
+    }
+    
+    /**
+     * 指定されたシートのレコードを読み込み、統計情報とセルデータをそれぞれのコンシューマに渡します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象のシート名
+     * @param statsConsumer シートの統計情報を受け取るコンシューマ
+     * @param consumer セルデータを受け取るコンシューマ（統計情報のみを読み込む場合は {@code null}）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code sheetName} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    private void load(
+            File book,
+            String sheetName,
+            Consumer<? super SheetStats> statsConsumer,
+            Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        assert statsConsumer != null;
+        
         Objects.requireNonNull(book, "book");
         Objects.requireNonNull(sheetName, "sheetName");
         if (!isSupported(book)) {
@@ -292,11 +443,11 @@ public class HSSFSheetLoaderWithEventApi implements SheetLoader {
                 POIFSFileSystem poifs = new POIFSFileSystem(fin)) {
             
             HSSFRequest req = new HSSFRequest();
-            HSSFSheetLoadingListener listener = new HSSFSheetLoadingListener(sheetName, extractCachedValue);
+            HSSFSheetLoadingListener listener = new HSSFSheetLoadingListener(
+                    sheetName, extractCachedValue, region, statsConsumer, consumer);
             req.addListenerForAllRecords(listener);
             HSSFEventFactory factory = new HSSFEventFactory();
             factory.abortableProcessWorkbookEvents(req, poifs);
-            return listener.cells;
             
         } catch (NoSuchElementException e) {
             throw e;
@@ -0,0 +1,445 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+/**
+ * XSSF（.xlsx/.xlsm）形式のExcelシートの共有数式を、各セルの数式文字列に展開するためのクラスです。<br>
+ * <br>
+ * 共有数式（{@code <f t="shared" si=".." ref="..">}）の数式文字列はマスタセルにのみ記録され、
+ * 同じ共有数式を持つ他のセルには {@code si} 属性だけが記録されます。
+ * このクラスはマスタセルの数式文字列を {@code si} ごとに一度だけ字句解析して保持し、
+ * 他のセルの数式文字列を、相対参照の行・列をずらしたトークンの書き換えにより生成します。<br>
+ * <br>
+ * 1枚のシートの読み込みの間だけ使用されることを想定しています。
+ * このクラスはスレッドセーフではありません。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class SharedFormulaResolver {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 数式文字列に含まれるセル参照（"A1", "$A$1"）、
+     * または列全体・行全体の参照（"A:A", "1:1"）の片側を表す不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Reference {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final boolean hasColumn;
+        private final boolean columnAbs;
+        private final int column;
+        private final boolean hasRow;
+        private final boolean rowAbs;
+        private final int row;
+        
+        private Reference(
+                boolean hasColumn, boolean columnAbs, int column,
+                boolean hasRow, boolean rowAbs, int row) {
+            
+            this.hasColumn = hasColumn;
+            this.columnAbs = columnAbs;
+            this.column = column;
+            this.hasRow = hasRow;
+            this.rowAbs = rowAbs;
+            this.row = row;
+        }
+        
+        /**
+         * 相対参照の行・列を指定された量だけずらした参照を、文字列として追加します。<br>
+         * シートの範囲を超える場合は、POIと同様に反対側の端から数え直します。<br>
+         * 
+         * @param str 追加先
+         * @param dRow ずらす行数
+         * @param dColumn ずらす列数
+         */
+        private void appendTo(StringBuilder str, int dRow, int dColumn) {
+            if (hasColumn) {
+                if (columnAbs) {
+                    str.append('$');
+                }
+                str.append(CellReplica.getColumnName(
+                        columnAbs ? column : (column + dColumn) & COLUMN_MASK));
+            }
+            if (hasRow) {
+                if (rowAbs) {
+                    str.append('$');
+                }
+                str.append((rowAbs ? row : (row + dRow) & ROW_MASK) + 1);
+            }
+        }
+    }
+    
+    /**
+     * 字句解析済みのマスタセルの数式文字列を保持する不変クラスです。<br>
+     * 数式文字列は、参照以外の部分 {@code texts} と参照 {@code refs} が交互に並んだものとして保持されます。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Formula {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final int row;
+        private final int column;
+        private final String original;
+        private final String[] texts;
+        private final Reference[] refs;
+        
+        private Formula(int row, int column, String original, List<String> texts, List<Reference> refs) {
+            assert texts.size() == refs.size() + 1;
+            
+            this.row = row;
+            this.column = column;
+            this.original = original;
+            this.texts = texts.toArray(new String[texts.size()]);
+            this.refs = refs.toArray(new Reference[refs.size()]);
+        }
+        
+        /**
+         * 指定されたセルの数式文字列を生成して返します。<br>
+         * 
+         * @param row セルの行インデックス（0開始）
+         * @param column セルの列インデックス（0開始）
+         * @return 数式文字列
+         */
+        private String shift(int row, int column) {
+            int dRow = row - this.row;
+            int dColumn = column - this.column;
+            if (refs.length == 0 || (dRow == 0 && dColumn == 0)) {
+                return original;
+            }
+            
+            StringBuilder str = new StringBuilder(original.length() + refs.length * 2);
+            for (int i = 0; i < refs.length; i++) {
+                str.append(texts[i]);
+                refs[i].appendTo(str, dRow, dColumn);
+            }
+            str.append(texts[refs.length]);
+            return str.toString();
+        }
+    }
+    
+    /** 列インデックスの範囲（0..16383）を表すマスク */
+    private static final int COLUMN_MASK = (1 << 14) - 1;
+    
+    /** 行インデックスの範囲（0..1048575）を表すマスク */
+    private static final int ROW_MASK = (1 << 20) - 1;
+    
+    /**
+     * 新たなリゾルバを生成して返します。<br>
+     * 
+     * @return 新しいリゾルバ
+     */
+    public static SharedFormulaResolver of() {
+        return new SharedFormulaResolver();
+    }
+    
+    /**
+     * マスタセルの数式文字列を字句解析して返します。<br>
+     * 文字列リテラル、引用符で囲まれたシート名、角括弧で囲まれた構造化参照や外部ブック参照、
+     * 関数名、シート名、名前は書き換えの対象外とし、それ以外のセル参照と列全体・行全体の参照を抽出します。<br>
+     * 
+     * @param row マスタセルの行インデックス（0開始）
+     * @param column マスタセルの列インデックス（0開始）
+     * @param formula マスタセルの数式文字列
+     * @return 字句解析済みの数式文字列
+     */
+    private static Formula compile(int row, int column, String formula) {
+        assert formula != null;
+        
+        List<String> texts = new ArrayList<>();
+        List<Reference> refs = new ArrayList<>();
+        int n = formula.length();
+        int begin = 0;
+        int i = 0;
+        
+        while (i < n) {
+            char c = formula.charAt(i);
+            
+            if (c == '"' || c == '\'') {
+                i = skipQuoted(formula, i);
+                
+            } else if (c == '[') {
+                i = skipBracket(formula, i);
+                
+            } else if (isNameChar(c)) {
+                int end = nameEnd(formula, i);
+                char next = end < n ? formula.charAt(end) : '\0';
+                
+                if (next == '(' || next == '!' || next == '[') {
+                    // 関数名、シート名、またはテーブル名
+                    i = end;
+                    continue;
+                }
+                if (next == ':') {
+                    int end2 = nameEnd(formula, end + 1);
+                    if (end2 < n && formula.charAt(end2) == '!') {
+                        // 複数シートにまたがる参照のシート名（"Sheet1:Sheet3!"）
+                        i = end2;
+                        continue;
+                    }
+                    Reference from = parseLine(formula, i, end);
+                    Reference to = parseLine(formula, end + 1, end2);
+                    if (from != null && to != null && from.hasColumn == to.hasColumn) {
+                        // 列全体または行全体の参照（"A:C", "1:3"）
+                        texts.add(formula.substring(begin, i));
+                        refs.add(from);
+                        texts.add(":");
+                        refs.add(to);
+                        begin = i = end2;
+                        continue;
+                    }
+                }
+                Reference ref = parseCell(formula, i, end);
+                if (ref != null) {
+                    texts.add(formula.substring(begin, i));
+                    refs.add(ref);
+                    begin = end;
+                }
+                i = end;
+                
+            } else {
+                i++;
+            }
+        }
+        texts.add(formula.substring(begin));
+        
+        return new Formula(row, column, formula, texts, refs);
+    }
+    
+    /**
+     * 引用符で囲まれた部分の終端の次の位置を返します。
+     * 引用符の2連続はエスケープされた引用符として扱います。<br>
+     * 
+     * @param formula 数式文字列
+     * @param start 開始引用符の位置
+     * @return 終了引用符の次の位置
+     */
+    private static int skipQuoted(String formula, int start) {
+        char quote = formula.charAt(start);
+        int i = start + 1;
+        while (i < formula.length()) {
+            if (formula.charAt(i) == quote) {
+                if (i + 1 < formula.length() && formula.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * 角括弧で囲まれた部分（入れ子を含む）の終端の次の位置を返します。<br>
+     * 
+     * @param formula 数式文字列
+     * @param start 開始角括弧の位置
+     * @return 対応する終了角括弧の次の位置
+     */
+    private static int skipBracket(String formula, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < formula.length()) {
+            char c = formula.charAt(i++);
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                break;
+            }
+        }
+        return i;
+    }
+    
+    private static boolean isNameChar(char c) {
+        return ('A' <= c && c <= 'Z') || ('a' <= c && c <= 'z') || ('0' <= c && c <= '9')
+                || c == '$' || c == '_' || c == '.' || c == '\\' || c == '?' || 127 < c;
+    }
+    
+    private static int nameEnd(String formula, int start) {
+        int i = start;
+        while (i < formula.length() && isNameChar(formula.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * 指定された範囲の文字列をセル参照（"A1", "$A$1"..）として解析して返します。<br>
+     * 
+     * @param formula 数式文字列
+     * @param start 開始位置
+     * @param end 終了位置（この位置は含まない）
+     * @return セル参照（セル参照でない場合は {@code null}）
+     */
+    private static Reference parseCell(String formula, int start, int end) {
+        int i = start;
+        boolean columnAbs = i < end && formula.charAt(i) == '$';
+        if (columnAbs) {
+            i++;
+        }
+        int column = 0;
+        int letters = 0;
+        for (; i < end && letters < 4; i++, letters++) {
+            char c = Character.toUpperCase(formula.charAt(i));
+            if (c < 'A' || 'Z' < c) {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        if (letters == 0 || 3 < letters || COLUMN_MASK + 1 < column) {
+            return null;
+        }
+        
+        boolean rowAbs = i < end && formula.charAt(i) == '$';
+        if (rowAbs) {
+            i++;
+        }
+        int row = 0;
+        int digits = 0;
+        for (; i < end && digits < 8; i++, digits++) {
+            char c = formula.charAt(i);
+            if (c < '0' || '9' < c) {
+                return null;
+            }
+            row = row * 10 + (c - '0');
+        }
+        if (i != end || digits == 0 || row == 0 || ROW_MASK + 1 < row) {
+            return null;
+        }
+        return new Reference(true, columnAbs, column - 1, true, rowAbs, row - 1);
+    }
+    
+    /**
+     * 指定された範囲の文字列を列全体または行全体の参照の片側（"A", "$A", "1", "$1"..）として解析して返します。<br>
+     * 
+     * @param formula 数式文字列
+     * @param start 開始位置
+     * @param end 終了位置（この位置は含まない）
+     * @return 参照の片側（該当しない場合は {@code null}）
+     */
+    private static Reference parseLine(String formula, int start, int end) {
+        int i = start;
+        boolean abs = i < end && formula.charAt(i) == '$';
+        if (abs) {
+            i++;
+        }
+        if (i == end || 8 < end - i) {
+            return null;
+        }
+        
+        if (Character.isDigit(formula.charAt(i))) {
+            int row = 0;
+            for (; i < end; i++) {
+                char c = formula.charAt(i);
+                if (c < '0' || '9' < c) {
+                    return null;
+                }
+                row = row * 10 + (c - '0');
+            }
+            return row == 0 || ROW_MASK + 1 < row
+                    ? null
+                    : new Reference(false, false, 0, true, abs, row - 1);
+        }
+        
+        if (3 < end - i) {
+            return null;
+        }
+        int column = 0;
+        for (; i < end; i++) {
+            char c = Character.toUpperCase(formula.charAt(i));
+            if (c < 'A' || 'Z' < c) {
+                return null;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return COLUMN_MASK + 1 < column
+                ? null
+                : new Reference(true, abs, column - 1, false, false, 0);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final Map<String, Formula> formulas = new HashMap<>();
+    
+    private SharedFormulaResolver() {
+    }
+    
+    /**
+     * 共有数式のマスタセルの数式文字列を登録します。<br>
+     * 
+     * @param si 共有数式の {@code si} 属性の値
+     * @param row マスタセルの行インデックス（0開始）
+     * @param column マスタセルの列インデックス（0開始）
+     * @param formula マスタセルの数式文字列
+     * @throws NullPointerException {@code si}, {@code formula} のいずれかが {@code null} の場合
+     */
+    public void register(String si, int row, int column, String formula) {
+        Objects.requireNonNull(si, "si");
+        Objects.requireNonNull(formula, "formula");
+        
+        formulas.put(si, compile(row, column, formula));
+    }
+    
+    /**
+     * 他のリゾルバに登録されたマスタセルの数式文字列を、このリゾルバに登録します。<br>
+     * 
+     * @param other 他のリゾルバ
+     * @throws NullPointerException {@code other} が {@code null} の場合
+     */
+    public void registerAll(SharedFormulaResolver other) {
+        Objects.requireNonNull(other, "other");
+        formulas.putAll(other.formulas);
+    }
+    
+    /**
+     * 指定された共有数式のマスタセルが登録されているかを返します。<br>
+     * 
+     * @param si 共有数式の {@code si} 属性の値
+     * @return 登録されている場合は {@code true}
+     * @throws NullPointerException {@code si} が {@code null} の場合
+     */
+    public boolean contains(String si) {
+        Objects.requireNonNull(si, "si");
+        return formulas.containsKey(si);
+    }
+    
+    /**
+     * 指定された共有数式を、指定されたセルの数式文字列に展開して返します。<br>
+     * 
+     * @param si 共有数式の {@code si} 属性の値
+     * @param row セルの行インデックス（0開始）
+     * @param column セルの列インデックス（0開始）
+     * @return セルの数式文字列
+     * @throws NullPointerException {@code si} が {@code null} の場合
+     * @throws NoSuchElementException {@code si} のマスタセルが登録されていない場合
+     */
+    public String resolve(String si, int row, int column) {
+        Objects.requireNonNull(si, "si");
+        
+        Formula formula = formulas.get(si);
+        if (formula == null) {
+            throw new NoSuchElementException("si: " + si);
+        }
+        return formula.shift(row, column);
+    }
+}
@@ -1,44 +1,44 @@
 package xyz.hotchpotch.hogandiff.excel.xssf;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.events.Attribute;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
 import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
 import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
 import xyz.hotchpotch.hogandiff.excel.BookPainter;
 import xyz.hotchpotch.hogandiff.excel.BookType;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.NONS_QNAME;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.QNAME;
 import xyz.hotchpotch.hogandiff.excel.xssf.readers.FilteringReader;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.FilteringTransformer;
 import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader;
 import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetTransformer;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.StylesReader;
 
 /**
  * XSSF（.xlsx, .xlsm）形式のExcelブックにStAX APIを使用して色を付けるための
@@ -51,10 +51,13 @@ public class XSSFBookPainterWithStaxApi implements BookPainter {
     
     // [static members] ********************************************************
     
-    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
-    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
-    private static final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-    private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private static final ThreadLocal<XMLInputFactory> inFactory = ThreadLocal.withInitial(
+            XMLInputFactory::newInstance);
+    private static final ThreadLocal<XMLOutputFactory> outFactory = ThreadLocal.withInitial(
+            XMLOutputFactory::newInstance);
+    
+    private static final String SHARED_STRINGS = "xl/sharedStrings.xml";
+    private static final String STYLES = "xl/styles.xml";
     
     /** このクラスがサポートするブック形式 */
     private static final Set<BookType> supported = EnumSet.of(BookType.XLSX, BookType.XLSM);
@@ -110,75 +113,233 @@ public class XSSFBookPainterWithStaxApi implements BookPainter {
             throw new IllegalArgumentException(book.getPath());
         }
         
-        // 1. 処理対象のExcelファイルをコピーする。
-        copyFile(book.toPath(), copy);
-        
-        // 2. 対象のExcelファイルをZipファイルとして扱い各種処理を行う。
-        try (FileSystem inFs = FileSystems.newFileSystem(book.toPath(), null);
-                FileSystem outFs = FileSystems.newFileSystem(copy, null)) {
+        // 1. 処理対象のExcelファイルを一度だけ読み込み、新しいExcelファイルに一度だけ書き出す。
+        //    変更しないエントリは、展開も再圧縮もせずに圧縮されたままの生データを書き写す。
+        Map<String, XSSFZipWriter.DeflatedEntry> painted = new ConcurrentHashMap<>();
+        ApplicationException failure = null;
+        //    元のExcelファイルのマッピングは、書き出しを終えたら直ちに解除する。
+        try (XSSFZipReader in = XSSFZipReader.open(book.toPath())) {
+            Map<String, Piece> pieces = mapPiecesToSources(book.toPath(), in, results);
             
-            // 2-1. xl/sharedStrings.xml エントリに対する処理
-            processSharedStringsEntry(inFs, outFs);
+            int level = context.get(Props.SYS_PAINTING_COMPRESSION_LEVEL);
+            try (XSSFZipWriter out = XSSFZipWriter.create(copy, level)) {
+                
+                // 1-1. xl/styles.xml エントリの読み込み
+                //      各シートの処理の中で書式が追加されるため、ここでは既存の書式の数だけを数え、最後に書き出す。
+                loadStylesEntry(in);
+                
+                // 1-3'. 複数のシートに色を付ける場合は、各シートの変換と圧縮を並行して行い、
+                //       一時ファイルに書き出しておく。
+                if (context.get(Props.SYS_PARALLEL_PAINTING) && 1 < pieces.size()) {
+                    paintWorksheetEntriesInParallel(in, out, pieces, copy.toAbsolutePath().getParent(), painted);
+                }
+                
+                for (String name : in.getEntryNames()) {
+                    if (SHARED_STRINGS.equals(name)) {
+                        // 1-2. xl/sharedStrings.xml エントリに対する処理
+                        processSharedStringsEntry(in, out);
+                        
+                    } else if (painted.containsKey(name)) {
+                        // 1-3'. 並行して処理済みのエントリは、圧縮されたまま書き写す。
+                        out.copyDeflated(painted.get(name));
+                        
+                    } else if (pieces.containsKey(name)) {
+                        // 1-3. xl/worksheets/sheet?.xml エントリに対する処理
+                        try (OutputStream os = out.newEntry(name)) {
+                            processWorksheetEntry(in, name, pieces.get(name), os);
+                        }
+                        
+                    } else if (!STYLES.equals(name)) {
+                        // 1-4. その他のエントリはそのまま書き写す。
+                        out.copyRaw(in.getEntry(name).get(), in.getRawData(name));
+                    }
+                }
+                
+                // 1-5. xl/styles.xml エントリに対する処理
+                processStylesEntry(in, out);
+            }
             
-            // 2-2. xl/styles.xml エントリに対する処理
-            processStylesEntry(inFs, outFs);
-            
-            // 2-3. xl/worksheets/sheet?.xml エントリに対する処理
-            processWorksheetEntries(inFs, outFs, book.toPath(), results);
+            File f = copy.toFile();
+            f.setReadable(true, false);
+            f.setWritable(true, false);
             
         } catch (ApplicationException e) {
-            e.printStackTrace();
-            throw e;
+            failure = e;
         } catch (Exception e) {
-            e.printStackTrace();
-            throw new ApplicationException("比較結果Excelブックの作成に失敗しました。\n" + copy.toString(), e);
+            failure = new ApplicationException("比較結果Excelブックの作成に失敗しました。\n" + copy.toString(), e);
+            
+        } finally {
+            // 一時ファイルの削除に失敗した場合は、先行する例外があればそれに付加する。
+            for (XSSFZipWriter.DeflatedEntry entry : painted.values()) {
+                try {
+                    entry.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = new ApplicationException("一時ファイルの削除に失敗しました。", e);
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        
+        if (failure != null) {
+            failure.printStackTrace();
+            throw failure;
         }
     }
     
-    // 1. 処理対象のExcelファイルをコピーする。
-    private void copyFile(Path src, Path dst) throws ApplicationException {
-        try {
-            Files.copy(src, dst);
-            File f = dst.toFile();
-            f.setReadable(true, false);
-            f.setWritable(true, false);
+    private Map<String, Piece> mapPiecesToSources(
+            Path book,
+            XSSFZipReader in,
+            List<Entry<String, Piece>> results)
+            throws ApplicationException {
+        
+        XSSFSheetEntryManager sheetManager = XSSFSheetEntryManager.generate(book, in);
+        boolean copyUnchanged = context.get(Props.APP_COPY_UNCHANGED_SHEETS);
+        Map<String, Piece> pieces = new HashMap<>();
+        for (Entry<String, Piece> result : results) {
+            // 差分箇所のないシートを対象から外すと、比較していないシートと同様に生データのまま書き写される。
+            if (copyUnchanged && result.getValue().isEmpty()) {
+                continue;
+            }
+            pieces.put(sheetManager.getSourceByName(result.getKey()), result.getValue());
+        }
+        return pieces;
+    }
+    
+    // 1-1. xl/styles.xml エントリの読み込み
+    private void loadStylesEntry(XSSFZipReader in) throws ApplicationException {
+        try (InputStream is = in.getInputStream(STYLES)) {
+            XMLEventReader reader = inFactory.get().createXMLEventReader(is, "UTF-8");
+            stylesManager = StylesManager.of(reader);
+            
         } catch (Exception e) {
-            throw new ApplicationException("Excelファイルのコピーに失敗しました。\n" + dst.toString(), e);
+            throw new ApplicationException("xl/styles.xml エントリの読み込みに失敗しました。", e);
         }
     }
     
-    // 2-1. xl/sharedStrings.xml エントリに対する処理
-    private void processSharedStringsEntry(FileSystem inFs, FileSystem outFs)
+    // 1-2. xl/sharedStrings.xml エントリに対する処理
+    private void processSharedStringsEntry(XSSFZipReader in, XSSFZipWriter out)
             throws ApplicationException {
         
-        try (InputStream is = Files.newInputStream(inFs.getPath("xl/sharedStrings.xml"));
-                OutputStream os = Files.newOutputStream(outFs.getPath("xl/sharedStrings.xml"),
-                        StandardOpenOption.TRUNCATE_EXISTING)) {
+        try (InputStream is = in.getInputStream(SHARED_STRINGS);
+                OutputStream os = out.newEntry(SHARED_STRINGS)) {
+            
+            if (context.get(Props.SYS_USE_CURSOR_PAINTER)) {
+                XMLStreamReader reader = inFactory.get().createXMLStreamReader(is, "UTF-8");
+                XMLStreamWriter writer = outFactory.get().createXMLStreamWriter(os, "UTF-8");
+                FilteringTransformer.of(reader, writer, QNAME.COLOR).transform();
+                return;
+            }
             
-            XMLEventReader reader = inFactory.createXMLEventReader(is, "UTF-8");
-            XMLEventWriter writer = outFactory.createXMLEventWriter(os, "UTF-8");
+            XMLEventReader reader = inFactory.get().createXMLEventReader(is, "UTF-8");
+            XMLEventWriter writer = outFactory.get().createXMLEventWriter(os, "UTF-8");
             
             reader = FilteringReader.builder(reader)
                     .addFilter(QNAME.COLOR)
                     .build();
             
             writer.add(reader);
+            writer.flush();
             
         } catch (Exception e) {
             throw new ApplicationException("xl/sharedStrings.xml エントリの処理に失敗しました。", e);
         }
     }
     
-    // 2-2. xl/styles.xml エントリに対する処理
-    private void processStylesEntry(FileSystem inFs, FileSystem outFs)
+    // 1-3'. xl/worksheets/sheet?.xml エントリに対する並行処理
+    private void paintWorksheetEntriesInParallel(
+            XSSFZipReader in,
+            XSSFZipWriter out,
+            Map<String, Piece> pieces,
+            Path dir,
+            Map<String, XSSFZipWriter.DeflatedEntry> painted)
+            throws ApplicationException, IOException {
+        
+        assert in != null;
+        assert out != null;
+        assert pieces != null;
+        assert dir != null;
+        assert painted != null;
+        
+        // 呼出し元は処理後に元のExcelファイルのマッピングを解除するため、
+        // 例外をストリームの外に送出して処理中のシートを残すことのないように、
+        // 発生した例外を記録しておき、全てのシートの処理を終えてから送出する。
+        Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+        pieces.entrySet().parallelStream().forEach(entry -> {
+            if (!failures.isEmpty()) {
+                return;
+            }
+            try {
+                XSSFZipWriter.DeflatedEntry deflated = out.newDeflatedEntry(entry.getKey(), dir);
+                painted.put(entry.getKey(), deflated);
+                try (OutputStream os = deflated.newOutputStream()) {
+                    processWorksheetEntry(in, entry.getKey(), entry.getValue(), os);
+                }
+            } catch (ApplicationException | IOException | RuntimeException e) {
+                failures.add(e);
+            }
+        });
+        
+        Exception failure = failures.poll();
+        if (failure == null) {
+            return;
+        }
+        failures.forEach(failure::addSuppressed);
+        if (failure instanceof ApplicationException) {
+            throw (ApplicationException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        throw (RuntimeException) failure;
+    }
+    
+    // 1-3. xl/worksheets/sheet?.xml エントリに対する処理
+    private void processWorksheetEntry(
+            XSSFZipReader in,
+            String source,
+            Piece piece,
+            OutputStream os)
+            throws ApplicationException {
+        
+        try (InputStream is = in.getInputStream(source)) {
+            
+            if (context.get(Props.SYS_USE_CURSOR_PAINTER)) {
+                XMLStreamReader reader = inFactory.get().createXMLStreamReader(is, "UTF-8");
+                XMLStreamWriter writer = outFactory.get().createXMLStreamWriter(os, "UTF-8");
+                SheetTransformer.of(reader, writer, stylesManager, piece, context, QNAME.CONDITIONAL_FORMATTING)
+                        .transform();
+                return;
+            }
+            
+            XMLEventReader reader = inFactory.get().createXMLEventReader(is, "UTF-8");
+            XMLEventWriter writer = outFactory.get().createXMLEventWriter(os, "UTF-8");
+            
+            reader = FilteringReader.builder(reader)
+                    .addFilter(QNAME.CONDITIONAL_FORMATTING)
+                    .build();
+            
+            reader = SheetReader.of(reader, stylesManager, piece, context);
+            
+            writer.add(reader);
+            writer.flush();
+            
+        } catch (Exception e) {
+            throw new ApplicationException(source + " エントリの処理に失敗しました。", e);
+        }
+    }
+    
+    // 1-5. xl/styles.xml エントリに対する処理
+    private void processStylesEntry(XSSFZipReader in, XSSFZipWriter out)
             throws ApplicationException {
         
-        try (InputStream is = Files.newInputStream(inFs.getPath("xl/styles.xml"));
-                OutputStream os = Files.newOutputStream(outFs.getPath("xl/styles.xml"),
-                        StandardOpenOption.TRUNCATE_EXISTING)) {
+        try (InputStream is = in.getInputStream(STYLES);
+                OutputStream os = out.newEntry(STYLES)) {
             
-            XMLEventReader reader = inFactory.createXMLEventReader(is, "UTF-8");
-            XMLEventWriter writer = outFactory.createXMLEventWriter(os, "UTF-8");
+            XMLEventReader reader = inFactory.get().createXMLEventReader(is, "UTF-8");
+            XMLEventWriter writer = outFactory.get().createXMLEventWriter(os, "UTF-8");
             
             reader = FilteringReader.builder(reader)
                     .addFilter(QNAME.FONTS, QNAME.FONT, QNAME.COLOR)
@@ -197,78 +358,14 @@ public class XSSFBookPainterWithStaxApi implements BookPainter {
                                     .orElse(false))
                     .build();
             
-            writer.add(reader);
-            
-        } catch (Exception e) {
-            throw new ApplicationException("xl/styles.xml エントリの処理に失敗しました。", e);
-        }
-    }
-    
-    // 2-3. xl/worksheets/sheet?.xml エントリに対する処理
-    private void processWorksheetEntries(
-            FileSystem inFs,
-            FileSystem outFs,
-            Path book,
-            List<Entry<String, Piece>> results)
-            throws ApplicationException {
-        
-        Document styles;
-        try (// 注意：コピー先から読み込むため、outFsを使うので正しい。
-                InputStream is = Files.newInputStream(outFs.getPath("xl/styles.xml"))) {
-            DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-            styles = docBuilder.parse(is);
-            //InputSource is2 = new InputSource(is);
-            //is2.setEncoding("Shift_JIS");
-            //styles = docBuilder.parse(is2);
-            stylesManager = StylesManager.of(styles);
-        } catch (Exception e) {
-            throw new ApplicationException("xl/styles.xml エントリの読み込みに失敗しました。", e);
-        }
-        
-        XSSFSheetEntryManager sheetManager = XSSFSheetEntryManager.generate(book);
-        for (Entry<String, Piece> result : results) {
-            String sheetName = result.getKey();
-            String source = sheetManager.getSourceByName(sheetName);
-            Piece piece = result.getValue();
-            
-            processWorksheetEntry(inFs, outFs, source, piece);
-        }
-        
-        try (OutputStream os = Files.newOutputStream(outFs.getPath("xl/styles.xml"),
-                StandardOpenOption.TRUNCATE_EXISTING)) {
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(styles);
-            StreamResult result = new StreamResult(os);
-            transformer.transform(source, result);
-        } catch (Exception e) {
-            throw new ApplicationException("xl/styles.xml エントリの保存に失敗しました。", e);
-        }
-    }
-    
-    private void processWorksheetEntry(
-            FileSystem inFs,
-            FileSystem outFs,
-            String source,
-            Piece piece)
-            throws ApplicationException {
-        
-        try (InputStream is = Files.newInputStream(inFs.getPath(source));
-                OutputStream os = Files.newOutputStream(outFs.getPath(source),
-                        StandardOpenOption.TRUNCATE_EXISTING)) {
-            
-            XMLEventReader reader = inFactory.createXMLEventReader(is, "UTF-8");
-            XMLEventWriter writer = outFactory.createXMLEventWriter(os, "UTF-8");
-            
-            reader = FilteringReader.builder(reader)
-                    .addFilter(QNAME.CONDITIONAL_FORMATTING)
-                    .build();
-            
-            reader = SheetReader.of(reader, stylesManager, piece, context);
+            // 各シートの処理の中で必要になった書式を、一度の走査で追加する。
+            reader = StylesReader.of(reader, stylesManager);
             
             writer.add(reader);
+            writer.flush();
             
         } catch (Exception e) {
-            throw new ApplicationException(source + " エントリの処理に失敗しました。", e);
+            throw new ApplicationException("xl/styles.xml エントリの処理に失敗しました。", e);
         }
     }
 }
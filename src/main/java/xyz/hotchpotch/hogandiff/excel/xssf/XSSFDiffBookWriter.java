@@ -0,0 +1,542 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.common.Pair.Side;
+import xyz.hotchpotch.hogandiff.diff.excel.BResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+/**
+ * 比較結果の差分箇所だけを一覧にした、新しい .xlsx 形式のExcelブックを作成するクラスです。<br>
+ * <br>
+ * 比較対象のExcelブックを読み込んだりコピーしたりすることなく、{@link BResult} の内容だけから
+ * 各エントリを先頭から順に書き出します。
+ * 作成されるブックは、比較したシートの組み合わせを一覧にした「サマリ」シートと、
+ * 比較したシートの組み合わせごとに差分箇所の位置と両シートの値を並べたシートから構成されます。<br>
+ * なお、余剰行と余剰列については、値が {@link BResult} に含まれないため位置だけを出力します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class XSSFDiffBookWriter {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * エントリの内容を書き出す関数です。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    @FunctionalInterface
+    private static interface EntryContent {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+    
+    private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String NS_CONTENT_TYPES = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    
+    /** シートの最大行数 */
+    private static final int MAX_ROWS = 1048576;
+    
+    // xl/styles.xml の cellXfs 要素に定義する書式のインデックス
+    private static final int STYLE_HEADER = 1;
+    private static final int STYLE_REDUNDANT = 2;
+    private static final int STYLE_DIFF = 3;
+    
+    /** Excelの文字列のエスケープ表記（_xHHHH_）と紛らわしい文字列 */
+    private static final Pattern ESCAPE_LIKE = Pattern.compile("_(x[0-9A-Fa-f]{4}_)");
+    
+    private static final String SUMMARY_SHEET_NAME = "サマリ";
+    private static final String NONE = "（なし）";
+    
+    /**
+     * 新しいライターを生成して返します。<br>
+     * 
+     * @param context コンテキスト
+     * @return 新しいライター
+     * @throws NullPointerException {@code context} が {@code null} の場合
+     */
+    public static XSSFDiffBookWriter of(Context context) {
+        Objects.requireNonNull(context, "context");
+        return new XSSFDiffBookWriter(context);
+    }
+    
+    private static String diffSheetName(int i) {
+        return "差分" + (i + 1);
+    }
+    
+    /**
+     * XMLとして書き出せない制御文字とペアになっていないサロゲート文字、
+     * およびExcelがエスケープ表記として解釈してしまう文字列を、
+     * Excelのエスケープ表記（_xHHHH_）に置き換えます。<br>
+     */
+    private static String escape(String value) {
+        assert value != null;
+        
+        value = ESCAPE_LIKE.matcher(value).replaceAll("_x005F_$1");
+        
+        StringBuilder str = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean pair = Character.isHighSurrogate(c)
+                    && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1));
+            boolean invalid = (c < 0x20 && c != '\t' && c != '\n' && c != '\r')
+                    || c == 0xFFFE || c == 0xFFFF
+                    || (Character.isSurrogate(c) && !pair);
+            
+            if (invalid && str == null) {
+                str = new StringBuilder(value.substring(0, i));
+            }
+            if (str != null) {
+                if (invalid) {
+                    str.append(String.format("_x%04X_", (int) c));
+                } else {
+                    str.append(c);
+                    if (pair) {
+                        str.append(value.charAt(i + 1));
+                    }
+                }
+            }
+            if (pair) {
+                i++;
+            }
+        }
+        return str == null ? value : str.toString();
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    private final short redundantColor;
+    private final short diffColor;
+    private final int compressionLevel;
+    
+    private XSSFDiffBookWriter(Context context) {
+        assert context != null;
+        
+        redundantColor = context.get(Props.APP_REDUNDANT_COLOR);
+        diffColor = context.get(Props.APP_DIFF_COLOR);
+        compressionLevel = context.get(Props.SYS_PAINTING_COMPRESSION_LEVEL);
+    }
+    
+    /**
+     * 比較結果の差分箇所を一覧にしたExcelブックを作成し、指定されたパスに保存します。<br>
+     * 
+     * @param bResult Excelブック同士の比較結果
+     * @param target 保存先ファイルパス
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code bResult}, {@code target} のいずれかが {@code null} の場合
+     */
+    public void writeAndSave(BResult bResult, Path target) throws ApplicationException {
+        Objects.requireNonNull(bResult, "bResult");
+        Objects.requireNonNull(target, "target");
+        
+        List<Pair<String>> pairs = bResult.sheetNamePairs.stream()
+                .filter(Pair::isPaired)
+                .collect(Collectors.toList());
+        
+        try (XSSFZipWriter out = XSSFZipWriter.create(target, compressionLevel)) {
+            writeEntry(out, "[Content_Types].xml", w -> writeContentTypes(w, pairs.size()));
+            writeEntry(out, "_rels/.rels", this::writeRootRelationships);
+            writeEntry(out, "xl/workbook.xml", w -> writeWorkbook(w, pairs.size()));
+            writeEntry(out, "xl/_rels/workbook.xml.rels", w -> writeWorkbookRelationships(w, pairs.size()));
+            writeEntry(out, "xl/styles.xml", this::writeStyles);
+            writeEntry(out, "xl/worksheets/sheet1.xml", w -> writeSummarySheet(w, bResult));
+            for (int i = 0; i < pairs.size(); i++) {
+                Pair<String> pair = pairs.get(i);
+                writeEntry(out, "xl/worksheets/sheet" + (i + 2) + ".xml",
+                        w -> writeDiffSheet(w, pair, bResult.sResults.get(pair)));
+            }
+            
+        } catch (Exception e) {
+            throw new ApplicationException("差分箇所の一覧ブックの作成に失敗しました。\n" + target, e);
+        }
+    }
+    
+    private void writeEntry(XSSFZipWriter out, String name, EntryContent content)
+            throws IOException, XMLStreamException {
+        
+        assert out != null;
+        assert name != null;
+        assert content != null;
+        
+        try (OutputStream os = new BufferedOutputStream(out.newEntry(name))) {
+            XMLStreamWriter writer = outFactory.createXMLStreamWriter(os, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            content.write(writer);
+            writer.writeEndDocument();
+            writer.close();
+        }
+    }
+    
+    private void writeContentTypes(XMLStreamWriter writer, int pairs) throws XMLStreamException {
+        writer.writeStartElement("Types");
+        writer.writeDefaultNamespace(NS_CONTENT_TYPES);
+        
+        writer.writeEmptyElement("Default");
+        writer.writeAttribute("Extension", "rels");
+        writer.writeAttribute("ContentType", "application/vnd.openxmlformats-package.relationships+xml");
+        writer.writeEmptyElement("Default");
+        writer.writeAttribute("Extension", "xml");
+        writer.writeAttribute("ContentType", "application/xml");
+        
+        writer.writeEmptyElement("Override");
+        writer.writeAttribute("PartName", "/xl/workbook.xml");
+        writer.writeAttribute("ContentType", CONTENT_TYPE + "sheet.main+xml");
+        writer.writeEmptyElement("Override");
+        writer.writeAttribute("PartName", "/xl/styles.xml");
+        writer.writeAttribute("ContentType", CONTENT_TYPE + "styles+xml");
+        for (int i = 0; i <= pairs; i++) {
+            writer.writeEmptyElement("Override");
+            writer.writeAttribute("PartName", "/xl/worksheets/sheet" + (i + 1) + ".xml");
+            writer.writeAttribute("ContentType", CONTENT_TYPE + "worksheet+xml");
+        }
+        
+        writer.writeEndElement();
+    }
+    
+    private void writeRootRelationships(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("Relationships");
+        writer.writeDefaultNamespace(NS_PACKAGE_RELATIONSHIPS);
+        
+        writer.writeEmptyElement("Relationship");
+        writer.writeAttribute("Id", "rId1");
+        writer.writeAttribute("Type", NS_RELATIONSHIPS + "/officeDocument");
+        writer.writeAttribute("Target", "xl/workbook.xml");
+        
+        writer.writeEndElement();
+    }
+    
+    private void writeWorkbook(XMLStreamWriter writer, int pairs) throws XMLStreamException {
+        writer.writeStartElement("workbook");
+        writer.writeDefaultNamespace(NS_MAIN);
+        writer.writeNamespace("r", NS_RELATIONSHIPS);
+        
+        writer.writeStartElement("sheets");
+        for (int i = 0; i <= pairs; i++) {
+            writer.writeEmptyElement("sheet");
+            writer.writeAttribute("name", i == 0 ? SUMMARY_SHEET_NAME : diffSheetName(i - 1));
+            writer.writeAttribute("sheetId", Integer.toString(i + 1));
+            writer.writeAttribute("r", NS_RELATIONSHIPS, "id", "rId" + (i + 1));
+        }
+        writer.writeEndElement();
+        
+        writer.writeEndElement();
+    }
+    
+    private void writeWorkbookRelationships(XMLStreamWriter writer, int pairs) throws XMLStreamException {
+        writer.writeStartElement("Relationships");
+        writer.writeDefaultNamespace(NS_PACKAGE_RELATIONSHIPS);
+        
+        for (int i = 0; i <= pairs; i++) {
+            writer.writeEmptyElement("Relationship");
+            writer.writeAttribute("Id", "rId" + (i + 1));
+            writer.writeAttribute("Type", NS_RELATIONSHIPS + "/worksheet");
+            writer.writeAttribute("Target", "worksheets/sheet" + (i + 1) + ".xml");
+        }
+        writer.writeEmptyElement("Relationship");
+        writer.writeAttribute("Id", "rId" + (pairs + 2));
+        writer.writeAttribute("Type", NS_RELATIONSHIPS + "/styles");
+        writer.writeAttribute("Target", "styles.xml");
+        
+        writer.writeEndElement();
+    }
+    
+    private void writeStyles(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("styleSheet");
+        writer.writeDefaultNamespace(NS_MAIN);
+        
+        writer.writeStartElement("fonts");
+        writer.writeAttribute("count", "2");
+        for (boolean bold : new boolean[] { false, true }) {
+            writer.writeStartElement("font");
+            if (bold) {
+                writer.writeEmptyElement("b");
+            }
+            writer.writeEmptyElement("sz");
+            writer.writeAttribute("val", "11");
+            writer.writeEmptyElement("name");
+            writer.writeAttribute("val", "游ゴシック");
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        
+        writer.writeStartElement("fills");
+        writer.writeAttribute("count", "4");
+        for (String pattern : new String[] { "none", "gray125" }) {
+            writer.writeStartElement("fill");
+            writer.writeEmptyElement("patternFill");
+            writer.writeAttribute("patternType", pattern);
+            writer.writeEndElement();
+        }
+        for (short color : new short[] { redundantColor, diffColor }) {
+            writer.writeStartElement("fill");
+            writer.writeStartElement("patternFill");
+            writer.writeAttribute("patternType", "solid");
+            writer.writeEmptyElement("fgColor");
+            writer.writeAttribute("indexed", Short.toString(color));
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        
+        writer.writeStartElement("borders");
+        writer.writeAttribute("count", "1");
+        writer.writeStartElement("border");
+        for (String side : new String[] { "left", "right", "top", "bottom", "diagonal" }) {
+            writer.writeEmptyElement(side);
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+        
+        writer.writeStartElement("cellStyleXfs");
+        writer.writeAttribute("count", "1");
+        writeXf(writer, 0, 0, false);
+        writer.writeEndElement();
+        
+        // 書式のインデックスは STYLE_HEADER, STYLE_REDUNDANT, STYLE_DIFF と対応させる。
+        writer.writeStartElement("cellXfs");
+        writer.writeAttribute("count", "4");
+        writeXf(writer, 0, 0, true);
+        writeXf(writer, 1, 0, true);
+        writeXf(writer, 0, 2, true);
+        writeXf(writer, 0, 3, true);
+        writer.writeEndElement();
+        
+        writer.writeStartElement("cellStyles");
+        writer.writeAttribute("count", "1");
+        writer.writeEmptyElement("cellStyle");
+        writer.writeAttribute("name", "Normal");
+        writer.writeAttribute("xfId", "0");
+        writer.writeAttribute("builtinId", "0");
+        writer.writeEndElement();
+        
+        writer.writeEndElement();
+    }
+    
+    private void writeXf(XMLStreamWriter writer, int fontId, int fillId, boolean cellXf) throws XMLStreamException {
+        writer.writeEmptyElement("xf");
+        writer.writeAttribute("numFmtId", "0");
+        writer.writeAttribute("fontId", Integer.toString(fontId));
+        writer.writeAttribute("fillId", Integer.toString(fillId));
+        writer.writeAttribute("borderId", "0");
+        if (cellXf) {
+            writer.writeAttribute("xfId", "0");
+            if (fontId != 0) {
+                writer.writeAttribute("applyFont", "1");
+            }
+            if (fillId != 0) {
+                writer.writeAttribute("applyFill", "1");
+            }
+        }
+    }
+    
+    private void writeSummarySheet(XMLStreamWriter writer, BResult bResult) throws XMLStreamException {
+        startWorksheet(writer, 30, 30, 10, 10, 10, 10, 10, 12);
+        
+        writeLabeledRow(writer, 0, "ブックA", bResult.files.a().getPath());
+        writeLabeledRow(writer, 1, "ブックB", bResult.files.b().getPath());
+        writeHeaderRow(writer, 3, "シートA", "シートB", "余剰行A", "余剰行B", "余剰列A", "余剰列B", "差分セル", "一覧シート");
+        
+        int row = 4;
+        int paired = 0;
+        for (Pair<String> pair : bResult.sheetNamePairs) {
+            startRow(writer, row);
+            writeCell(writer, row, 0, pair.aOrElse(NONE), 0);
+            writeCell(writer, row, 1, pair.bOrElse(NONE), 0);
+            if (pair.isPaired()) {
+                Pair<Piece> pieces = bResult.sResults.get(pair).pieces;
+                writeNumberCell(writer, row, 2, pieces.a().redundantRows.size());
+                writeNumberCell(writer, row, 3, pieces.b().redundantRows.size());
+                writeNumberCell(writer, row, 4, pieces.a().redundantColumns.size());
+                writeNumberCell(writer, row, 5, pieces.b().redundantColumns.size());
+                writeNumberCell(writer, row, 6, pieces.a().diffCells.size());
+                writeCell(writer, row, 7, diffSheetName(paired++), 0);
+            }
+            writer.writeEndElement();
+            row++;
+        }
+        
+        endWorksheet(writer);
+    }
+    
+    private void writeDiffSheet(XMLStreamWriter writer, Pair<String> pair, SResult sResult)
+            throws XMLStreamException {
+        
+        startWorksheet(writer, 12, 10, 40, 10, 40);
+        
+        writeLabeledRow(writer, 0, "シートA", pair.a());
+        writeLabeledRow(writer, 1, "シートB", pair.b());
+        writeHeaderRow(writer, 3, "種別", "位置A", "値A", "位置B", "値B");
+        
+        // 差分箇所の数が多い場合に備えて、シートの最大行数に達したら以降を省略する。
+        int row = 4;
+        for (Side side : Side.values()) {
+            int col = side == Side.A ? 1 : 3;
+            for (int i : sResult.pieces.get(side).redundantRows) {
+                if (MAX_ROWS - 1 <= row) {
+                    break;
+                }
+                startRow(writer, row);
+                writeCell(writer, row, 0, "余剰行", 0);
+                writeCell(writer, row, col, "行" + (i + 1), 0);
+                writeCell(writer, row, col + 1, null, STYLE_REDUNDANT);
+                writer.writeEndElement();
+                row++;
+            }
+            for (int j : sResult.pieces.get(side).redundantColumns) {
+                if (MAX_ROWS - 1 <= row) {
+                    break;
+                }
+                startRow(writer, row);
+                writeCell(writer, row, 0, "余剰列", 0);
+                writeCell(writer, row, col, CellReplica.getColumnName(j) + "列", 0);
+                writeCell(writer, row, col + 1, null, STYLE_REDUNDANT);
+                writer.writeEndElement();
+                row++;
+            }
+        }
+        
+        List<CellReplica> cellsA = sResult.pieces.a().diffCells;
+        List<CellReplica> cellsB = sResult.pieces.b().diffCells;
+        for (int i = 0; i < cellsA.size() && row < MAX_ROWS - 1; i++) {
+            startRow(writer, row);
+            writeCell(writer, row, 0, "差分セル", 0);
+            writeCell(writer, row, 1, cellsA.get(i).address(), 0);
+            writeCell(writer, row, 2, cellsA.get(i).value(), STYLE_DIFF);
+            writeCell(writer, row, 3, cellsB.get(i).address(), 0);
+            writeCell(writer, row, 4, cellsB.get(i).value(), STYLE_DIFF);
+            writer.writeEndElement();
+            row++;
+        }
+        
+        int total = 4 + cellsA.size();
+        for (Side side : Side.values()) {
+            Piece piece = sResult.pieces.get(side);
+            total += piece.redundantRows.size() + piece.redundantColumns.size();
+        }
+        if (row < total) {
+            startRow(writer, row);
+            writeCell(writer, row, 0, "（シートの最大行数に達したため、以降の差分箇所は省略しました）", 0);
+            writer.writeEndElement();
+        }
+        
+        endWorksheet(writer);
+    }
+    
+    private void startWorksheet(XMLStreamWriter writer, int... widths) throws XMLStreamException {
+        writer.writeStartElement("worksheet");
+        writer.writeDefaultNamespace(NS_MAIN);
+        
+        writer.writeStartElement("cols");
+        for (int i = 0; i < widths.length; i++) {
+            writer.writeEmptyElement("col");
+            writer.writeAttribute("min", Integer.toString(i + 1));
+            writer.writeAttribute("max", Integer.toString(i + 1));
+            writer.writeAttribute("width", Integer.toString(widths[i]));
+            writer.writeAttribute("customWidth", "1");
+        }
+        writer.writeEndElement();
+        
+        writer.writeStartElement("sheetData");
+    }
+    
+    private void endWorksheet(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+    
+    private void startRow(XMLStreamWriter writer, int row) throws XMLStreamException {
+        writer.writeStartElement("row");
+        writer.writeAttribute("r", Integer.toString(row + 1));
+    }
+    
+    private void writeLabeledRow(XMLStreamWriter writer, int row, String label, String value)
+            throws XMLStreamException {
+        
+        startRow(writer, row);
+        writeCell(writer, row, 0, label, STYLE_HEADER);
+        writeCell(writer, row, 1, value, 0);
+        writer.writeEndElement();
+    }
+    
+    private void writeHeaderRow(XMLStreamWriter writer, int row, String... labels) throws XMLStreamException {
+        startRow(writer, row);
+        for (int i = 0; i < labels.length; i++) {
+            writeCell(writer, row, i, labels[i], STYLE_HEADER);
+        }
+        writer.writeEndElement();
+    }
+    
+    /**
+     * 文字列をインライン文字列として持つセルを書き出します。<br>
+     * 値が {@code null} または空文字列の場合は、書式だけを持つセルを書き出します。<br>
+     */
+    private void writeCell(XMLStreamWriter writer, int row, int col, String value, int style)
+            throws XMLStreamException {
+        
+        boolean hasValue = value != null && !value.isEmpty();
+        if (!hasValue && style == 0) {
+            return;
+        }
+        
+        if (hasValue) {
+            writer.writeStartElement("c");
+        } else {
+            writer.writeEmptyElement("c");
+        }
+        writer.writeAttribute("r", CellReplica.getAddress(row, col));
+        if (style != 0) {
+            writer.writeAttribute("s", Integer.toString(style));
+        }
+        if (hasValue) {
+            writer.writeAttribute("t", "inlineStr");
+            writer.writeStartElement("is");
+            writer.writeStartElement("t");
+            if (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+                writer.writeAttribute("xml", XMLConstants.XML_NS_URI, "space", "preserve");
+            }
+            writer.writeCharacters(escape(value));
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+    }
+    
+    private void writeNumberCell(XMLStreamWriter writer, int row, int col, int value) throws XMLStreamException {
+        writer.writeStartElement("c");
+        writer.writeAttribute("r", CellReplica.getAddress(row, col));
+        writer.writeStartElement("v");
+        writer.writeCharacters(Integer.toString(value));
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+}
@@ -1,13 +1,14 @@
 package xyz.hotchpotch.hogandiff.excel.xssf;
 
 import java.io.InputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -73,7 +74,7 @@ public class XSSFSheetEntryManager {
     
     /**
      * zipファイルとしての.xlsx/.xlsmファイルから次のエントリを読み込み、
-     * シート名とソースエントリのパスのマップを抽出します。<br>
+     * シート名とソースエントリのパスのマップ、および、共有文字列エントリのパスを抽出します。<br>
      * <pre>
      * *.xlsx
      *   +-xl
@@ -91,10 +92,12 @@ public class XSSFSheetEntryManager {
         // [instance members] --------------------------------------------------
         
         private Map<String, String> idToSource;
+        private String sharedStringsSource;
         
         @Override
         public void startDocument() {
             idToSource = new HashMap<>();
+            sharedStringsSource = null;
         }
         
         @Override
@@ -103,13 +106,31 @@ public class XSSFSheetEntryManager {
                 idToSource.put(
                         attributes.getValue("Id"),
                         "xl/" + attributes.getValue("Target"));
+                
+                String type = attributes.getValue("Type");
+                if (type != null && type.endsWith("/sharedStrings")) {
+                    sharedStringsSource = "xl/" + attributes.getValue("Target");
+                }
             }
         }
     }
     
+    /** シート情報をキャッシュするExcelブックの最大数 */
+    private static final int MAX_CACHED_BOOKS = 16;
+    
+    // キーはファイルのパス、サイズ、最終更新日時の組み合わせとし、ファイルが更新された場合は解析し直す。
+    private static final Map<List<Object>, XSSFSheetEntryManager> cache = Collections.synchronizedMap(
+            new LinkedHashMap<List<Object>, XSSFSheetEntryManager>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, XSSFSheetEntryManager> eldest) {
+                    return MAX_CACHED_BOOKS < size();
+                }
+            });
+    
     /**
      * 指定された .xlsx/.xlsm ファイルを読み込んでシート情報を抽出し、
-     * 抽出したシート情報を保持する {@link XSSFSheetEntryManager} オブジェクトを生成して返します。<br>
+     * 抽出したシート情報を保持する {@link XSSFSheetEntryManager} オブジェクトを返します。<br>
+     * ファイルの内容が更新されていない場合は、以前に生成したオブジェクトを再利用します。<br>
      * 
      * @param target 対象のExcelファイル（.xlsx/.xlsm 形式）
      * @return 対象Excelブックのシート情報を保持する新しい {@link XSSFSheetEntryManager} オブジェクト
@@ -118,19 +139,64 @@ public class XSSFSheetEntryManager {
      */
     public static XSSFSheetEntryManager generate(Path target) throws ApplicationException {
         Objects.requireNonNull(target, "target");
+        return generate(target, null);
+    }
+    
+    /**
+     * 指定された .xlsx/.xlsm ファイルを読み込んでシート情報を抽出し、
+     * 抽出したシート情報を保持する {@link XSSFSheetEntryManager} オブジェクトを返します。<br>
+     * ファイルの内容が更新されていない場合は、以前に生成したオブジェクトを再利用します。
+     * シート情報を抽出する必要がある場合は、呼出し元が開いているzipリーダーを使用します。<br>
+     * 
+     * @param target 対象のExcelファイル（.xlsx/.xlsm 形式）
+     * @param zip 対象のExcelファイルのzipリーダー（{@code null} の場合は必要に応じてこのメソッドの中で開いて閉じる）
+     * @return 対象Excelブックのシート情報を保持する {@link XSSFSheetEntryManager} オブジェクト
+     * @throws ApplicationException 処理に失敗した場合
+     * @since 0.5.0
+     */
+    /*package*/ static XSSFSheetEntryManager generate(Path target, XSSFZipReader zip) throws ApplicationException {
+        assert target != null;
+        
+        List<Object> key;
+        try {
+            Path path = target.toAbsolutePath().normalize();
+            long size = Files.size(path);
+            FileTime lastModified = Files.getLastModifiedTime(path);
+            key = Arrays.asList(path, size, lastModified);
+        } catch (Exception e) {
+            throw new ApplicationException("Excelブックの解析に失敗しました。\n" + target.toString(), e);
+        }
+        
+        XSSFSheetEntryManager manager = cache.get(key);
+        if (manager == null) {
+            if (zip != null) {
+                manager = parse(target, zip);
+            } else {
+                try (XSSFZipReader opened = XSSFUtils.openZip(target.toFile())) {
+                    manager = parse(target, opened);
+                }
+            }
+            cache.put(key, manager);
+        }
+        return manager;
+    }
+    
+    private static XSSFSheetEntryManager parse(Path target, XSSFZipReader zip) throws ApplicationException {
+        assert target != null;
+        assert zip != null;
         
-        try (FileSystem fs = FileSystems.newFileSystem(target, null)) {
+        try {
             Handler1 handler1 = new Handler1();
             Handler2 handler2 = new Handler2();
             
-            try (InputStream is = Files.newInputStream(fs.getPath("xl/workbook.xml"))) {
+            try (InputStream is = zip.getInputStream("xl/workbook.xml")) {
                 InputSource source = new InputSource(is);
                 XMLReader parser = XMLReaderFactory.createXMLReader();
                 parser.setContentHandler(handler1);
                 parser.parse(source);
             }
             
-            try (InputStream is = Files.newInputStream(fs.getPath("xl/_rels/workbook.xml.rels"))) {
+            try (InputStream is = zip.getInputStream("xl/_rels/workbook.xml.rels")) {
                 InputSource source = new InputSource(is);
                 XMLReader parser = XMLReaderFactory.createXMLReader();
                 parser.setContentHandler(handler2);
@@ -140,10 +206,11 @@ public class XSSFSheetEntryManager {
             return new XSSFSheetEntryManager(
                     handler1.names,
                     handler1.nameToId,
-                    handler2.idToSource);
+                    handler2.idToSource,
+                    handler2.sharedStringsSource);
             
         } catch (Exception e) {
-            throw new ApplicationException("Excelブックの解析に失敗しました。\n" + target.toString());
+            throw new ApplicationException("Excelブックの解析に失敗しました。\n" + target.toString(), e);
         }
     }
     
@@ -152,11 +219,13 @@ public class XSSFSheetEntryManager {
     private final List<String> names;
     private final Map<String, String> nameToId;
     private final Map<String, String> idToSource;
+    private final String sharedStringsSource;
     
     private XSSFSheetEntryManager(
             List<String> names,
             Map<String, String> nameToId,
-            Map<String, String> idToSource) {
+            Map<String, String> idToSource,
+            String sharedStringsSource) {
         
         assert names != null;
         assert nameToId != null;
@@ -168,6 +237,7 @@ public class XSSFSheetEntryManager {
         this.names = Collections.unmodifiableList(new ArrayList<>(names));
         this.nameToId = Collections.unmodifiableMap(new HashMap<>(nameToId));
         this.idToSource = Collections.unmodifiableMap(new HashMap<>(idToSource));
+        this.sharedStringsSource = sharedStringsSource;
     }
     
     /**
@@ -219,4 +289,29 @@ public class XSSFSheetEntryManager {
         return Optional.ofNullable(idToSource.get(id))
                 .orElseThrow(() -> new AssertionError("id: " + id));
     }
+    
+    /**
+     * シートIdに対応するソースエントリを返します。<br>
+     * 
+     * @param id シートId
+     * @return シートIdに対応するソースエントリ
+     * @throws NullPointerException {@code id} が {@code null} の場合
+     * @throws NoSuchElementException {@code id} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    public String getSourceById(String id) {
+        Objects.requireNonNull(id, "id");
+        return Optional.ofNullable(nameToId.containsValue(id) ? idToSource.get(id) : null)
+                .orElseThrow(() -> new NoSuchElementException("id: " + id));
+    }
+    
+    /**
+     * 共有文字列エントリを返します。<br>
+     * 
+     * @return 共有文字列エントリ。Excelブックが共有文字列を持たない場合は空の {@link Optional}
+     * @since 0.5.0
+     */
+    public Optional<String> getSharedStringsSource() {
+        return Optional.ofNullable(sharedStringsSource);
+    }
 }
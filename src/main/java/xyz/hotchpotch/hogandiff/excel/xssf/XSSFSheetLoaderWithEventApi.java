@@ -4,26 +4,28 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.openxml4j.opc.PackageAccess;
-import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.SharedStringsTable;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.common.Pair;
 import xyz.hotchpotch.hogandiff.excel.BookType;
 import xyz.hotchpotch.hogandiff.excel.CellReplica;
 import xyz.hotchpotch.hogandiff.excel.ExcelUtils;
 import xyz.hotchpotch.hogandiff.excel.SheetLoader;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
 
 /**
  * XSSF（.xlsx, .xlsm）形式のExcelブックからPOIのイベントモデルAPIを使用してシートデータを読み込むための
@@ -83,6 +85,20 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
         
     }
     
+    /**
+     * 読み込み対象範囲の最終行を過ぎたため、シートデータの解析を打ち切ることを表す例外です。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    @SuppressWarnings("serial")
+    private static class LoadingCompleted extends SAXException {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+    }
+    
     private static class XSSFSheetLoadingHandler extends DefaultHandler {
         
         // [static members] ----------------------------------------------------
@@ -90,60 +106,135 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
         // [instance members] --------------------------------------------------
         
         private final boolean extractCachedValue;
-        private final SharedStringsTable table;
+        private final SheetRegion region;
+        private final List<String> sst;
+        private final Consumer<? super CellReplica> consumer;
         
-        private Set<CellReplica> result;
-        private String address;
+        private int row;
+        private int column;
+        private boolean skipRow;
+        private boolean skipCell;
         private CellType type;
         private String value;
         private boolean getNextString;
+        private boolean inFormula;
+        private boolean inPhonetic;
+        private SharedFormulaResolver formulas;
+        private String sharedIndex;
+        private boolean isMaster;
         
         /**
          * コンストラクタ。<br>
          * 
          * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
-         * @param table 読込対象のExcelブックの {@link SharedStringsTable} オブジェクト
+         * @param region 読み込み対象の範囲
+         * @param sst 読込対象のExcelブックの共有文字列のリスト
+         * @param consumer 読み込んだセルデータを受け取るコンシューマ
          */
-        private XSSFSheetLoadingHandler(boolean extractCachedValue, SharedStringsTable table) {
+        private XSSFSheetLoadingHandler(
+                boolean extractCachedValue,
+                SheetRegion region,
+                List<String> sst,
+                Consumer<? super CellReplica> consumer) {
+            
             super();
             
-            assert table != null;
+            assert region != null;
+            assert sst != null;
+            assert consumer != null;
             
             this.extractCachedValue = extractCachedValue;
-            this.table = table;
+            this.region = region;
+            this.sst = sst;
+            this.consumer = consumer;
         }
         
         @Override
         public void startDocument() {
-            result = new HashSet<>();
-            
-            address = null;
+            row = -1;
+            column = -1;
+            skipRow = false;
+            skipCell = false;
             type = null;
             value = null;
             getNextString = false;
+            inFormula = false;
+            inPhonetic = false;
+            formulas = extractCachedValue ? null : SharedFormulaResolver.of();
+            sharedIndex = null;
+            isMaster = false;
         }
         
         @Override
-        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            
             assert uri != null;
             assert localName != null;
             assert qName != null;
             assert attributes != null;
             
             switch (qName) {
+            case "row":
+                // r 属性は省略可能であり、省略された場合は直前の行の次の行を表す。
+                String r = attributes.getValue("r");
+                row = (r == null ? row + 1 : Integer.parseInt(r) - 1);
+                column = -1;
+                if (region.lastRow() < row) {
+                    // 行は昇順に並ぶため、これ以降に読み込み対象のセルは存在しない。
+                    throw new LoadingCompleted();
+                }
+                skipRow = !region.containsRow(row);
+                getNextString = false;
+                break;
+            
             case "c":
-                address = attributes.getValue("r");
-                assert address != null;
-                type = CellType.of(attributes.getValue("t"));
+                skipCell = skipRow;
+                // 数式文字列を取得する場合は、共有数式のマスタセルを登録するために範囲外のセルの位置も求める。
+                if (!skipCell || !extractCachedValue) {
+                    String address = attributes.getValue("r");
+                    if (address == null) {
+                        column++;
+                    } else {
+                        Pair<Integer> idx = CellReplica.getIndex(address);
+                        row = idx.a();
+                        column = idx.b();
+                    }
+                    skipCell = skipCell || !region.contains(row, column);
+                }
+                type = skipCell ? null : CellType.of(attributes.getValue("t"));
                 getNextString = false;
                 break;
             
             case "f":
-                getNextString = !extractCachedValue;
+                sharedIndex = null;
+                isMaster = false;
+                if (!extractCachedValue && "shared".equals(attributes.getValue("t"))) {
+                    sharedIndex = attributes.getValue("si");
+                    isMaster = attributes.getValue("ref") != null;
+                }
+                // 範囲外のセルであっても、共有数式のマスタセルの数式文字列は読み込む。
+                getNextString = !extractCachedValue && (!skipCell || isMaster);
+                inFormula = getNextString;
                 break;
             
             case "v":
-                getNextString = (value == null);
+                getNextString = !skipCell && (value == null);
+                break;
+            
+            case "t":
+                // インライン文字列は is 要素配下の t 要素の連結とする。
+                // ただし、rPh 要素配下の t 要素（ふりがな）はセルの値に含めない。
+                getNextString = !skipCell && type == CellType.inlineStr && !inPhonetic;
+                if (getNextString && value == null) {
+                    // 空の t 要素は空文字列のセルとして扱う。
+                    value = "";
+                }
+                break;
+            
+            case "rPh":
+                inPhonetic = true;
+                getNextString = false;
                 break;
             
             default:
@@ -160,11 +251,17 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
             if (getNextString) {
                 String v = new String(ch, start, length);
                 
+                // 数式文字列はセルの型（数式の計算結果の型）に関わらずそのまま取得する。
+                if (inFormula) {
+                    value = (value == null ? v : value + v);
+                    return;
+                }
+                
                 assert type != null;
                 switch (type) {
                 case s: // shared string
                     int idx = Integer.parseInt(v);
-                    value = new XSSFRichTextString(table.getEntryAt(idx)).toString();
+                    value = sst.get(idx);
                     break;
                 
                 case b: // boolean
@@ -191,15 +288,35 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
             assert localName != null;
             assert qName != null;
             
-            if ("c".equals(qName)) {
-                if (value != null) {
-                    if (type == CellType.e || type == CellType.n || type == CellType.str) {
-                        value = ExcelUtils.normalizeFormula(value);
+            if ("f".equals(qName) && inFormula) {
+                // 標準化の対象は f 要素から取得した数式文字列のみであり、
+                // v 要素から取得したキャッシュ値（文字列型の計算結果など）は標準化しない。
+                if (sharedIndex != null) {
+                    if (isMaster && value != null) {
+                        formulas.register(sharedIndex, row, column, value);
+                    } else if (!isMaster && value == null && formulas.contains(sharedIndex)) {
+                        value = formulas.resolve(sharedIndex, row, column);
                     }
-                    result.add(CellReplica.of(address, value));
                 }
+                if (value != null) {
+                    value = ExcelUtils.normalizeFormula(value);
+                }
+                inFormula = false;
+            }
+            if ("t".equals(qName)) {
+                getNextString = false;
+            }
+            if ("rPh".equals(qName)) {
+                inPhonetic = false;
+            }
+            if ("c".equals(qName)) {
+                if (value != null && !skipCell) {
+                    consumer.accept(CellReplica.of(row, column, value));
+                }
+                sharedIndex = null;
+                isMaster = false;
                 
-                address = null;
+                skipCell = false;
                 type = null;
                 value = null;
             }
@@ -233,15 +350,34 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
      * @return 新しいローダー
      */
     public static XSSFSheetLoaderWithEventApi of(boolean extractCachedValue) {
-        return new XSSFSheetLoaderWithEventApi(extractCachedValue);
+        return new XSSFSheetLoaderWithEventApi(extractCachedValue, SheetRegion.ALL);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込むローダーオブジェクトを生成して返します。<br>
+     * 範囲外の行は {@code row} 要素の単位で読み飛ばし、範囲の最終行を過ぎた時点で読み込みを打ち切ります。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     * @since 0.5.0
+     */
+    public static XSSFSheetLoaderWithEventApi of(boolean extractCachedValue, SheetRegion region) {
+        Objects.requireNonNull(region, "region");
+        return new XSSFSheetLoaderWithEventApi(extractCachedValue, region);
     }
     
     // [instance members] ******************************************************
     
     private final boolean extractCachedValue;
+    private final SheetRegion region;
     
-    private XSSFSheetLoaderWithEventApi(boolean extractCachedValue) {
+    private XSSFSheetLoaderWithEventApi(boolean extractCachedValue, SheetRegion region) {
+        assert region != null;
+        
         this.extractCachedValue = extractCachedValue;
+        this.region = region;
     }
     
     /**
@@ -262,21 +398,132 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
             throw new IllegalArgumentException(book.getName());
         }
         
-        try (OPCPackage pkg = OPCPackage.open(book, PackageAccess.READ)) {
-            XSSFReader reader = new XSSFReader(pkg);
-            SharedStringsTable table = reader.getSharedStringsTable();
-            XSSFSheetLoadingHandler handler = new XSSFSheetLoadingHandler(extractCachedValue, table);
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadSheetById(book, relId, zip, manager);
+        }
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートの {@code <dimension>} 要素を読み込み、
+     * シートの統計情報を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code relId} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    public Optional<SheetStats> loadStatsById(File book, String relId) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(relId, "relId");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        return XSSFUtils.loadStatsById(book, relId);
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートのデータを読み込み、
+     * セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * セルデータはシートのデータに格納されている順序（行優先の順序）で渡されます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code relId}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    public void loadSheetById(File book, String relId, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(relId, "relId");
+        Objects.requireNonNull(consumer, "consumer");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            loadSheetById(book, relId, zip, manager, consumer);
+        }
+    }
+    
+    /**
+     * 呼出し元が開いているzipリーダーを使用して、relId で指定されたシートのデータを読み込みます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param zip 対象のExcelブックのzipリーダー
+     * @param manager 対象のExcelブックのシート情報
+     * @return シートに含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    private Set<CellReplica> loadSheetById(
+            File book,
+            String relId,
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager)
+            throws ApplicationException {
+        
+        // 何度も再ハッシュが行われることのないように、シートの使用範囲からセットの初期容量を見積もる。
+        Set<CellReplica> cells = XSSFUtils.loadStatsById(book, relId, zip, manager)
+                .map(stats -> stats.newCellSet(region))
+                .orElseGet(HashSet::new);
+        loadSheetById(book, relId, zip, manager, cells::add);
+        return cells;
+    }
+    
+    /**
+     * 呼出し元が開いているzipリーダーを使用して、relId で指定されたシートのデータを読み込み、
+     * セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param zip 対象のExcelブックのzipリーダー
+     * @param manager 対象のExcelブックのシート情報
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    private void loadSheetById(
+            File book,
+            String relId,
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager,
+            Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        assert book != null;
+        assert relId != null;
+        assert zip != null;
+        assert manager != null;
+        assert consumer != null;
+        
+        String source = manager.getSourceById(relId);
+        
+        try {
+            List<String> sst = XSSFUtils.readSharedStrings(zip, manager);
+            XSSFSheetLoadingHandler handler = new XSSFSheetLoadingHandler(
+                    extractCachedValue, region, sst, consumer);
             XMLReader parser = XMLReaderFactory.createXMLReader();
             parser.setContentHandler(handler);
             
-            try (InputStream sheetData = reader.getSheet(relId)) {
+            try (InputStream sheetData = zip.getInputStream(source)) {
                 InputSource sheetSource = new InputSource(sheetData);
                 parser.parse(sheetSource);
-                return handler.result;
+            } catch (LoadingCompleted e) {
+                // 読み込み対象範囲の最終行を過ぎたため、解析を打ち切った。
             }
-        } catch (IllegalArgumentException e) {
-            throw new NoSuchElementException(
-                    String.format("book: %s, relId: %s", book.getPath(), relId));
         } catch (Exception e) {
             String msg = String.format("シートの読み込みに失敗しました。book:%s, relId:%s",
                     book.getPath(), relId);
@@ -299,8 +546,55 @@ public class XSSFSheetLoaderWithEventApi implements SheetLoader {
             throw new IllegalArgumentException(book.getName());
         }
         
-        XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath());
-        String relId = manager.getIdByName(sheetName);
-        return loadSheetById(book, relId);
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadSheetById(book, manager.getIdByName(sheetName), zip, manager);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、シートデータ全体をメモリ上に保持せずに、読み込みと並行してセルデータをコンシューマに渡します。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public void loadSheet(File book, String sheetName, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(consumer, "consumer");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            loadSheetById(book, manager.getIdByName(sheetName), zip, manager, consumer);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、sheet#.xml エントリの先頭にある {@code <dimension>} 要素から統計情報を読み込みます。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public Optional<SheetStats> loadStats(File book, String sheetName) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        return XSSFUtils.loadStats(book, sheetName);
     }
 }
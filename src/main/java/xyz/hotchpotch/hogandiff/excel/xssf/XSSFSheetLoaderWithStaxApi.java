@@ -0,0 +1,1134 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.excel.BookType;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.ExcelUtils;
+import xyz.hotchpotch.hogandiff.excel.SheetLoader;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
+
+/**
+ * XSSF（.xlsx, .xlsm）形式のExcelブックからStAXのカーソルAPI（{@link XMLStreamReader}）を使用して
+ * シートデータを読み込むための {@link SheetLoader} の実装です。<br>
+ * <br>
+ * インライン文字列（{@code t="inlineStr"}、ふりがなを除く）を含めて
+ * {@link XSSFSheetLoaderWithEventApi} と同じシートデータを返しますが、
+ * パーサのファクトリをスレッドごとに使い回し、属性をインデックスで参照し、
+ * 共有文字列のインデックスや真偽値をパーサの文字バッファから直接読み取ることで、
+ * 中間的な文字列オブジェクトの生成を抑えます。<br>
+ * <br>
+ * また、sheet#.xml エントリのサイズが閾値以上の場合は、エントリを一時ファイルに展開したうえで
+ * {@code <row>} 要素の境界で複数のチャンクに分割し、チャンクごとに並列に解析することができます。
+ * 解析結果はチャンクの順に連結されるため、セルデータの順序は逐次的に解析する場合と変わりません。
+ * マスタセルが先行するチャンクに含まれる共有数式のセルも、チャンク内の元の位置で連結されます。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class XSSFSheetLoaderWithStaxApi implements SheetLoader {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 並列解析時に、共有数式のマスタセルが先行するチャンクに含まれるために
+     * チャンク内では数式文字列を展開できなかったセルを表す不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class DeferredCell {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final String si;
+        private final int row;
+        private final int column;
+        private final String fallback;
+        
+        private DeferredCell(String si, int row, int column, String fallback) {
+            assert si != null;
+            
+            this.si = si;
+            this.row = row;
+            this.column = column;
+            this.fallback = fallback;
+        }
+    }
+    
+    /**
+     * 並列解析時の1つのチャンクの解析結果を保持する不変クラスです。<br>
+     * {@link #cells} には、共有数式を展開できなかったセルの位置に {@code null} が置かれ、
+     * そのセルは同じ順序で {@link #deferred} に格納されます。
+     * 解析に失敗した場合は、{@link #failure} に失敗の原因が格納されます。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Chunk {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final List<CellReplica> cells;
+        private final SharedFormulaResolver formulas;
+        private final List<DeferredCell> deferred;
+        private final Exception failure;
+        
+        private Chunk(List<CellReplica> cells, SharedFormulaResolver formulas, List<DeferredCell> deferred) {
+            assert cells != null;
+            assert deferred != null;
+            
+            this.cells = cells;
+            this.formulas = formulas;
+            this.deferred = deferred;
+            this.failure = null;
+        }
+        
+        private Chunk(Exception failure) {
+            assert failure != null;
+            
+            this.cells = Collections.emptyList();
+            this.formulas = null;
+            this.deferred = Collections.emptyList();
+            this.failure = failure;
+        }
+    }
+    
+    private static final ThreadLocal<XMLInputFactory> factory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+    
+    /**
+     * チャンクの解析用にスレッドごとに使い回す {@link XMLInputFactory}<br>
+     * チャンクには名前空間の宣言が含まれないため、名前空間を解釈せずに解析します。<br>
+     */
+    private static final ThreadLocal<XMLInputFactory> chunkFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+    
+    /** 並列解析において、解析スレッド1つあたりに割り当てるチャンクの数 */
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    private static final byte[] SHEET_DATA_START = "<sheetData".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SHEET_DATA_END = "</sheetData>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROW_START = "<row".getBytes(StandardCharsets.US_ASCII);
+    
+    /** このクラスがサポートするブック形式 */
+    private static final Set<BookType> supported = EnumSet.of(BookType.XLSX, BookType.XLSM);
+    
+    /**
+     * このクラスが指定されたファイルの形式をサポートするかを返します。<br>
+     * 
+     * @param file 検査対象のファイル
+     * @return このクラスが指定されたファイルをサポートする場合は {@code true}
+     * @throws NullPointerException {@code file} が {@code null} の場合
+     */
+    public static boolean isSupported(File file) {
+        Objects.requireNonNull(file);
+        return supported.stream()
+                .map(BookType::extension)
+                .anyMatch(file.getName()::endsWith);
+    }
+    
+    /**
+     * ローダーオブジェクトを生成して返します。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @return 新しいローダー
+     */
+    public static XSSFSheetLoaderWithStaxApi of(boolean extractCachedValue) {
+        return new XSSFSheetLoaderWithStaxApi(extractCachedValue, SheetRegion.ALL, 0, null);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込むローダーオブジェクトを生成して返します。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     */
+    public static XSSFSheetLoaderWithStaxApi of(boolean extractCachedValue, SheetRegion region) {
+        Objects.requireNonNull(region, "region");
+        return new XSSFSheetLoaderWithStaxApi(extractCachedValue, region, 0, null);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込み、
+     * サイズが閾値以上の sheet#.xml エントリを並列に解析するローダーオブジェクトを生成して返します。<br>
+     * 並列解析のための一時ファイルはシステムの一時フォルダに作成されます。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @param parallelThreshold 並列に解析する sheet#.xml エントリの展開後の最小サイズ（バイト）。0 以下の場合は並列に解析しない
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region} が {@code null} の場合
+     */
+    public static XSSFSheetLoaderWithStaxApi of(
+            boolean extractCachedValue,
+            SheetRegion region,
+            long parallelThreshold) {
+        
+        Objects.requireNonNull(region, "region");
+        return new XSSFSheetLoaderWithStaxApi(extractCachedValue, region, parallelThreshold, null);
+    }
+    
+    /**
+     * 指定された範囲のセルデータのみを読み込み、
+     * サイズが閾値以上の sheet#.xml エントリを並列に解析するローダーオブジェクトを生成して返します。<br>
+     * 
+     * @param extractCachedValue 数式セルから数式文字列ではなくキャッシュされた計算値を取得する場合は {@code true}
+     * @param region 読み込み対象の範囲
+     * @param parallelThreshold 並列に解析する sheet#.xml エントリの展開後の最小サイズ（バイト）。0 以下の場合は並列に解析しない
+     * @param workDir 並列解析のための一時ファイルを作成するフォルダ（存在しない場合は作成されます）
+     * @return 新しいローダー
+     * @throws NullPointerException {@code region}, {@code workDir} のいずれかが {@code null} の場合
+     */
+    public static XSSFSheetLoaderWithStaxApi of(
+            boolean extractCachedValue,
+            SheetRegion region,
+            long parallelThreshold,
+            Path workDir) {
+        
+        Objects.requireNonNull(region, "region");
+        Objects.requireNonNull(workDir, "workDir");
+        return new XSSFSheetLoaderWithStaxApi(extractCachedValue, region, parallelThreshold, workDir);
+    }
+    
+    /**
+     * バッファの指定された範囲から指定されたバイト列を検索し、最初に見つかった位置を返します。<br>
+     * 
+     * @param buffer 検索対象のバッファ
+     * @param target 検索するバイト列
+     * @param from 検索範囲の開始位置
+     * @param to 検索範囲の終了位置（この位置は含まない）
+     * @return 見つかった位置。見つからない場合は {@code -1}
+     */
+    private static int indexOf(ByteBuffer buffer, byte[] target, int from, int to) {
+        assert buffer != null;
+        assert target != null;
+        
+        outer: for (int i = from; i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (buffer.get(i + j) != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * バッファの指定された範囲から指定されたバイト列を後方から検索し、最後に見つかった位置を返します。<br>
+     * 
+     * @param buffer 検索対象のバッファ
+     * @param target 検索するバイト列
+     * @param from 検索範囲の開始位置
+     * @param to 検索範囲の終了位置（この位置は含まない）
+     * @return 見つかった位置。見つからない場合は {@code -1}
+     */
+    private static int lastIndexOf(ByteBuffer buffer, byte[] target, int from, int to) {
+        assert buffer != null;
+        assert target != null;
+        
+        outer: for (int i = to - target.length; from <= i; i--) {
+            for (int j = 0; j < target.length; j++) {
+                if (buffer.get(i + j) != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * バッファの指定された範囲から {@code <row>} 要素の開始タグを検索し、最初に見つかった位置を返します。<br>
+     * 属性を持たない {@code <row>} や、要素名の直後が空白文字や改行の開始タグも検索の対象とします。<br>
+     * 
+     * @param buffer 検索対象のバッファ
+     * @param from 検索範囲の開始位置
+     * @param to 検索範囲の終了位置（この位置は含まない）
+     * @return 見つかった位置。見つからない場合は {@code -1}
+     */
+    private static int indexOfRow(ByteBuffer buffer, int from, int to) {
+        assert buffer != null;
+        
+        int pos = from;
+        while ((pos = indexOf(buffer, ROW_START, pos, to - 1)) != -1) {
+            byte next = buffer.get(pos + ROW_START.length);
+            if (next == '>' || next == '/' || isWhitespace(next)) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+    
+    /**
+     * 指定された位置から始まる {@code <row>} 要素の開始タグが r 属性を持つかを返します。<br>
+     * 
+     * @param buffer 検査対象のバッファ
+     * @param pos {@code <row>} 要素の開始タグの位置
+     * @param to 検査範囲の終了位置（この位置は含まない）
+     * @return r 属性を持つ場合は {@code true}
+     */
+    private static boolean hasRowIndex(ByteBuffer buffer, int pos, int to) {
+        assert buffer != null;
+        
+        for (int i = pos + ROW_START.length; i < to - 1; i++) {
+            byte b = buffer.get(i);
+            if (b == '>') {
+                return false;
+            }
+            if (b == 'r' && isWhitespace(buffer.get(i - 1))
+                    && (buffer.get(i + 1) == '=' || isWhitespace(buffer.get(i + 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+    
+    /**
+     * sheet#.xml エントリの内容を {@code <row>} 要素の境界で分割し、各チャンクの境界位置を返します。<br>
+     * 最初のチャンクは {@code <sheetData>} 要素の開始タグの直後から始まるため、
+     * 先頭の {@code <row>} 要素の書式に関わらず全ての行が含まれます。
+     * 2番目以降のチャンクの先頭の {@code <row>} 要素が r 属性を持たない場合など、
+     * 行インデックスを各チャンクから独立に決定できない場合は {@code null} を返します。<br>
+     * 
+     * @param buffer sheet#.xml エントリの内容
+     * @param chunks 分割数の目安
+     * @return 境界位置の配列（先頭はチャンク1の開始位置、末尾は最終チャンクの終了位置）。分割できない場合は {@code null}
+     */
+    /*package*/ static int[] split(ByteBuffer buffer, int chunks) {
+        assert buffer != null;
+        assert 0 < chunks;
+        
+        int limit = buffer.limit();
+        int sheetData = indexOf(buffer, SHEET_DATA_START, 0, limit);
+        if (sheetData == -1) {
+            return null;
+        }
+        int start = sheetData + SHEET_DATA_START.length;
+        while (start < limit && buffer.get(start) != '>') {
+            start++;
+        }
+        start++;
+        int end = lastIndexOf(buffer, SHEET_DATA_END, sheetData, limit);
+        if (limit < start || end < start) {
+            // 空の要素（<sheetData/>）など
+            return null;
+        }
+        
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(start);
+        for (int i = 1; i < chunks; i++) {
+            int pos = start + (int) ((long) (end - start) * i / chunks);
+            pos = Math.max(pos, bounds.get(bounds.size() - 1) + 1);
+            int next = pos < end ? indexOfRow(buffer, pos, end) : -1;
+            if (next == -1) {
+                break;
+            }
+            if (!hasRowIndex(buffer, next, end)) {
+                return null;
+            }
+            bounds.add(next);
+        }
+        bounds.add(end);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    /**
+     * 文字バッファ上の10進数の文字列を {@code int} 値として読み取ります。<br>
+     * 
+     * @param ch 文字バッファ
+     * @param start 開始位置
+     * @param length 長さ
+     * @return 読み取った値
+     * @throws NumberFormatException 10進数の文字列でない場合
+     */
+    private static int parseInt(char[] ch, int start, int length) {
+        if (length == 0) {
+            throw new NumberFormatException("empty");
+        }
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = ch[i];
+            if (c < '0' || '9' < c) {
+                throw new NumberFormatException(new String(ch, start, length));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    private static int pow10(int n) {
+        int pow = 1;
+        for (int i = 0; i < n; i++) {
+            pow *= 10;
+        }
+        return pow;
+    }
+    
+    /**
+     * セルアドレス（"A1"..）の列部分を列インデックス（0開始）に変換して返します。<br>
+     * 
+     * @param address セルアドレス
+     * @return 列インデックス（0開始）
+     * @throws IllegalArgumentException {@code address} の値が不正な場合
+     */
+    private static int parseColumn(String address) {
+        int column = 0;
+        int i = 0;
+        for (; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c < 'A' || 'Z' < c) {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        if (i == 0) {
+            throw new IllegalArgumentException("address: " + address);
+        }
+        return column - 1;
+    }
+    
+    /**
+     * セルアドレス（"A1"..）の行部分を行インデックス（0開始）に変換して返します。<br>
+     * 
+     * @param address セルアドレス
+     * @return 行インデックス（0開始）
+     * @throws IllegalArgumentException {@code address} の値が不正な場合
+     */
+    private static int parseRow(String address) {
+        int row = 0;
+        int i = 0;
+        while (i < address.length() && 'A' <= address.charAt(i) && address.charAt(i) <= 'Z') {
+            i++;
+        }
+        if (i == address.length()) {
+            throw new IllegalArgumentException("address: " + address);
+        }
+        for (; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c < '0' || '9' < c) {
+                throw new IllegalArgumentException("address: " + address);
+            }
+            row = row * 10 + (c - '0');
+        }
+        return row - 1;
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final boolean extractCachedValue;
+    private final SheetRegion region;
+    private final long parallelThreshold;
+    private final Path workDir;
+    
+    private XSSFSheetLoaderWithStaxApi(
+            boolean extractCachedValue,
+            SheetRegion region,
+            long parallelThreshold,
+            Path workDir) {
+        
+        assert region != null;
+        
+        this.extractCachedValue = extractCachedValue;
+        this.region = region;
+        this.parallelThreshold = parallelThreshold;
+        this.workDir = workDir != null ? workDir : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートのデータを読み込みます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @return シートに含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code relId} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    public Set<CellReplica> loadSheetById(File book, String relId) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(relId, "relId");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadSheetById(book, relId, zip, manager);
+        }
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートの {@code <dimension>} 要素を読み込み、
+     * シートの統計情報を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code relId} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    public Optional<SheetStats> loadStatsById(File book, String relId) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(relId, "relId");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        return XSSFUtils.loadStatsById(book, relId);
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートのデータを読み込み、
+     * セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * セルデータはシートのデータに格納されている順序（行優先の順序）で渡されます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NullPointerException {@code book}, {code relId}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    public void loadSheetById(File book, String relId, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(relId, "relId");
+        Objects.requireNonNull(consumer, "consumer");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            loadSheetById(book, relId, zip, manager, consumer);
+        }
+    }
+    
+    /**
+     * 呼出し元が開いているzipリーダーを使用して、relId で指定されたシートのデータを読み込みます。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param zip 対象のExcelブックのzipリーダー
+     * @param manager 対象のExcelブックのシート情報
+     * @return シートに含まれるセルデータのセット
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    private Set<CellReplica> loadSheetById(
+            File book,
+            String relId,
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager)
+            throws ApplicationException {
+        
+        // 何度も再ハッシュが行われることのないように、シートの使用範囲からセットの初期容量を見積もる。
+        Set<CellReplica> cells = XSSFUtils.loadStatsById(book, relId, zip, manager)
+                .map(stats -> stats.newCellSet(region))
+                .orElseGet(HashSet::new);
+        loadSheetById(book, relId, zip, manager, cells::add);
+        return cells;
+    }
+    
+    /**
+     * 呼出し元が開いているzipリーダーを使用して、relId で指定されたシートのデータを読み込み、
+     * セルデータを1つずつ指定されたコンシューマに渡します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param zip 対象のExcelブックのzipリーダー
+     * @param manager 対象のExcelブックのシート情報
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     */
+    private void loadSheetById(
+            File book,
+            String relId,
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager,
+            Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        assert book != null;
+        assert relId != null;
+        assert zip != null;
+        assert manager != null;
+        assert consumer != null;
+        
+        String source = manager.getSourceById(relId);
+        
+        try {
+            List<String> sst = XSSFUtils.readSharedStrings(zip, manager);
+            
+            if (0 < parallelThreshold
+                    && parallelThreshold <= zip.getEntry(source).map(XSSFZipReader.EntryInfo::size).orElse(-1)
+                    && loadInParallel(zip, source, sst, consumer)) {
+                return;
+            }
+            
+            try (InputStream sheetData = zip.getInputStream(source)) {
+                XMLStreamReader cursor = factory.get().createXMLStreamReader(sheetData);
+                try {
+                    parse(cursor, sst, extractCachedValue ? null : SharedFormulaResolver.of(), null, consumer);
+                } finally {
+                    cursor.close();
+                }
+            }
+        } catch (Exception e) {
+            String msg = String.format("シートの読み込みに失敗しました。book:%s, relId:%s",
+                    book.getPath(), relId);
+            throw new ApplicationException(msg, e);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public Set<CellReplica> loadSheet(File book, String sheetName) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadSheetById(book, manager.getIdByName(sheetName), zip, manager);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、シートデータ全体をメモリ上に保持せずに、読み込みと並行してセルデータをコンシューマに渡します。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName}, {@code consumer} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public void loadSheet(File book, String sheetName, Consumer<? super CellReplica> consumer)
+            throws ApplicationException {
+        
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        Objects.requireNonNull(consumer, "consumer");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        try (XSSFZipReader zip = XSSFUtils.openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            loadSheetById(book, manager.getIdByName(sheetName), zip, manager, consumer);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <br>
+     * この実装は、sheet#.xml エントリの先頭にある {@code <dimension>} 要素から統計情報を読み込みます。<br>
+     * 
+     * @throws NullPointerException {@code book}, {code sheetName} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code book} のブック形式をこのクラスがサポートしない場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     */
+    @Override
+    public Optional<SheetStats> loadStats(File book, String sheetName) throws ApplicationException {
+        Objects.requireNonNull(book, "book");
+        Objects.requireNonNull(sheetName, "sheetName");
+        if (!isSupported(book)) {
+            throw new IllegalArgumentException(book.getName());
+        }
+        
+        return XSSFUtils.loadStats(book, sheetName);
+    }
+    
+    /**
+     * sheet#.xml エントリを一時ファイルに展開し、{@code <row>} 要素の境界で分割したチャンクを並列に解析して、
+     * 読み込み対象のセルデータをチャンクの順にコンシューマに渡します。<br>
+     * エントリが無圧縮で格納されている場合は、一時ファイルに展開せずにマップされたエントリのデータを直接解析します。<br>
+     * エントリを分割できない場合は、コンシューマに何も渡さずに {@code false} を返します。<br>
+     * 一時ファイルは作業用フォルダに作成し、解析を終えたらマッピングを解除して直ちに削除します。<br>
+     * 
+     * @param zip 読込対象のExcelブックのzipリーダー
+     * @param source 対象シートのソースエントリ
+     * @param sst 読込対象のExcelブックの共有文字列のリスト
+     * @param consumer セルデータを受け取るコンシューマ
+     * @return 並列に解析した場合は {@code true}
+     * @throws Exception 処理に失敗した場合
+     */
+    /*package*/ boolean loadInParallel(
+            XSSFZipReader zip,
+            String source,
+            List<String> sst,
+            Consumer<? super CellReplica> consumer)
+            throws Exception {
+        
+        assert zip != null;
+        assert source != null;
+        assert sst != null;
+        assert consumer != null;
+        
+        if (zip.getEntry(source).map(XSSFZipReader.EntryInfo::method).orElse(-1) == ZipEntry.STORED) {
+            return loadInParallel(zip.getRawData(source), sst, consumer);
+        }
+        
+        Path temp = Files.createTempFile(Files.createDirectories(workDir), "sheet", ".xml");
+        ByteBuffer buffer = null;
+        try {
+            try (InputStream sheetData = zip.getInputStream(source)) {
+                Files.copy(sheetData, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ)) {
+                if (Integer.MAX_VALUE < channel.size()) {
+                    return false;
+                }
+                buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            }
+            return loadInParallel(buffer, sst, consumer);
+            
+        } finally {
+            // マッピングが残っているファイルを削除できない環境（Windows）があるため、先に解除する。
+            XSSFUtils.unmap(buffer);
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private boolean loadInParallel(
+            ByteBuffer buffer,
+            List<String> sst,
+            Consumer<? super CellReplica> consumer) {
+        
+        assert buffer != null;
+        assert sst != null;
+        assert consumer != null;
+        
+        int[] bounds = split(buffer, ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD);
+        if (bounds == null) {
+            return false;
+        }
+        
+        // 呼出し元は解析後にバッファのマッピングを解除するため、
+        // 解析に失敗したチャンクがあっても全てのチャンクの解析を終えてから例外を送出する。
+        List<Chunk> chunks = IntStream.range(0, bounds.length - 1).parallel()
+                .mapToObj(i -> parseChunk(buffer, bounds[i], bounds[i + 1], sst))
+                .collect(Collectors.toList());
+        for (Chunk chunk : chunks) {
+            if (chunk.failure != null) {
+                throw new IllegalStateException(chunk.failure);
+            }
+        }
+        
+        // 共有数式のマスタセルは子セルよりも前に現れるため、
+        // 先行するチャンクのマスタセルを順に登録しながら、展開できなかったセルを解決する。
+        SharedFormulaResolver formulas = extractCachedValue ? null : SharedFormulaResolver.of();
+        for (Chunk chunk : chunks) {
+            Iterator<DeferredCell> deferred = chunk.deferred.iterator();
+            for (CellReplica replica : chunk.cells) {
+                if (replica != null) {
+                    consumer.accept(replica);
+                    continue;
+                }
+                
+                // 行優先の順序を保つため、展開できなかったセルは元の位置で解決して渡す。
+                DeferredCell cell = deferred.next();
+                String value = formulas.contains(cell.si)
+                        ? ExcelUtils.normalizeFormula(formulas.resolve(cell.si, cell.row, cell.column))
+                        : cell.fallback;
+                if (value != null) {
+                    consumer.accept(CellReplica.of(cell.row, cell.column, value));
+                }
+            }
+            assert !deferred.hasNext();
+            if (formulas != null) {
+                formulas.registerAll(chunk.formulas);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * バッファの指定された範囲を {@code <sheetData>} 要素の内容として解析し、
+     * 読み込み対象のセルデータを含む解析結果を返します。<br>
+     * 
+     * @param buffer sheet#.xml エントリの内容
+     * @param start チャンクの開始位置
+     * @param end チャンクの終了位置（この位置は含まない）
+     * @param sst 読込対象のExcelブックの共有文字列のリスト
+     * @return チャンクの解析結果（解析に失敗した場合は失敗の原因を保持する解析結果）
+     */
+    private Chunk parseChunk(
+            ByteBuffer buffer,
+            int start,
+            int end,
+            List<String> sst) {
+        
+        assert buffer != null;
+        assert start <= end;
+        assert sst != null;
+        
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end).position(start);
+        
+        List<InputStream> parts = new ArrayList<>();
+        parts.add(new ByteArrayInputStream("<sheetData>".getBytes(StandardCharsets.US_ASCII)));
+        parts.add(new XSSFZipReader.ByteBufferInputStream(slice));
+        parts.add(new ByteArrayInputStream("</sheetData>".getBytes(StandardCharsets.US_ASCII)));
+        
+        List<CellReplica> cells = new ArrayList<>();
+        SharedFormulaResolver formulas = extractCachedValue ? null : SharedFormulaResolver.of();
+        List<DeferredCell> deferred = new ArrayList<>();
+        try (InputStream chunk = new SequenceInputStream(Collections.enumeration(parts))) {
+            XMLStreamReader cursor = chunkFactory.get().createXMLStreamReader(chunk, "UTF-8");
+            try {
+                parse(cursor, sst, formulas, deferred, cells::add);
+            } finally {
+                cursor.close();
+            }
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            return new Chunk(e);
+        }
+        return new Chunk(cells, formulas, deferred);
+    }
+    
+    /**
+     * sheet#.xml エントリを先頭から読み進め、読み込み対象のセルデータをコンシューマに渡します。<br>
+     * {@code deferred} に追加したセルの位置では、コンシューマに {@code null} を渡します。<br>
+     * 
+     * @param cursor sheet#.xml エントリを読み込むカーソル
+     * @param sst 読込対象のExcelブックの共有文字列のリスト
+     * @param formulas 共有数式のリゾルバ（キャッシュされた計算値を取得する場合は {@code null}）
+     * @param deferred 共有数式を展開できなかったセルを受け取るリスト（逐次的に解析する場合は {@code null}）
+     * @param consumer セルデータを受け取るコンシューマ
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     */
+    private void parse(
+            XMLStreamReader cursor,
+            List<String> sst,
+            SharedFormulaResolver formulas,
+            List<DeferredCell> deferred,
+            Consumer<? super CellReplica> consumer)
+            throws XMLStreamException {
+        
+        assert cursor != null;
+        assert sst != null;
+        assert consumer != null;
+        
+        int row = -1;
+        int column = -1;
+        boolean skipRow = false;
+        
+        while (cursor.hasNext()) {
+            if (cursor.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            
+            String localName = cursor.getLocalName();
+            if ("row".equals(localName)) {
+                // r 属性は省略可能であり、省略された場合は直前の行の次の行を表す。
+                String r = getAttribute(cursor, "r");
+                row = (r == null ? row + 1 : Integer.parseInt(r) - 1);
+                column = -1;
+                if (region.lastRow() < row) {
+                    // 行は昇順に並ぶため、これ以降に読み込み対象のセルは存在しない。
+                    return;
+                }
+                skipRow = !region.containsRow(row);
+                
+            } else if ("c".equals(localName)) {
+                String address = null;
+                String type = null;
+                for (int i = 0; i < cursor.getAttributeCount(); i++) {
+                    String attrName = cursor.getAttributeLocalName(i);
+                    if ("r".equals(attrName)) {
+                        address = cursor.getAttributeValue(i);
+                    } else if ("t".equals(attrName)) {
+                        type = cursor.getAttributeValue(i);
+                    }
+                }
+                if (address == null) {
+                    column++;
+                } else {
+                    row = parseRow(address);
+                    column = parseColumn(address);
+                }
+                
+                if (skipRow || !region.contains(row, column)) {
+                    if (formulas == null) {
+                        skipElement(cursor);
+                    } else {
+                        // 範囲外のセルであっても、共有数式のマスタセルの数式文字列は登録しておく。
+                        readCell(cursor, type, sst, row, column, formulas, null);
+                    }
+                } else {
+                    int deferredCount = deferred == null ? 0 : deferred.size();
+                    String value = readCell(cursor, type, sst, row, column, formulas, deferred);
+                    if (value != null) {
+                        consumer.accept(CellReplica.of(row, column, value));
+                    } else if (deferredCount < (deferred == null ? 0 : deferred.size())) {
+                        // 展開できなかったセルの位置に、順序を保つためのプレースホルダを置く。
+                        consumer.accept(null);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 現在の c 要素を読み進めてセルの値を返します。
+     * 呼出し後、カーソルは c 要素の終了タグを指します。<br>
+     * 
+     * @param cursor c 要素の開始タグを指すカーソル
+     * @param type c 要素の t 属性の値（省略されているときは {@code null}）
+     * @param sst 読込対象のExcelブックの共有文字列のリスト
+     * @param row セルの行インデックス（0開始）
+     * @param column セルの列インデックス（0開始）
+     * @param formulas 共有数式のリゾルバ（キャッシュされた計算値を取得する場合は {@code null}）
+     * @param deferred 共有数式を展開できなかったセルを受け取るリスト（逐次的に解析する場合は {@code null}）
+     * @return セルの値（値を持たないセル、および、{@code deferred} に追加したセルの場合は {@code null}）
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     */
+    private String readCell(
+            XMLStreamReader cursor,
+            String type,
+            List<String> sst,
+            int row,
+            int column,
+            SharedFormulaResolver formulas,
+            List<DeferredCell> deferred)
+            throws XMLStreamException {
+        
+        assert cursor != null;
+        assert sst != null;
+        assert extractCachedValue == (formulas == null);
+        
+        String formula = null;
+        String sharedIndex = null;
+        String value = null;
+        StringBuilder inline = null;
+        int depth = 1;
+        
+        while (0 < depth) {
+            int event = cursor.next();
+            
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String localName = cursor.getLocalName();
+                
+                if ("f".equals(localName)) {
+                    if (!extractCachedValue) {
+                        String si = "shared".equals(getAttribute(cursor, "t"))
+                                ? getAttribute(cursor, "si")
+                                : null;
+                        boolean isMaster = si != null && getAttribute(cursor, "ref") != null;
+                        String text = cursor.getElementText();
+                        depth--;
+                        if (!text.isEmpty()) {
+                            formula = text;
+                            if (isMaster) {
+                                formulas.register(si, row, column, text);
+                            }
+                        } else {
+                            sharedIndex = si;
+                        }
+                    }
+                } else if ("v".equals(localName)) {
+                    value = readValue(cursor, type, sst);
+                    depth--;
+                } else if ("rPh".equals(localName)) {
+                    // ふりがなはセルの値に含めない。
+                    skipElement(cursor);
+                    depth--;
+                } else if ("t".equals(localName) && "inlineStr".equals(type)) {
+                    if (inline == null) {
+                        inline = new StringBuilder();
+                    }
+                    inline.append(cursor.getElementText());
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        
+        if (inline != null) {
+            value = inline.toString();
+        }
+        if (formula == null && sharedIndex != null) {
+            if (formulas.contains(sharedIndex)) {
+                formula = formulas.resolve(sharedIndex, row, column);
+            } else if (deferred != null) {
+                deferred.add(new DeferredCell(sharedIndex, row, column, value));
+                return null;
+            }
+        }
+        if (formula != null) {
+            return ExcelUtils.normalizeFormula(formula);
+        }
+        return value;
+    }
+    
+    /**
+     * 現在の v 要素の値を、t 属性の値に応じて解釈して返します。
+     * 呼出し後、カーソルは v 要素の終了タグを指します。<br>
+     * 
+     * @param cursor v 要素の開始タグを指すカーソル
+     * @param type c 要素の t 属性の値（省略されているときは {@code null}）
+     * @param sst 読込対象のExcelブックの共有文字列のリスト
+     * @return セルの値（v 要素が空の場合は {@code null}）
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     */
+    private String readValue(XMLStreamReader cursor, String type, List<String> sst)
+            throws XMLStreamException {
+        
+        assert cursor != null;
+        assert sst != null;
+        
+        boolean isSharedString = "s".equals(type);
+        int idx = 0;
+        String value = null;
+        StringBuilder str = null;
+        
+        // 隣接するテキストを1つにまとめる設定はコストが高いため使用せず、
+        // テキストが複数回に分割されて通知される場合にも対応する。
+        int event;
+        while ((event = cursor.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (event != XMLStreamConstants.CHARACTERS) {
+                continue;
+            }
+            char[] ch = cursor.getTextCharacters();
+            int start = cursor.getTextStart();
+            int length = cursor.getTextLength();
+            
+            if (isSharedString) {
+                // 共有文字列のインデックスは文字列を経由せずに文字バッファから直接読み取る。
+                idx = idx * pow10(length) + parseInt(ch, start, length);
+                value = "";
+            } else if (value == null) {
+                value = new String(ch, start, length);
+            } else {
+                if (str == null) {
+                    str = new StringBuilder(value);
+                }
+                str.append(ch, start, length);
+            }
+        }
+        
+        if (value == null) {
+            return null;
+        }
+        if (isSharedString) {
+            return sst.get(idx);
+        }
+        if (str != null) {
+            value = str.toString();
+        }
+        if ("b".equals(type)) {
+            return String.valueOf("1".equals(value));
+        }
+        return value;
+    }
+    
+    /**
+     * 現在の要素の残りを読み飛ばします。
+     * 呼出し後、カーソルは現在の要素の終了タグを指します。<br>
+     * 
+     * @param cursor 読み飛ばす要素の内部を指すカーソル
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     */
+    private void skipElement(XMLStreamReader cursor) throws XMLStreamException {
+        assert cursor != null;
+        
+        int depth = 1;
+        while (0 < depth) {
+            int event = cursor.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+    
+    private String getAttribute(XMLStreamReader cursor, String localName) {
+        assert cursor != null;
+        assert localName != null;
+        
+        for (int i = 0; i < cursor.getAttributeCount(); i++) {
+            if (localName.equals(cursor.getAttributeLocalName(i))) {
+                return cursor.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
@@ -1,6 +1,30 @@
 package xyz.hotchpotch.hogandiff.excel.xssf;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
 
 /**
  * XSSF（.xlsx/.xlsm）形式のExcelファイルをzipファイルとして扱ううえでの各種機能を提供するユーティリティクラスです。<br>
@@ -28,7 +52,7 @@ public class XSSFUtils {
         
         /** bgColor */
         public static final QName BG_COLOR = new QName(XMLNS, "bgColor");
-
+        
         /** border */
         public static final QName BORDER = new QName(XMLNS, "border");
         
@@ -41,6 +65,9 @@ public class XSSFUtils {
         /** c */
         public static final QName C = new QName(XMLNS, "c");
         
+        /** cellXfs */
+        public static final QName CELL_XFS = new QName(XMLNS, "cellXfs");
+        
         /** col */
         public static final QName COL = new QName(XMLNS, "col");
         
@@ -92,6 +119,9 @@ public class XSSFUtils {
         /** top */
         public static final QName TOP = new QName(XMLNS, "top");
         
+        /** xf */
+        public static final QName XF = new QName(XMLNS, "xf");
+        
         // [instance members] --------------------------------------------------
         
         private QNAME() {
@@ -108,9 +138,21 @@ public class XSSFUtils {
         
         // [static members] ----------------------------------------------------
         
+        /** applyFill */
+        public static final QName APPLY_FILL = new QName(null, "applyFill");
+        
+        /** count */
+        public static final QName COUNT = new QName(null, "count");
+        
         /** customFormat */
         public static final QName CUSTOM_FORMAT = new QName(null, "customFormat");
         
+        /** fillId */
+        public static final QName FILL_ID = new QName(null, "fillId");
+        
+        /** indexed */
+        public static final QName INDEXED = new QName(null, "indexed");
+        
         /** max */
         public static final QName MAX = new QName(null, "max");
         
@@ -141,6 +183,236 @@ public class XSSFUtils {
         }
     }
     
+    private static final ThreadLocal<XMLInputFactory> factory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    });
+    
+    /**
+     * 指定されたExcelブックをzipファイルとして開きます。<br>
+     * 返されたリーダーは、処理を終えたら直ちに閉じてください。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @return 対象のExcelブックのzipリーダー
+     * @throws ApplicationException 処理に失敗した場合
+     * @since 0.5.0
+     */
+    /*package*/ static XSSFZipReader openZip(File book) throws ApplicationException {
+        assert book != null;
+        
+        try {
+            return XSSFZipReader.open(book.toPath());
+        } catch (Exception e) {
+            throw new ApplicationException("Excelブックの読み込みに失敗しました。\n" + book.getPath(), e);
+        }
+    }
+    
+    /**
+     * 指定されたExcelブックから relId で指定されたシートの {@code <dimension>} 要素を読み込み、
+     * シートの統計情報を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    /*package*/ static Optional<SheetStats> loadStatsById(File book, String relId) throws ApplicationException {
+        assert book != null;
+        assert relId != null;
+        
+        try (XSSFZipReader zip = openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadStatsById(book, relId, zip, manager);
+        }
+    }
+    
+    /**
+     * 指定されたExcelブックから指定された名前のシートの {@code <dimension>} 要素を読み込み、
+     * シートの統計情報を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param sheetName 対象シートの名前
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code sheetName} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    /*package*/ static Optional<SheetStats> loadStats(File book, String sheetName) throws ApplicationException {
+        assert book != null;
+        assert sheetName != null;
+        
+        try (XSSFZipReader zip = openZip(book)) {
+            XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book.toPath(), zip);
+            return loadStatsById(book, manager.getIdByName(sheetName), zip, manager);
+        }
+    }
+    
+    /**
+     * 呼出し元が開いているzipリーダーを使用して、relId で指定されたシートの {@code <dimension>} 要素を読み込み、
+     * シートの統計情報を返します。<br>
+     * 
+     * @param book 対象のExcelブック
+     * @param relId 対象シートのrelId
+     * @param zip 対象のExcelブックのzipリーダー
+     * @param manager 対象のExcelブックのシート情報
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws ApplicationException 処理に失敗した場合
+     * @throws NoSuchElementException {@code relId} に該当するシートが存在しない場合
+     * @since 0.5.0
+     */
+    /*package*/ static Optional<SheetStats> loadStatsById(
+            File book,
+            String relId,
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager)
+            throws ApplicationException {
+        
+        assert book != null;
+        assert relId != null;
+        assert zip != null;
+        assert manager != null;
+        
+        String source = manager.getSourceById(relId);
+        try {
+            return readDimension(zip, source);
+        } catch (Exception e) {
+            String msg = String.format("シートの統計情報の読み込みに失敗しました。book:%s, relId:%s",
+                    book.getPath(), relId);
+            throw new ApplicationException(msg, e);
+        }
+    }
+    
+    /**
+     * シートのソースエントリの先頭から {@code <dimension>} 要素を探し、記録されたシートの使用範囲を返します。<br>
+     * {@code <dimension>} 要素は {@code <sheetData>} 要素より前に置かれるため、エントリの先頭部分しか読み込みません。<br>
+     * 
+     * @param zip 対象Excelブックのzipリーダー
+     * @param source 対象シートのソースエントリ
+     * @return シートの統計情報（{@code <dimension>} 要素が無い場合は空）
+     * @throws IOException エントリの読み込みに失敗した場合
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     * @since 0.5.0
+     */
+    /*package*/ static Optional<SheetStats> readDimension(
+            XSSFZipReader zip,
+            String source)
+            throws IOException, XMLStreamException {
+        
+        assert zip != null;
+        assert source != null;
+        
+        try (InputStream is = zip.getInputStream(source)) {
+            XMLStreamReader cursor = factory.get().createXMLStreamReader(is);
+            try {
+                while (cursor.hasNext()) {
+                    if (cursor.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String localName = cursor.getLocalName();
+                    if ("dimension".equals(localName)) {
+                        String ref = cursor.getAttributeValue(null, "ref");
+                        return ref == null ? Optional.empty() : parseDimension(ref);
+                    }
+                    if ("sheetData".equals(localName)) {
+                        return Optional.empty();
+                    }
+                }
+                return Optional.empty();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+    
+    private static Optional<SheetStats> parseDimension(String ref) {
+        assert ref != null;
+        
+        // 使用範囲は読み込みの補助情報に過ぎないため、不正な値は無視する。
+        try {
+            String[] addresses = ref.split(":", -1);
+            Pair<Integer> first = CellReplica.getIndex(addresses[0]);
+            Pair<Integer> last = addresses.length == 1 ? first : CellReplica.getIndex(addresses[1]);
+            return Optional.of(SheetStats.of(first.a(), first.b(), last.a(), last.b()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Excelブックの共有文字列エントリを読み込んで、共有文字列のプレーンテキストのリストを返します。<br>
+     * 共有文字列を参照するセルが同じ文字列オブジェクトを共有できるように、
+     * 各エントリはここで一度だけ文字列に変換されます。<br>
+     * Excelブックが共有文字列エントリを持たない場合は、空のリストを返します。<br>
+     * 
+     * @param zip 対象Excelブックのzipリーダー
+     * @param manager 対象Excelブックのシート情報
+     * @return 共有文字列のリスト（インデックス順）
+     * @throws IOException 共有文字列エントリの読み込みに失敗した場合
+     * @since 0.5.0
+     */
+    /*package*/ static List<String> readSharedStrings(
+            XSSFZipReader zip,
+            XSSFSheetEntryManager manager)
+            throws IOException {
+        
+        assert zip != null;
+        assert manager != null;
+        
+        SharedStringsTable table = new SharedStringsTable();
+        Optional<String> source = manager.getSharedStringsSource()
+                .filter(s -> zip.getEntry(s).isPresent());
+        if (source.isPresent()) {
+            try (InputStream is = zip.getInputStream(source.get())) {
+                table.readFrom(is);
+            }
+        }
+        return Collections.unmodifiableList(table.getItems().stream()
+                .map(item -> new XSSFRichTextString(item).toString())
+                .collect(Collectors.toList()));
+    }
+    
+    /**
+     * {@link java.nio.channels.FileChannel#map} で取得したバッファのマッピングを直ちに解除します。<br>
+     * マッピングはバッファがGCで回収されるまで解除されず、
+     * その間はファイルを削除・上書きできない環境（Windows）があるため、ファイルの使用を終えたら明示的に解除します。<br>
+     * マッピングを解除できない実行環境では何もしません（GCによる解除を待ちます）。
+     * 解除したバッファ、および、そのバッファから派生したバッファには、以後アクセスしてはなりません。<br>
+     * 
+     * @param buffer マッピングを解除するバッファ（{@code duplicate()} や {@code slice()} で派生したものでないこと）
+     * @since 0.5.0
+     */
+    /*package*/ static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            try {
+                // Java 9 以降
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method clean = cleaner.getClass().getMethod("clean");
+                    clean.setAccessible(true);
+                    clean.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // マッピングを解除できない場合は、GCによる解除を待つ。
+        }
+    }
+    
     // [instance members] ******************************************************
     
     private XSSFUtils() {
@@ -0,0 +1,513 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * zipファイルとしての .xlsx/.xlsm ファイルをメモリマップし、エントリを読み込むためのクラスです。<br>
+ * <br>
+ * セントラルディレクトリの解析結果はファイルのパス、サイズ、最終更新日時ごとにキャッシュされ、
+ * 同じファイルを繰り返し開く場合は再利用されます。
+ * エントリの内容は、マップされたバッファから直接展開するストリームとして取得できるほか、
+ * そのまま別のzipファイルに書き写すための圧縮されたままの生データとして取得することもできます。<br>
+ * <br>
+ * マッピングはリーダーを閉じるまで維持され、その間は対象のファイルを上書き・削除できない環境（Windows）があるため、
+ * 1つの処理の中では1つのリーダーを共有し、処理を終えたら直ちに閉じてください。
+ * リーダーを閉じた後は、リーダーから取得したストリームや生データにアクセスしてはなりません。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class XSSFZipReader implements Closeable {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * zipファイルのエントリの情報を保持する不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    /*package*/ static class EntryInfo {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final String name;
+        private final int method;
+        private final int time;
+        private final long crc;
+        private final int compressedSize;
+        private final int size;
+        private final int dataOffset;
+        
+        private EntryInfo(
+                String name,
+                int method,
+                int time,
+                long crc,
+                int compressedSize,
+                int size,
+                int dataOffset) {
+            
+            assert name != null;
+            
+            this.name = name;
+            this.method = method;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.dataOffset = dataOffset;
+        }
+        
+        /**
+         * エントリ名を返します。<br>
+         * 
+         * @return エントリ名
+         */
+        public String name() {
+            return name;
+        }
+        
+        /**
+         * 圧縮方式（{@link ZipEntry#STORED} または {@link ZipEntry#DEFLATED}）を返します。<br>
+         * 
+         * @return 圧縮方式
+         */
+        public int method() {
+            return method;
+        }
+        
+        /**
+         * 最終更新日時をMS-DOS形式（上位16ビットが日付、下位16ビットが時刻）で返します。<br>
+         * 
+         * @return MS-DOS形式の最終更新日時
+         */
+        public int time() {
+            return time;
+        }
+        
+        /**
+         * 展開後のデータのCRC-32値を返します。<br>
+         * 
+         * @return CRC-32値
+         */
+        public long crc() {
+            return crc;
+        }
+        
+        /**
+         * 圧縮後のサイズを返します。<br>
+         * 
+         * @return 圧縮後のサイズ
+         */
+        public int compressedSize() {
+            return compressedSize;
+        }
+        
+        /**
+         * 展開後のサイズを返します。<br>
+         * 
+         * @return 展開後のサイズ
+         */
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    
+    /**
+     * {@link ByteBuffer} の内容を読み込む {@link InputStream} の実装です。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    /*package*/ static class ByteBufferInputStream extends InputStream {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final ByteBuffer buffer;
+        
+        /**
+         * 新しいストリームを生成します。<br>
+         * バッファの現在位置からリミットまでが読み込まれます。<br>
+         * 
+         * @param buffer 読み込むバッファ
+         */
+        /*package*/ ByteBufferInputStream(ByteBuffer buffer) {
+            assert buffer != null;
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+        
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+    
+    /**
+     * 圧縮されたエントリのデータをマップされたバッファから直接展開する {@link InputStream} の実装です。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class InflatingInputStream extends InputStream {
+        
+        // [static members] ----------------------------------------------------
+        
+        private static final int INPUT_SIZE = 8192;
+        
+        // [instance members] --------------------------------------------------
+        
+        private final ByteBuffer source;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] input;
+        private final byte[] single = new byte[1];
+        private boolean dummySupplied;
+        private boolean closed;
+        
+        private InflatingInputStream(ByteBuffer source) {
+            assert source != null;
+            
+            this.source = source;
+            this.input = new byte[Math.max(1, Math.min(INPUT_SIZE, source.remaining()))];
+        }
+        
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (0 < n) {
+                        return n;
+                    }
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        return -1;
+                    }
+                    if (!inflater.needsInput()) {
+                        continue;
+                    }
+                    
+                    if (source.hasRemaining()) {
+                        int k = Math.min(input.length, source.remaining());
+                        source.get(input, 0, k);
+                        inflater.setInput(input, 0, k);
+                    } else if (!dummySupplied) {
+                        // nowrap モードの Inflater は、入力の末尾に余分な1バイトを必要とする場合がある。
+                        dummySupplied = true;
+                        input[0] = 0;
+                        inflater.setInput(input, 0, 1);
+                    } else {
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+        
+        @Override
+        public int available() {
+            return closed || inflater.finished() ? 0 : 1;
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                inflater.end();
+            }
+        }
+    }
+    
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    
+    /** セントラルディレクトリの解析結果をキャッシュするzipファイルの最大数 */
+    private static final int MAX_CACHED_BOOKS = 16;
+    
+    // キーはファイルのパス、サイズ、最終更新日時の組み合わせとし、ファイルが更新された場合は解析し直す。
+    private static final Map<List<Object>, Map<String, EntryInfo>> directories = Collections.synchronizedMap(
+            new LinkedHashMap<List<Object>, Map<String, EntryInfo>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Map<String, EntryInfo>> eldest) {
+                    return MAX_CACHED_BOOKS < size();
+                }
+            });
+    
+    /**
+     * 指定されたzipファイルをメモリマップして開きます。<br>
+     * 
+     * @param target 対象のzipファイル
+     * @return 新しいリーダー
+     * @throws IOException ファイルの読み込みに失敗した場合、zipファイルの形式が不正な場合
+     * @throws NullPointerException {@code target} が {@code null} の場合
+     */
+    public static XSSFZipReader open(Path target) throws IOException {
+        Objects.requireNonNull(target, "target");
+        
+        Path path = target.toAbsolutePath().normalize();
+        List<Object> key;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (Integer.MAX_VALUE < size) {
+                throw new ZipException("too large: " + path);
+            }
+            key = Arrays.asList(path, size, Files.getLastModifiedTime(path));
+            buffer = channel.map(MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        
+        Map<String, EntryInfo> entries = directories.get(key);
+        if (entries == null) {
+            entries = readCentralDirectory(buffer);
+            directories.put(key, entries);
+        }
+        return new XSSFZipReader(buffer, entries);
+    }
+    
+    private static Map<String, EntryInfo> readCentralDirectory(ByteBuffer buffer) throws ZipException {
+        assert buffer != null;
+        
+        int end = -1;
+        int lower = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int i = buffer.limit() - END_HEADER_SIZE; lower <= i; i--) {
+            if (buffer.getInt(i) == END_HEADER_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("END header not found");
+        }
+        
+        int count = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long offset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 is not supported");
+        }
+        
+        Map<String, EntryInfo> entries = new LinkedHashMap<>();
+        int pos = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.limit() < pos + CENTRAL_HEADER_SIZE || buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("invalid CEN header: " + pos);
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(pos + 10));
+            int time = buffer.getInt(pos + 12);
+            long crc = Integer.toUnsignedLong(buffer.getInt(pos + 16));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(pos + 32));
+            long localOffset = Integer.toUnsignedLong(buffer.getInt(pos + 42));
+            if (Integer.MAX_VALUE < compressedSize || Integer.MAX_VALUE < size
+                    || buffer.limit() - LOCAL_HEADER_SIZE < localOffset) {
+                throw new ZipException("ZIP64 is not supported");
+            }
+            
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(pos + CENTRAL_HEADER_SIZE);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            
+            // データの位置は、セントラルディレクトリではなくローカルヘッダの可変長部分の長さから決まる。
+            int local = (int) localOffset;
+            if (buffer.getInt(local) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("invalid LOC header: " + name);
+            }
+            int dataOffset = local + LOCAL_HEADER_SIZE
+                    + Short.toUnsignedInt(buffer.getShort(local + 26))
+                    + Short.toUnsignedInt(buffer.getShort(local + 28));
+            if (buffer.limit() - compressedSize < dataOffset) {
+                throw new ZipException("invalid entry size: " + name);
+            }
+            
+            entries.put(name, new EntryInfo(name, method, time, crc, (int) compressedSize, (int) size, dataOffset));
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final ByteBuffer buffer;
+    private final Map<String, EntryInfo> entries;
+    private boolean closed;
+    
+    private XSSFZipReader(ByteBuffer buffer, Map<String, EntryInfo> entries) {
+        assert buffer != null;
+        assert entries != null;
+        
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+    
+    /**
+     * zipファイルに含まれるエントリ名のセットを、セントラルディレクトリに格納されている順に返します。<br>
+     * 
+     * @return エントリ名のセット
+     */
+    public Set<String> getEntryNames() {
+        return entries.keySet();
+    }
+    
+    /**
+     * 指定された名前のエントリの情報を返します。<br>
+     * 
+     * @param name エントリ名
+     * @return エントリの情報。存在しない場合は空の {@link Optional}
+     * @throws NullPointerException {@code name} が {@code null} の場合
+     */
+    public Optional<EntryInfo> getEntry(String name) {
+        Objects.requireNonNull(name, "name");
+        return Optional.ofNullable(entries.get(name));
+    }
+    
+    /**
+     * 指定された名前のエントリの内容を展開しながら読み込むストリームを返します。<br>
+     * 
+     * @param name エントリ名
+     * @return エントリの内容を読み込むストリーム
+     * @throws IOException エントリが存在しない場合、エントリの圧縮方式をサポートしない場合
+     * @throws NullPointerException {@code name} が {@code null} の場合
+     * @throws IllegalStateException 既に閉じられている場合
+     */
+    public InputStream getInputStream(String name) throws IOException {
+        Objects.requireNonNull(name, "name");
+        if (closed) {
+            throw new IllegalStateException("already closed");
+        }
+        
+        EntryInfo entry = entries.get(name);
+        if (entry == null) {
+            throw new NoSuchFileException(name);
+        }
+        switch (entry.method) {
+        case ZipEntry.STORED:
+            return new ByteBufferInputStream(slice(entry));
+        case ZipEntry.DEFLATED:
+            return new InflatingInputStream(slice(entry));
+        default:
+            throw new ZipException("unsupported compression method: " + entry.method);
+        }
+    }
+    
+    /**
+     * 指定された名前のエントリの、圧縮されたままの生データを返します。<br>
+     * 返されるバッファは読み取り専用であり、マップされたファイルの内容を直接参照します。<br>
+     * 
+     * @param name エントリ名
+     * @return エントリの生データ
+     * @throws IOException エントリが存在しない場合
+     * @throws NullPointerException {@code name} が {@code null} の場合
+     * @throws IllegalStateException 既に閉じられている場合
+     */
+    public ByteBuffer getRawData(String name) throws IOException {
+        Objects.requireNonNull(name, "name");
+        if (closed) {
+            throw new IllegalStateException("already closed");
+        }
+        
+        EntryInfo entry = entries.get(name);
+        if (entry == null) {
+            throw new NoSuchFileException(name);
+        }
+        return slice(entry);
+    }
+    
+    private ByteBuffer slice(EntryInfo entry) {
+        assert entry != null;
+        
+        ByteBuffer slice = buffer.asReadOnlyBuffer();
+        slice.limit(entry.dataOffset + entry.compressedSize).position(entry.dataOffset);
+        return slice.slice();
+    }
+    
+    /**
+     * zipファイルのマッピングを解除してリーダーを閉じます。<br>
+     * 既に閉じられている場合は何もしません。<br>
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            XSSFUtils.unmap(buffer);
+        }
+    }
+}
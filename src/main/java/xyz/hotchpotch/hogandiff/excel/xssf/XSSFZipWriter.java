@@ -0,0 +1,690 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * .xlsx/.xlsm 形式のzipファイルを先頭から順に書き出すためのクラスです。<br>
+ * <br>
+ * {@link XSSFZipReader} から取得した圧縮されたままの生データを展開も再圧縮もせずにそのまま書き写す機能と、
+ * 新たな内容を圧縮しながら書き込む機能を提供します。
+ * 変更しないエントリを生データのまま書き写すことで、ブック全体の処理時間を変更するエントリの大きさに比例させることができます。<br>
+ * <br>
+ * エントリは1つずつ順に書き込む必要があります。
+ * {@link #newEntry(String)} で取得したストリームを閉じるまで、次のエントリを書き込むことはできません。
+ * 複数のエントリを並行して圧縮したい場合は、{@link DeflatedEntry} に事前に圧縮しておき、
+ * {@link #copyDeflated(DeflatedEntry)} で順に書き写します。<br>
+ * <br>
+ * 新たに書き込むエントリの圧縮レベルは {@link #create(Path, int)} で指定できます。
+ * 圧縮に使用する {@link Deflater} は、並行して圧縮するスレッドの数だけ生成し、エントリ間で使い回します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class XSSFZipWriter implements Closeable {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * セントラルディレクトリに書き込むエントリの情報を保持する不変クラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class CentralRecord {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final byte[] name;
+        private final int method;
+        private final int time;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localOffset;
+        
+        private CentralRecord(
+                byte[] name,
+                int method,
+                int time,
+                long crc,
+                long compressedSize,
+                long size,
+                long localOffset) {
+            
+            assert name != null;
+            
+            this.name = name;
+            this.method = method;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+    }
+    
+    /**
+     * 書き込まれた内容を圧縮しながらシンクのストリームに書き出し、CRC-32値とサイズを記録する
+     * {@link OutputStream} の実装です。<br>
+     * {@link Deflater} が指定されない場合は、圧縮せずにそのまま書き出します。<br>
+     * ストリームを閉じると圧縮を完了して {@link #finished(long, long, long)} を呼び出します。
+     * シンクのストリームは閉じません。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private abstract static class DeflatingOutputStream extends OutputStream {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final Deflater deflater;
+        private final OutputStream sink;
+        private final CRC32 crc = new CRC32();
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private final byte[] single = new byte[1];
+        private long size;
+        private boolean closed;
+        
+        /**
+         * 新しいストリームを生成します。<br>
+         * 
+         * @param deflater 圧縮に使用する {@link Deflater}（初期状態であること）。圧縮しない場合は {@code null}
+         * @param sink 圧縮後のデータの書き出し先
+         */
+        protected DeflatingOutputStream(Deflater deflater, OutputStream sink) {
+            assert sink != null;
+            
+            this.deflater = deflater;
+            this.sink = sink;
+        }
+        
+        /**
+         * 圧縮が完了したときに呼び出されます。<br>
+         * 
+         * @param crc 圧縮前のデータのCRC-32値
+         * @param size 圧縮前のサイズ
+         * @param compressedSize 圧縮後のサイズ
+         * @throws IOException 処理に失敗した場合
+         */
+        protected abstract void finished(long crc, long size, long compressedSize) throws IOException;
+        
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            size += len;
+            if (deflater == null) {
+                sink.write(b, off, len);
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        
+        private void deflate() throws IOException {
+            int n = deflater.deflate(output);
+            sink.write(output, 0, n);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            
+            long compressedSize = size;
+            if (deflater != null) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                compressedSize = deflater.getBytesWritten();
+            }
+            if (MAX_SIZE < size || MAX_SIZE < compressedSize) {
+                throw new ZipException("ZIP64 is not supported: too large entry");
+            }
+            finished(crc.getValue(), size, compressedSize);
+        }
+    }
+    
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    
+    /** 展開に必要なzipの仕様のバージョン（2.0） */
+    private static final int VERSION = 20;
+    
+    /** エントリ名がUTF-8でエンコードされていることを表す汎用目的ビットフラグ */
+    private static final int FLAG_UTF8 = 0x0800;
+    
+    /** ZIP64 を使用せずに表せるサイズおよびオフセットの上限 */
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    
+    /** ZIP64 を使用せずに格納できるエントリ数の上限 */
+    private static final int MAX_ENTRIES = 0xFFFF;
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    /** 圧縮せずに格納（STORED）することを表す圧縮レベル */
+    public static final int STORED = Deflater.NO_COMPRESSION;
+    
+    /**
+     * 指定されたパスに新しいzipファイルを作成し、書き込み用に開きます。<br>
+     * 新たに書き込むエントリは既定の圧縮レベルで圧縮します。<br>
+     * 
+     * @param target 作成するzipファイルのパス
+     * @return 新しいライター
+     * @throws IOException ファイルの作成に失敗した場合（既に存在する場合を含む）
+     * @throws NullPointerException {@code target} が {@code null} の場合
+     */
+    public static XSSFZipWriter create(Path target) throws IOException {
+        return create(target, Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    /**
+     * 指定されたパスに新しいzipファイルを作成し、書き込み用に開きます。<br>
+     * 
+     * @param target 作成するzipファイルのパス
+     * @param level 新たに書き込むエントリの圧縮レベル（1～9）。
+     *              {@link #STORED}（0）の場合は圧縮せずに格納し、-1 の場合は既定の圧縮レベルで圧縮します
+     * @return 新しいライター
+     * @throws IOException ファイルの作成に失敗した場合（既に存在する場合を含む）
+     * @throws NullPointerException {@code target} が {@code null} の場合
+     * @throws IllegalArgumentException {@code level} が -1～9 の範囲外の場合
+     */
+    public static XSSFZipWriter create(Path target, int level) throws IOException {
+        Objects.requireNonNull(target, "target");
+        if (level < Deflater.DEFAULT_COMPRESSION || Deflater.BEST_COMPRESSION < level) {
+            throw new IllegalArgumentException("level: " + level);
+        }
+        
+        FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new XSSFZipWriter(channel, toDosTime(LocalDateTime.now()), level);
+    }
+    
+    private static int toDosTime(LocalDateTime time) {
+        assert time != null;
+        
+        int year = Math.max(1980, time.getYear());
+        return (year - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final FileChannel channel;
+    private final int time;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final List<CentralRecord> records = new ArrayList<>();
+    private final int level;
+    
+    /** 使い回すために返却された {@link Deflater}。並行して圧縮するスレッドから出し入れされる */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    
+    /** バッファに書き込むストリーム */
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeBytes(b, off, len);
+        }
+    };
+    
+    /** これまでに書き込んだバイト数（バッファ上のものを含む） */
+    private long offset;
+    
+    /** 書き込み中のエントリのストリーム（書き込み中でない場合は {@code null}） */
+    private OutputStream current;
+    
+    private boolean closed;
+    
+    private XSSFZipWriter(FileChannel channel, int time, int level) {
+        assert channel != null;
+        
+        this.channel = channel;
+        this.time = time;
+        this.level = level;
+    }
+    
+    /**
+     * {@link XSSFZipReader} から取得したエントリの生データを、展開も再圧縮もせずにそのまま書き写します。<br>
+     * 
+     * @param entry 書き写すエントリの情報
+     * @param raw エントリの生データ（{@link XSSFZipReader#getRawData(String)} の戻り値）
+     * @throws IOException 書き込みに失敗した場合
+     * @throws NullPointerException {@code entry}, {@code raw} のいずれかが {@code null} の場合
+     * @throws IllegalArgumentException {@code raw} の長さがエントリの圧縮後のサイズと一致しない場合
+     * @throws IllegalStateException 書き込み中のエントリがある場合、既に閉じられている場合
+     */
+    public void copyRaw(XSSFZipReader.EntryInfo entry, ByteBuffer raw) throws IOException {
+        Objects.requireNonNull(entry, "entry");
+        Objects.requireNonNull(raw, "raw");
+        if (raw.remaining() != entry.compressedSize()) {
+            throw new IllegalArgumentException(entry.name());
+        }
+        checkWritable();
+        
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        long localOffset = offset;
+        writeLocalHeader(name, entry.method(), entry.time(), entry.crc(), entry.compressedSize(), entry.size());
+        
+        ByteBuffer data = raw.duplicate();
+        flush();
+        while (data.hasRemaining()) {
+            offset += channel.write(data);
+        }
+        
+        addRecord(new CentralRecord(name, entry.method(), entry.time(),
+                entry.crc(), entry.compressedSize(), entry.size(), localOffset));
+    }
+    
+    /**
+     * 新しいエントリを作成し、その内容を圧縮しながら書き込むストリームを返します。<br>
+     * ストリームを閉じた時点でエントリの書き込みが完了します。<br>
+     * 
+     * @param name エントリ名
+     * @return エントリの内容を書き込むストリーム
+     * @throws IOException 書き込みに失敗した場合
+     * @throws NullPointerException {@code name} が {@code null} の場合
+     * @throws IllegalStateException 書き込み中のエントリがある場合、既に閉じられている場合
+     */
+    public OutputStream newEntry(String name) throws IOException {
+        Objects.requireNonNull(name, "name");
+        checkWritable();
+        
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long localOffset = offset;
+        
+        // CRC-32値とサイズは書き込み完了後にローカルヘッダを書き換えて設定する。
+        writeLocalHeader(nameBytes, method(), time, 0, 0, 0);
+        
+        current = new EntryOutputStream(nameBytes, localOffset, borrowDeflater());
+        return current;
+    }
+    
+    /**
+     * 別のスレッドなどで事前に圧縮するための新しいエントリを、指定されたフォルダの一時ファイルに作成します。<br>
+     * エントリはこのライターの圧縮レベルで圧縮されます。<br>
+     * 
+     * @param name エントリ名
+     * @param dir 一時ファイルを作成するフォルダ
+     * @return 新しいエントリ
+     * @throws IOException 一時ファイルの作成に失敗した場合
+     * @throws NullPointerException {@code name}, {@code dir} のいずれかが {@code null} の場合
+     */
+    public DeflatedEntry newDeflatedEntry(String name, Path dir) throws IOException {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(dir, "dir");
+        
+        return new DeflatedEntry(name, Files.createTempFile(dir, "entry", ".tmp"));
+    }
+    
+    /**
+     * 事前に圧縮したエントリの内容を、再圧縮せずにそのまま書き写します。<br>
+     * 
+     * @param entry 書き写すエントリ
+     * @throws IOException 書き込みに失敗した場合
+     * @throws NullPointerException {@code entry} が {@code null} の場合
+     * @throws IllegalArgumentException {@code entry} の内容の書き込みが完了していない場合
+     * @throws IllegalStateException 書き込み中のエントリがある場合、既に閉じられている場合
+     */
+    public void copyDeflated(DeflatedEntry entry) throws IOException {
+        Objects.requireNonNull(entry, "entry");
+        if (!entry.completed) {
+            throw new IllegalArgumentException("not completed: " + entry.name);
+        }
+        checkWritable();
+        
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        long localOffset = offset;
+        writeLocalHeader(name, method(), time, entry.crc, entry.compressedSize, entry.size);
+        
+        flush();
+        try (FileChannel src = FileChannel.open(entry.temp, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < entry.compressedSize) {
+                position += src.transferTo(position, entry.compressedSize - position, channel);
+            }
+        }
+        offset += entry.compressedSize;
+        
+        addRecord(new CentralRecord(name, method(), time,
+                entry.crc, entry.compressedSize, entry.size, localOffset));
+    }
+    
+    /**
+     * セントラルディレクトリを書き込み、zipファイルを閉じます。<br>
+     * 
+     * @throws IOException 書き込みに失敗した場合
+     * @throws IllegalStateException 書き込み中のエントリがある場合
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (current != null) {
+                throw new IllegalStateException("an entry is being written");
+            }
+            if (MAX_ENTRIES < records.size()) {
+                throw new ZipException("ZIP64 is not supported: too many entries");
+            }
+            
+            long centralOffset = offset;
+            for (CentralRecord record : records) {
+                writeCentralHeader(record);
+            }
+            long centralSize = offset - centralOffset;
+            checkOffset();
+            
+            ensureCapacity(22);
+            buffer.putInt(END_HEADER_SIGNATURE);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) records.size());
+            buffer.putShort((short) records.size());
+            buffer.putInt((int) centralSize);
+            buffer.putInt((int) centralOffset);
+            buffer.putShort((short) 0);
+            offset += 22;
+            flush();
+            
+        } finally {
+            closed = true;
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null) {
+                deflater.end();
+            }
+            channel.close();
+        }
+    }
+    
+    private int method() {
+        return level == STORED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+    
+    /**
+     * 返却済みの {@link Deflater} があればそれを、無ければ新たに生成して返します。<br>
+     * 
+     * @return 初期状態の {@link Deflater}。圧縮せずに格納する場合は {@code null}
+     */
+    private Deflater borrowDeflater() {
+        if (level == STORED) {
+            return null;
+        }
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+    
+    private void returnDeflater(Deflater deflater) {
+        if (deflater != null) {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+    }
+    
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("already closed");
+        }
+        if (current != null) {
+            throw new IllegalStateException("an entry is being written");
+        }
+    }
+    
+    private void checkOffset() throws ZipException {
+        if (MAX_SIZE < offset) {
+            throw new ZipException("ZIP64 is not supported: too large");
+        }
+    }
+    
+    private void addRecord(CentralRecord record) throws ZipException {
+        assert record != null;
+        
+        records.add(record);
+        checkOffset();
+    }
+    
+    private void writeLocalHeader(
+            byte[] name,
+            int method,
+            int time,
+            long crc,
+            long compressedSize,
+            long size)
+            throws IOException {
+        
+        assert name != null;
+        
+        checkOffset();
+        ensureCapacity(LOCAL_HEADER_SIZE);
+        buffer.putInt(LOCAL_HEADER_SIGNATURE);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_UTF8);
+        buffer.putShort((short) method);
+        buffer.putInt(time);
+        buffer.putInt((int) crc);
+        buffer.putInt((int) compressedSize);
+        buffer.putInt((int) size);
+        buffer.putShort((short) name.length);
+        buffer.putShort((short) 0);
+        offset += LOCAL_HEADER_SIZE;
+        writeBytes(name, 0, name.length);
+    }
+    
+    private void writeCentralHeader(CentralRecord record) throws IOException {
+        assert record != null;
+        
+        ensureCapacity(CENTRAL_HEADER_SIZE);
+        buffer.putInt(CENTRAL_HEADER_SIGNATURE);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_UTF8);
+        buffer.putShort((short) record.method);
+        buffer.putInt(record.time);
+        buffer.putInt((int) record.crc);
+        buffer.putInt((int) record.compressedSize);
+        buffer.putInt((int) record.size);
+        buffer.putShort((short) record.name.length);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putInt(0);
+        buffer.putInt((int) record.localOffset);
+        offset += CENTRAL_HEADER_SIZE;
+        writeBytes(record.name, 0, record.name.length);
+    }
+    
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        while (0 < len) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            offset += n;
+            off += n;
+            len -= n;
+        }
+    }
+    
+    private void ensureCapacity(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+    
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * エントリの内容を圧縮しながらこのzipファイルに書き込む {@link OutputStream} の実装です。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private class EntryOutputStream extends DeflatingOutputStream {
+        
+        private final byte[] name;
+        private final long localOffset;
+        private final Deflater deflater;
+        
+        private EntryOutputStream(byte[] name, long localOffset, Deflater deflater) {
+            super(deflater, sink);
+            
+            assert name != null;
+            
+            this.name = name;
+            this.localOffset = localOffset;
+            this.deflater = deflater;
+        }
+        
+        @Override
+        protected void finished(long crc, long size, long compressedSize) throws IOException {
+            returnDeflater(deflater);
+            
+            ByteBuffer patch = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            patch.putInt((int) crc).putInt((int) compressedSize).putInt((int) size).flip();
+            
+            // OutputStream#flush() ではなく、バッファの内容をファイルに書き出す XSSFZipWriter#flush() を呼ぶ。
+            XSSFZipWriter.this.flush();
+            long position = localOffset + 14;
+            while (patch.hasRemaining()) {
+                position += channel.write(patch, position);
+            }
+            
+            addRecord(new CentralRecord(name, method(), time,
+                    crc, compressedSize, size, localOffset));
+            current = null;
+        }
+    }
+    
+    /**
+     * 別のスレッドなどで事前に圧縮したエントリの内容を、一時ファイルに保持するクラスです。<br>
+     * {@link XSSFZipWriter#newDeflatedEntry(String, Path)} で生成し、
+     * {@link #newOutputStream()} で取得したストリームに内容を書き込んで閉じた後、
+     * {@link XSSFZipWriter#copyDeflated(DeflatedEntry)} でzipファイルに書き写すことができます。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    /*package*/ class DeflatedEntry implements Closeable {
+        
+        private final String name;
+        private final Path temp;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private boolean completed;
+        
+        private DeflatedEntry(String name, Path temp) {
+            assert name != null;
+            assert temp != null;
+            
+            this.name = name;
+            this.temp = temp;
+        }
+        
+        /**
+         * エントリの内容を圧縮しながら一時ファイルに書き込むストリームを返します。<br>
+         * 
+         * @return エントリの内容を書き込むストリーム
+         * @throws IOException 一時ファイルを開けない場合
+         * @throws IllegalStateException 既に内容が書き込まれている場合
+         */
+        public OutputStream newOutputStream() throws IOException {
+            if (completed) {
+                throw new IllegalStateException("already written: " + name);
+            }
+            
+            Deflater deflater = borrowDeflater();
+            OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE);
+            return new DeflatingOutputStream(deflater, file) {
+                @Override
+                protected void finished(long crc, long size, long compressedSize) throws IOException {
+                    returnDeflater(deflater);
+                    file.close();
+                    DeflatedEntry.this.crc = crc;
+                    DeflatedEntry.this.size = size;
+                    DeflatedEntry.this.compressedSize = compressedSize;
+                    DeflatedEntry.this.completed = true;
+                }
+            };
+        }
+        
+        /**
+         * エントリ名を返します。<br>
+         * 
+         * @return エントリ名
+         */
+        public String name() {
+            return name;
+        }
+        
+        /**
+         * 一時ファイルを削除します。<br>
+         * 
+         * @throws IOException 一時ファイルの削除に失敗した場合
+         */
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * StAXのカーソルAPI（{@link XMLStreamReader} と {@link XMLStreamWriter}）を使用して
+ * XMLを先頭から順に読み込みながら変換して書き出す処理の基底実装です。<br>
+ * <br>
+ * {@link javax.xml.stream.XMLEventReader} を使用する実装と異なり、
+ * 読み込んだ要素や文字列ごとにイベントオブジェクトを生成することなく、変更しない部分をそのまま書き写します。
+ * サブクラスは {@link #process(int)} をオーバーライドし、変更が必要な部分だけを処理します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ abstract class AbstractCursorTransformer {
+    
+    // [static members] ********************************************************
+    
+    private static final String[] NO_ATTRS = new String[0];
+    
+    // [instance members] ******************************************************
+    
+    protected final XMLStreamReader reader;
+    protected final XMLStreamWriter writer;
+    private final Set<QName> filters;
+    
+    /**
+     * コンストラクタ<br>
+     * 
+     * @param reader 変換元のXMLを読み込むリーダー
+     * @param writer 変換後のXMLを書き出すライター
+     * @param filters 読み飛ばす要素の名前（要素の階層に関わらず読み飛ばします）
+     */
+    protected AbstractCursorTransformer(
+            XMLStreamReader reader,
+            XMLStreamWriter writer,
+            Set<QName> filters) {
+        
+        assert reader != null;
+        assert writer != null;
+        assert filters != null;
+        
+        this.reader = reader;
+        this.writer = writer;
+        this.filters = filters;
+    }
+    
+    /**
+     * リーダーの現在位置から終わりまでを読み込み、変換してライターに書き出します。<br>
+     * 
+     * @throws XMLStreamException XMLの読み込みまたは書き出しに失敗した場合
+     */
+    public void transform() throws XMLStreamException {
+        while (true) {
+            int type = reader.getEventType();
+            if (type == XMLStreamConstants.START_ELEMENT && isFiltered()) {
+                skipElement();
+            } else {
+                process(type);
+            }
+            if (!reader.hasNext()) {
+                break;
+            }
+            reader.next();
+        }
+        writer.flush();
+    }
+    
+    /**
+     * リーダーの現在位置のイベントを処理します。<br>
+     * 処理の中でリーダーを読み進めても構いませんが、最後に処理したイベントの位置でリーダーを返す必要があります。<br>
+     * この実装は、現在位置のイベントをそのまま書き写します。<br>
+     * 
+     * @param type 現在位置のイベントの種類
+     * @throws XMLStreamException XMLの読み込みまたは書き出しに失敗した場合
+     */
+    protected void process(int type) throws XMLStreamException {
+        copyEvent(type);
+    }
+    
+    private boolean isFiltered() {
+        for (QName filter : filters) {
+            if (is(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * リーダーの現在位置の開始要素または終了要素が、指定された名前を持つかを返します。<br>
+     * {@link XMLStreamReader#getName()} と異なり、{@link QName} オブジェクトを生成せずに判定します。<br>
+     * 
+     * @param name 要素の名前
+     * @return 指定された名前を持つ場合は {@code true}
+     */
+    protected boolean is(QName name) {
+        String ns = reader.getNamespaceURI();
+        return name.getLocalPart().equals(reader.getLocalName())
+                && name.getNamespaceURI().equals(ns == null ? "" : ns);
+    }
+    
+    /**
+     * リーダーの現在位置の開始要素から対応する終了要素までを、書き出さずに読み飛ばします。<br>
+     * 
+     * @throws XMLStreamException XMLの読み込みに失敗した場合
+     */
+    protected void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (0 < depth) {
+            if (!reader.hasNext()) {
+                throw new XMLStreamException();
+            }
+            int type = reader.next();
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+    
+    /**
+     * リーダーの現在位置のイベントをそのまま書き写します。<br>
+     * 
+     * @param type 現在位置のイベントの種類
+     * @throws XMLStreamException XMLの読み込みまたは書き出しに失敗した場合
+     */
+    protected void copyEvent(int type) throws XMLStreamException {
+        switch (type) {
+        case XMLStreamConstants.START_ELEMENT:
+            writeStartElement();
+            writeAttributes(NO_ATTRS);
+            break;
+        
+        case XMLStreamConstants.END_ELEMENT:
+            writer.writeEndElement();
+            break;
+        
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+            writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            break;
+        
+        case XMLStreamConstants.CDATA:
+            writer.writeCData(reader.getText());
+            break;
+        
+        case XMLStreamConstants.COMMENT:
+            writer.writeComment(reader.getText());
+            break;
+        
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+            break;
+        
+        case XMLStreamConstants.ENTITY_REFERENCE:
+            writer.writeEntityRef(reader.getLocalName());
+            break;
+        
+        case XMLStreamConstants.DTD:
+            writer.writeDTD(reader.getText());
+            break;
+        
+        case XMLStreamConstants.START_DOCUMENT:
+            writeStartDocument();
+            break;
+        
+        case XMLStreamConstants.END_DOCUMENT:
+            writer.writeEndDocument();
+            break;
+        
+        default:
+            // ATTRIBUTE, NAMESPACE などは開始要素の一部として書き出し済み
+            break;
+        }
+    }
+    
+    /**
+     * リーダーが読み込んだXML宣言と同じバージョンと standalone 宣言を持つXML宣言を書き出します。<br>
+     * {@link XMLStreamWriter} には standalone 宣言を書き出すメソッドが無いため、
+     * standalone 宣言を含む場合は、XML宣言を処理命令と同じ形式で書き出します。<br>
+     * 
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    private void writeStartDocument() throws XMLStreamException {
+        String version = reader.getVersion() == null ? "1.0" : reader.getVersion();
+        
+        if (reader.standaloneSet()) {
+            writer.writeProcessingInstruction("xml", String.format(
+                    "version=\"%s\" encoding=\"UTF-8\" standalone=\"%s\"",
+                    version, reader.isStandalone() ? "yes" : "no"));
+        } else {
+            writer.writeStartDocument("UTF-8", version);
+        }
+    }
+    
+    /**
+     * リーダーの現在位置の開始要素と同じ名前の開始要素を、名前空間の宣言とともに書き出します。<br>
+     * 属性は書き出しません。<br>
+     * 
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    protected void writeStartElement() throws XMLStreamException {
+        String prefix = reader.getPrefix();
+        String ns = reader.getNamespaceURI();
+        writer.writeStartElement(
+                prefix == null ? "" : prefix,
+                reader.getLocalName(),
+                ns == null ? "" : ns);
+        
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String nsPrefix = reader.getNamespacePrefix(i);
+            if (nsPrefix == null || nsPrefix.isEmpty()) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(nsPrefix, reader.getNamespaceURI(i));
+            }
+        }
+    }
+    
+    /**
+     * 指定された名前の開始要素を書き出します。<br>
+     * 
+     * @param name 要素の名前
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    protected void writeStartElement(QName name) throws XMLStreamException {
+        writer.writeStartElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+    }
+    
+    /**
+     * 指定された名前の空要素を書き出します。<br>
+     * 
+     * @param name 要素の名前
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    protected void writeEmptyElement(QName name) throws XMLStreamException {
+        writer.writeEmptyElement(name.getPrefix(), name.getLocalPart(), name.getNamespaceURI());
+    }
+    
+    /**
+     * リーダーの現在位置の開始要素の属性を書き写します。<br>
+     * 指定された名前の属性は、置き換えられたものとして書き写しません。<br>
+     * 
+     * @param replaced 書き写さない属性の名前（名前空間を持たない属性に限ります）
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    protected void writeAttributes(String[] replaced) throws XMLStreamException {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            
+            if (prefix == null || prefix.isEmpty()) {
+                boolean isReplaced = false;
+                for (String name : replaced) {
+                    if (name.equals(localName)) {
+                        isReplaced = true;
+                        break;
+                    }
+                }
+                if (!isReplaced) {
+                    writer.writeAttribute(localName, reader.getAttributeValue(i));
+                }
+            } else {
+                writer.writeAttribute(
+                        prefix,
+                        reader.getAttributeNamespace(i),
+                        localName,
+                        reader.getAttributeValue(i));
+            }
+        }
+    }
+}
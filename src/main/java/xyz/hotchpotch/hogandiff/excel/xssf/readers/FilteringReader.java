@@ -2,10 +2,16 @@ package xyz.hotchpotch.hogandiff.excel.xssf.readers;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
@@ -38,6 +44,7 @@ public class FilteringReader extends AbstractCachingReader {
         // [instance members] --------------------------------------------------
         
         private final XMLEventReader source;
+        private final List<QName[]> paths = new ArrayList<>();
         private final List<BiPredicate<? super Deque<? super QName>, ? super StartElement>> filters = new ArrayList<>();
         
         private Builder(XMLEventReader source) {
@@ -60,25 +67,11 @@ public class FilteringReader extends AbstractCachingReader {
                 throw new IllegalArgumentException();
             }
             
-            filters.add((currTree, start) -> {
-                int i = qNames.length - 1;
-                if (!qNames[i].equals(start.getName())) {
-                    return false;
-                }
-                
-                if (currTree.size() + 1 < qNames.length) {
-                    return false;
-                }
-                
-                Iterator<? super QName> itr = currTree.descendingIterator();
-                while (0 < i) {
-                    i--;
-                    if (!qNames[i].equals(itr.next())) {
-                        return false;
-                    }
-                }
-                return true;
-            });
+            for (QName qName : qNames) {
+                Objects.requireNonNull(qName, "qName");
+            }
+            
+            paths.add(qNames.clone());
             
             return this;
         }
@@ -125,6 +118,104 @@ public class FilteringReader extends AbstractCachingReader {
         }
     }
     
+    /**
+     * {@link Builder#addFilter(QName...)} で登録されたQName階層を、
+     * 要素ツリーを一段降りるごとに一度の表引きで判定できる状態遷移表にまとめたものです。<br>
+     * <br>
+     * 各状態は「現在の要素ツリーの末尾と一致している、いずれかのQName階層の先頭部分」を表します。
+     * 状態遷移表は Aho-Corasick 法と同様の手順で、一致しなかった場合の戻り先をあらかじめ畳み込んで構成するため、
+     * 登録されたQName階層の数や長さに関わらず、遷移は {@link Map#get(Object)} 一回で済みます。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class PathMatcher {
+        
+        // [static members] ----------------------------------------------------
+        
+        private static final int ROOT = 0;
+        
+        private static PathMatcher of(List<QName[]> paths) {
+            assert paths != null;
+            
+            // 1. QName階層をトライ木として登録する。
+            List<Map<QName, Integer>> gotos = new ArrayList<>();
+            List<Boolean> terminals = new ArrayList<>();
+            gotos.add(new HashMap<>());
+            terminals.add(false);
+            Set<QName> alphabet = new HashSet<>();
+            
+            for (QName[] path : paths) {
+                int state = ROOT;
+                for (QName qName : path) {
+                    alphabet.add(qName);
+                    Integer next = gotos.get(state).get(qName);
+                    if (next == null) {
+                        next = gotos.size();
+                        gotos.get(state).put(qName, next);
+                        gotos.add(new HashMap<>());
+                        terminals.add(false);
+                    }
+                    state = next;
+                }
+                terminals.set(state, true);
+            }
+            
+            // 2. 幅優先で、一致しなかった場合の戻り先を畳み込んだ遷移表を作成する。
+            int size = gotos.size();
+            List<Map<QName, Integer>> transitions = new ArrayList<>(Collections.nCopies(size, null));
+            boolean[] accepts = new boolean[size];
+            int[] fails = new int[size];
+            Queue<Integer> queue = new ArrayDeque<>();
+            
+            transitions.set(ROOT, new HashMap<>(gotos.get(ROOT)));
+            queue.add(ROOT);
+            
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (QName qName : alphabet) {
+                    Integer child = gotos.get(state).get(qName);
+                    if (child == null) {
+                        continue;
+                    }
+                    int fail = state == ROOT
+                            ? ROOT
+                            : transitions.get(fails[state]).getOrDefault(qName, ROOT);
+                    fails[child] = fail;
+                    accepts[child] = terminals.get(child) || accepts[fail];
+                    
+                    Map<QName, Integer> transition = new HashMap<>(transitions.get(fail));
+                    transition.putAll(gotos.get(child));
+                    transitions.set(child, transition);
+                    queue.add(child);
+                }
+            }
+            
+            return new PathMatcher(transitions, accepts);
+        }
+        
+        // [instance members] --------------------------------------------------
+        
+        private final List<Map<QName, Integer>> transitions;
+        private final boolean[] accepts;
+        
+        private PathMatcher(List<Map<QName, Integer>> transitions, boolean[] accepts) {
+            assert transitions != null;
+            assert accepts != null;
+            
+            this.transitions = transitions;
+            this.accepts = accepts;
+        }
+        
+        private int next(int state, QName qName) {
+            return transitions.get(state).getOrDefault(qName, ROOT);
+        }
+        
+        private boolean accepts(int state) {
+            return accepts[state];
+        }
+    }
+    
     /**
      * ビルダーを生成します。<br>
      * 
@@ -140,22 +231,40 @@ public class FilteringReader extends AbstractCachingReader {
     // [instance members] ******************************************************
     
     private final XMLEventReader source;
+    private final PathMatcher matcher;
     private final List<BiPredicate<? super Deque<? super QName>, ? super StartElement>> filters;
     private final Deque<QName> currTree = new ArrayDeque<>();
     
+    // currTree の各階層に対応する PathMatcher の状態。states[0] は文書ルートの外側を表す。
+    private int[] states = new int[16];
+    private int depth = 0;
+    
     private FilteringReader(Builder builder) {
         super();
         
         assert builder != null;
         
         this.source = builder.source;
+        this.matcher = PathMatcher.of(builder.paths);
         this.filters = builder.filters;
     }
     
+    private boolean isFiltered(StartElement next) {
+        if (matcher.accepts(matcher.next(states[depth], next.getName()))) {
+            return true;
+        }
+        for (BiPredicate<? super Deque<? super QName>, ? super StartElement> filter : filters) {
+            if (filter.test(currTree, next)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private void seekNext() throws XMLStreamException {
         while (source.hasNext() && source.peek().isStartElement()) {
             StartElement next = source.peek().asStartElement();
-            if (filters.stream().noneMatch(filter -> filter.test(currTree, next))) {
+            if (!isFiltered(next)) {
                 return;
             }
             int depth = 0;
@@ -192,9 +301,16 @@ public class FilteringReader extends AbstractCachingReader {
     protected XMLEvent nextEvent2() throws XMLStreamException {
         XMLEvent event = source.nextEvent();
         if (event.isStartElement()) {
-            currTree.addLast(event.asStartElement().getName());
+            QName name = event.asStartElement().getName();
+            currTree.addLast(name);
+            if (depth + 1 == states.length) {
+                states = Arrays.copyOf(states, states.length * 2);
+            }
+            states[depth + 1] = matcher.next(states[depth], name);
+            depth++;
         } else if (event.isEndElement()) {
             currTree.removeLast();
+            depth--;
         }
         return event;
     }
@@ -0,0 +1,52 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * 指定された要素を読み飛ばしながら、XMLをそのまま書き写す {@link AbstractCursorTransformer} の実装です。<br>
+ * {@link FilteringReader} と同じ処理をStAXのカーソルAPIで行います。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class FilteringTransformer extends AbstractCursorTransformer {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * {@link FilteringTransformer} オブジェクトを生成して返します。<br>
+     * 
+     * @param reader 変換元のXMLを読み込むリーダー
+     * @param writer 変換後のXMLを書き出すライター
+     * @param filters 読み飛ばす要素の名前（要素の階層に関わらず読み飛ばします）
+     * @return 新しい {@link FilteringTransformer} オブジェクト
+     * @throws NullPointerException {@code reader}, {@code writer}, {@code filters} のいずれかが {@code null} の場合
+     */
+    public static FilteringTransformer of(
+            XMLStreamReader reader,
+            XMLStreamWriter writer,
+            QName... filters) {
+        
+        Objects.requireNonNull(reader, "reader");
+        Objects.requireNonNull(writer, "writer");
+        Objects.requireNonNull(filters, "filters");
+        
+        return new FilteringTransformer(reader, writer, filters);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private FilteringTransformer(
+            XMLStreamReader reader,
+            XMLStreamWriter writer,
+            QName[] filters) {
+        
+        super(reader, writer, new HashSet<>(Arrays.asList(filters)));
+    }
+}
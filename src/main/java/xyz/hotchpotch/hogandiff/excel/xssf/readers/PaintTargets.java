@@ -0,0 +1,117 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+
+/**
+ * 1枚のシートについて、色を付ける行と列を昇順に並べたプリミティブ型の配列として保持する不変クラスです。<br>
+ * 行やセルを先頭から順に処理する際に、配列上のカーソルを進めるだけで対象かどうかを判定できるようにします。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+/*package*/ class PaintTargets {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 差分箇所から {@link PaintTargets} オブジェクトを生成して返します。<br>
+     * 
+     * @param piece シートの差分箇所
+     * @return 新しい {@link PaintTargets} オブジェクト
+     */
+    public static PaintTargets of(Piece piece) {
+        assert piece != null;
+        
+        return new PaintTargets(piece);
+    }
+    
+    private static int[] toSortedArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+    
+    // [instance members] ******************************************************
+    
+    // 不変なフィールドは getter を設けずに直接公開してしまう。
+    // ただし、性能のため配列の防御的コピーは行わない。
+    
+    /** 余剰行または差分セルを含む行のインデックス（昇順） */
+    public final int[] targetRows;
+    
+    /** {@link #targetRows} の各行が余剰行であるか */
+    public final boolean[] redundantFlags;
+    
+    /** {@link #targetRows} の i 番目の行の対象列は {@link #targetCols} の offsets[i] 番目から offsets[i+1]-1 番目まで */
+    public final int[] offsets;
+    
+    /** 色を付けるセルの列インデックス（行ごとに昇順） */
+    public final int[] targetCols;
+    
+    /** 余剰列のインデックス（昇順） */
+    public final int[] redundantCols;
+    
+    private PaintTargets(Piece piece) {
+        assert piece != null;
+        
+        int[] redundantRows = toSortedArray(piece.redundantRows);
+        redundantCols = toSortedArray(piece.redundantColumns);
+        
+        // 差分セルを、上位32ビットに行インデックス、下位32ビットに列インデックスを持つ long 値として並べる。
+        long[] diffs = piece.diffCells.stream()
+                .mapToLong(c -> ((long) c.row() << 32) | c.column())
+                .sorted()
+                .distinct()
+                .toArray();
+        
+        targetRows = IntStream.concat(
+                Arrays.stream(redundantRows),
+                Arrays.stream(diffs).mapToInt(d -> (int) (d >>> 32)))
+                .sorted()
+                .distinct()
+                .toArray();
+        
+        redundantFlags = new boolean[targetRows.length];
+        offsets = new int[targetRows.length + 1];
+        targetCols = new int[diffs.length + targetRows.length * redundantCols.length];
+        
+        int d = 0;
+        int n = 0;
+        for (int i = 0; i < targetRows.length; i++) {
+            redundantFlags[i] = 0 <= Arrays.binarySearch(redundantRows, targetRows[i]);
+            offsets[i] = n;
+            
+            int dEnd = d;
+            while (dEnd < diffs.length && (int) (diffs[dEnd] >>> 32) == targetRows[i]) {
+                dEnd++;
+            }
+            
+            // 差分セルの列と余剰列を、重複を除きながら昇順にマージする。
+            int r = 0;
+            while (d < dEnd || r < redundantCols.length) {
+                if (r == redundantCols.length || (d < dEnd && (int) diffs[d] <= redundantCols[r])) {
+                    int col = (int) diffs[d++];
+                    if (r < redundantCols.length && redundantCols[r] == col) {
+                        r++;
+                    }
+                    targetCols[n++] = col;
+                } else {
+                    targetCols[n++] = redundantCols[r++];
+                }
+            }
+        }
+        offsets[targetRows.length] = n;
+    }
+    
+    /**
+     * 指定された列が余剰列であるかを返します。<br>
+     * 
+     * @param col 列インデックス（0開始）
+     * @return 余剰列である場合は {@code true}
+     */
+    public boolean isRedundantCol(int col) {
+        return 0 <= Arrays.binarySearch(redundantCols, col);
+    }
+}
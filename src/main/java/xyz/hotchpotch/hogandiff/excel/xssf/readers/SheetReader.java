@@ -1,20 +1,15 @@
 package xyz.hotchpotch.hogandiff.excel.xssf.readers;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Queue;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
@@ -24,9 +19,6 @@ import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
 import xyz.hotchpotch.hogandiff.Context;
 import xyz.hotchpotch.hogandiff.Context.Props;
 import xyz.hotchpotch.hogandiff.common.Pair;
@@ -56,7 +48,11 @@ public class SheetReader extends AbstractCachingReader {
     }
     
     /**
-     * XSSF（.xlsx/.xlsm）形式のExcelファイルに含まれる xl/styles.xml エントリのラッパーです。<br>
+     * XSSF（.xlsx/.xlsm）形式のExcelファイルに含まれる xl/styles.xml エントリに追加するスタイルを管理するクラスです。<br>
+     * <br>
+     * シートの処理の中で必要になったスタイル（元のスタイルと色の組み合わせ）に順にインデックスを割り当てて記録します。
+     * 記録されたスタイルは、全てのシートの処理が終わった後に {@link StylesReader} によって
+     * xl/styles.xml エントリに一度に追加されます。<br>
      * 
      * @author nmby
      * @since 0.4.0
@@ -66,104 +62,153 @@ public class SheetReader extends AbstractCachingReader {
         // [static members] ----------------------------------------------------
         
         /**
-         * {@link StylesManager} オブジェクトを生成して返します。<br>
+         * xl/styles.xml エントリを読み込み、{@link StylesManager} オブジェクトを生成して返します。<br>
          * 
-         * @param styles xl/styles.xml エントリから生成した {@link Document}
+         * @param styles xl/styles.xml エントリを読み込むリーダー
          * @return 新しい {@link StylesManager} オブジェクト
+         * @throws XMLStreamException XMLイベントの解析に失敗した場合
          * @throws NullPointerException {@code styles} が {@code null} の場合
+         * @since 0.5.0
          */
-        public static StylesManager of(Document styles) {
+        public static StylesManager of(XMLEventReader styles) throws XMLStreamException {
             Objects.requireNonNull(styles, "styles");
-            return new StylesManager(styles);
+            
+            // count 属性の値ではなく、実際の子要素の数を数える。
+            int cellXfsCount = 0;
+            int fillsCount = 0;
+            QName parent = null;
+            int depth = 0;
+            int parentDepth = -1;
+            
+            while (styles.hasNext()) {
+                XMLEvent event = styles.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    QName name = event.asStartElement().getName();
+                    if (parent == null && (QNAME.CELL_XFS.equals(name) || QNAME.FILLS.equals(name))) {
+                        parent = name;
+                        parentDepth = depth;
+                    } else if (depth == parentDepth + 1 && QNAME.CELL_XFS.equals(parent)
+                            && QNAME.XF.equals(name)) {
+                        cellXfsCount++;
+                    } else if (depth == parentDepth + 1 && QNAME.FILLS.equals(parent)
+                            && QNAME.FILL.equals(name)) {
+                        fillsCount++;
+                    }
+                    
+                } else if (event.isEndElement()) {
+                    if (depth == parentDepth) {
+                        parent = null;
+                        parentDepth = -1;
+                    }
+                    depth--;
+                }
+            }
+            return new StylesManager(cellXfsCount, fillsCount);
         }
         
         // [instance members] --------------------------------------------------
         
-        private final Document styles;
-        private final Element elemCellXfs;
-        private final Element elemFills;
-        private final Map<Pair<Integer>, Integer> xfsMap = new HashMap<>();
+        private final int cellXfsCount;
+        private final int fillsCount;
+        private final Map<Pair<Integer>, Integer> xfsMap = new ConcurrentHashMap<>();
         private final Map<Short, Integer> fillsMap = new HashMap<>();
         
-        private int cellXfsCount;
-        private int fillsCount;
+        /** 追加するスタイルの元のスタイルのインデックスと塗りつぶしのインデックスの組（追加する順） */
+        private final List<Pair<Integer>> newXfs = new ArrayList<>();
+        
+        /** 追加する塗りつぶしの色（追加する順） */
+        private final List<Short> newFills = new ArrayList<>();
         
-        private StylesManager(Document styles) {
-            assert styles != null;
-            this.styles = styles;
+        private StylesManager(int cellXfsCount, int fillsCount) {
+            assert 0 <= cellXfsCount;
+            assert 0 <= fillsCount;
             
-            elemCellXfs = (Element) styles.getElementsByTagName("cellXfs").item(0);
-            elemFills = (Element) styles.getElementsByTagName("fills").item(0);
-            cellXfsCount = Integer.parseInt(elemCellXfs.getAttribute("count"));
-            fillsCount = Integer.parseInt(elemFills.getAttribute("count"));
+            this.cellXfsCount = cellXfsCount;
+            this.fillsCount = fillsCount;
         }
         
         private int createFill(short newColor) {
-            fillsMap.put(newColor, fillsCount);
-            fillsCount++;
-            elemFills.setAttribute("count", Integer.toString(fillsCount));
-            
-            Element newFill = styles.createElement("fill");
-            elemFills.appendChild(newFill);
-            
-            Element patternFill = styles.createElement("patternFill");
-            patternFill.setAttribute("patternType", "solid");
-            newFill.appendChild(patternFill);
-            
-            Element fgColor = styles.createElement("fgColor");
-            fgColor.setAttribute("indexed", Integer.toString(newColor));
-            patternFill.appendChild(fgColor);
-            
-            return fillsCount - 1;
+            newFills.add(newColor);
+            return fillsCount + newFills.size() - 1;
         }
         
-        private int copyXf(int idx, short newColor) {
-            xfsMap.put(Pair.of(idx, (int) newColor), cellXfsCount);
-            cellXfsCount++;
-            elemCellXfs.setAttribute("count", Integer.toString(cellXfsCount));
-            
-            Element orgXf = (Element) elemCellXfs.getElementsByTagName("xf").item(idx);
-            Element newXf = (Element) orgXf.cloneNode(true);
-            elemCellXfs.appendChild(newXf);
-            
-            int newFillId = Optional.ofNullable(fillsMap.get(newColor))
-                    .orElseGet(() -> createFill(newColor));
-            newXf.setAttribute("fillId", Integer.toString(newFillId));
-            newXf.setAttribute("applyFill", "1");
-            
-            return cellXfsCount - 1;
+        private int copyXf(Pair<Integer> key, short newColor) {
+            int newFillId = fillsMap.computeIfAbsent(newColor, this::createFill);
+            newXfs.add(Pair.of(key.a(), newFillId));
+            int newIdx = cellXfsCount + newXfs.size() - 1;
+            xfsMap.put(key, newIdx);
+            return newIdx;
         }
         
         /**
          * 指定されたスタイルに指定された色を適用したスタイルを返します。<br>
          * 該当するスタイルが既に存在すればそれを、存在しなければ新たに作成して返します。<br>
+         * このメソッドは、複数のシートを並行して処理するスレッドから同時に呼び出すことができます。<br>
          * 
          * @param idx 元のスタイルのインデックス
          * @param newColor 新たなスタイルの色
          * @return 新たなスタイルのインデックス
          */
-        public synchronized int getNewStyle(int idx, short newColor) {
+        public int getNewStyle(int idx, short newColor) {
             Pair<Integer> key = Pair.of(idx, (int) newColor);
-            if (xfsMap.containsKey(key)) {
-                return xfsMap.get(key);
-            } else {
-                return copyXf(idx, newColor);
+            
+            // 既に作成済みのスタイルはロックを取らずに返し、新たに作成する場合だけ同期する。
+            Integer newIdx = xfsMap.get(key);
+            if (newIdx != null) {
+                return newIdx;
+            }
+            synchronized (this) {
+                newIdx = xfsMap.get(key);
+                return newIdx != null ? newIdx : copyXf(key, newColor);
             }
         }
+        
+        /*package*/ synchronized int cellXfsCount() {
+            return cellXfsCount + newXfs.size();
+        }
+        
+        /*package*/ synchronized int fillsCount() {
+            return fillsCount + newFills.size();
+        }
+        
+        /*package*/ synchronized List<Pair<Integer>> newXfs() {
+            return new ArrayList<>(newXfs);
+        }
+        
+        /*package*/ synchronized List<Short> newFills() {
+            return new ArrayList<>(newFills);
+        }
     }
     
     private static final XMLEventFactory eventFactory = XMLEventFactory.newFactory();
     
-    private static void copyAttributes(
-            Iterator<Attribute> original,
-            Set<Attribute> dstAttrs) {
-        
-        while (original.hasNext()) {
-            Attribute attr = original.next();
-            if (dstAttrs.stream().map(Attribute::getName).noneMatch(attr.getName()::equals)) {
-                dstAttrs.add(attr);
+    private static int parseStyle(StartElement start, QName name) {
+        Attribute attr = start.getAttributeByName(name);
+        return attr == null ? 0 : Integer.parseInt(attr.getValue());
+    }
+    
+    /**
+     * セルアドレス（"A1"..）の列部分を列インデックス（0開始）に変換して返します。<br>
+     * 
+     * @param address セルアドレス
+     * @return 列インデックス（0開始）
+     * @throws IllegalArgumentException {@code address} の値が不正な場合
+     */
+    /*package*/ static int parseColumn(String address) {
+        int column = 0;
+        int i = 0;
+        for (; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c < 'A' || 'Z' < c) {
+                break;
             }
+            column = column * 26 + (c - 'A' + 1);
         }
+        if (i == 0) {
+            throw new IllegalArgumentException("address: " + address);
+        }
+        return column - 1;
     }
     
     /**
@@ -200,6 +245,9 @@ public class SheetReader extends AbstractCachingReader {
     private final short redundantColor;
     private final short diffColor;
     
+    /** 要素の属性を組み立てるために使い回すバッファ */
+    private final List<Attribute> attrsBuffer = new ArrayList<>();
+    
     private Processor processor;
     
     private SheetReader(
@@ -253,6 +301,38 @@ public class SheetReader extends AbstractCachingReader {
         source.close();
     }
     
+    /**
+     * 元の要素の属性の一部を置き換えた新たな開始要素を返します。<br>
+     * 
+     * @param name 要素名
+     * @param original 元の要素（元の属性を引き継がない場合は {@code null}）
+     * @param replacements 追加または置き換える属性
+     * @return 新たな開始要素
+     */
+    private StartElement replaceAttributes(QName name, StartElement original, Attribute... replacements) {
+        attrsBuffer.clear();
+        Collections.addAll(attrsBuffer, replacements);
+        
+        if (original != null) {
+            @SuppressWarnings("unchecked")
+            Iterator<Attribute> itr = original.getAttributes();
+            while (itr.hasNext()) {
+                Attribute attr = itr.next();
+                boolean replaced = false;
+                for (Attribute replacement : replacements) {
+                    if (replacement.getName().equals(attr.getName())) {
+                        replaced = true;
+                        break;
+                    }
+                }
+                if (!replaced) {
+                    attrsBuffer.add(attr);
+                }
+            }
+        }
+        return eventFactory.createStartElement(name, attrsBuffer.iterator(), null);
+    }
+    
     private class WaitingCol implements Processor {
         
         @Override
@@ -337,12 +417,12 @@ public class SheetReader extends AbstractCachingReader {
                     Pair<Integer> prev1 = range1;
                     Pair<Integer> prev2 = range2;
                     
-                    if (prev1.b() < prev2.b()) {
+                    if (prev1.b() <= prev2.b()) {
                         range1 = null;
                     } else {
                         reArrangeRange1(prev2.b() + 1, prev1.b());
                     }
-                    range2 = prev2.b() < prev1.b()
+                    range2 = prev2.b() <= prev1.b()
                             ? redundantRanges.poll()
                             : Pair.of(prev1.b() + 1, prev2.b());
                     return;
@@ -397,10 +477,7 @@ public class SheetReader extends AbstractCachingReader {
                 }
                 colEvents.add(source.nextEvent());
                 
-                int currStyle = Optional.ofNullable(colStart.getAttributeByName(NONS_QNAME.STYLE))
-                        .map(Attribute::getValue)
-                        .map(Integer::parseInt)
-                        .orElse(0);
+                int currStyle = parseStyle(colStart, NONS_QNAME.STYLE);
                 colNewStyle = Integer.toString(stylesManager.getNewStyle(currStyle, redundantColor));
             }
         }
@@ -408,14 +485,9 @@ public class SheetReader extends AbstractCachingReader {
         private void reArrangeRange1(int min, int max) {
             range1 = Pair.of(min, max);
             
-            Set<Attribute> attrs = new HashSet<>();
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(min + 1)));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(max + 1)));
-            @SuppressWarnings("unchecked")
-            Iterator<Attribute> itr = colStart.getAttributes();
-            copyAttributes(itr, attrs);
-            
-            colStart = eventFactory.createStartElement(QNAME.COL, attrs.iterator(), null);
+            colStart = replaceAttributes(QNAME.COL, colStart,
+                    eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(min + 1)),
+                    eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(max + 1)));
         }
         
         private boolean findNextCol() throws XMLStreamException {
@@ -440,31 +512,24 @@ public class SheetReader extends AbstractCachingReader {
         }
         
         private void copyCol(int start, int end, boolean redundant) {
-            Set<Attribute> attrs = new HashSet<>();
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(start + 1)));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(end + 1)));
-            if (redundant) {
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.STYLE, colNewStyle));
-            }
-            
-            @SuppressWarnings("unchecked")
-            Iterator<Attribute> itr = colStart.getAttributes();
-            SheetReader.copyAttributes(itr, attrs);
+            Attribute min = eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(start + 1));
+            Attribute max = eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(end + 1));
             
-            nexts.add(eventFactory.createStartElement(QNAME.COL, attrs.iterator(), null));
+            nexts.add(redundant
+                    ? replaceAttributes(QNAME.COL, colStart, min, max,
+                            eventFactory.createAttribute(NONS_QNAME.STYLE, colNewStyle))
+                    : replaceAttributes(QNAME.COL, colStart, min, max));
             nexts.addAll(colEvents);
         }
         
         private void createCol(int start, int end) {
             int newStyle = stylesManager.getNewStyle(0, redundantColor);
             
-            Set<Attribute> attrs = new HashSet<>();
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(start + 1)));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(end + 1)));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.STYLE, Integer.toString(newStyle)));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.WIDTH, "8.6640625"));
-            
-            nexts.add(eventFactory.createStartElement(QNAME.COL, attrs.iterator(), null));
+            nexts.add(replaceAttributes(QNAME.COL, null,
+                    eventFactory.createAttribute(NONS_QNAME.MIN, Integer.toString(start + 1)),
+                    eventFactory.createAttribute(NONS_QNAME.MAX, Integer.toString(end + 1)),
+                    eventFactory.createAttribute(NONS_QNAME.STYLE, Integer.toString(newStyle)),
+                    eventFactory.createAttribute(NONS_QNAME.WIDTH, "8.6640625")));
             nexts.add(eventFactory.createEndElement(QNAME.COL, null));
         }
     }
@@ -486,78 +551,62 @@ public class SheetReader extends AbstractCachingReader {
         }
     }
     
+    /**
+     * {@code <sheetData>} 要素の中の各行を処理するプロセッサです。<br>
+     * 色を付ける行と列を {@link PaintTargets} の配列とカーソルで管理することで、
+     * 差分箇所を含まない行を処理する際にはオブジェクトをほとんど生成しません。<br>
+     * {@code <row>} 要素や {@code <c>} 要素の r 属性は省略可能であり、
+     * 省略された場合は直前の行・列の次の行・列とみなします。<br>
+     */
     private class ProcessingRow implements Processor {
         
-        private final Queue<Entry<Integer, Queue<Pair<Integer>>>> targets;
-        private final Set<Integer> redundantRows;
-        private final Set<Integer> redundantColumns;
-        
-        private ProcessingRow() {
-            List<Integer> rows = Stream.concat(
-                    piece.redundantRows.stream(),
-                    piece.diffCells.stream().map(CellReplica::row))
-                    .sorted()
-                    .distinct()
-                    .collect(Collectors.toList());
-            
-            List<Pair<Integer>> cells = Stream.concat(
-                    piece.diffCells.stream().map(c -> Pair.of(c.row(), c.column())),
-                    rows.stream().flatMap(r -> piece.redundantColumns.stream().map(c -> Pair.of(r, c))))
-                    .sorted((c1, c2) -> !c1.a().equals(c2.a())
-                            ? Integer.compare(c1.a(), c2.a())
-                            : Integer.compare(c1.b(), c2.b()))
-                    .distinct()
-                    .collect(Collectors.toList());
-            
-            Map<Integer, Queue<Pair<Integer>>> tmp = cells.stream()
-                    .collect(Collectors.groupingBy(
-                            Pair::a,
-                            Collectors.toCollection(ArrayDeque::new)));
-            
-            piece.redundantRows.forEach(r -> tmp.putIfAbsent(r, new ArrayDeque<>()));
-            
-            targets = tmp.entrySet().stream()
-                    .sorted(Comparator.comparing(Entry::getKey))
-                    .collect(Collectors.toCollection(ArrayDeque::new));
-            
-            redundantRows = new HashSet<>(piece.redundantRows);
-            redundantColumns = new HashSet<>(piece.redundantColumns);
-        }
+        private final PaintTargets targets = PaintTargets.of(piece);
+        
+        private int rowCursor;
+        
+        /** ソースの直前の行のインデックス */
+        private int prevRow = -1;
+        
+        // 処理中の行の状態
+        private boolean currRedundant;
+        private int[] currCols;
+        private int colCursor;
+        private int colEnd;
         
         @Override
         public void process() throws XMLStreamException {
-            Optional<Integer> eventRowIdx = Optional.ofNullable(source.peek())
-                    .filter(XMLEvent::isStartElement)
-                    .map(XMLEvent::asStartElement)
-                    .filter(start -> QNAME.ROW.equals(start.getName()))
-                    .map(start -> start.getAttributeByName(NONS_QNAME.R))
-                    .map(Attribute::getValue)
-                    .map(str -> Integer.parseInt(str) - 1);
-            
-            Optional<Integer> diffRowIdx = Optional.ofNullable(targets.peek())
-                    .map(Entry::getKey);
+            XMLEvent event = source.peek();
+            int eventRow = -1;
+            if (event != null && event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                if (QNAME.ROW.equals(start.getName())) {
+                    Attribute r = start.getAttributeByName(NONS_QNAME.R);
+                    eventRow = r == null ? prevRow + 1 : Integer.parseInt(r.getValue()) - 1;
+                }
+            }
+            int targetRow = rowCursor < targets.targetRows.length ? targets.targetRows[rowCursor] : -1;
             
-            if (eventRowIdx.isPresent() && diffRowIdx.isPresent()) {
-                int c = Integer.compare(eventRowIdx.get(), diffRowIdx.get());
-                if (c < 0) {
-                    addModifiedRowEvents(redundantColumns.stream()
-                            .map(i -> Pair.of(eventRowIdx.get(), i))
-                            .collect(Collectors.toCollection(ArrayDeque::new)));
-                    
-                } else if (0 < c) {
-                    addNewRowEvents(targets.poll());
-                    
+            if (eventRow != -1 && (targetRow == -1 || eventRow < targetRow)) {
+                // 余剰行でも差分セルを含む行でもない行
+                if (targets.redundantCols.length == 0) {
+                    copyRowEvents(eventRow);
                 } else {
-                    addModifiedRowEvents(targets.poll().getValue());
+                    enterRow(false, targets.redundantCols, 0, targets.redundantCols.length);
+                    addModifiedRowEvents(eventRow);
                 }
                 
-            } else if (eventRowIdx.isPresent()) {
-                addModifiedRowEvents(redundantColumns.stream()
-                        .map(i -> Pair.of(eventRowIdx.get(), i))
-                        .collect(Collectors.toCollection(ArrayDeque::new)));
-                
-            } else if (diffRowIdx.isPresent()) {
-                addNewRowEvents(targets.poll());
+            } else if (targetRow != -1) {
+                enterRow(
+                        targets.redundantFlags[rowCursor],
+                        targets.targetCols,
+                        targets.offsets[rowCursor],
+                        targets.offsets[rowCursor + 1]);
+                rowCursor++;
+                if (eventRow == targetRow) {
+                    addModifiedRowEvents(eventRow);
+                } else {
+                    addNewRowEvents(targetRow);
+                }
                 
             } else {
                 nexts.add(source.nextEvent());
@@ -565,28 +614,48 @@ public class SheetReader extends AbstractCachingReader {
             }
         }
         
-        private void addNewRowEvents(Entry<Integer, Queue<Pair<Integer>>> target) {
-            nexts.add(createRowStart(target.getKey()));
+        private void enterRow(boolean redundant, int[] cols, int from, int to) {
+            currRedundant = redundant;
+            currCols = cols;
+            colCursor = from;
+            colEnd = to;
+        }
+        
+        private void copyRowEvents(int rowIdx) throws XMLStreamException {
+            prevRow = rowIdx;
+            
+            while (source.hasNext()) {
+                XMLEvent event = source.nextEvent();
+                nexts.add(event);
+                if (event.isEndElement() && QNAME.ROW.equals(event.asEndElement().getName())) {
+                    return;
+                }
+            }
+            throw new XMLStreamException();
+        }
+        
+        private void addNewRowEvents(int rowIdx) {
+            nexts.add(createRowStart(rowIdx));
             
-            target.getValue().forEach(idx -> {
-                nexts.add(createCStart(idx));
-                nexts.add(eventFactory.createEndElement(QNAME.C, null));
-            });
+            while (colCursor < colEnd) {
+                addNewCEvents(rowIdx, currCols[colCursor++]);
+            }
             
             nexts.add(eventFactory.createEndElement(QNAME.ROW, null));
         }
         
-        private void addModifiedRowEvents(Queue<Pair<Integer>> cells) throws XMLStreamException {
+        private void addModifiedRowEvents(int rowIdx) throws XMLStreamException {
+            prevRow = rowIdx;
             StartElement rowStart = source.nextEvent().asStartElement();
-            nexts.add(modifyRowStart(rowStart));
+            nexts.add(currRedundant ? modifyRowStart(rowStart) : rowStart);
+            int prevCol = -1;
             
             while (source.hasNext()) {
                 XMLEvent event = source.nextEvent();
                 
                 if (event.isEndElement() && QNAME.ROW.equals(event.asEndElement().getName())) {
-                    while (!cells.isEmpty()) {
-                        nexts.add(createCStart(cells.poll()));
-                        nexts.add(eventFactory.createEndElement(QNAME.C, null));
+                    while (colCursor < colEnd) {
+                        addNewCEvents(rowIdx, currCols[colCursor++]);
                     }
                     
                     nexts.add(event);
@@ -594,20 +663,19 @@ public class SheetReader extends AbstractCachingReader {
                     
                 } else if (event.isStartElement() && QNAME.C.equals(event.asStartElement().getName())) {
                     StartElement cStart = event.asStartElement();
-                    Pair<Integer> eventIdx = CellReplica.getIndex(
-                            cStart.getAttributeByName(NONS_QNAME.R).getValue());
+                    Attribute r = cStart.getAttributeByName(NONS_QNAME.R);
+                    int col = r == null ? prevCol + 1 : parseColumn(r.getValue());
+                    prevCol = col;
                     
-                    while (!cells.isEmpty() && cells.peek().b() < eventIdx.b()) {
-                        nexts.add(createCStart(cells.poll()));
-                        nexts.add(eventFactory.createEndElement(QNAME.C, null));
+                    while (colCursor < colEnd && currCols[colCursor] < col) {
+                        addNewCEvents(rowIdx, currCols[colCursor++]);
                     }
                     
-                    if (!cells.isEmpty() && cells.peek().b().equals(eventIdx.b())) {
-                        cells.poll();
-                        nexts.add(modifyCStart(cStart, true));
-                    } else {
-                        nexts.add(modifyCStart(cStart, false));
+                    boolean maybeDiff = colCursor < colEnd && currCols[colCursor] == col;
+                    if (maybeDiff) {
+                        colCursor++;
                     }
+                    nexts.add(modifyCStart(cStart, col, maybeDiff));
                     
                 } else {
                     nexts.add(event);
@@ -617,73 +685,45 @@ public class SheetReader extends AbstractCachingReader {
         }
         
         private StartElement createRowStart(int rowIdx) {
-            Set<Attribute> attrs = new HashSet<>();
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.R, Integer.toString(rowIdx + 1)));
+            Attribute r = eventFactory.createAttribute(NONS_QNAME.R, Integer.toString(rowIdx + 1));
             
-            if (redundantRows.contains(rowIdx)) {
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.CUSTOM_FORMAT, "1"));
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.S,
-                        Integer.toString(stylesManager.getNewStyle(0, redundantColor))));
-            }
-            
-            return eventFactory.createStartElement(QNAME.ROW, attrs.iterator(), null);
+            return currRedundant
+                    ? replaceAttributes(QNAME.ROW, null, r,
+                            eventFactory.createAttribute(NONS_QNAME.CUSTOM_FORMAT, "1"),
+                            eventFactory.createAttribute(NONS_QNAME.S,
+                                    Integer.toString(stylesManager.getNewStyle(0, redundantColor))))
+                    : replaceAttributes(QNAME.ROW, null, r);
         }
         
-        private StartElement createCStart(Pair<Integer> idx) {
-            short color = redundantRows.contains(idx.a()) || redundantColumns.contains(idx.b())
+        private void addNewCEvents(int rowIdx, int col) {
+            short color = currRedundant || targets.isRedundantCol(col)
                     ? redundantColor
                     : diffColor;
             
-            Set<Attribute> attrs = new HashSet<>();
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.R,
-                    CellReplica.getAddress(idx.a(), idx.b())));
-            attrs.add(eventFactory.createAttribute(NONS_QNAME.S,
-                    Integer.toString(stylesManager.getNewStyle(0, color))));
-            
-            return eventFactory.createStartElement(QNAME.C, attrs.iterator(), null);
+            nexts.add(replaceAttributes(QNAME.C, null,
+                    eventFactory.createAttribute(NONS_QNAME.R, CellReplica.getAddress(rowIdx, col)),
+                    eventFactory.createAttribute(NONS_QNAME.S,
+                            Integer.toString(stylesManager.getNewStyle(0, color)))));
+            nexts.add(eventFactory.createEndElement(QNAME.C, null));
         }
         
         private StartElement modifyRowStart(StartElement original) {
-            int rowIdx = Integer.parseInt(original.getAttributeByName(NONS_QNAME.R).getValue()) - 1;
+            int newStyle = stylesManager.getNewStyle(parseStyle(original, NONS_QNAME.S), redundantColor);
             
-            if (redundantRows.contains(rowIdx)) {
-                int currStyle = Optional.ofNullable(original.getAttributeByName(NONS_QNAME.S))
-                        .map(Attribute::getValue)
-                        .map(Integer::parseInt)
-                        .orElse(0);
-                int newStyle = stylesManager.getNewStyle(currStyle, redundantColor);
-                
-                Set<Attribute> attrs = new HashSet<>();
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.CUSTOM_FORMAT, "1"));
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.S, Integer.toString(newStyle)));
-                @SuppressWarnings("unchecked")
-                Iterator<Attribute> currAttrs = original.getAttributes();
-                copyAttributes(currAttrs, attrs);
-                return eventFactory.createStartElement(QNAME.ROW, attrs.iterator(), null);
-                
-            } else {
-                return original;
-            }
+            return replaceAttributes(QNAME.ROW, original,
+                    eventFactory.createAttribute(NONS_QNAME.CUSTOM_FORMAT, "1"),
+                    eventFactory.createAttribute(NONS_QNAME.S, Integer.toString(newStyle)));
         }
         
-        private StartElement modifyCStart(StartElement original, boolean maybeDiff) {
-            String address = original.getAttributeByName(NONS_QNAME.R).getValue();
-            Pair<Integer> idx = CellReplica.getIndex(address);
-            
-            boolean redundant = redundantRows.contains(idx.a()) || redundantColumns.contains(idx.b());
+        private StartElement modifyCStart(StartElement original, int col, boolean maybeDiff) {
+            boolean redundant = currRedundant || (maybeDiff && targets.isRedundantCol(col));
             if (maybeDiff || redundant) {
-                int currStyle = Optional.ofNullable(original.getAttributeByName(NONS_QNAME.S))
-                        .map(Attribute::getValue)
-                        .map(Integer::parseInt)
-                        .orElse(0);
-                int newStyle = stylesManager.getNewStyle(currStyle, redundant ? redundantColor : diffColor);
+                int newStyle = stylesManager.getNewStyle(
+                        parseStyle(original, NONS_QNAME.S),
+                        redundant ? redundantColor : diffColor);
                 
-                Set<Attribute> attrs = new HashSet<>();
-                attrs.add(eventFactory.createAttribute(NONS_QNAME.S, Integer.toString(newStyle)));
-                @SuppressWarnings("unchecked")
-                Iterator<Attribute> currAttrs = original.getAttributes();
-                copyAttributes(currAttrs, attrs);
-                return eventFactory.createStartElement(QNAME.C, attrs.iterator(), null);
+                return replaceAttributes(QNAME.C, original,
+                        eventFactory.createAttribute(NONS_QNAME.S, Integer.toString(newStyle)));
                 
             } else {
                 return original;
@@ -0,0 +1,452 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.NONS_QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+/**
+ * XSSF（.xlsx/.xlsm）形式のExcelファイルに含まれる xl/worksheets/sheet?.xml エントリを変換して
+ * 差分箇所に色を付ける {@link AbstractCursorTransformer} の実装です。<br>
+ * {@link SheetReader} と同じ処理をStAXのカーソルAPIで行います。
+ * 差分箇所を含まない行やセルは、イベントオブジェクトを生成することなくそのまま書き写します。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class SheetTransformer extends AbstractCursorTransformer {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 既存の {@code <col>} 要素の内容を保持するクラスです。<br>
+     * 
+     * @author nmby
+     * @since 0.5.0
+     */
+    private static class Col {
+        
+        // [static members] ----------------------------------------------------
+        
+        // [instance members] --------------------------------------------------
+        
+        private final int min;
+        private final int max;
+        
+        /** style 属性の値（style 属性が存在しない場合は {@code -1}） */
+        private final int style;
+        
+        /** min, max, style 以外の属性（接頭辞、名前空間URI、ローカル名、値の順に並べたもの） */
+        private final String[] attrs;
+        
+        private Col(int min, int max, int style, String[] attrs) {
+            this.min = min;
+            this.max = max;
+            this.style = style;
+            this.attrs = attrs;
+        }
+    }
+    
+    private static final String[] S = { NONS_QNAME.S.getLocalPart() };
+    private static final String[] S_AND_CUSTOM_FORMAT = {
+            NONS_QNAME.S.getLocalPart(),
+            NONS_QNAME.CUSTOM_FORMAT.getLocalPart() };
+    
+    /**
+     * {@link SheetTransformer} オブジェクトを生成して返します。<br>
+     * 
+     * @param reader 変換元のXMLを読み込むリーダー
+     * @param writer 変換後のXMLを書き出すライター
+     * @param stylesManager 対象Excelブックの xl/styles.xml エントリから構成した {@link StylesManager} オブジェクト
+     * @param piece 対象シートの差分箇所
+     * @param context コンテキスト
+     * @param filters 読み飛ばす要素の名前（要素の階層に関わらず読み飛ばします）
+     * @return 新しい {@link SheetTransformer} オブジェクト
+     * @throws NullPointerException {@code reader}, {@code writer}, {@code stylesManager}, {@code piece},
+     *                              {@code context}, {@code filters} のいずれかが {@code null} の場合
+     */
+    public static SheetTransformer of(
+            XMLStreamReader reader,
+            XMLStreamWriter writer,
+            StylesManager stylesManager,
+            Piece piece,
+            Context context,
+            QName... filters) {
+        
+        Objects.requireNonNull(reader, "reader");
+        Objects.requireNonNull(writer, "writer");
+        Objects.requireNonNull(stylesManager, "stylesManager");
+        Objects.requireNonNull(piece, "piece");
+        Objects.requireNonNull(context, "context");
+        Objects.requireNonNull(filters, "filters");
+        
+        return new SheetTransformer(reader, writer, stylesManager, piece, context, filters);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final StylesManager stylesManager;
+    private final PaintTargets targets;
+    private final short redundantColor;
+    private final short diffColor;
+    
+    private boolean colsDone;
+    private boolean inSheetData;
+    private int rowCursor;
+    
+    // r 属性が省略された場合に用いる、ソースの直前の行と列のインデックス
+    private int prevRow = -1;
+    private int prevCol;
+    
+    // 処理中の行の状態
+    private boolean inTargetRow;
+    private int currRow;
+    private boolean currRedundant;
+    private int[] currCols;
+    private int colCursor;
+    private int colEnd;
+    
+    private SheetTransformer(
+            XMLStreamReader reader,
+            XMLStreamWriter writer,
+            StylesManager stylesManager,
+            Piece piece,
+            Context context,
+            QName[] filters) {
+        
+        super(reader, writer, new HashSet<>(Arrays.asList(filters)));
+        
+        assert stylesManager != null;
+        assert piece != null;
+        assert context != null;
+        
+        this.stylesManager = stylesManager;
+        this.targets = PaintTargets.of(piece);
+        this.redundantColor = context.get(Props.APP_REDUNDANT_COLOR);
+        this.diffColor = context.get(Props.APP_DIFF_COLOR);
+        this.colsDone = targets.redundantCols.length == 0;
+    }
+    
+    @Override
+    protected void process(int type) throws XMLStreamException {
+        if (type == XMLStreamConstants.START_ELEMENT) {
+            if (!colsDone && is(QNAME.COLS)) {
+                processCols();
+                colsDone = true;
+                return;
+            }
+            if (!inSheetData && is(QNAME.SHEET_DATA)) {
+                if (!colsDone) {
+                    // <cols> 要素が存在しない場合は、余剰列のための <cols> 要素を作成する。
+                    writeStartElement(QNAME.COLS);
+                    writeCols(new ArrayList<>());
+                    writer.writeEndElement();
+                    colsDone = true;
+                }
+                inSheetData = true;
+                copyEvent(type);
+                return;
+            }
+            if (inSheetData && is(QNAME.ROW)) {
+                processRowStart();
+                return;
+            }
+            if (inTargetRow && is(QNAME.C)) {
+                processCStart();
+                return;
+            }
+            
+        } else if (type == XMLStreamConstants.END_ELEMENT) {
+            if (inTargetRow && is(QNAME.ROW)) {
+                while (colCursor < colEnd) {
+                    writeNewC(currCols[colCursor++]);
+                }
+                inTargetRow = false;
+                
+            } else if (inSheetData && is(QNAME.SHEET_DATA)) {
+                while (rowCursor < targets.targetRows.length) {
+                    writeNewRow();
+                }
+                inSheetData = false;
+            }
+        }
+        copyEvent(type);
+    }
+    
+    private void processCols() throws XMLStreamException {
+        copyEvent(XMLStreamConstants.START_ELEMENT);
+        
+        List<Col> cols = new ArrayList<>();
+        while (true) {
+            int type = reader.next();
+            if (type == XMLStreamConstants.START_ELEMENT && is(QNAME.COL)) {
+                cols.add(readCol());
+            } else if (type == XMLStreamConstants.END_ELEMENT && is(QNAME.COLS)) {
+                break;
+            }
+        }
+        
+        writeCols(cols);
+        copyEvent(XMLStreamConstants.END_ELEMENT);
+    }
+    
+    private Col readCol() throws XMLStreamException {
+        int min = 0;
+        int max = 0;
+        int style = -1;
+        List<String> attrs = new ArrayList<>();
+        
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            String value = reader.getAttributeValue(i);
+            boolean noPrefix = prefix == null || prefix.isEmpty();
+            
+            if (noPrefix && NONS_QNAME.MIN.getLocalPart().equals(localName)) {
+                min = Integer.parseInt(value) - 1;
+            } else if (noPrefix && NONS_QNAME.MAX.getLocalPart().equals(localName)) {
+                max = Integer.parseInt(value) - 1;
+            } else if (noPrefix && NONS_QNAME.STYLE.getLocalPart().equals(localName)) {
+                style = Integer.parseInt(value);
+            } else {
+                attrs.add(prefix);
+                attrs.add(reader.getAttributeNamespace(i));
+                attrs.add(localName);
+                attrs.add(value);
+            }
+        }
+        skipElement();
+        return new Col(min, max, style, attrs.toArray(new String[attrs.size()]));
+    }
+    
+    /**
+     * 既存の {@code <col>} 要素を余剰列の範囲で分割し、余剰列に色を付けて書き出します。
+     * 既存の {@code <col>} 要素が存在しない余剰列については、新たに {@code <col>} 要素を作成します。<br>
+     * 
+     * @param cols 既存の {@code <col>} 要素（列の昇順）
+     * @throws XMLStreamException XMLの書き出しに失敗した場合
+     */
+    private void writeCols(List<Col> cols) throws XMLStreamException {
+        int[] redundants = targets.redundantCols;
+        int r = 0;
+        int rs = redundants[0];
+        
+        for (Col col : cols) {
+            int a = col.min;
+            
+            // 既存の <col> 要素よりも前の余剰列
+            while (r < redundants.length && rs < a) {
+                int re = rangeEnd(r);
+                writeNewCol(rs, Math.min(re, a - 1));
+                if (re < a) {
+                    r = nextRange(r);
+                    rs = r < redundants.length ? redundants[r] : Integer.MAX_VALUE;
+                } else {
+                    rs = a;
+                }
+            }
+            
+            // 既存の <col> 要素を余剰列の範囲で分割する。
+            while (a <= col.max) {
+                if (r < redundants.length && rs <= a) {
+                    int re = rangeEnd(r);
+                    int end = Math.min(col.max, re);
+                    writeCol(col, a, end, true);
+                    a = end + 1;
+                    if (re < a) {
+                        r = nextRange(r);
+                        rs = r < redundants.length ? redundants[r] : Integer.MAX_VALUE;
+                    } else {
+                        rs = a;
+                    }
+                } else {
+                    int end = r < redundants.length ? Math.min(col.max, rs - 1) : col.max;
+                    writeCol(col, a, end, false);
+                    a = end + 1;
+                }
+            }
+        }
+        
+        // 既存の <col> 要素よりも後ろの余剰列
+        while (r < redundants.length) {
+            writeNewCol(rs, rangeEnd(r));
+            r = nextRange(r);
+            rs = r < redundants.length ? redundants[r] : Integer.MAX_VALUE;
+        }
+    }
+    
+    /**
+     * 余剰列のインデックスの配列の r 番目から始まる連続した範囲の、最後の列インデックスを返します。<br>
+     */
+    private int rangeEnd(int r) {
+        int[] redundants = targets.redundantCols;
+        while (r + 1 < redundants.length && redundants[r + 1] == redundants[r] + 1) {
+            r++;
+        }
+        return redundants[r];
+    }
+    
+    /**
+     * 余剰列のインデックスの配列の r 番目から始まる連続した範囲の、次の範囲の開始位置を返します。<br>
+     */
+    private int nextRange(int r) {
+        int[] redundants = targets.redundantCols;
+        while (r + 1 < redundants.length && redundants[r + 1] == redundants[r] + 1) {
+            r++;
+        }
+        return r + 1;
+    }
+    
+    private void writeCol(Col col, int start, int end, boolean redundant) throws XMLStreamException {
+        writeStartElement(QNAME.COL);
+        writer.writeAttribute(NONS_QNAME.MIN.getLocalPart(), Integer.toString(start + 1));
+        writer.writeAttribute(NONS_QNAME.MAX.getLocalPart(), Integer.toString(end + 1));
+        if (redundant) {
+            writer.writeAttribute(NONS_QNAME.STYLE.getLocalPart(),
+                    Integer.toString(stylesManager.getNewStyle(Math.max(col.style, 0), redundantColor)));
+        } else if (col.style != -1) {
+            writer.writeAttribute(NONS_QNAME.STYLE.getLocalPart(), Integer.toString(col.style));
+        }
+        for (int i = 0; i < col.attrs.length; i += 4) {
+            if (col.attrs[i] == null || col.attrs[i].isEmpty()) {
+                writer.writeAttribute(col.attrs[i + 2], col.attrs[i + 3]);
+            } else {
+                writer.writeAttribute(col.attrs[i], col.attrs[i + 1], col.attrs[i + 2], col.attrs[i + 3]);
+            }
+        }
+        writer.writeEndElement();
+    }
+    
+    private void writeNewCol(int start, int end) throws XMLStreamException {
+        writeStartElement(QNAME.COL);
+        writer.writeAttribute(NONS_QNAME.MIN.getLocalPart(), Integer.toString(start + 1));
+        writer.writeAttribute(NONS_QNAME.MAX.getLocalPart(), Integer.toString(end + 1));
+        writer.writeAttribute(NONS_QNAME.STYLE.getLocalPart(),
+                Integer.toString(stylesManager.getNewStyle(0, redundantColor)));
+        writer.writeAttribute(NONS_QNAME.WIDTH.getLocalPart(), "8.6640625");
+        writer.writeEndElement();
+    }
+    
+    private void processRowStart() throws XMLStreamException {
+        // r 属性は省略可能であり、省略された場合は直前の行の次の行を表す。
+        String r = reader.getAttributeValue(null, NONS_QNAME.R.getLocalPart());
+        int rowIdx = r == null ? prevRow + 1 : Integer.parseInt(r) - 1;
+        prevRow = rowIdx;
+        prevCol = -1;
+        
+        // 既存の行よりも前にある、余剰行または差分セルを含む行を作成する。
+        while (rowCursor < targets.targetRows.length && targets.targetRows[rowCursor] < rowIdx) {
+            writeNewRow();
+        }
+        
+        if (rowCursor < targets.targetRows.length && targets.targetRows[rowCursor] == rowIdx) {
+            enterRow(rowIdx, rowCursor);
+            rowCursor++;
+        } else if (targets.redundantCols.length != 0) {
+            inTargetRow = true;
+            currRow = rowIdx;
+            currRedundant = false;
+            currCols = targets.redundantCols;
+            colCursor = 0;
+            colEnd = targets.redundantCols.length;
+        } else {
+            // 余剰行でも差分セルを含む行でもなく、余剰列も存在しない場合は、行の中身をそのまま書き写す。
+            inTargetRow = false;
+        }
+        
+        if (inTargetRow && currRedundant) {
+            writeStartElement();
+            writer.writeAttribute(NONS_QNAME.CUSTOM_FORMAT.getLocalPart(), "1");
+            writer.writeAttribute(NONS_QNAME.S.getLocalPart(), Integer.toString(
+                    stylesManager.getNewStyle(currentStyle(), redundantColor)));
+            writeAttributes(S_AND_CUSTOM_FORMAT);
+        } else {
+            copyEvent(XMLStreamConstants.START_ELEMENT);
+        }
+    }
+    
+    private void enterRow(int rowIdx, int cursor) {
+        inTargetRow = true;
+        currRow = rowIdx;
+        currRedundant = targets.redundantFlags[cursor];
+        currCols = targets.targetCols;
+        colCursor = targets.offsets[cursor];
+        colEnd = targets.offsets[cursor + 1];
+    }
+    
+    private void writeNewRow() throws XMLStreamException {
+        int rowIdx = targets.targetRows[rowCursor];
+        enterRow(rowIdx, rowCursor);
+        rowCursor++;
+        
+        writeStartElement(QNAME.ROW);
+        writer.writeAttribute(NONS_QNAME.R.getLocalPart(), Integer.toString(rowIdx + 1));
+        if (currRedundant) {
+            writer.writeAttribute(NONS_QNAME.CUSTOM_FORMAT.getLocalPart(), "1");
+            writer.writeAttribute(NONS_QNAME.S.getLocalPart(),
+                    Integer.toString(stylesManager.getNewStyle(0, redundantColor)));
+        }
+        while (colCursor < colEnd) {
+            writeNewC(currCols[colCursor++]);
+        }
+        writer.writeEndElement();
+        inTargetRow = false;
+    }
+    
+    private void processCStart() throws XMLStreamException {
+        // r 属性は省略可能であり、省略された場合は直前の列の次の列を表す。
+        String r = reader.getAttributeValue(null, NONS_QNAME.R.getLocalPart());
+        int col = r == null ? prevCol + 1 : SheetReader.parseColumn(r);
+        prevCol = col;
+        
+        while (colCursor < colEnd && currCols[colCursor] < col) {
+            writeNewC(currCols[colCursor++]);
+        }
+        
+        boolean maybeDiff = colCursor < colEnd && currCols[colCursor] == col;
+        if (maybeDiff) {
+            colCursor++;
+        }
+        boolean redundant = currRedundant || (maybeDiff && targets.isRedundantCol(col));
+        
+        if (maybeDiff || redundant) {
+            writeStartElement();
+            writer.writeAttribute(NONS_QNAME.S.getLocalPart(), Integer.toString(
+                    stylesManager.getNewStyle(currentStyle(), redundant ? redundantColor : diffColor)));
+            writeAttributes(S);
+        } else {
+            copyEvent(XMLStreamConstants.START_ELEMENT);
+        }
+    }
+    
+    private void writeNewC(int col) throws XMLStreamException {
+        short color = currRedundant || targets.isRedundantCol(col)
+                ? redundantColor
+                : diffColor;
+        
+        writeEmptyElement(QNAME.C);
+        writer.writeAttribute(NONS_QNAME.R.getLocalPart(), CellReplica.getAddress(currRow, col));
+        writer.writeAttribute(NONS_QNAME.S.getLocalPart(),
+                Integer.toString(stylesManager.getNewStyle(0, color)));
+    }
+    
+    private int currentStyle() {
+        String style = reader.getAttributeValue(null, NONS_QNAME.S.getLocalPart());
+        return style == null ? 0 : Integer.parseInt(style);
+    }
+}
@@ -0,0 +1,232 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.NONS_QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+/**
+ * XSSF（.xlsx/.xlsm）形式のExcelファイルに含まれる xl/styles.xml エントリを変換して
+ * {@link StylesManager} に記録されたスタイルを追加するための {@link XMLEventReader} の実装です。<br>
+ * <br>
+ * エントリを一度だけ先頭から読み込み、{@code <fills>} 要素の末尾に新たな塗りつぶしを、
+ * {@code <cellXfs>} 要素の末尾に元のスタイルを複製した新たなスタイルを追加します。
+ * 複製元のスタイルは読み込みの途中でインデックスをキーとして保持するため、
+ * 追加するスタイルの数に関わらずエントリの走査は一度で済みます。<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class StylesReader extends AbstractCachingReader {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLEventFactory eventFactory = XMLEventFactory.newFactory();
+    
+    /**
+     * {@link StylesReader} オブジェクトを生成して返します。<br>
+     * このメソッドは、全てのシートの処理が終わった後に呼び出す必要があります。<br>
+     * 
+     * @param source ソースリーダー
+     * @param stylesManager 追加するスタイルを記録した {@link StylesManager} オブジェクト
+     * @return 新しい {@link StylesReader} オブジェクト
+     * @throws NullPointerException {@code source}, {@code stylesManager} のいずれかが {@code null} の場合
+     */
+    public static StylesReader of(XMLEventReader source, StylesManager stylesManager) {
+        Objects.requireNonNull(source, "source");
+        Objects.requireNonNull(stylesManager, "stylesManager");
+        
+        return new StylesReader(source, stylesManager);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private final XMLEventReader source;
+    private final Queue<XMLEvent> nexts = new ArrayDeque<>();
+    private final int cellXfsCount;
+    private final int fillsCount;
+    private final List<Pair<Integer>> newXfs;
+    private final List<Short> newFills;
+    
+    /** 複製元となるスタイルのインデックス */
+    private final Set<Integer> originalIdxs = new HashSet<>();
+    
+    /** 複製元となるスタイルの要素を構成するイベント。キー：スタイルのインデックス */
+    private final Map<Integer, List<XMLEvent>> originalXfs = new HashMap<>();
+    
+    private QName parent;
+    private int depth;
+    private int parentDepth = -1;
+    private int xfIdx;
+    private List<XMLEvent> capturing;
+    
+    private StylesReader(XMLEventReader source, StylesManager stylesManager) {
+        super();
+        
+        assert source != null;
+        assert stylesManager != null;
+        
+        this.source = source;
+        this.cellXfsCount = stylesManager.cellXfsCount();
+        this.fillsCount = stylesManager.fillsCount();
+        this.newXfs = stylesManager.newXfs();
+        this.newFills = stylesManager.newFills();
+        newXfs.forEach(xf -> originalIdxs.add(xf.a()));
+    }
+    
+    @Override
+    protected boolean hasNext2() {
+        if (nexts.isEmpty() && source.hasNext()) {
+            try {
+                process(source.nextEvent());
+            } catch (XMLStreamException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return !nexts.isEmpty();
+    }
+    
+    @Override
+    protected XMLEvent peek2() throws XMLStreamException {
+        return nexts.peek();
+    }
+    
+    @Override
+    protected XMLEvent nextEvent2() throws XMLStreamException {
+        return nexts.poll();
+    }
+    
+    @Override
+    public void close() throws XMLStreamException {
+        source.close();
+    }
+    
+    private void process(XMLEvent event) {
+        assert event != null;
+        
+        if (event.isStartElement()) {
+            depth++;
+            StartElement start = event.asStartElement();
+            QName name = start.getName();
+            
+            if (parent == null && QNAME.FILLS.equals(name)) {
+                parent = name;
+                parentDepth = depth;
+                event = replaceCount(start, fillsCount);
+                
+            } else if (parent == null && QNAME.CELL_XFS.equals(name)) {
+                parent = name;
+                parentDepth = depth;
+                event = replaceCount(start, cellXfsCount);
+                
+            } else if (depth == parentDepth + 1 && QNAME.CELL_XFS.equals(parent) && QNAME.XF.equals(name)) {
+                if (originalIdxs.contains(xfIdx)) {
+                    capturing = new ArrayList<>();
+                    originalXfs.put(xfIdx, capturing);
+                }
+                xfIdx++;
+            }
+            
+        } else if (event.isEndElement()) {
+            if (depth == parentDepth) {
+                if (QNAME.FILLS.equals(parent)) {
+                    addNewFills();
+                } else {
+                    addNewXfs();
+                }
+                parent = null;
+                parentDepth = -1;
+            }
+            depth--;
+        }
+        
+        if (capturing != null) {
+            capturing.add(event);
+            if (depth == parentDepth) {
+                // 複製元のスタイルの要素の終わり
+                capturing = null;
+            }
+        }
+        nexts.add(event);
+    }
+    
+    private StartElement replaceCount(StartElement original, int count) {
+        assert original != null;
+        
+        List<Attribute> attrs = new ArrayList<>();
+        attrs.add(eventFactory.createAttribute(NONS_QNAME.COUNT, Integer.toString(count)));
+        @SuppressWarnings("unchecked")
+        Iterator<Attribute> itr = original.getAttributes();
+        while (itr.hasNext()) {
+            Attribute attr = itr.next();
+            if (!NONS_QNAME.COUNT.equals(attr.getName())) {
+                attrs.add(attr);
+            }
+        }
+        return eventFactory.createStartElement(
+                original.getName(), attrs.iterator(), original.getNamespaces());
+    }
+    
+    private void addNewFills() {
+        for (short color : newFills) {
+            List<Attribute> patternAttrs = new ArrayList<>();
+            patternAttrs.add(eventFactory.createAttribute(NONS_QNAME.PATTERN_TYPE, "solid"));
+            List<Attribute> colorAttrs = new ArrayList<>();
+            colorAttrs.add(eventFactory.createAttribute(NONS_QNAME.INDEXED, Short.toString(color)));
+            
+            nexts.add(eventFactory.createStartElement(QNAME.FILL, null, null));
+            nexts.add(eventFactory.createStartElement(QNAME.PATTERN_FILL, patternAttrs.iterator(), null));
+            nexts.add(eventFactory.createStartElement(QNAME.FG_COLOR, colorAttrs.iterator(), null));
+            nexts.add(eventFactory.createEndElement(QNAME.FG_COLOR, null));
+            nexts.add(eventFactory.createEndElement(QNAME.PATTERN_FILL, null));
+            nexts.add(eventFactory.createEndElement(QNAME.FILL, null));
+        }
+    }
+    
+    private void addNewXfs() {
+        for (Pair<Integer> xf : newXfs) {
+            List<Attribute> attrs = new ArrayList<>();
+            attrs.add(eventFactory.createAttribute(NONS_QNAME.FILL_ID, Integer.toString(xf.b())));
+            attrs.add(eventFactory.createAttribute(NONS_QNAME.APPLY_FILL, "1"));
+            
+            List<XMLEvent> original = originalXfs.get(xf.a());
+            if (original == null) {
+                // 複製元のスタイルが存在しない場合は、塗りつぶしのみを指定したスタイルを追加する。
+                nexts.add(eventFactory.createStartElement(QNAME.XF, attrs.iterator(), null));
+                nexts.add(eventFactory.createEndElement(QNAME.XF, null));
+                continue;
+            }
+            
+            StartElement start = original.get(0).asStartElement();
+            @SuppressWarnings("unchecked")
+            Iterator<Attribute> itr = start.getAttributes();
+            while (itr.hasNext()) {
+                Attribute attr = itr.next();
+                if (!NONS_QNAME.FILL_ID.equals(attr.getName()) && !NONS_QNAME.APPLY_FILL.equals(attr.getName())) {
+                    attrs.add(attr);
+                }
+            }
+            nexts.add(eventFactory.createStartElement(start.getName(), attrs.iterator(), start.getNamespaces()));
+            nexts.addAll(original.subList(1, original.size()));
+        }
+    }
+}
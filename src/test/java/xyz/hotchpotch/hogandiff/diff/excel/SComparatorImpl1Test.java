@@ -0,0 +1,267 @@
+package xyz.hotchpotch.hogandiff.diff.excel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.list.Correlator;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+class SComparatorImpl1Test {
+    
+    // [static members] ********************************************************
+    
+    /** ランダムなシートに使うセル値。空文字列と、辞書順と出現順が異なる値を含む。 */
+    private static final String[] VALUES = { "", "b", "a", "ab", "10", "9", "あ", "=A1", "B" };
+    
+    /**
+     * 行（列）の余剰/欠損が生じるように、シートAの行と列をランダムに削除、挿入、変更したシートBを作成します。<br>
+     */
+    private static Pair<Set<CellReplica>> randomSheets(Random random) {
+        int rows = 1 + random.nextInt(12);
+        int columns = 1 + random.nextInt(8);
+        String[][] sheetA = new String[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                sheetA[i][j] = random.nextInt(3) == 0 ? null : VALUES[random.nextInt(VALUES.length)];
+            }
+        }
+        
+        List<Integer> rowMap = edit(random, rows);
+        List<Integer> columnMap = edit(random, columns);
+        String[][] sheetB = new String[rowMap.size()][columnMap.size()];
+        for (int i = 0; i < rowMap.size(); i++) {
+            for (int j = 0; j < columnMap.size(); j++) {
+                Integer r = rowMap.get(i);
+                Integer c = columnMap.get(j);
+                if (r == null || c == null || random.nextInt(10) == 0) {
+                    sheetB[i][j] = random.nextInt(2) == 0 ? null : VALUES[random.nextInt(VALUES.length)];
+                } else {
+                    sheetB[i][j] = sheetA[r][c];
+                }
+            }
+        }
+        return Pair.of(toCells(sheetA), toCells(sheetB));
+    }
+    
+    /** 元の行（列）のインデックスを、削除と挿入（{@code null}）を加えて並べたリストを返します。 */
+    private static List<Integer> edit(Random random, int size) {
+        List<Integer> indices = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        for (int n = random.nextInt(3); 0 < n; n--) {
+            if (random.nextBoolean() && 1 < indices.size()) {
+                indices.remove(random.nextInt(indices.size()));
+            } else {
+                indices.add(random.nextInt(indices.size() + 1), null);
+            }
+        }
+        return indices;
+    }
+    
+    private static Set<CellReplica> toCells(String[][] sheet) {
+        Set<CellReplica> cells = new HashSet<>();
+        for (int i = 0; i < sheet.length; i++) {
+            for (int j = 0; j < sheet[i].length; j++) {
+                if (sheet[i][j] != null) {
+                    cells.add(CellReplica.of(i, j, sheet[i][j]));
+                }
+            }
+        }
+        return cells;
+    }
+    
+    /**
+     * セル値を文字列のまま比較する、セル値のIdを導入する前の実装による比較結果を返します。<br>
+     */
+    private static SResult reference(
+            boolean considerRowGaps,
+            boolean considerColumnGaps,
+            Set<CellReplica> cellsA,
+            Set<CellReplica> cellsB) {
+        
+        List<Pair<Integer>> rowPairs;
+        List<Pair<Integer>> columnPairs;
+        if (considerRowGaps && considerColumnGaps) {
+            rowPairs = referencePairing(cellsA, cellsB, CellReplica::row, CellReplica::value);
+            columnPairs = referencePairing(cellsA, cellsB, CellReplica::column, CellReplica::value);
+        } else if (considerRowGaps) {
+            rowPairs = referencePairing(cellsA, cellsB, CellReplica::row, CellReplica::column);
+            columnPairs = identity(cellsA, cellsB, CellReplica::column);
+        } else if (considerColumnGaps) {
+            rowPairs = identity(cellsA, cellsB, CellReplica::row);
+            columnPairs = referencePairing(cellsA, cellsB, CellReplica::column, CellReplica::row);
+        } else {
+            rowPairs = identity(cellsA, cellsB, CellReplica::row);
+            columnPairs = identity(cellsA, cellsB, CellReplica::column);
+        }
+        
+        Map<String, CellReplica> mapA = cellsA.stream()
+                .collect(Collectors.toMap(CellReplica::address, Function.identity()));
+        Map<String, CellReplica> mapB = cellsB.stream()
+                .collect(Collectors.toMap(CellReplica::address, Function.identity()));
+        List<Pair<CellReplica>> diffCells = rowPairs.stream().filter(Pair::isPaired).flatMap(rp -> columnPairs
+                .stream().filter(Pair::isPaired).map(cp -> {
+                    String addrA = CellReplica.getAddress(rp.a(), cp.a());
+                    String addrB = CellReplica.getAddress(rp.b(), cp.b());
+                    CellReplica cellA = Optional.ofNullable(mapA.get(addrA)).orElse(CellReplica.of(addrA, ""));
+                    CellReplica cellB = Optional.ofNullable(mapB.get(addrB)).orElse(CellReplica.of(addrB, ""));
+                    return cellA.value().equals(cellB.value()) ? null : Pair.of(cellA, cellB);
+                }))
+                .filter(p -> p != null)
+                .collect(Collectors.toList());
+        
+        return SResult.of(
+                considerRowGaps,
+                considerColumnGaps,
+                rowPairs.stream().filter(Pair::isOnlyA).map(Pair::a).collect(Collectors.toList()),
+                rowPairs.stream().filter(Pair::isOnlyB).map(Pair::b).collect(Collectors.toList()),
+                columnPairs.stream().filter(Pair::isOnlyA).map(Pair::a).collect(Collectors.toList()),
+                columnPairs.stream().filter(Pair::isOnlyB).map(Pair::b).collect(Collectors.toList()),
+                diffCells);
+    }
+    
+    private static List<Pair<Integer>> identity(
+            Set<CellReplica> cellsA,
+            Set<CellReplica> cellsB,
+            ToIntFunction<CellReplica> verticality) {
+        
+        Pair<Integer> range = range(cellsA, cellsB, verticality);
+        return IntStream.rangeClosed(range.a(), range.b())
+                .mapToObj(n -> Pair.of(n, n))
+                .collect(Collectors.toList());
+    }
+    
+    private static <H extends Comparable<H>> List<Pair<Integer>> referencePairing(
+            Set<CellReplica> cellsA,
+            Set<CellReplica> cellsB,
+            ToIntFunction<CellReplica> verticality,
+            Function<CellReplica, H> horizontality) {
+        
+        int start = range(cellsA, cellsB, verticality).a();
+        
+        Function<Set<CellReplica>, List<List<CellReplica>>> converter = cells -> {
+            int end = range(cells, cells, verticality).b();
+            Map<Integer, List<CellReplica>> map = cells.stream()
+                    .filter(c -> !"".equals(c.value()))
+                    .collect(Collectors.groupingBy(verticality::applyAsInt));
+            
+            return IntStream.rangeClosed(start, end)
+                    .mapToObj(i -> {
+                        List<CellReplica> list = map.getOrDefault(i, Collections.emptyList());
+                        list.sort(Comparator.comparing(horizontality));
+                        return list;
+                    })
+                    .collect(Collectors.toList());
+        };
+        
+        Correlator<List<CellReplica>> correlator = Correlator.consideringGaps(
+                List::size,
+                (listA, listB) -> {
+                    Iterator<CellReplica> itrA = listA.iterator();
+                    Iterator<CellReplica> itrB = listB.iterator();
+                    int diff = 0;
+                    int c = 0;
+                    CellReplica cellA = null;
+                    CellReplica cellB = null;
+                    
+                    while (itrA.hasNext() && itrB.hasNext()) {
+                        if (c <= 0) {
+                            cellA = itrA.next();
+                        }
+                        if (0 <= c) {
+                            cellB = itrB.next();
+                        }
+                        c = horizontality.apply(cellA).compareTo(horizontality.apply(cellB));
+                        if (c == 0 && !cellA.value().equals(cellB.value())) {
+                            diff += 2;
+                        } else if (c != 0) {
+                            diff++;
+                        }
+                    }
+                    while (itrA.hasNext()) {
+                        diff++;
+                        itrA.next();
+                    }
+                    while (itrB.hasNext()) {
+                        diff++;
+                        itrB.next();
+                    }
+                    return diff;
+                });
+        
+        return correlator.correlate(converter.apply(cellsA), converter.apply(cellsB)).stream()
+                .map(p -> p.map(i -> i + start))
+                .collect(Collectors.toList());
+    }
+    
+    private static Pair<Integer> range(
+            Set<CellReplica> cellsA,
+            Set<CellReplica> cellsB,
+            ToIntFunction<CellReplica> extractor) {
+        
+        int min = Math.min(
+                cellsA.stream().mapToInt(extractor).min().orElse(0),
+                cellsB.stream().mapToInt(extractor).min().orElse(0));
+        int max = Math.max(
+                cellsA.stream().mapToInt(extractor).max().orElse(0),
+                cellsB.stream().mapToInt(extractor).max().orElse(0));
+        return Pair.of(min, max);
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testCompare_パラメータ不正() {
+        SComparator comparator = new SComparatorImpl1(Context.Builder.of(new Properties()).build());
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> comparator.compare(null, Collections.emptySet()));
+        assertThrows(
+                NullPointerException.class,
+                () -> comparator.compare(Collections.emptySet(), null));
+    }
+    
+    @Test
+    void testCompare_セル値を文字列で比較する実装との同値性() {
+        boolean[] flags = { false, true };
+        
+        for (boolean considerRowGaps : flags) {
+            for (boolean considerColumnGaps : flags) {
+                SComparator comparator = new SComparatorImpl1(Context.Builder.of(new Properties())
+                        .set(Props.APP_CONSIDER_ROW_GAPS, considerRowGaps)
+                        .set(Props.APP_CONSIDER_COLUMN_GAPS, considerColumnGaps)
+                        .build());
+                Random random = new Random((considerRowGaps ? 2 : 0) + (considerColumnGaps ? 1 : 0));
+                
+                for (int n = 0; n < 40; n++) {
+                    Pair<Set<CellReplica>> sheets = randomSheets(random);
+                    String label = String.format("row gaps: %b, column gaps: %b, pair: %d",
+                            considerRowGaps, considerColumnGaps, n);
+                    
+                    assertEquals(
+                            reference(considerRowGaps, considerColumnGaps, sheets.a(), sheets.b()).getDetail(),
+                            comparator.compare(sheets.a(), sheets.b()).getDetail(),
+                            label);
+                }
+            }
+        }
+    }
+}
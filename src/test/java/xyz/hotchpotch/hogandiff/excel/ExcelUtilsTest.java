@@ -0,0 +1,203 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+class ExcelUtilsTest {
+    
+    // [static members] ********************************************************
+    
+    private static final short RED = IndexedColors.RED.getIndex();
+    private static final short YELLOW = IndexedColors.YELLOW.getIndex();
+    
+    private static void testPaintSheet(Workbook book) {
+        Sheet sheet = book.createSheet();
+        for (int i = 0; i < 4; i++) {
+            Row row = sheet.createRow(i);
+            for (int j = 0; j < 4; j++) {
+                row.createCell(j).setCellValue(i * 4 + j);
+            }
+        }
+        
+        // 余剰行:1, 余剰列:2, 差分セル:C2（余剰行と余剰列の交点）, C4（余剰列のみ）, F2（余剰行上の未作成セル）
+        List<CellAddress> diffs = Arrays.asList(
+                new CellAddress("C2"), new CellAddress("C4"), new CellAddress("F2"));
+        ExcelUtils.paintSheet(
+                sheet,
+                Collections.singleton(1),
+                Collections.singleton(2),
+                YELLOW,
+                diffs,
+                RED,
+                PaintedStyles.of(book));
+        
+        // 余剰行・余剰列と重なる差分セルには、差分セルの色が付けられること
+        assertPainted(RED, sheet, "C2");
+        assertPainted(RED, sheet, "C4");
+        assertPainted(RED, sheet, "F2");
+        
+        // 差分セルでない余剰行・余剰列のセルには、余剰行・余剰列の色が付けられること
+        assertPainted(YELLOW, sheet, "A2");
+        assertPainted(YELLOW, sheet, "D2");
+        assertPainted(YELLOW, sheet, "C1");
+        assertPainted(YELLOW, sheet, "C3");
+        
+        // それ以外のセルには色が付けられないこと
+        CellAddress a1 = new CellAddress("A1");
+        Cell cell = sheet.getRow(a1.getRow()).getCell(a1.getColumn());
+        assertEquals(FillPatternType.NO_FILL, cell.getCellStyle().getFillPatternEnum());
+        
+        // 行・列の既定スタイルには余剰行・余剰列の色が付けられること
+        assertEquals(YELLOW, sheet.getRow(1).getRowStyle().getFillForegroundColor());
+        assertEquals(YELLOW, sheet.getColumnStyle(2).getFillForegroundColor());
+    }
+    
+    /** 単一パスに書き換える前の {@link ExcelUtils#normalizeFormula(String)} の実装 */
+    private static String normalizeFormulaReference(String original) {
+        StringBuilder str = new StringBuilder(original.trim());
+        boolean inString = false;
+        int n = 0;
+        
+        while (n < str.length()) {
+            if (str.charAt(n) == '"') {
+                inString = !inString;
+            } else if (str.charAt(n) == ' ' && !inString) {
+                str.deleteCharAt(n);
+                n--;
+            }
+            n++;
+        }
+        return str.toString();
+    }
+    
+    private static void assertPainted(short expected, Sheet sheet, String address) {
+        CellAddress ca = new CellAddress(address);
+        Cell cell = sheet.getRow(ca.getRow()).getCell(ca.getColumn());
+        assertNotNull(cell, address);
+        assertEquals(FillPatternType.SOLID_FOREGROUND, cell.getCellStyle().getFillPatternEnum(), address);
+        assertEquals(expected, cell.getCellStyle().getFillForegroundColor(), address);
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testNormalizeFormula_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> ExcelUtils.normalizeFormula(null));
+    }
+    
+    @Test
+    void testNormalizeFormula_空白() {
+        assertEquals("1+2", ExcelUtils.normalizeFormula(" 1 + 2 "));
+        assertEquals("SUM(A1:B2)", ExcelUtils.normalizeFormula("SUM( A1 : B2 )"));
+        assertEquals("", ExcelUtils.normalizeFormula(""));
+        assertEquals("", ExcelUtils.normalizeFormula(" \t\r\n "));
+        
+        // 前後の制御文字は取り除き、途中のスペース以外の空白文字（改行など）は残すこと
+        assertEquals("A1", ExcelUtils.normalizeFormula("\tA1\r\n"));
+        assertEquals("A1+\nB1", ExcelUtils.normalizeFormula("A1 +\n B1"));
+        
+        // 内部のバッファより長い数式も標準化でき、その後の短い数式に前の内容が残らないこと
+        StringBuilder longFormula = new StringBuilder("A1");
+        StringBuilder expected = new StringBuilder("A1");
+        for (int i = 0; i < 300; i++) {
+            longFormula.append(" + B").append(i);
+            expected.append("+B").append(i);
+        }
+        assertEquals(expected.toString(), ExcelUtils.normalizeFormula(longFormula.toString()));
+        assertEquals("C1*2", ExcelUtils.normalizeFormula("C1 * 2"));
+    }
+    
+    @Test
+    void testNormalizeFormula_文字列リテラル() {
+        // 文字列リテラル内のスペースは取り除かないこと
+        assertEquals("A1&\" a b \"", ExcelUtils.normalizeFormula(" A1 & \" a b \" "));
+        assertEquals("\" \"&A1&\" \"", ExcelUtils.normalizeFormula("\" \" & A1 & \" \""));
+        
+        // 文字列リテラル内のエスケープされたダブルクォーテーション（""）を正しく扱うこと
+        assertEquals("\"a \"\" b\"&B1", ExcelUtils.normalizeFormula("\"a \"\" b\" & B1"));
+    }
+    
+    @Test
+    void testNormalizeFormula_同一インスタンス() {
+        // 取り除くべき文字が無い場合は、元の文字列そのものを返すこと
+        String[] unchanged = { "", "1+2", "SUM(A1:B2)", "A1&\" a b \"", "\"\"" };
+        for (String formula : unchanged) {
+            assertSame(formula, ExcelUtils.normalizeFormula(formula), formula);
+        }
+        
+        String trimmed = " 1+2";
+        assertNotSame(trimmed, ExcelUtils.normalizeFormula(trimmed));
+    }
+    
+    @Test
+    void testNormalizeFormula_従来の実装との同値性() {
+        char[] chars = { ' ', ' ', '"', 'A', '1', '+', '&', '\t', '\n' };
+        Random random = new Random(0);
+        
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder str = new StringBuilder();
+            boolean inString = false;
+            for (int len = random.nextInt(20); 0 < len; len--) {
+                char c = chars[random.nextInt(chars.length)];
+                str.append(c);
+                inString ^= c == '"';
+            }
+            // 文字列リテラルが閉じられた数式とする。
+            if (inString) {
+                str.append('"');
+            }
+            String formula = str.toString();
+            
+            assertEquals(normalizeFormulaReference(formula), ExcelUtils.normalizeFormula(formula), formula);
+        }
+    }
+    
+    @Test
+    void testPaintSheet_パラメータ不正() throws IOException {
+        try (Workbook book = new HSSFWorkbook()) {
+            Sheet sheet = book.createSheet();
+            PaintedStyles styles = PaintedStyles.of(book);
+            
+            assertThrows(
+                    NullPointerException.class,
+                    () -> ExcelUtils.paintSheet(null, Collections.emptySet(), Collections.emptySet(), YELLOW,
+                            Collections.emptySet(), RED, styles));
+            assertThrows(
+                    NullPointerException.class,
+                    () -> ExcelUtils.paintSheet(sheet, Collections.emptySet(), Collections.emptySet(), YELLOW,
+                            Collections.emptySet(), RED, null));
+        }
+    }
+    
+    @Test
+    void testPaintSheet_HSSF() throws IOException {
+        try (Workbook book = new HSSFWorkbook()) {
+            testPaintSheet(book);
+        }
+    }
+    
+    @Test
+    void testPaintSheet_XSSF() throws IOException {
+        try (Workbook book = new XSSFWorkbook()) {
+            testPaintSheet(book);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.junit.jupiter.api.Test;
+
+class NumericTextConverterTest {
+    
+    // [static members] ********************************************************
+    
+    private static final long SEED = 20181018L;
+    
+    private static final double[] specials = {
+            0d, -0d, 1d, -1d, 0.1, -0.1,
+            9999999d, 1e7, -1e7, 999999999999999d, 1e15, -1e15, 1e20, 1e21,
+            Long.MAX_VALUE, Long.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            Double.MIN_VALUE, Double.MIN_NORMAL, Double.NaN,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Math.nextUp(1e15), Math.nextDown(1e15), Math.nextUp(1e7), Math.nextDown(1e7),
+    };
+    
+    private static String plainText(double value) {
+        String text = String.valueOf(value);
+        return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+    }
+    
+    /**
+     * 様々な分布の {@code double} 値を生成する関数の配列を返します。<br>
+     * 
+     * @param random 乱数生成器
+     * @return 値を生成する関数の配列
+     */
+    private static DoubleSupplier[] generators(Random random) {
+        return new DoubleSupplier[] {
+                // 任意のビット列
+                () -> Double.longBitsToDouble(random.nextLong()),
+                // 整数
+                () -> random.nextInt(),
+                () -> random.nextLong() % 10_000_000_000_000_000L,
+                // 小数点以下の桁数が少ない値
+                () -> random.nextInt(2_000_000) / 100d - 10_000d,
+                () -> random.nextInt(1000) / 1000d,
+                // 広い範囲の絶対値
+                () -> (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(60) - 30),
+                // キャッシュのヒットを起こしやすい、少数の値の繰り返し
+                () -> random.nextInt(50) * 0.25 + 0.125,
+        };
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testToText_特殊な値() {
+        for (double value : specials) {
+            assertEquals(
+                    NumberToTextConverter.toText(value),
+                    NumericTextConverter.toText(value));
+        }
+    }
+    
+    @Test
+    void testToPlainText_特殊な値() {
+        for (double value : specials) {
+            assertEquals(
+                    plainText(value),
+                    NumericTextConverter.toPlainText(value));
+        }
+    }
+    
+    @Test
+    void testToText_ランダムな値() {
+        Random random = new Random(SEED);
+        for (DoubleSupplier generator : generators(random)) {
+            for (int i = 0; i < 20_000; i++) {
+                double value = generator.getAsDouble();
+                String expected = NumberToTextConverter.toText(value);
+                
+                // 1回目は変換結果、2回目はキャッシュされた結果が元の変換方法と一致すること
+                assertEquals(String.valueOf(value), expected, NumericTextConverter.toText(value));
+                assertEquals(String.valueOf(value), expected, NumericTextConverter.toText(value));
+            }
+        }
+    }
+    
+    @Test
+    void testToPlainText_ランダムな値() {
+        Random random = new Random(SEED);
+        for (DoubleSupplier generator : generators(random)) {
+            for (int i = 0; i < 20_000; i++) {
+                double value = generator.getAsDouble();
+                String expected = plainText(value);
+                
+                assertEquals(String.valueOf(value), expected, NumericTextConverter.toPlainText(value));
+                assertEquals(String.valueOf(value), expected, NumericTextConverter.toPlainText(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+class PaintedStylesTest {
+    
+    // [static members] ********************************************************
+    
+    private static final short RED = IndexedColors.RED.getIndex();
+    private static final short YELLOW = IndexedColors.YELLOW.getIndex();
+    
+    private static void testPainted(Workbook book) {
+        PaintedStyles styles = PaintedStyles.of(book);
+        CellStyle original = book.createCellStyle();
+        original.setWrapText(true);
+        int count = book.getNumCellStyles();
+        
+        // 元のスタイルの書式を引き継いで塗りつぶされること
+        CellStyle red = styles.painted(original, RED);
+        assertThat(red.getIndex(), not(original.getIndex()));
+        assertTrue(red.getWrapText());
+        assertEquals(RED, red.getFillForegroundColor());
+        assertEquals(FillPatternType.SOLID_FOREGROUND, red.getFillPatternEnum());
+        
+        // 同じ組み合わせに対しては同じスタイルが返されること
+        assertSame(red, styles.painted(original, RED));
+        
+        // 着色後のスタイルを塗り直す場合は、元のスタイルを基に塗りつぶされること
+        CellStyle yellow = styles.painted(red, YELLOW);
+        assertSame(yellow, styles.painted(original, YELLOW));
+        assertSame(red, styles.painted(yellow, RED));
+        
+        // 行・列用のスタイルも色ごとに使い回されること
+        assertSame(styles.plain(RED), styles.plain(RED));
+        
+        assertEquals(count + 3, book.getNumCellStyles());
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testOf_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> PaintedStyles.of(null));
+    }
+    
+    @Test
+    void testPainted_パラメータ不正() throws IOException {
+        try (Workbook book = new HSSFWorkbook()) {
+            assertThrows(
+                    NullPointerException.class,
+                    () -> PaintedStyles.of(book).painted(null, RED));
+        }
+    }
+    
+    @Test
+    void testPainted_HSSF() throws IOException {
+        try (Workbook book = new HSSFWorkbook()) {
+            testPainted(book);
+        }
+    }
+    
+    @Test
+    void testPainted_XSSF() throws IOException {
+        try (Workbook book = new XSSFWorkbook()) {
+            testPainted(book);
+        }
+    }
+}
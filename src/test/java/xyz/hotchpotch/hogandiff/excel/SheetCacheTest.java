@@ -0,0 +1,186 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+
+class SheetCacheTest {
+    
+    // [static members] ********************************************************
+    
+    private static final String LOADER = "loader";
+    
+    private static final Set<CellReplica> cells = new HashSet<>(Arrays.asList(
+            CellReplica.of(0, 0, "A1"),
+            CellReplica.of(1, 2, "C2")));
+    
+    /** {@link #cells} の {@link SheetCache} における推定メモリ使用量 */
+    private static final long WEIGHT = 2 * 96 + 2 * 2 + 2 * 2;
+    
+    // [instance members] ******************************************************
+    
+    private Path dir;
+    private File book;
+    private final AtomicInteger loads = new AtomicInteger();
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("hogandiff");
+        book = Files.createFile(dir.resolve("book.xlsx")).toFile();
+        loads.set(0);
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.delete(book.toPath());
+        Files.delete(dir);
+    }
+    
+    private Set<CellReplica> get(SheetCache cache, String sheetName, SheetRegion region, String loaderId)
+            throws ApplicationException {
+        
+        return cache.getCells(book, sheetName, true, region, loaderId, () -> {
+            loads.incrementAndGet();
+            return new HashSet<>(cells);
+        });
+    }
+    
+    @Test
+    void testOf_パラメータ不正() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SheetCache.of(-1));
+    }
+    
+    @Test
+    void testGetCells_パラメータ不正() {
+        SheetCache cache = SheetCache.of(1024);
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> cache.getCells(null, "シート1", true, SheetRegion.ALL, LOADER, () -> cells));
+        assertThrows(
+                NullPointerException.class,
+                () -> cache.getCells(book, null, true, SheetRegion.ALL, LOADER, () -> cells));
+        assertThrows(
+                NullPointerException.class,
+                () -> cache.getCells(book, "シート1", true, null, LOADER, () -> cells));
+        assertThrows(
+                NullPointerException.class,
+                () -> cache.getCells(book, "シート1", true, SheetRegion.ALL, null, () -> cells));
+        assertThrows(
+                NullPointerException.class,
+                () -> cache.getCells(book, "シート1", true, SheetRegion.ALL, LOADER, null));
+    }
+    
+    @Test
+    void testGetCells_キャッシュの利用() throws ApplicationException {
+        SheetCache cache = SheetCache.of(1024);
+        
+        Set<CellReplica> first = get(cache, "シート1", SheetRegion.ALL, LOADER);
+        assertEquals(cells, first);
+        assertSame(first, get(cache, "シート1", SheetRegion.ALL, LOADER));
+        assertEquals(1, loads.get());
+        
+        // 返されるセットは変更できないこと
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> first.add(CellReplica.of(2, 2, "C3")));
+        
+        // 内容を破棄した後は読み込み直すこと
+        cache.clear();
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void testGetCells_更新されたブック() throws ApplicationException {
+        SheetCache cache = SheetCache.of(1024);
+        
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        assertTrue(book.setLastModified(book.lastModified() + 2000));
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void testGetCells_キーの区別() throws ApplicationException {
+        SheetCache cache = SheetCache.of(1024 * 1024);
+        SheetRegion region = SheetRegion.of("A1:B2");
+        
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        get(cache, "シート2", SheetRegion.ALL, LOADER);
+        get(cache, "シート1", region, LOADER);
+        get(cache, "シート1", SheetRegion.ALL, "other");
+        cache.getCells(book, "シート1", false, SheetRegion.ALL, LOADER, () -> {
+            loads.incrementAndGet();
+            return cells;
+        });
+        assertEquals(5, loads.get());
+        
+        // 区別されたそれぞれのキーでキャッシュされていること
+        get(cache, "シート1", region, LOADER);
+        get(cache, "シート1", SheetRegion.ALL, "other");
+        assertEquals(5, loads.get());
+    }
+    
+    @Test
+    void testGetCells_容量() throws ApplicationException {
+        // 容量 0 の場合はキャッシュしないこと
+        SheetCache cache = SheetCache.of(0);
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        assertEquals(2, loads.get());
+        
+        // 容量を超えた場合は、最も長く使われていないものから追い出すこと
+        cache.setCapacity(WEIGHT * 2);
+        loads.set(0);
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        get(cache, "シート2", SheetRegion.ALL, LOADER);
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        get(cache, "シート3", SheetRegion.ALL, LOADER);
+        assertEquals(3, loads.get());
+        
+        get(cache, "シート1", SheetRegion.ALL, LOADER);
+        get(cache, "シート3", SheetRegion.ALL, LOADER);
+        assertEquals(3, loads.get());
+        get(cache, "シート2", SheetRegion.ALL, LOADER);
+        assertEquals(4, loads.get());
+        
+        // 容量を縮小した場合は、その時点で追い出すこと
+        cache.setCapacity(WEIGHT);
+        get(cache, "シート2", SheetRegion.ALL, LOADER);
+        get(cache, "シート3", SheetRegion.ALL, LOADER);
+        assertEquals(5, loads.get());
+    }
+    
+    @Test
+    void testGetSheetNames() throws ApplicationException {
+        SheetCache cache = SheetCache.of(0);
+        List<String> names = Arrays.asList("シート1", "シート2");
+        
+        assertEquals(names, cache.getSheetNames(book, () -> {
+            loads.incrementAndGet();
+            return names;
+        }));
+        assertEquals(names, cache.getSheetNames(book, () -> {
+            loads.incrementAndGet();
+            return names;
+        }));
+        assertEquals(1, loads.get());
+    }
+}
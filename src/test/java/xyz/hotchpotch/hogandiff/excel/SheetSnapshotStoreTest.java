@@ -0,0 +1,207 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SheetSnapshotStoreTest {
+    
+    // [static members] ********************************************************
+    
+    private static final String LOADER = "loader";
+    
+    private static final Set<CellReplica> cells = new HashSet<>(Arrays.asList(
+            CellReplica.of(0, 0, "あいう"),
+            CellReplica.of(0, 1, ""),
+            CellReplica.of(3, 2, "あいう"),
+            CellReplica.of(65535, 16383, "=SUM(A1:B2)")));
+    
+    // [instance members] ******************************************************
+    
+    private Path dir;
+    private Path snapshots;
+    private File book;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("hogandiff");
+        snapshots = dir.resolve("snapshots");
+        book = Files.write(dir.resolve("book.xlsx"), "book".getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path path : list(dir)) {
+            if (Files.isDirectory(path)) {
+                for (Path child : list(path)) {
+                    Files.delete(child);
+                }
+            }
+            Files.delete(path);
+        }
+        Files.delete(dir);
+    }
+    
+    private List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+    
+    private Path snapshotFile() throws IOException {
+        List<Path> files = list(snapshots);
+        assertEquals(1, files.size());
+        return files.get(0);
+    }
+    
+    @Test
+    void testOf_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> SheetSnapshotStore.of(null, 1024));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SheetSnapshotStore.of(snapshots, 0));
+    }
+    
+    @Test
+    void testReadWrite_パラメータ不正() {
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, 1024);
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> store.read(null, "シート1", true, SheetRegion.ALL, LOADER));
+        assertThrows(
+                NullPointerException.class,
+                () -> store.read(book, "シート1", true, SheetRegion.ALL, null));
+        assertThrows(
+                NullPointerException.class,
+                () -> store.write(book, "シート1", true, SheetRegion.ALL, null, cells));
+        assertThrows(
+                NullPointerException.class,
+                () -> store.write(book, "シート1", true, SheetRegion.ALL, LOADER, null));
+    }
+    
+    @Test
+    void testReadWrite_往復() throws IOException {
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        
+        assertEquals(Optional.empty(), store.read(book, "シート1", true, SheetRegion.ALL, LOADER));
+        
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        assertEquals(Optional.of(cells), store.read(book, "シート1", true, SheetRegion.ALL, LOADER));
+        
+        store.write(book, "シート2", true, SheetRegion.ALL, LOADER, Collections.emptySet());
+        assertEquals(
+                Optional.of(Collections.emptySet()),
+                store.read(book, "シート2", true, SheetRegion.ALL, LOADER));
+        
+        // 読み込んだスナップショットを置き換えられること
+        Set<CellReplica> replaced = Collections.singleton(CellReplica.of(1, 1, "えお"));
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, replaced);
+        assertEquals(Optional.of(replaced), store.read(book, "シート1", true, SheetRegion.ALL, LOADER));
+    }
+    
+    @Test
+    void testRead_キーの区別() throws IOException {
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        
+        assertFalse(store.read(book, "シート2", true, SheetRegion.ALL, LOADER).isPresent());
+        assertFalse(store.read(book, "シート1", false, SheetRegion.ALL, LOADER).isPresent());
+        assertFalse(store.read(book, "シート1", true, SheetRegion.of("A1:B2"), LOADER).isPresent());
+        assertFalse(store.read(book, "シート1", true, SheetRegion.ALL, "other").isPresent());
+        
+        // 別のストアからも同じキーで読み込めること
+        SheetSnapshotStore other = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        assertEquals(Optional.of(cells), other.read(book, "シート1", true, SheetRegion.ALL, LOADER));
+    }
+    
+    @Test
+    void testRead_更新されたブック() throws IOException {
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        
+        Files.write(book.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        assertTrue(book.setLastModified(book.lastModified() + 2000));
+        assertFalse(store.read(book, "シート1", true, SheetRegion.ALL, LOADER).isPresent());
+    }
+    
+    @Test
+    void testRead_壊れたスナップショット() throws IOException {
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        
+        List<byte[]> brokens = Arrays.asList(
+                new byte[0],
+                "not a snapshot".getBytes(StandardCharsets.UTF_8),
+                null);
+        
+        for (byte[] broken : brokens) {
+            store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+            Path snapshot = snapshotFile();
+            byte[] bytes = Files.readAllBytes(snapshot);
+            
+            // null の場合は、正常なスナップショットの末尾を切り詰める。
+            Files.write(snapshot, broken != null ? broken : Arrays.copyOf(bytes, bytes.length - 5));
+            
+            assertFalse(store.read(book, "シート1", true, SheetRegion.ALL, LOADER).isPresent());
+            assertFalse(Files.exists(snapshot));
+        }
+        
+        // 要素数が壊れている場合も、巨大な配列を確保せずに壊れたものとして扱うこと
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        Path snapshot = snapshotFile();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[8] = (byte) 0x7F;
+        Files.write(snapshot, bytes);
+        assertFalse(store.read(book, "シート1", true, SheetRegion.ALL, LOADER).isPresent());
+        assertFalse(Files.exists(snapshot));
+    }
+    
+    @Test
+    void testWrite_容量超過() throws IOException {
+        SheetSnapshotStore probe = SheetSnapshotStore.of(snapshots, 1024 * 1024);
+        probe.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        long size = Files.size(snapshotFile());
+        Files.delete(snapshotFile());
+        
+        // スナップショット2つ分の容量に3つ書き込むと、最も長く使われていないものが削除されること
+        SheetSnapshotStore store = SheetSnapshotStore.of(snapshots, size * 2 + size / 2);
+        long now = System.currentTimeMillis();
+        
+        store.write(book, "シート1", true, SheetRegion.ALL, LOADER, cells);
+        Path sheet1 = snapshotFile();
+        Files.setLastModifiedTime(sheet1, FileTime.fromMillis(now - 30_000));
+        
+        store.write(book, "シート2", true, SheetRegion.ALL, LOADER, cells);
+        Path sheet2 = list(snapshots).stream().filter(p -> !p.equals(sheet1)).findFirst().get();
+        Files.setLastModifiedTime(sheet2, FileTime.fromMillis(now - 20_000));
+        
+        // 読み込みによって使用順が更新されること
+        assertTrue(store.read(book, "シート1", true, SheetRegion.ALL, LOADER).isPresent());
+        
+        store.write(book, "シート3", true, SheetRegion.ALL, LOADER, cells);
+        assertEquals(2, list(snapshots).size());
+        assertTrue(Files.exists(sheet1));
+        assertFalse(Files.exists(sheet2));
+        assertFalse(store.read(book, "シート2", true, SheetRegion.ALL, LOADER).isPresent());
+        assertTrue(store.read(book, "シート3", true, SheetRegion.ALL, LOADER).isPresent());
+    }
+}
@@ -88,6 +88,9 @@ public class TestFiles {
     public static final File SheetLoader1_normal = new File(TestFiles.class.getResource(
             "TestSheetLoader1_normal").getFile());
     
+    public static final File SheetLoader2_sharedformulas_xlsx = new File(TestFiles.class.getResource(
+            "TestSheetLoader2_sharedformulas.xlsx").getFile());
+    
     public static final Set<CellReplica> cellsA = Collections.emptySet();
     
     public static final Set<CellReplica> cellsB_base = new HashSet<>(Arrays.asList(
@@ -186,6 +189,34 @@ public class TestFiles {
                     + "１２３４５６７８９①１２３４５６７８９②１２３４５６７８９③１２３４５６７８９④１２３４５６７８９⑤"
                     + "１２３４５６７８９⑥１２３４５６７８９⑦１２３４５６７８９⑧１２３４５６７８９⑨１２３４５６７８９●")));
     
+    public static final Set<CellReplica> cellsS_formula = new HashSet<>(Arrays.asList(
+            CellReplica.of("A1", "1"),
+            CellReplica.of("A2", "2"),
+            CellReplica.of("A3", "3"),
+            CellReplica.of("A4", "4"),
+            CellReplica.of("A5", "5"),
+            CellReplica.of("A6", "6"),
+            
+            CellReplica.of("B1", "A1*2+$A$1"),
+            CellReplica.of("B2", "A2*2+$A$1"),
+            CellReplica.of("B3", "A3*2+$A$1"),
+            CellReplica.of("B4", "A4*2+$A$1"),
+            CellReplica.of("B5", "A5*2+$A$1"),
+            CellReplica.of("B6", "A6*2+$A$1"),
+            
+            CellReplica.of("C1", "SUM($A1:A1)&\"A1\""),
+            CellReplica.of("D1", "SUM($A1:B1)&\"A1\""),
+            CellReplica.of("E1", "SUM($A1:C1)&\"A1\""),
+            
+            CellReplica.of("C3", "COUNT(A:A)+ROWS(3:4)+LOG10(A3)+$A3"),
+            CellReplica.of("D3", "COUNT(B:B)+ROWS(3:4)+LOG10(B3)+$A3"),
+            CellReplica.of("C4", "COUNT(A:A)+ROWS(4:5)+LOG10(A4)+$A4"),
+            CellReplica.of("D4", "COUNT(B:B)+ROWS(4:5)+LOG10(B4)+$A4"),
+            CellReplica.of("C5", "COUNT(A:A)+ROWS(5:6)+LOG10(A5)+$A5"),
+            CellReplica.of("D5", "COUNT(B:B)+ROWS(5:6)+LOG10(B5)+$A5"),
+            
+            CellReplica.of("C6", "IF(A6>3,\" B \",\"C\")")));
+    
     // [instance members] ******************************************************
     
     private TestFiles() {
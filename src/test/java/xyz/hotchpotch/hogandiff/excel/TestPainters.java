@@ -0,0 +1,21 @@
+package xyz.hotchpotch.hogandiff.excel;
+
+import xyz.hotchpotch.hogandiff.Context;
+
+@SuppressWarnings("javadoc")
+public class TestPainters {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * 他のパッケージのテストから、比較の基準とする {@link BookPainterWithUserApi} を利用するためのメソッドです。<br>
+     */
+    public static BookPainter userApiPainter(Context context) {
+        return BookPainterWithUserApi.of(context);
+    }
+    
+    // [instance members] ******************************************************
+    
+    private TestPainters() {
+    }
+}
@@ -0,0 +1,428 @@
+package xyz.hotchpotch.hogandiff.excel.hssf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.crypto.Biff8EncryptionKey;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.LittleEndian;
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.TestPainters;
+
+class HSSFBookPainterWithRecordApiTest {
+    
+    // [static members] ********************************************************
+    
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    private static final int HEADER_SIZE = 4;
+    
+    private static Map.Entry<String, Piece> result(
+            String sheetName,
+            List<Integer> redundantRows,
+            List<Integer> redundantColumns,
+            String... diffAddresses) {
+        
+        List<Pair<CellReplica>> diffCells = Arrays.stream(diffAddresses)
+                .map(address -> CellReplica.of(address, ""))
+                .map(cell -> Pair.of(cell, cell))
+                .collect(Collectors.toList());
+        Piece piece = SResult.of(true, true,
+                redundantRows, Collections.emptyList(),
+                redundantColumns, Collections.emptyList(),
+                diffCells).pieces.a();
+        return new AbstractMap.SimpleEntry<>(sheetName, piece);
+    }
+    
+    private static String style(Workbook book, CellStyle style) {
+        return style == null
+                ? "-"
+                : String.format("%s/%d/%d", style.getFillPatternEnum(), style.getFillForegroundColor(),
+                        book.getFontAt(style.getFontIndex()).getColor());
+    }
+    
+    /**
+     * 行、列、セルの値と書式を、ペインターの実装に依存しない形式で列挙します。<br>
+     */
+    private static List<String> describe(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        
+        try (InputStream is = Files.newInputStream(file);
+                Workbook book = new HSSFWorkbook(is)) {
+            
+            for (int i = 0; i < book.getNumberOfSheets(); i++) {
+                Sheet sheet = book.getSheetAt(i);
+                lines.add(String.format("sheet %s", sheet.getSheetName()));
+                
+                int lastCol = 16;
+                for (int r = 0; r <= sheet.getLastRowNum(); r++) {
+                    Row row = sheet.getRow(r);
+                    if (row == null) {
+                        continue;
+                    }
+                    lines.add(String.format("row %d height=%d style=%s", r, row.getHeight(),
+                            row.isFormatted() ? style(book, row.getRowStyle()) : "-"));
+                    for (Cell cell : row) {
+                        lines.add(String.format("cell %s %s=%s style=%s", cell.getAddress(),
+                                cell.getCellTypeEnum(), cell, style(book, cell.getCellStyle())));
+                    }
+                    lastCol = Math.max(lastCol, row.getLastCellNum());
+                }
+                for (int c = 0; c <= lastCol; c++) {
+                    lines.add(String.format("column %d width=%d style=%s", c, sheet.getColumnWidth(c),
+                            style(book, sheet.getColumnStyle(c))));
+                }
+            }
+        }
+        return lines;
+    }
+    
+    private static byte[] readWorkbookStream(Path file) throws IOException {
+        try (NPOIFSFileSystem fs = new NPOIFSFileSystem(file.toFile(), true);
+                InputStream is = fs.createDocumentInputStream(
+                        HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot()))) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+    
+    /**
+     * Workbook ストリームのレコードの位置から、レコードのsidへのマップを返します。<br>
+     */
+    private static TreeMap<Integer, Integer> records(byte[] stream) {
+        TreeMap<Integer, Integer> records = new TreeMap<>();
+        for (int pos = 0; pos + HEADER_SIZE <= stream.length;) {
+            records.put(pos, LittleEndian.getUShort(stream, pos));
+            pos += HEADER_SIZE + LittleEndian.getUShort(stream, pos + 2);
+        }
+        return records;
+    }
+    
+    /**
+     * 書き出された Workbook ストリームの BOUNDSHEET, INDEX, DBCELL レコードが、
+     * 正しい位置のレコードを指していることを確認します。<br>
+     * 
+     * @return 書き出された DBCELL レコードの数
+     */
+    private static int assertValidOffsets(Path file) throws IOException {
+        byte[] stream = readWorkbookStream(file);
+        TreeMap<Integer, Integer> records = records(stream);
+        int dbCells = 0;
+        
+        for (Map.Entry<Integer, Integer> record : records.entrySet()) {
+            int pos = record.getKey();
+            int sid = record.getValue();
+            int size = LittleEndian.getUShort(stream, pos + 2);
+            
+            if (sid == BoundSheetRecord.sid) {
+                // BOUNDSHEET レコードはシートの BOF レコードを指す。
+                assertEquals(
+                        Integer.valueOf(BOFRecord.sid),
+                        records.get(LittleEndian.getInt(stream, pos + HEADER_SIZE)));
+                
+            } else if (sid == IndexRecord.sid) {
+                // INDEX レコードは各行ブロックの DBCELL レコードを指す。
+                for (int i = HEADER_SIZE + 16; i < HEADER_SIZE + size; i += 4) {
+                    assertEquals(
+                            Integer.valueOf(DBCellRecord.sid),
+                            records.get(LittleEndian.getInt(stream, pos + i)));
+                }
+                
+            } else if (sid == DBCellRecord.sid) {
+                // DBCELL レコードは行ブロックの最初の ROW レコードと、各行の最初のセルのレコードを指す。
+                dbCells++;
+                int first = pos - LittleEndian.getInt(stream, pos + HEADER_SIZE);
+                assertEquals(Integer.valueOf(RowRecord.sid), records.get(first));
+                
+                int cell = records.higherKey(first);
+                for (int i = HEADER_SIZE + 4; i < HEADER_SIZE + size; i += 2) {
+                    cell += LittleEndian.getUShort(stream, pos + i);
+                    Integer cellSid = records.get(cell);
+                    assertNotNull(cellSid);
+                    assertNotEquals(RowRecord.sid, (int) cellSid);
+                    assertNotEquals(DBCellRecord.sid, (int) cellSid);
+                }
+            }
+        }
+        return dbCells;
+    }
+    
+    /**
+     * POIで作成したExcelブックの Workbook ストリームを、Excelが作成するものに近づけます。
+     * 同じ行の連続する整数値の NUMBER レコードを MULRK レコードにまとめ、DBCELL レコードを取り除きます。<br>
+     */
+    private static void rewriteToMulRK(Path src, Path dst) throws IOException {
+        byte[] stream = readWorkbookStream(src);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<byte[]> run = new ArrayList<>();
+        
+        TreeMap<Integer, Integer> records = records(stream);
+        for (Map.Entry<Integer, Integer> record : records.entrySet()) {
+            int pos = record.getKey();
+            int sid = record.getValue();
+            int size = LittleEndian.getUShort(stream, pos + 2);
+            byte[] rec = Arrays.copyOfRange(stream, pos, pos + HEADER_SIZE + size);
+            
+            if (sid == NumberRecord.sid && !run.isEmpty()) {
+                byte[] prev = run.get(run.size() - 1);
+                boolean sameRow = LittleEndian.getUShort(rec, HEADER_SIZE)
+                        == LittleEndian.getUShort(prev, HEADER_SIZE);
+                boolean nextCol = LittleEndian.getUShort(rec, HEADER_SIZE + 2)
+                        == LittleEndian.getUShort(prev, HEADER_SIZE + 2) + 1;
+                if (!sameRow || !nextCol) {
+                    flushRun(run, out);
+                }
+            }
+            if (sid == NumberRecord.sid) {
+                double value = LittleEndian.getDouble(rec, HEADER_SIZE + 6);
+                if (value == (int) value) {
+                    run.add(rec);
+                    continue;
+                }
+            }
+            flushRun(run, out);
+            if (sid != DBCellRecord.sid) {
+                out.write(rec);
+            }
+        }
+        flushRun(run, out);
+        
+        try (POIFSFileSystem fs = new POIFSFileSystem();
+                OutputStream os = Files.newOutputStream(dst)) {
+            fs.createDocument(new ByteArrayInputStream(out.toByteArray()), "Workbook");
+            fs.writeFilesystem(os);
+        }
+    }
+    
+    private static void flushRun(List<byte[]> run, ByteArrayOutputStream out) throws IOException {
+        if (run.size() == 1) {
+            out.write(run.get(0));
+            
+        } else if (1 < run.size()) {
+            byte[] first = run.get(0);
+            byte[] mulRK = new byte[HEADER_SIZE + 6 + 6 * run.size()];
+            LittleEndian.putUShort(mulRK, 0, MulRKRecord.sid);
+            LittleEndian.putUShort(mulRK, 2, mulRK.length - HEADER_SIZE);
+            LittleEndian.putUShort(mulRK, HEADER_SIZE, LittleEndian.getUShort(first, HEADER_SIZE));
+            LittleEndian.putUShort(mulRK, HEADER_SIZE + 2, LittleEndian.getUShort(first, HEADER_SIZE + 2));
+            for (int i = 0; i < run.size(); i++) {
+                byte[] number = run.get(i);
+                int value = (int) LittleEndian.getDouble(number, HEADER_SIZE + 6);
+                int xf = LittleEndian.getUShort(number, HEADER_SIZE + 4);
+                LittleEndian.putUShort(mulRK, HEADER_SIZE + 4 + 6 * i, xf);
+                LittleEndian.putInt(mulRK, HEADER_SIZE + 6 + 6 * i, value << 2 | 0x02);
+            }
+            LittleEndian.putUShort(mulRK, mulRK.length - 2,
+                    LittleEndian.getUShort(run.get(run.size() - 1), HEADER_SIZE + 2));
+            out.write(mulRK);
+        }
+        run.clear();
+    }
+    
+    private static int count(Path file, int sid) throws IOException {
+        return (int) records(readWorkbookStream(file)).values().stream()
+                .filter(s -> s == sid)
+                .count();
+    }
+    
+    /**
+     * 同じ比較結果を {@link HSSFBookPainterWithRecordApi} と ユーザーモデルAPIを使用するペインター とで書き出し、
+     * 行、列、セルの値と書式が一致することを確認します。<br>
+     * 
+     * @return {@link HSSFBookPainterWithRecordApi} で書き出したExcelブック
+     */
+    private static Path paintAndCompare(File book, List<Map.Entry<String, Piece>> results, Path dir)
+            throws ApplicationException, IOException {
+        
+        Path byRecord = dir.resolve("record.xls");
+        Path byUser = dir.resolve("user.xls");
+        HSSFBookPainterWithRecordApi.of(context).paintAndSave(book, byRecord, results);
+        TestPainters.userApiPainter(context).paintAndSave(book, byUser, results);
+        
+        assertEquals(describe(byUser), describe(byRecord));
+        return byRecord;
+    }
+    
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testIsSupported() {
+        assertTrue(HSSFBookPainterWithRecordApi.isSupported(SheetLoader1_normal_xls));
+        
+        assertFalse(HSSFBookPainterWithRecordApi.isSupported(SheetLoader1_normal_xlsx));
+        assertFalse(HSSFBookPainterWithRecordApi.isSupported(SheetLoader1_normal_xlsm));
+        assertFalse(HSSFBookPainterWithRecordApi.isSupported(SheetLoader1_normal_xlsb));
+    }
+    
+    @Test
+    void testPaintAndSave_パラメータ不正() {
+        HSSFBookPainterWithRecordApi painter = HSSFBookPainterWithRecordApi.of(context);
+        Path copy = new File("copy.xls").toPath();
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> HSSFBookPainterWithRecordApi.of(null));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(null, copy, Collections.emptyList()));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xls, null, Collections.emptyList()));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xls, copy, null));
+        
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xlsx, copy, Collections.emptyList()));
+    }
+    
+    @Test
+    void testPaintAndSave_暗号化されたブック() throws IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        try {
+            Path book = dir.resolve("encrypted.xls");
+            Biff8EncryptionKey.setCurrentUserPassword("password");
+            try (HSSFWorkbook workbook = new HSSFWorkbook();
+                    OutputStream os = Files.newOutputStream(book)) {
+                workbook.createSheet("シート1").createRow(0).createCell(0).setCellValue(1);
+                workbook.write(os);
+            } finally {
+                Biff8EncryptionKey.setCurrentUserPassword(null);
+            }
+            
+            ApplicationException e = assertThrows(
+                    ApplicationException.class,
+                    () -> HSSFBookPainterWithRecordApi.of(context).paintAndSave(
+                            book.toFile(), dir.resolve("copy.xls"),
+                            Arrays.asList(result("シート1", Collections.emptyList(), Collections.emptyList(), "A1"))));
+            assertTrue(e.getMessage().startsWith("暗号化されたExcelブック"));
+            
+        } finally {
+            delete(dir);
+        }
+    }
+    
+    @Test
+    void testPaintAndSave_ユーザーモデルAPIとの比較() throws ApplicationException, IOException {
+        List<Map.Entry<String, Piece>> results = Arrays.asList(
+                // 存在しない行（1行目、9行目）やセル（E3）を含む余剰行、余剰列、差分セル
+                result("目次", Arrays.asList(2, 8), Arrays.asList(1, 4), "A1", "C5", "E3"),
+                // MULBLANK レコード（C3:D3）の一部の列だけに色を付ける
+                result("いいい", Arrays.asList(9), Arrays.asList(2), "D3", "F4", "H8"),
+                // 「えええ」はグラフシートのため比較対象とならない
+                result("ううう", Collections.emptyList(), Arrays.asList(0), "B1"));
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        try {
+            Path painted = paintAndCompare(SheetLoader1_normal_xls, results, dir);
+            assertTrue(0 < assertValidOffsets(painted));
+            
+        } finally {
+            delete(dir);
+        }
+    }
+    
+    @Test
+    void testPaintAndSave_行ブロックとMULRK() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        try {
+            // 1. 100行のシートを作成し、MULRK レコードを含み DBCELL レコードを含まない形に書き換える。
+            //    7行ごとに1行は存在しない行とし、B～D列は整数値（MULRK）、F～G列は書式だけのセル（MULBLANK）とする。
+            Path generated = dir.resolve("generated.xls");
+            try (HSSFWorkbook book = new HSSFWorkbook();
+                    OutputStream os = Files.newOutputStream(generated)) {
+                Sheet sheet = book.createSheet("シート1");
+                HSSFCellStyle bordered = book.createCellStyle();
+                bordered.setBorderBottom(BorderStyle.THIN);
+                for (int r = 0; r < 100; r++) {
+                    if (r % 7 == 3) {
+                        continue;
+                    }
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("行" + (r + 1));
+                    for (int c = 1; c <= 3; c++) {
+                        row.createCell(c).setCellValue(r * 10 + c);
+                    }
+                    row.createCell(5).setCellStyle(bordered);
+                    row.createCell(6).setCellStyle(bordered);
+                }
+                book.write(os);
+            }
+            Path book = dir.resolve("book.xls");
+            rewriteToMulRK(generated, book);
+            assertTrue(0 < count(book, MulRKRecord.sid));
+            assertTrue(0 < count(book, MulBlankRecord.sid));
+            assertEquals(0, count(book, DBCellRecord.sid));
+            
+            // 2. 行ブロックをまたいで色を付け、存在しない行とセルを作成する。
+            List<Map.Entry<String, Piece>> results = Arrays.asList(
+                    result("シート1",
+                            Arrays.asList(10, 31, 32, 66, 120),
+                            Arrays.asList(2, 6, 9),
+                            "C20", "D40", "F41", "H50", "B53", "A101"));
+            Path painted = paintAndCompare(book.toFile(), results, dir);
+            
+            // 3. 書き出したブックは MULRK, MULBLANK レコードを保ち、正しい行ブロックを持つこと
+            assertTrue(0 < count(painted, MulRKRecord.sid));
+            assertTrue(0 < count(painted, MulBlankRecord.sid));
+            assertEquals(3, assertValidOffsets(painted));
+            
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -8,11 +8,20 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
 import xyz.hotchpotch.hogandiff.excel.hssf.HSSFSheetLoaderWithEventApi;
 
 class HSSFSheetLoaderWithEventApiTest {
@@ -115,4 +124,63 @@ class HSSFSheetLoaderWithEventApiTest {
                 cellsA,
                 formulaLoader.loadSheet(SheetLoader1_normal_xls, "えええ"));
     }
+    
+    @Test
+    void testLoadSheetWithConsumer_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xls, "いいい", null));
+    }
+    
+    @Test
+    void testLoadSheetWithConsumer_通常ケース_xls() throws ApplicationException {
+        List<CellReplica> cells = new ArrayList<>();
+        valueLoader.loadSheet(SheetLoader1_normal_xls, "いいい", cells::add);
+        assertEquals(
+                cellsB_value,
+                new HashSet<>(cells));
+        
+        // セルデータは行優先の順序で渡されること
+        for (int i = 1; i < cells.size(); i++) {
+            CellReplica prev = cells.get(i - 1);
+            CellReplica curr = cells.get(i);
+            assertTrue(prev.row() < curr.row()
+                    || (prev.row() == curr.row() && prev.column() < curr.column()));
+        }
+    }
+    
+    @Test
+    void testOfWithRegion_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> HSSFSheetLoaderWithEventApi.of(true, null));
+    }
+    
+    @Test
+    void testLoadSheetWithRegion_通常ケース_xls() throws ApplicationException {
+        SheetRegion region = SheetRegion.of("B2:E6,-C3:C4");
+        Set<CellReplica> expected = cellsB_value.stream()
+                .filter(c -> 1 <= c.row() && c.row() <= 5 && 1 <= c.column() && c.column() <= 4)
+                .filter(c -> !(2 <= c.row() && c.row() <= 3 && c.column() == 2))
+                .collect(Collectors.toSet());
+        
+        assertEquals(
+                expected,
+                HSSFSheetLoaderWithEventApi.of(true, region).loadSheet(SheetLoader1_normal_xls, "いいい"));
+        
+        assertEquals(
+                cellsB_value,
+                HSSFSheetLoaderWithEventApi.of(true, SheetRegion.ALL).loadSheet(SheetLoader1_normal_xls, "いいい"));
+    }
+    
+    @Test
+    void testLoadStats_通常ケース_xls() throws ApplicationException {
+        assertEquals(
+                Optional.of(SheetStats.of(1, 1, 7, 6)),
+                valueLoader.loadStats(SheetLoader1_normal_xls, "いいい"));
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> valueLoader.loadStats(SheetLoader1_normal_xls, "存在しないシート"));
+    }
 }
@@ -0,0 +1,104 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+class SharedFormulaResolverTest {
+    
+    // [static members] ********************************************************
+    
+    private static String resolve(String formula, int dRow, int dColumn) {
+        SharedFormulaResolver resolver = SharedFormulaResolver.of();
+        resolver.register("0", 2, 2, formula);
+        return resolver.resolve("0", 2 + dRow, 2 + dColumn);
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testRegister_パラメータ不正() {
+        SharedFormulaResolver resolver = SharedFormulaResolver.of();
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> resolver.register(null, 0, 0, "A1"));
+        assertThrows(
+                NullPointerException.class,
+                () -> resolver.register("0", 0, 0, null));
+    }
+    
+    @Test
+    void testResolve_パラメータ不正() {
+        SharedFormulaResolver resolver = SharedFormulaResolver.of();
+        resolver.register("0", 0, 0, "A1");
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> resolver.resolve(null, 0, 0));
+        assertThrows(
+                NoSuchElementException.class,
+                () -> resolver.resolve("1", 0, 0));
+        
+        assertTrue(resolver.contains("0"));
+        assertFalse(resolver.contains("1"));
+    }
+    
+    @Test
+    void testResolve_セル参照() {
+        assertEquals("D5+1", resolve("C3+1", 2, 1));
+        assertEquals("$C5+D$3+$C$3", resolve("$C3+C$3+$C$3", 2, 1));
+        assertEquals("SUM(D5:E6)", resolve("SUM(C3:D4)", 2, 1));
+        assertEquals("D5:E6 D5", resolve("c3:d4 c3", 2, 1));
+        assertEquals("XFD1048576", resolve("XFC1048575", 1, 1));
+        
+        // シートの範囲を超える場合は反対側の端から数え直す
+        assertEquals("A1", resolve("XFD1048576", 1, 1));
+    }
+    
+    @Test
+    void testResolve_列全体と行全体の参照() {
+        assertEquals("COUNT(D:D)+ROWS(5:6)", resolve("COUNT(C:C)+ROWS(3:4)", 2, 1));
+        assertEquals("COUNT($C:D)+ROWS($3:6)", resolve("COUNT($C:C)+ROWS($3:4)", 2, 1));
+    }
+    
+    @Test
+    void testResolve_書き換え対象外の要素() {
+        // 文字列リテラル
+        assertEquals("\"C3\"\"C3\"&D5", resolve("\"C3\"\"C3\"&C3", 2, 1));
+        // シート名
+        assertEquals("'C3 x'!D5+Sheet1!D5+Sheet1:Sheet3!D5", resolve("'C3 x'!C3+Sheet1!C3+Sheet1:Sheet3!C3", 2, 1));
+        // 関数名
+        assertEquals("LOG10(D5)+ATAN2(D5,1)", resolve("LOG10(C3)+ATAN2(C3,1)", 2, 1));
+        // 構造化参照、外部ブック参照
+        assertEquals("SUM(T1[[#This Row],[C3]])+[1]S!D5", resolve("SUM(T1[[#This Row],[C3]])+[1]S!C3", 2, 1));
+        // 名前、数値、エラー値
+        assertEquals("ABCD1+_C3+1.5E+3+TRUE+#REF!", resolve("ABCD1+_C3+1.5E+3+TRUE+#REF!", 2, 1));
+    }
+    
+    @Test
+    void testResolve_書き換え不要な場合() {
+        // マスタセル自身、および、参照を含まない数式の場合は元の文字列がそのまま返されること
+        String formula1 = "SUM(C3:D4)";
+        String formula2 = "1+2";
+        
+        assertSame(formula1, resolve(formula1, 0, 0));
+        assertSame(formula2, resolve(formula2, 2, 1));
+    }
+    
+    @Test
+    void testRegisterAll() {
+        SharedFormulaResolver resolver1 = SharedFormulaResolver.of();
+        resolver1.register("0", 0, 0, "A1");
+        SharedFormulaResolver resolver2 = SharedFormulaResolver.of();
+        resolver2.registerAll(resolver1);
+        
+        assertEquals("B2", resolver2.resolve("0", 1, 1));
+    }
+}
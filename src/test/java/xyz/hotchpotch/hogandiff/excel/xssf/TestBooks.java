@@ -0,0 +1,108 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+@SuppressWarnings("javadoc")
+public class TestBooks {
+    
+    // [static members] ********************************************************
+    
+    /** {@link #withSheet(Path, String)} で置き換えるシートの名前 */
+    public static final String SHEET_NAME = "目次";
+    
+    /** {@link #SHEET_NAME} のシートのエントリ */
+    private static final String SHEET_ENTRY = "xl/worksheets/sheet1.xml";
+    
+    /** インライン文字列（ふりがな、書式付きの文字列、空文字列を含む）のセルを持つ sheetData 要素の内容 */
+    public static final String inlineStrings = ""
+            + "<row r=\"1\">"
+            + "<c r=\"A1\" t=\"inlineStr\"><is><t>あいう</t></is></c>"
+            + "<c r=\"B1\" t=\"inlineStr\"><is><t>漢字</t>"
+            + "<rPh sb=\"0\" eb=\"2\"><t>カンジ</t></rPh><phoneticPr fontId=\"1\"/></is></c>"
+            + "<c r=\"C1\" t=\"inlineStr\"><is><r><t>漢</t></r><r><rPr><b/></rPr><t xml:space=\"preserve\">字 </t></r>"
+            + "<rPh sb=\"0\" eb=\"1\"><t>カン</t></rPh><rPh sb=\"1\" eb=\"2\"><t>ジ</t></rPh></is></c>"
+            + "<c r=\"D1\" t=\"inlineStr\"><is><t/></is></c>"
+            + "<c r=\"E1\"><v>1</v></c>"
+            + "</row>"
+            + "<row r=\"3\">"
+            + "<c r=\"A3\" t=\"inlineStr\"><is><t>えお</t><rPh sb=\"0\" eb=\"2\"><t>エオ</t></rPh></is></c>"
+            + "</row>";
+    
+    /** {@link #inlineStrings} から読み込まれるべきセルデータ */
+    public static final Set<CellReplica> cellsI = new HashSet<>(Arrays.asList(
+            CellReplica.of(0, 0, "あいう"),
+            CellReplica.of(0, 1, "漢字"),
+            CellReplica.of(0, 2, "漢字 "),
+            CellReplica.of(0, 3, ""),
+            CellReplica.of(0, 4, "1"),
+            CellReplica.of(2, 0, "えお")));
+    
+    /** 計算結果の型が異なる数式セル（計算結果や数式にスペースを含むものを含む）を持つ sheetData 要素の内容 */
+    public static final String formulas = ""
+            + "<row r=\"1\">"
+            + "<c r=\"A1\" t=\"str\"><f>\"a b\" &amp; \" c \"</f><v>a b c </v></c>"
+            + "<c r=\"B1\" t=\"e\"><f>A1 + 1</f><v>#VALUE!</v></c>"
+            + "<c r=\"C1\"><f>1 + 2</f><v>3</v></c>"
+            + "<c r=\"D1\" t=\"b\"><f>C1 = 3</f><v>1</v></c>"
+            + "<c r=\"E1\" t=\"str\"><f>TRIM( \" d \" )</f><v>d</v></c>"
+            + "</row>";
+    
+    /** {@link #formulas} からキャッシュされた計算値を取得する場合に読み込まれるべきセルデータ */
+    public static final Set<CellReplica> cellsFV = new HashSet<>(Arrays.asList(
+            CellReplica.of(0, 0, "a b c "),
+            CellReplica.of(0, 1, "#VALUE!"),
+            CellReplica.of(0, 2, "3"),
+            CellReplica.of(0, 3, "true"),
+            CellReplica.of(0, 4, "d")));
+    
+    /** {@link #formulas} から数式文字列を取得する場合に読み込まれるべきセルデータ */
+    public static final Set<CellReplica> cellsFF = new HashSet<>(Arrays.asList(
+            CellReplica.of(0, 0, "\"a b\"&\" c \""),
+            CellReplica.of(0, 1, "A1+1"),
+            CellReplica.of(0, 2, "1+2"),
+            CellReplica.of(0, 3, "C1=3"),
+            CellReplica.of(0, 4, "TRIM(\" d \")")));
+    
+    /**
+     * TestSheetLoader1_normal.xlsx の「目次」シートの内容を、
+     * 指定された sheetData 要素の内容に置き換えたExcelブックを作成します。<br>
+     * 
+     * @param target 作成するExcelブックのパス（存在しないこと）
+     * @param sheetData sheetData 要素の内容
+     * @return 作成したExcelブックのパス
+     */
+    public static Path withSheet(Path target, String sheetData) throws IOException {
+        try (XSSFZipReader reader = XSSFZipReader.open(SheetLoader1_normal_xlsx.toPath());
+                XSSFZipWriter writer = XSSFZipWriter.create(target)) {
+            
+            for (String name : reader.getEntryNames()) {
+                if (SHEET_ENTRY.equals(name)) {
+                    try (OutputStream os = writer.newEntry(name)) {
+                        os.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\r\n"
+                                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                                + "<sheetData>" + sheetData + "</sheetData></worksheet>")
+                                        .getBytes(StandardCharsets.UTF_8));
+                    }
+                } else {
+                    writer.copyRaw(reader.getEntry(name).get(), reader.getRawData(name));
+                }
+            }
+        }
+        return target;
+    }
+    
+    // [instance members] ******************************************************
+    
+    private TestBooks() {
+    }
+}
@@ -0,0 +1,237 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+class XSSFBookPainterWithStaxApiTest {
+    
+    // [static members] ********************************************************
+    
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    private static Map.Entry<String, Piece> result(
+            String sheetName,
+            List<Integer> redundantRows,
+            List<Integer> redundantColumns,
+            String... diffAddresses) {
+        
+        List<Pair<CellReplica>> diffCells = Arrays.stream(diffAddresses)
+                .map(address -> CellReplica.of(address, ""))
+                .map(cell -> Pair.of(cell, cell))
+                .collect(Collectors.toList());
+        Piece piece = SResult.of(true, true,
+                redundantRows, Collections.emptyList(),
+                redundantColumns, Collections.emptyList(),
+                diffCells).pieces.a();
+        return new AbstractMap.SimpleEntry<>(sheetName, piece);
+    }
+    
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void assertPainted(short expected, Sheet sheet, String address) {
+        CellAddress ca = new CellAddress(address);
+        Cell cell = sheet.getRow(ca.getRow()).getCell(ca.getColumn());
+        assertEquals(FillPatternType.SOLID_FOREGROUND, cell.getCellStyle().getFillPatternEnum());
+        assertEquals(expected, cell.getCellStyle().getFillForegroundColor());
+    }
+    
+    /**
+     * 指定されたコンテキストで比較結果の色を付けたExcelブックを書き出し、
+     * ローカルヘッダだけを参照する {@link ZipInputStream} と POI の双方で読み込めることを確認します。<br>
+     */
+    private static void paintAndReopen(Context context) throws ApplicationException, IOException {
+        List<Map.Entry<String, Piece>> results = Arrays.asList(
+                result("目次", Arrays.asList(2), Arrays.asList(4), "A1", "C5"),
+                result("いいい", Collections.emptyList(), Arrays.asList(2), "D3"));
+        XSSFZipReader reader = XSSFZipReader.open(SheetLoader1_normal_xlsx.toPath());
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path copy = dir.resolve("copy.xlsx");
+        try {
+            XSSFBookPainterWithStaxApi.of(context).paintAndSave(SheetLoader1_normal_xlsx, copy, results);
+            
+            // 1. 元のブックの全てのエントリを読み込めること（xl/styles.xml は最後に書き出される）。
+            //    色を付けないシートのエントリは、元のブックと同じ内容であること。
+            //    （「目次」は xl/worksheets/sheet1.xml, 「いいい」は xl/worksheets/sheet3.xml）
+            List<String> names = new ArrayList<>();
+            try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(copy))) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    names.add(entry.getName());
+                    byte[] actual = readAll(zis);
+                    if (entry.getName().startsWith("xl/worksheets/sheet")
+                            && !"xl/worksheets/sheet1.xml".equals(entry.getName())
+                            && !"xl/worksheets/sheet3.xml".equals(entry.getName())) {
+                        try (InputStream is = reader.getInputStream(entry.getName())) {
+                            assertArrayEquals(readAll(is), actual);
+                        }
+                    }
+                }
+            }
+            assertEquals(new TreeSet<>(reader.getEntryNames()), new TreeSet<>(names));
+            assertEquals(reader.getEntryNames().size(), names.size());
+            
+            // 2. POI で開くことができ、指定されたセルに色が付けられていること
+            short redundantColor = context.get(Props.APP_REDUNDANT_COLOR);
+            short diffColor = context.get(Props.APP_DIFF_COLOR);
+            try (InputStream is = Files.newInputStream(copy);
+                    XSSFWorkbook book = new XSSFWorkbook(is)) {
+                
+                Sheet sheet = book.getSheet("目次");
+                assertPainted(diffColor, sheet, "A1");
+                assertPainted(diffColor, sheet, "C5");
+                assertPainted(redundantColor, sheet, "E1");
+                assertPainted(diffColor, book.getSheet("いいい"), "D3");
+            }
+        } finally {
+            reader.close();
+            Files.deleteIfExists(copy);
+            Files.delete(dir);
+        }
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testPaintAndSave_パラメータ不正() {
+        XSSFBookPainterWithStaxApi painter = XSSFBookPainterWithStaxApi.of(context);
+        Path copy = SheetLoader1_normal_xlsx.toPath().resolveSibling("copy.xlsx");
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFBookPainterWithStaxApi.of(null));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(null, copy, Collections.emptyList()));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xlsx, null, Collections.emptyList()));
+        assertThrows(
+                NullPointerException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xlsx, copy, null));
+        
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> painter.paintAndSave(SheetLoader1_normal_xls, copy, Collections.emptyList()));
+    }
+    
+    @Test
+    void testPaintAndSave_逐次処理() throws ApplicationException, IOException {
+        paintAndReopen(Context.Builder.of(new Properties())
+                .set(Props.SYS_PARALLEL_PAINTING, false)
+                .build());
+    }
+    
+    @Test
+    void testPaintAndSave_並行処理() throws ApplicationException, IOException {
+        paintAndReopen(Context.Builder.of(new Properties())
+                .set(Props.SYS_PARALLEL_PAINTING, true)
+                .build());
+    }
+    
+    @Test
+    void testPaintAndSave_無圧縮とカーソルAPI() throws ApplicationException, IOException {
+        paintAndReopen(Context.Builder.of(new Properties())
+                .set(Props.SYS_PAINTING_COMPRESSION_LEVEL, XSSFZipWriter.STORED)
+                .set(Props.SYS_USE_CURSOR_PAINTER, true)
+                .build());
+        paintAndReopen(Context.Builder.of(new Properties())
+                .set(Props.SYS_PAINTING_COMPRESSION_LEVEL, XSSFZipWriter.STORED)
+                .set(Props.SYS_USE_CURSOR_PAINTER, false)
+                .build());
+    }
+    
+    @Test
+    void testPaintAndSave_差分箇所の無いシートの書き写し() throws ApplicationException, IOException {
+        List<Map.Entry<String, Piece>> results = Arrays.asList(
+                result("目次", Arrays.asList(2), Arrays.asList(4), "A1", "C5"),
+                result("いいい", Collections.emptyList(), Collections.emptyList()));
+        // 「目次」は xl/worksheets/sheet1.xml, 「いいい」は xl/worksheets/sheet3.xml
+        String changed = "xl/worksheets/sheet1.xml";
+        String unchanged = "xl/worksheets/sheet3.xml";
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path copyOn = dir.resolve("on.xlsx");
+        Path copyOff = dir.resolve("off.xlsx");
+        try {
+            XSSFBookPainterWithStaxApi.of(Context.Builder.of(new Properties())
+                    .set(Props.APP_COPY_UNCHANGED_SHEETS, true)
+                    .build())
+                    .paintAndSave(SheetLoader1_normal_xlsx, copyOn, results);
+            XSSFBookPainterWithStaxApi.of(Context.Builder.of(new Properties())
+                    .set(Props.APP_COPY_UNCHANGED_SHEETS, false)
+                    .build())
+                    .paintAndSave(SheetLoader1_normal_xlsx, copyOff, results);
+            
+            try (XSSFZipReader original = XSSFZipReader.open(SheetLoader1_normal_xlsx.toPath());
+                    XSSFZipReader on = XSSFZipReader.open(copyOn);
+                    XSSFZipReader off = XSSFZipReader.open(copyOff)) {
+                
+                // 有効な場合は、差分箇所の無いシートを圧縮されたままの生データで書き写すこと
+                assertEquals(original.getRawData(unchanged), on.getRawData(unchanged));
+                assertEquals(original.getEntry(unchanged).get().crc(), on.getEntry(unchanged).get().crc());
+                
+                // 無効な場合は、差分箇所の無いシートも変換して書き出すこと
+                assertNotEquals(original.getEntry(unchanged).get().crc(), off.getEntry(unchanged).get().crc());
+                
+                // いずれの場合も、差分箇所のあるシートは変換して書き出すこと
+                assertNotEquals(original.getEntry(changed).get().crc(), on.getEntry(changed).get().crc());
+                assertEquals(off.getEntry(changed).get().crc(), on.getEntry(changed).get().crc());
+            }
+            
+            // 書き写したシートを含め、POI で開くことができること
+            try (InputStream is = Files.newInputStream(copyOn);
+                    XSSFWorkbook book = new XSSFWorkbook(is)) {
+                
+                assertPainted(context.get(Props.APP_DIFF_COLOR), book.getSheet("目次"), "A1");
+                assertNotNull(book.getSheet("いいい"));
+            }
+        } finally {
+            Files.deleteIfExists(copyOn);
+            Files.deleteIfExists(copyOff);
+            Files.delete(dir);
+        }
+    }
+}
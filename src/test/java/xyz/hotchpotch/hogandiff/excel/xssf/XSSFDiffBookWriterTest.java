@@ -0,0 +1,113 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.BResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+
+class XSSFDiffBookWriterTest {
+    
+    // [static members] ********************************************************
+    
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    private static String value(Sheet sheet, String address) {
+        Pair<Integer> idx = CellReplica.getIndex(address);
+        return sheet.getRow(idx.a()).getCell(idx.b()).getStringCellValue();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testWriteAndSave_パラメータ不正() {
+        XSSFDiffBookWriter writer = XSSFDiffBookWriter.of(context);
+        BResult bResult = BResult.of(new File("a.xlsx"), new File("b.xlsx"),
+                Collections.emptyList(), Collections.emptyMap());
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFDiffBookWriter.of(null));
+        assertThrows(
+                NullPointerException.class,
+                () -> writer.writeAndSave(null, new File("c.xlsx").toPath()));
+        assertThrows(
+                NullPointerException.class,
+                () -> writer.writeAndSave(bResult, null));
+    }
+    
+    @Test
+    void testWriteAndSave() throws ApplicationException, IOException {
+        Pair<String> pair1 = Pair.of("シート1", "シート2");
+        Pair<String> pair2 = Pair.ofNullable("シート3", null);
+        List<Pair<CellReplica>> diffCells = Arrays.asList(
+                Pair.of(CellReplica.of(0, 1, " 前後に空白 "), CellReplica.of(0, 1, "a\u0001b")),
+                Pair.of(CellReplica.of(2, 0, "_x0041_"), CellReplica.of(3, 0, "")),
+                Pair.of(CellReplica.of(4, 0, "x\uD83D\uDE00y"), CellReplica.of(4, 0, "x\uD83Dy\uDE00")));
+        Map<Pair<String>, SResult> sResults = new HashMap<>();
+        sResults.put(pair1, SResult.of(true, false,
+                Arrays.asList(5), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(),
+                diffCells));
+        BResult bResult = BResult.of(new File("a.xlsx"), new File("b.xlsx"),
+                Arrays.asList(pair1, pair2), sResults);
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path target = dir.resolve("diff.xlsx");
+        try {
+            XSSFDiffBookWriter.of(context).writeAndSave(bResult, target);
+            
+            try (InputStream is = Files.newInputStream(target);
+                    Workbook book = new XSSFWorkbook(is)) {
+                // サマリシートと、比較したシートの組み合わせごとの一覧シートが作成されること
+                assertEquals(2, book.getNumberOfSheets());
+                
+                Sheet summary = book.getSheetAt(0);
+                assertEquals("シート1", value(summary, "A5"));
+                assertEquals(1, (int) summary.getRow(4).getCell(2).getNumericCellValue());
+                assertEquals(3, (int) summary.getRow(4).getCell(6).getNumericCellValue());
+                assertEquals(book.getSheetName(1), value(summary, "H5"));
+                assertEquals("（なし）", value(summary, "B6"));
+                
+                // 差分箇所の位置と両シートの値が並べて出力され、空白や制御文字が保たれること
+                Sheet diffs = book.getSheetAt(1);
+                assertEquals("余剰行", value(diffs, "A5"));
+                assertEquals("行6", value(diffs, "B5"));
+                assertEquals("B1", value(diffs, "B6"));
+                assertEquals(" 前後に空白 ", value(diffs, "C6"));
+                assertEquals("a\u0001b", value(diffs, "E6"));
+                assertEquals("_x0041_", value(diffs, "C7"));
+                assertEquals("A4", value(diffs, "D7"));
+                assertEquals("", value(diffs, "E7"));
+                
+                // サロゲートペアはそのまま出力され、ペアになっていないサロゲート文字も保たれること
+                assertEquals("x\uD83D\uDE00y", value(diffs, "C8"));
+                assertEquals("x\uD83Dy\uDE00", value(diffs, "E8"));
+            }
+        } finally {
+            Files.deleteIfExists(target);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+
+class XSSFSheetEntryManagerTest {
+    
+    // [static members] ********************************************************
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testGenerate_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFSheetEntryManager.generate(null));
+        
+        ApplicationException e = assertThrows(
+                ApplicationException.class,
+                () -> XSSFSheetEntryManager.generate(SheetLoader1_normal_xlsx.toPath().resolveSibling("dummy.xlsx")));
+        assertNotNull(e.getCause());
+    }
+    
+    @Test
+    void testGenerate_シート情報() throws ApplicationException {
+        XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(SheetLoader1_normal_xlsx.toPath());
+        
+        assertEquals(
+                Arrays.asList("目次", "あああ", "いいい", "ううう", "えええ", "おおお"),
+                manager.getNames());
+        assertEquals(
+                Arrays.asList("目次", "あああ", "いいい", "ううう", "おおお"),
+                manager.getWorksheetNames());
+        assertEquals("rId1", manager.getIdByName("目次"));
+        assertEquals("xl/worksheets/sheet1.xml", manager.getSourceByName("目次"));
+        assertEquals("xl/worksheets/sheet1.xml", manager.getSourceById("rId1"));
+        assertEquals(Optional.of("xl/sharedStrings.xml"), manager.getSharedStringsSource());
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> manager.getIdByName("ををを"));
+        assertThrows(
+                NoSuchElementException.class,
+                () -> manager.getSourceById("rId99"));
+    }
+    
+    @Test
+    void testGenerate_再利用と更新() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = dir.resolve("book.xlsx");
+        try {
+            Files.copy(SheetLoader1_normal_xlsx.toPath(), book);
+            
+            // ファイルが更新されていない場合は、解析結果を再利用すること
+            XSSFSheetEntryManager manager1 = XSSFSheetEntryManager.generate(book);
+            assertSame(manager1, XSSFSheetEntryManager.generate(book));
+            
+            // 最終更新日時が変わった場合は、解析し直すこと
+            FileTime lastModified = Files.getLastModifiedTime(book);
+            Files.setLastModifiedTime(book, FileTime.fromMillis(lastModified.toMillis() + 2000));
+            XSSFSheetEntryManager manager2 = XSSFSheetEntryManager.generate(book);
+            assertNotSame(manager1, manager2);
+            assertEquals(manager1.getNames(), manager2.getNames());
+            assertSame(manager2, XSSFSheetEntryManager.generate(book));
+            
+            // 内容が壊れた場合は、以前の解析結果を返さずに失敗すること
+            Files.write(book, "broken".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(book, FileTime.fromMillis(lastModified.toMillis() + 4000));
+            ApplicationException e = assertThrows(
+                    ApplicationException.class,
+                    () -> XSSFSheetEntryManager.generate(book));
+            assertNotNull(e.getCause());
+            
+        } finally {
+            Files.deleteIfExists(book);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.SheetLoader;
+
+/**
+ * {@link XSSFSheetLoaderWithEventApi} と {@link XSSFSheetLoaderWithStaxApi} の処理時間を比較します。<br>
+ * JUnit のテストとしては実行されません。{@code main} メソッドから手動で実行してください。<br>
+ * <br>
+ * 使用方法 : {@code XSSFSheetLoaderBenchmark [行数] [列数] [試行回数]}<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class XSSFSheetLoaderBenchmark {
+    
+    // [static members] ********************************************************
+    
+    /**
+     * ベンチマークを実行します。<br>
+     * 
+     * @param args 行数、列数、試行回数（いずれも省略可能）
+     * @throws ApplicationException シートの読み込みに失敗した場合
+     * @throws IOException 一時ファイルの操作に失敗した場合
+     */
+    public static void main(String[] args) throws ApplicationException, IOException {
+        int rows = 0 < args.length ? Integer.parseInt(args[0]) : 50_000;
+        int cols = 1 < args.length ? Integer.parseInt(args[1]) : 20;
+        int trials = 2 < args.length ? Integer.parseInt(args[2]) : 10;
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = TestBooks.withSheet(dir.resolve("benchmark.xlsx"), createSheetData(rows, cols));
+        try {
+            System.out.printf("%d rows x %d cols, best of %d%n", rows, cols, trials);
+            // 1巡目はウォームアップとして捨てる。
+            for (int round = 0; round < 2; round++) {
+                for (boolean extractCachedValue : new boolean[] { true, false }) {
+                    String mode = extractCachedValue ? "value" : "formula";
+                    measure("SAX  / " + mode, XSSFSheetLoaderWithEventApi.of(extractCachedValue),
+                            book, trials, round == 1);
+                    measure("StAX / " + mode, XSSFSheetLoaderWithStaxApi.of(extractCachedValue),
+                            book, trials, round == 1);
+                }
+            }
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+    
+    private static String createSheetData(int rows, int cols) {
+        // 数値、小数、インライン文字列、数式のセルを交互に設ける。
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            str.append(String.format("<row r=\"%d\" spans=\"1:%d\">", i + 1, cols));
+            for (int j = 0; j < cols; j++) {
+                String address = CellReplica.getAddress(i, j);
+                switch (j % 4) {
+                case 0:
+                    str.append(String.format("<c r=\"%s\"><v>%d</v></c>", address, i * cols + j));
+                    break;
+                case 1:
+                    str.append(String.format("<c r=\"%s\"><v>%d.25</v></c>", address, i));
+                    break;
+                case 2:
+                    str.append(String.format("<c r=\"%s\" t=\"inlineStr\"><is><t>文字列%d</t></is></c>", address, i));
+                    break;
+                default:
+                    str.append(String.format("<c r=\"%s\"><f>A%d*2</f><v>%d</v></c>", address, i + 1, i * 2));
+                    break;
+                }
+            }
+            str.append("</row>");
+        }
+        return str.toString();
+    }
+    
+    private static void measure(
+            String label,
+            SheetLoader loader,
+            Path book,
+            int trials,
+            boolean print)
+            throws ApplicationException {
+        
+        long best = Long.MAX_VALUE;
+        LongAdder cells = new LongAdder();
+        
+        for (int i = 0; i < trials; i++) {
+            cells.reset();
+            long start = System.nanoTime();
+            loader.loadSheet(book.toFile(), TestBooks.SHEET_NAME, cell -> cells.increment());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (print) {
+            System.out.printf("%-16s : best %5d ms, %d cells%n", label, best / 1_000_000, cells.sum());
+        }
+    }
+    
+    // [instance members] ******************************************************
+    
+    private XSSFSheetLoaderBenchmark() {
+    }
+}
@@ -8,11 +8,23 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 
 import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetListerWithEventApi;
 import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetLoaderWithEventApi;
 
@@ -234,4 +246,117 @@ class XSSFSheetLoaderWithEventApiTest {
                 cellsE,
                 formulaLoader.loadSheet(SheetLoader1_normal_xlsm, "おおお"));
     }
+    
+    @Test
+    void testLoadSheetWithConsumer_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい", null));
+    }
+    
+    @Test
+    void testLoadSheetWithConsumer_通常ケース_xlsx() throws ApplicationException {
+        List<CellReplica> cells = new ArrayList<>();
+        valueLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい", cells::add);
+        assertEquals(
+                cellsB_value,
+                new HashSet<>(cells));
+        
+        // セルデータは行優先の順序で渡されること
+        for (int i = 1; i < cells.size(); i++) {
+            CellReplica prev = cells.get(i - 1);
+            CellReplica curr = cells.get(i);
+            assertTrue(prev.row() < curr.row()
+                    || (prev.row() == curr.row() && prev.column() < curr.column()));
+        }
+    }
+    
+    @Test
+    void testOfWithRegion_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFSheetLoaderWithEventApi.of(true, null));
+    }
+    
+    @Test
+    void testLoadSheetWithRegion_通常ケース_xlsx() throws ApplicationException {
+        SheetRegion region = SheetRegion.of("B2:E6,-C3:C4");
+        Set<CellReplica> expected = cellsB_value.stream()
+                .filter(c -> 1 <= c.row() && c.row() <= 5 && 1 <= c.column() && c.column() <= 4)
+                .filter(c -> !(2 <= c.row() && c.row() <= 3 && c.column() == 2))
+                .collect(Collectors.toSet());
+        
+        assertEquals(
+                expected,
+                XSSFSheetLoaderWithEventApi.of(true, region).loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+        
+        assertEquals(
+                cellsB_value,
+                XSSFSheetLoaderWithEventApi.of(true, SheetRegion.ALL).loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+    }
+    
+    @Test
+    void testLoadSheet_共有数式_xlsx() throws ApplicationException {
+        assertEquals(
+                cellsS_formula,
+                formulaLoader.loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式"));
+        
+        // マスタセルが範囲外にあっても、共有数式が展開されること
+        SheetRegion region = SheetRegion.of("B2:D5");
+        Set<CellReplica> expected = cellsS_formula.stream()
+                .filter(c -> 1 <= c.row() && c.row() <= 4 && 1 <= c.column() && c.column() <= 3)
+                .collect(Collectors.toSet());
+        assertEquals(
+                expected,
+                XSSFSheetLoaderWithEventApi.of(false, region).loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式"));
+    }
+    
+    @Test
+    void testLoadSheet_インライン文字列_xlsx() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = TestBooks.withSheet(dir.resolve("inline.xlsx"), TestBooks.inlineStrings);
+        try {
+            // インライン文字列をふりがなを除いて読み込むこと
+            assertEquals(
+                    TestBooks.cellsI,
+                    valueLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            assertEquals(
+                    TestBooks.cellsI,
+                    formulaLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testLoadSheet_数式セル_xlsx() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = TestBooks.withSheet(dir.resolve("formulas.xlsx"), TestBooks.formulas);
+        try {
+            // キャッシュされた計算値は、計算結果の型に関わらず標準化せずにそのまま読み込むこと
+            assertEquals(
+                    TestBooks.cellsFV,
+                    valueLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            
+            // 数式文字列は、計算結果の型に関わらず標準化して読み込むこと
+            assertEquals(
+                    TestBooks.cellsFF,
+                    formulaLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testLoadStats_通常ケース_xlsx() throws ApplicationException {
+        assertEquals(
+                Optional.of(SheetStats.of(1, 1, 7, 6)),
+                valueLoader.loadStats(SheetLoader1_normal_xlsx, "いいい"));
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> valueLoader.loadStats(SheetLoader1_normal_xlsx, "存在しないシート"));
+    }
 }
@@ -0,0 +1,527 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.ApplicationException;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.SheetRegion;
+import xyz.hotchpotch.hogandiff.excel.SheetStats;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFSheetLoaderWithStaxApi;
+
+class XSSFSheetLoaderWithStaxApiTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XSSFSheetLoaderWithStaxApi valueLoader = XSSFSheetLoaderWithStaxApi.of(true);
+    private static final XSSFSheetLoaderWithStaxApi formulaLoader = XSSFSheetLoaderWithStaxApi.of(false);
+    
+    /**
+     * 指定されたローダーでシートを並列に解析し、コンシューマに渡されたセルデータを返します。
+     * 並列に解析されなかった場合は {@code null} を返します。<br>
+     */
+    private static List<CellReplica> loadInParallel(
+            XSSFSheetLoaderWithStaxApi loader,
+            Path book,
+            String sheetName)
+            throws Exception {
+        
+        XSSFSheetEntryManager manager = XSSFSheetEntryManager.generate(book);
+        String source = manager.getSourceById(manager.getIdByName(sheetName));
+        try (XSSFZipReader zip = XSSFZipReader.open(book)) {
+            List<CellReplica> cells = new ArrayList<>();
+            return loader.loadInParallel(zip, source, XSSFUtils.readSharedStrings(zip, manager), cells::add)
+                    ? cells
+                    : null;
+        }
+    }
+    
+    private static ByteBuffer buffer(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testIsSupported_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFSheetLoaderWithStaxApi.isSupported(null));
+    }
+    
+    @Test
+    void testIsSupported() {
+        assertTrue(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal_xlsx));
+        assertTrue(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal_xlsm));
+        
+        assertFalse(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal_xlsb));
+        assertFalse(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal_xls));
+        assertFalse(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal_csv));
+        assertFalse(XSSFSheetLoaderWithStaxApi.isSupported(SheetLoader1_normal));
+    }
+    
+    @Test
+    void testOf() {
+        assertThat(
+                valueLoader,
+                instanceOf(XSSFSheetLoaderWithStaxApi.class));
+        
+        assertThat(
+                formulaLoader,
+                instanceOf(XSSFSheetLoaderWithStaxApi.class));
+    }
+    
+    @Test
+    void testLoadSheetById_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheetById(SheetLoader1_normal_xlsx, null));
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheetById(null, "rId1"));
+        
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> valueLoader.loadSheetById(SheetLoader1_normal_xls, "rId1"));
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId999"));
+    }
+    
+    @Test
+    void testLoadSheetById_通常ケース_xlsx() throws ApplicationException {
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId2"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId2"));
+        
+        assertEquals(
+                cellsB_value,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId3"));
+        assertEquals(
+                cellsB_formula,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId3"));
+        
+        assertEquals(
+                cellsC,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId4"));
+        assertEquals(
+                cellsC,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId4"));
+        
+        assertEquals(
+                cellsE,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId6"));
+        assertEquals(
+                cellsE,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId6"));
+    }
+    
+    @Test
+    void testLoadSheetById_通常ケース_xlsm() throws ApplicationException {
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId2"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId2"));
+        
+        assertEquals(
+                cellsB_value,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId3"));
+        assertEquals(
+                cellsB_formula,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId3"));
+        
+        assertEquals(
+                cellsC,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId4"));
+        assertEquals(
+                cellsC,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId4"));
+        
+        assertEquals(
+                cellsE,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId6"));
+        assertEquals(
+                cellsE,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId6"));
+    }
+    
+    @Test
+    void testLoadSheetById_グラフシート() throws ApplicationException {
+        // 現状の実装では、グラフシートからは空のセルデータセットが返される。
+        // この挙動を仕様として追認することにする。
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId5"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsx, "rId5"));
+        
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId5"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheetById(SheetLoader1_normal_xlsm, "rId5"));
+    }
+    
+    @Test
+    void testLoadSheet_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xlsx, null));
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheet(null, "あああ"));
+        
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xls, "あああ"));
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xlsx, "ををを"));
+    }
+    
+    @Test
+    void testLoadSheet_通常ケース_xlsx() throws ApplicationException {
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsx, "あああ"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsx, "あああ"));
+        
+        assertEquals(
+                cellsB_value,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+        assertEquals(
+                cellsB_formula,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+        
+        assertEquals(
+                cellsC,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsx, "ううう"));
+        assertEquals(
+                cellsC,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsx, "ううう"));
+        
+        assertEquals(
+                cellsE,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsx, "おおお"));
+        assertEquals(
+                cellsE,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsx, "おおお"));
+    }
+    
+    @Test
+    void testLoadSheet_通常ケース_xlsm() throws ApplicationException {
+        assertEquals(
+                cellsA,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsm, "あああ"));
+        assertEquals(
+                cellsA,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsm, "あああ"));
+        
+        assertEquals(
+                cellsB_value,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsm, "いいい"));
+        assertEquals(
+                cellsB_formula,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsm, "いいい"));
+        
+        assertEquals(
+                cellsC,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsm, "ううう"));
+        assertEquals(
+                cellsC,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsm, "ううう"));
+        
+        assertEquals(
+                cellsE,
+                valueLoader.loadSheet(SheetLoader1_normal_xlsm, "おおお"));
+        assertEquals(
+                cellsE,
+                formulaLoader.loadSheet(SheetLoader1_normal_xlsm, "おおお"));
+    }
+    
+    @Test
+    void testLoadSheetWithConsumer_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> valueLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい", null));
+    }
+    
+    @Test
+    void testLoadSheetWithConsumer_通常ケース_xlsx() throws ApplicationException {
+        List<CellReplica> cells = new ArrayList<>();
+        valueLoader.loadSheet(SheetLoader1_normal_xlsx, "いいい", cells::add);
+        assertEquals(
+                cellsB_value,
+                new HashSet<>(cells));
+        
+        // セルデータは行優先の順序で渡されること
+        for (int i = 1; i < cells.size(); i++) {
+            CellReplica prev = cells.get(i - 1);
+            CellReplica curr = cells.get(i);
+            assertTrue(prev.row() < curr.row()
+                    || (prev.row() == curr.row() && prev.column() < curr.column()));
+        }
+    }
+    
+    @Test
+    void testOfWithRegion_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFSheetLoaderWithStaxApi.of(true, null));
+    }
+    
+    @Test
+    void testLoadSheetWithRegion_通常ケース_xlsx() throws ApplicationException {
+        SheetRegion region = SheetRegion.of("B2:E6,-C3:C4");
+        Set<CellReplica> expected = cellsB_value.stream()
+                .filter(c -> 1 <= c.row() && c.row() <= 5 && 1 <= c.column() && c.column() <= 4)
+                .filter(c -> !(2 <= c.row() && c.row() <= 3 && c.column() == 2))
+                .collect(Collectors.toSet());
+        
+        assertEquals(
+                expected,
+                XSSFSheetLoaderWithStaxApi.of(true, region).loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+        
+        assertEquals(
+                cellsB_value,
+                XSSFSheetLoaderWithStaxApi.of(true, SheetRegion.ALL).loadSheet(SheetLoader1_normal_xlsx, "いいい"));
+    }
+    
+    @Test
+    void testLoadSheetInParallel_通常ケース_xlsx() throws Exception {
+        for (String sheetName : new String[] { "いいい", "おおお" }) {
+            for (boolean extractCachedValue : new boolean[] { true, false }) {
+                List<CellReplica> expected = new ArrayList<>();
+                XSSFSheetLoaderWithStaxApi.of(extractCachedValue, SheetRegion.ALL, 0)
+                        .loadSheet(SheetLoader1_normal_xlsx, sheetName, expected::add);
+                
+                // 閾値を最小にして並列解析させても、逐次解析と同じ順序で同じセルデータが渡されること
+                List<CellReplica> actual = new ArrayList<>();
+                XSSFSheetLoaderWithStaxApi.of(extractCachedValue, SheetRegion.ALL, 1)
+                        .loadSheet(SheetLoader1_normal_xlsx, sheetName, actual::add);
+                
+                assertEquals(expected, actual);
+                
+                // 逐次解析にフォールバックせずに、チャンクに分割して解析されていること
+                assertEquals(
+                        expected,
+                        loadInParallel(
+                                XSSFSheetLoaderWithStaxApi.of(extractCachedValue, SheetRegion.ALL, 1),
+                                SheetLoader1_normal_xlsx.toPath(),
+                                sheetName));
+            }
+        }
+    }
+    
+    @Test
+    void testSplit() {
+        String head = "<?xml version=\"1.0\"?><worksheet><sheetData>";
+        String rows = "<row><c><v>1</v></c></row>"
+                + "<row\nr=\"2\"><c r=\"A2\"><v>2</v></c></row>"
+                + "<row\tr=\"3\"><c r=\"A3\"><v>3</v></c></row>"
+                + "<rowBreaks/>"
+                + "<row r=\"4\"><c r=\"A4\"><v>4</v></c></row>";
+        String tail = "</sheetData></worksheet>";
+        ByteBuffer buffer = buffer(head + rows + tail);
+        
+        // 最初のチャンクは、先頭の <row> 要素の書式に関わらず <sheetData> の直後から始まること
+        assertArrayEquals(
+                new int[] { head.length(), head.length() + rows.length() },
+                XSSFSheetLoaderWithStaxApi.split(buffer, 1));
+        
+        // 2番目以降のチャンクは、r 属性を持つ <row> 要素（改行やタブで区切られたものを含む）の位置で分割されること
+        int[] bounds = XSSFSheetLoaderWithStaxApi.split(buffer, 4);
+        assertEquals(head.length(), bounds[0]);
+        assertEquals(head.length() + rows.length(), bounds[bounds.length - 1]);
+        assertTrue(2 < bounds.length);
+        for (int i = 1; i < bounds.length - 1; i++) {
+            buffer.position(bounds[i]);
+            byte[] tag = new byte[5];
+            buffer.get(tag);
+            assertTrue(new String(tag, StandardCharsets.US_ASCII).matches("<row[\\s]"), Integer.toString(i));
+        }
+        
+        // 2番目以降のチャンクの先頭の <row> 要素が r 属性を持たない場合は分割できないこと
+        assertNull(XSSFSheetLoaderWithStaxApi.split(
+                buffer(head + "<row><c><v>1</v></c></row><row><c><v>2</v></c></row>" + tail), 2));
+        
+        // 行を持たない場合は分割できないこと
+        assertNull(XSSFSheetLoaderWithStaxApi.split(buffer("<worksheet><sheetData/></worksheet>"), 2));
+        assertNull(XSSFSheetLoaderWithStaxApi.split(buffer("<worksheet></worksheet>"), 2));
+    }
+    
+    @Test
+    void testLoadSheetInParallel_行の書式() throws Exception {
+        // 先頭の行は属性を持たない <row>、以降の行は改行やタブの後に r 属性を持つ <row> で表す。
+        StringBuilder sheetData = new StringBuilder("<row><c><v>0</v></c><c><v>0.5</v></c></row>");
+        for (int i = 1; i < 500; i++) {
+            sheetData.append(String.format("<row%sr=\"%d\"><c r=\"A%d\"><v>%d</v></c></row>",
+                    i % 2 == 0 ? "\n" : "\t", i + 1, i + 1, i));
+        }
+        Set<CellReplica> expected = IntStream.range(0, 500)
+                .mapToObj(i -> CellReplica.of(i, 0, Integer.toString(i)))
+                .collect(Collectors.toSet());
+        expected.add(CellReplica.of(0, 1, "0.5"));
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path workDir = dir.resolve("work");
+        Path book = TestBooks.withSheet(dir.resolve("rows.xlsx"), sheetData.toString());
+        try {
+            XSSFSheetLoaderWithStaxApi loader = XSSFSheetLoaderWithStaxApi.of(true, SheetRegion.ALL, 1, workDir);
+            
+            // 先頭の行を失わずに、チャンクに分割して解析されること
+            List<CellReplica> actual = loadInParallel(loader, book, TestBooks.SHEET_NAME);
+            assertNotNull(actual);
+            assertEquals(expected, new HashSet<>(actual));
+            assertEquals(expected, loader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            
+            // 一時ファイルは作業用フォルダに作成され、解析後に削除されること
+            assertTrue(Files.isDirectory(workDir));
+            assertEquals(Collections.emptyList(), list(workDir));
+            
+            // 末尾のチャンクの解析に失敗した場合も、例外を送出して一時ファイルを削除すること
+            Files.delete(book);
+            sheetData.append("<row r=\"501\"><c r=\"A501\"><v>500</c></row>");
+            TestBooks.withSheet(book, sheetData.toString());
+            assertThrows(
+                    ApplicationException.class,
+                    () -> loader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            assertEquals(Collections.emptyList(), list(workDir));
+            
+        } finally {
+            Files.delete(book);
+            Files.deleteIfExists(workDir);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testLoadSheet_共有数式_xlsx() throws ApplicationException {
+        assertEquals(
+                cellsS_formula,
+                formulaLoader.loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式"));
+        
+        // 並列解析させた場合も、先行するチャンクのマスタセルから共有数式が展開されること
+        assertEquals(
+                cellsS_formula,
+                XSSFSheetLoaderWithStaxApi.of(false, SheetRegion.ALL, 1)
+                        .loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式"));
+        
+        // 並列解析させた場合も、先行するチャンクのマスタセルから展開したセルが逐次解析と同じ順序で渡されること
+        List<CellReplica> expectedOrder = new ArrayList<>();
+        XSSFSheetLoaderWithStaxApi.of(false, SheetRegion.ALL, 0)
+                .loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式", expectedOrder::add);
+        List<CellReplica> actualOrder = new ArrayList<>();
+        XSSFSheetLoaderWithStaxApi.of(false, SheetRegion.ALL, 1)
+                .loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式", actualOrder::add);
+        assertEquals(expectedOrder, actualOrder);
+        
+        // マスタセルが範囲外にあっても、共有数式が展開されること
+        SheetRegion region = SheetRegion.of("B2:D5");
+        Set<CellReplica> expected = cellsS_formula.stream()
+                .filter(c -> 1 <= c.row() && c.row() <= 4 && 1 <= c.column() && c.column() <= 3)
+                .collect(Collectors.toSet());
+        assertEquals(
+                expected,
+                XSSFSheetLoaderWithStaxApi.of(false, region).loadSheet(SheetLoader2_sharedformulas_xlsx, "共有数式"));
+    }
+    
+    @Test
+    void testLoadSheet_インライン文字列_xlsx() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = TestBooks.withSheet(dir.resolve("inline.xlsx"), TestBooks.inlineStrings);
+        try {
+            for (boolean extractCachedValue : new boolean[] { true, false }) {
+                // インライン文字列をふりがなを除いて読み込み、イベントモデルAPIのローダーと同じセルデータを返すこと
+                Set<CellReplica> expected = XSSFSheetLoaderWithEventApi.of(extractCachedValue)
+                        .loadSheet(book.toFile(), TestBooks.SHEET_NAME);
+                assertEquals(TestBooks.cellsI, expected);
+                assertEquals(
+                        expected,
+                        XSSFSheetLoaderWithStaxApi.of(extractCachedValue)
+                                .loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+                assertEquals(
+                        expected,
+                        XSSFSheetLoaderWithStaxApi.of(extractCachedValue, SheetRegion.ALL, 1)
+                                .loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            }
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testLoadSheet_数式セル_xlsx() throws ApplicationException, IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = TestBooks.withSheet(dir.resolve("formulas.xlsx"), TestBooks.formulas);
+        try {
+            // キャッシュされた計算値はそのまま、数式文字列は標準化して読み込むこと
+            assertEquals(
+                    TestBooks.cellsFV,
+                    valueLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+            assertEquals(
+                    TestBooks.cellsFF,
+                    formulaLoader.loadSheet(book.toFile(), TestBooks.SHEET_NAME));
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testLoadStats_通常ケース_xlsx() throws ApplicationException {
+        assertEquals(
+                Optional.of(SheetStats.of(1, 1, 7, 6)),
+                valueLoader.loadStats(SheetLoader1_normal_xlsx, "いいい"));
+        
+        assertThrows(
+                NoSuchElementException.class,
+                () -> valueLoader.loadStats(SheetLoader1_normal_xlsx, "存在しないシート"));
+    }
+}
@@ -0,0 +1,117 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+
+class XSSFZipReaderTest {
+    
+    // [static members] ********************************************************
+    
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testOpen_パラメータ不正() {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFZipReader.open(null));
+    }
+    
+    @Test
+    void testGetInputStream() throws IOException {
+        for (File book : new File[] { SheetLoader1_normal_xlsx, SheetLoader1_normal_xlsm }) {
+            try (XSSFZipReader reader = XSSFZipReader.open(book.toPath());
+                    ZipFile zip = new ZipFile(book)) {
+                
+                List<String> names = Collections.list(zip.entries()).stream()
+                        .map(ZipEntry::getName)
+                        .collect(Collectors.toList());
+                assertEquals(names, reader.getEntryNames().stream().collect(Collectors.toList()));
+                
+                // 各エントリの内容と生データのサイズが java.util.zip.ZipFile と一致すること
+                for (String name : names) {
+                    ZipEntry expected = zip.getEntry(name);
+                    try (InputStream exp = zip.getInputStream(expected);
+                            InputStream act = reader.getInputStream(name)) {
+                        assertArrayEquals(readAll(exp), readAll(act));
+                    }
+                    assertEquals(expected.getCompressedSize(), reader.getRawData(name).remaining());
+                    assertEquals(expected.getSize(), reader.getEntry(name).get().size());
+                    assertEquals(expected.getCrc(), reader.getEntry(name).get().crc());
+                }
+            }
+        }
+    }
+    
+    @Test
+    void testGetInputStream_存在しないエントリ() throws IOException {
+        try (XSSFZipReader reader = XSSFZipReader.open(SheetLoader1_normal_xlsx.toPath())) {
+            assertThrows(
+                    NullPointerException.class,
+                    () -> reader.getInputStream(null));
+            assertThrows(
+                    NoSuchFileException.class,
+                    () -> reader.getInputStream("xl/dummy.xml"));
+            assertFalse(reader.getEntry("xl/dummy.xml").isPresent());
+        }
+    }
+    
+    @Test
+    void testClose() throws IOException {
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path book = Files.copy(SheetLoader1_normal_xlsx.toPath(), dir.resolve("book.xlsx"));
+        try {
+            XSSFZipReader reader = XSSFZipReader.open(book);
+            try (InputStream is = reader.getInputStream("xl/workbook.xml")) {
+                readAll(is);
+            }
+            reader.close();
+            
+            // 閉じた後はエントリを読み込めないこと（エントリの情報は参照できること）
+            assertThrows(
+                    IllegalStateException.class,
+                    () -> reader.getInputStream("xl/workbook.xml"));
+            assertThrows(
+                    IllegalStateException.class,
+                    () -> reader.getRawData("xl/workbook.xml"));
+            assertTrue(reader.getEntry("xl/workbook.xml").isPresent());
+            
+            // 繰り返し閉じても例外が発生しないこと
+            reader.close();
+            
+            // 閉じた後はファイルを上書き・削除できること
+            Files.copy(SheetLoader1_normal_xlsm.toPath(), book, StandardCopyOption.REPLACE_EXISTING);
+            
+        } finally {
+            Files.delete(book);
+            Files.delete(dir);
+        }
+    }
+}
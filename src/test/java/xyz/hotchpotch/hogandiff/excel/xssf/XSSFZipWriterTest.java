@@ -0,0 +1,221 @@
+package xyz.hotchpotch.hogandiff.excel.xssf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class XSSFZipWriterTest {
+    
+    // [static members] ********************************************************
+    
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testCreate_パラメータ不正() throws IOException {
+        assertThrows(
+                NullPointerException.class,
+                () -> XSSFZipWriter.create(null));
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path target = Files.createFile(dir.resolve("exists.xlsx"));
+        try {
+            assertThrows(
+                    FileAlreadyExistsException.class,
+                    () -> XSSFZipWriter.create(target));
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> XSSFZipWriter.create(dir.resolve("new.xlsx"), -2));
+            assertThrows(
+                    IllegalArgumentException.class,
+                    () -> XSSFZipWriter.create(dir.resolve("new.xlsx"), 10));
+        } finally {
+            Files.delete(target);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testCopyRawAndNewEntry() throws IOException {
+        XSSFZipReader reader = XSSFZipReader.open(SheetLoader1_normal_xlsx.toPath());
+        byte[] replaced = "<?xml version=\"1.0\"?><日本語/>".getBytes(StandardCharsets.UTF_8);
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path target = dir.resolve("copy.xlsx");
+        try {
+            // xl/styles.xml だけを書き換え、それ以外のエントリは生データのまま書き写す。
+            try (XSSFZipWriter writer = XSSFZipWriter.create(target)) {
+                for (String name : reader.getEntryNames()) {
+                    if ("xl/styles.xml".equals(name)) {
+                        try (OutputStream os = writer.newEntry(name)) {
+                            assertThrows(
+                                    IllegalStateException.class,
+                                    () -> writer.newEntry("xl/dummy.xml"));
+                            os.write(replaced);
+                        }
+                    } else {
+                        writer.copyRaw(reader.getEntry(name).get(), reader.getRawData(name));
+                    }
+                }
+            }
+            
+            // java.util.zip.ZipFile で読み込めること
+            try (ZipFile zip = new ZipFile(target.toFile())) {
+                List<String> names = Collections.list(zip.entries()).stream()
+                        .map(ZipEntry::getName)
+                        .collect(Collectors.toList());
+                assertEquals(new ArrayList<>(reader.getEntryNames()), names);
+                
+                for (String name : names) {
+                    byte[] expected;
+                    if ("xl/styles.xml".equals(name)) {
+                        expected = replaced;
+                    } else {
+                        try (InputStream is = reader.getInputStream(name)) {
+                            expected = readAll(is);
+                        }
+                    }
+                    try (InputStream is = zip.getInputStream(zip.getEntry(name))) {
+                        assertArrayEquals(expected, readAll(is));
+                    }
+                }
+            }
+            
+            // ローカルヘッダだけを参照する java.util.zip.ZipInputStream でも読み込めること
+            try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(target))) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if ("xl/styles.xml".equals(entry.getName())) {
+                        assertArrayEquals(replaced, readAll(zis));
+                    } else {
+                        readAll(zis);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+            Files.deleteIfExists(target);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testCopyDeflated() throws IOException {
+        byte[] content = "<?xml version=\"1.0\"?><日本語/>".getBytes(StandardCharsets.UTF_8);
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path target = dir.resolve("copy.xlsx");
+        try {
+            // 事前に圧縮したエントリを、書き込み順とは逆の順にzipファイルに書き写す。
+            try (XSSFZipWriter writer = XSSFZipWriter.create(target);
+                    XSSFZipWriter.DeflatedEntry entry1 = writer.newDeflatedEntry("a.xml", dir);
+                    XSSFZipWriter.DeflatedEntry entry2 = writer.newDeflatedEntry("b.xml", dir)) {
+                
+                try (OutputStream os = entry2.newOutputStream()) {
+                    os.write(content);
+                }
+                try (OutputStream os = entry1.newOutputStream()) {
+                    os.write(content);
+                    os.write(content);
+                }
+                assertThrows(
+                        IllegalStateException.class,
+                        () -> entry1.newOutputStream());
+                
+                writer.copyDeflated(entry1);
+                writer.copyDeflated(entry2);
+            }
+            
+            try (ZipFile zip = new ZipFile(target.toFile())) {
+                List<String> names = Collections.list(zip.entries()).stream()
+                        .map(ZipEntry::getName)
+                        .collect(Collectors.toList());
+                assertEquals(Arrays.asList("a.xml", "b.xml"), names);
+                
+                try (InputStream is = zip.getInputStream(zip.getEntry("a.xml"))) {
+                    byte[] actual = readAll(is);
+                    assertEquals(content.length * 2, actual.length);
+                }
+                try (InputStream is = zip.getInputStream(zip.getEntry("b.xml"))) {
+                    assertArrayEquals(content, readAll(is));
+                }
+            }
+            
+            // 一時ファイルは削除されていること
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(target);
+            Files.delete(dir);
+        }
+    }
+    
+    @Test
+    void testCreate_圧縮レベル() throws IOException {
+        byte[] content = "<?xml version=\"1.0\"?><日本語/>".getBytes(StandardCharsets.UTF_8);
+        
+        Path dir = Files.createTempDirectory("hogandiff");
+        Path target = dir.resolve("copy.xlsx");
+        try {
+            for (int level : new int[] { XSSFZipWriter.STORED, 1 }) {
+                try (XSSFZipWriter writer = XSSFZipWriter.create(target, level);
+                        XSSFZipWriter.DeflatedEntry entry = writer.newDeflatedEntry("b.xml", dir)) {
+                    
+                    try (OutputStream os = writer.newEntry("a.xml")) {
+                        os.write(content);
+                    }
+                    try (OutputStream os = entry.newOutputStream()) {
+                        os.write(content);
+                    }
+                    writer.copyDeflated(entry);
+                }
+                
+                // 圧縮レベル 0 の場合は STORED として格納され、ローカルヘッダだけを参照しても読み込めること
+                int method = level == XSSFZipWriter.STORED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+                try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(target))) {
+                    for (String name : Arrays.asList("a.xml", "b.xml")) {
+                        ZipEntry entry = zis.getNextEntry();
+                        assertEquals(name, entry.getName());
+                        assertEquals(method, entry.getMethod());
+                        assertArrayEquals(content, readAll(zis));
+                    }
+                }
+                Files.delete(target);
+            }
+        } finally {
+            Files.deleteIfExists(target);
+            Files.delete(dir);
+        }
+    }
+}
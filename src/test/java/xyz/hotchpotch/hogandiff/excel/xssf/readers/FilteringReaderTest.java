@@ -0,0 +1,91 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+class FilteringReaderTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    
+    private static final QName X = new QName("x");
+    private static final QName Y = new QName("y");
+    private static final QName Z = new QName("z");
+    private static final QName W = new QName("w");
+    
+    private static XMLEventReader reader(String xml) throws XMLStreamException {
+        return inFactory.createXMLEventReader(new StringReader(xml));
+    }
+    
+    private static String write(XMLEventReader reader) throws XMLStreamException {
+        StringWriter str = new StringWriter();
+        XMLEventWriter writer = outFactory.createXMLEventWriter(str);
+        while (reader.hasNext()) {
+            if (!reader.peek().isStartDocument()) {
+                writer.add(reader.peek());
+            }
+            reader.nextEvent();
+        }
+        writer.flush();
+        return str.toString();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testAddFilter_パラメータ不正() throws XMLStreamException {
+        FilteringReader.Builder builder = FilteringReader.builder(reader("<r/>"));
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> builder.addFilter((QName[]) null));
+        assertThrows(
+                NullPointerException.class,
+                () -> builder.addFilter(X, null));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> builder.addFilter(new QName[0]));
+    }
+    
+    @Test
+    void testFilteringReader_QName階層() throws XMLStreamException {
+        String xml = "<r><x><y><z/><w/></y></x><y><w/><z/></y><z><x/></z></r>";
+        
+        // 要素ツリーの末尾がQName階層と一致する要素だけが、子要素ごと読み飛ばされること
+        assertEquals(
+                "<r><x><y></y></x><y><z></z></y><z><x></x></z></r>",
+                write(FilteringReader.builder(reader(xml))
+                        .addFilter(X, Y, Z)
+                        .addFilter(Y, W)
+                        .build()));
+        
+        assertEquals(
+                "<r><y><w></w></y></r>",
+                write(FilteringReader.builder(reader(xml))
+                        .addFilter(X)
+                        .addFilter(Z)
+                        .build()));
+        
+        // QName階層と関数によるフィルタを併用できること
+        assertEquals(
+                "<r><x></x><y><z></z></y><z><x></x></z></r>",
+                write(FilteringReader.builder(reader(xml))
+                        .addFilter(W)
+                        .addFilter((tree, start) -> X.equals(tree.peekLast()))
+                        .build()));
+    }
+}
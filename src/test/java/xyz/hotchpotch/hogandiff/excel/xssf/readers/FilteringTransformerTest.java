@@ -0,0 +1,69 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.jupiter.api.Test;
+
+class FilteringTransformerTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    
+    private static final String NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final QName COLOR = new QName(NS, "color");
+    
+    private static String transform(String xml, QName... filters) throws XMLStreamException {
+        XMLStreamReader reader = inFactory.createXMLStreamReader(new StringReader(xml));
+        StringWriter str = new StringWriter();
+        XMLStreamWriter writer = outFactory.createXMLStreamWriter(str);
+        FilteringTransformer.of(reader, writer, filters).transform();
+        return str.toString();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testOf_パラメータ不正() throws XMLStreamException {
+        XMLStreamReader reader = inFactory.createXMLStreamReader(new StringReader("<a/>"));
+        XMLStreamWriter writer = outFactory.createXMLStreamWriter(new StringWriter());
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> FilteringTransformer.of(null, writer, COLOR));
+        assertThrows(
+                NullPointerException.class,
+                () -> FilteringTransformer.of(reader, null, COLOR));
+        assertThrows(
+                NullPointerException.class,
+                () -> FilteringTransformer.of(reader, writer, (QName[]) null));
+    }
+    
+    @Test
+    void testTransform() throws XMLStreamException {
+        String xml = "<sst xmlns=\"" + NS + "\" count=\"1\"><si><r><rPr><b/><color rgb=\"FFFF0000\"><x/></color>"
+                + "<sz val=\"11\"/></rPr><t xml:space=\"preserve\"> a&amp;b </t></r></si></sst>";
+        
+        // 指定された要素だけが子要素ごと取り除かれ、それ以外はそのまま書き写されること
+        assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                        + "<sst xmlns=\"" + NS + "\" count=\"1\"><si><r><rPr><b></b><sz val=\"11\"></sz></rPr>"
+                        + "<t xml:space=\"preserve\"> a&amp;b </t></r></si></sst>",
+                transform(xml, COLOR));
+        
+        // 読み飛ばす要素が指定されない場合は、そのまま書き写されること
+        assertTrue(transform(xml).contains("<color rgb=\"FFFF0000\"><x></x></color>"));
+    }
+}
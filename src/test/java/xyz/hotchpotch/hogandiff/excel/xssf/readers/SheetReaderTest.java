@@ -0,0 +1,95 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.Context.Props;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+class SheetReaderTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    private static final String STYLES = "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+            + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+            + "<cellXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" xfId=\"0\"/></cellXfs>"
+            + "</styleSheet>";
+    
+    private static XMLEventReader reader(String xml) throws XMLStreamException {
+        return inFactory.createXMLEventReader(new StringReader(xml));
+    }
+    
+    private static String write(XMLEventReader reader) throws XMLStreamException {
+        StringWriter str = new StringWriter();
+        XMLEventWriter writer = outFactory.createXMLEventWriter(str);
+        writer.add(reader);
+        writer.flush();
+        return str.toString();
+    }
+    
+    private static Piece piece(CellReplica... diffCells) {
+        List<Pair<CellReplica>> pairs = Arrays.stream(diffCells)
+                .map(cell -> Pair.of(cell, cell))
+                .collect(Collectors.toList());
+        return SResult.of(false, false,
+                Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(),
+                pairs).pieces.a();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testSheetReader_r属性の省略() throws XMLStreamException {
+        String sheet = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                + "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>"
+                + "<row><c><v>2</v></c><c><v>3</v></c></row>"
+                + "<row><c r=\"B3\"><v>4</v></c><c><v>5</v></c></row>"
+                + "</sheetData></worksheet>";
+        StylesManager manager = StylesManager.of(reader(STYLES));
+        Piece piece = piece(
+                CellReplica.of(1, 1, "3"),
+                CellReplica.of(2, 2, "5"),
+                CellReplica.of(2, 3, ""));
+        
+        String actual = write(SheetReader.of(reader(sheet), manager, piece, context));
+        int style = manager.getNewStyle(0, context.get(Props.APP_DIFF_COLOR));
+        
+        // r 属性を省略した行と列は、直前の行・列の次の行・列として扱われること
+        assertEquals(
+                "<?xml version=\"1.0\" ?>"
+                        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                        + "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>"
+                        + "<row><c><v>2</v></c><c s=\"" + style + "\"><v>3</v></c></row>"
+                        + "<row><c r=\"B3\"><v>4</v></c><c s=\"" + style + "\"><v>5</v></c>"
+                        + "<c r=\"D3\" s=\"" + style + "\"></c></row>"
+                        + "</sheetData></worksheet>",
+                actual);
+    }
+}
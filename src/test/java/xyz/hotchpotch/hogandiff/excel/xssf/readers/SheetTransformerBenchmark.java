@@ -0,0 +1,163 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+/**
+ * {@link SheetReader} を使用するイベントAPIでの着色と、
+ * {@link SheetTransformer} を使用するカーソルAPIでの着色の、処理時間とメモリ割当量を比較します。<br>
+ * JUnit のテストとしては実行されません。{@code main} メソッドから手動で実行してください。<br>
+ * <br>
+ * 使用方法 : {@code SheetTransformerBenchmark [行数] [列数] [試行回数]}<br>
+ * 
+ * @author nmby
+ * @since 0.5.0
+ */
+public class SheetTransformerBenchmark {
+    
+    // [static members] ********************************************************
+    
+    private static final String STYLES = ""
+            + "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>"
+            + "<cellXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" xfId=\"0\"/></cellXfs>"
+            + "</styleSheet>";
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    @FunctionalInterface
+    private static interface Painter {
+        void paint(byte[] sheet, Piece piece, OutputStream out) throws XMLStreamException;
+    }
+    
+    /**
+     * ベンチマークを実行します。<br>
+     * 
+     * @param args 行数、列数、試行回数（いずれも省略可能）
+     * @throws XMLStreamException XMLの処理に失敗した場合
+     */
+    public static void main(String[] args) throws XMLStreamException {
+        int rows = 0 < args.length ? Integer.parseInt(args[0]) : 6000;
+        int cols = 1 < args.length ? Integer.parseInt(args[1]) : 10;
+        int trials = 2 < args.length ? Integer.parseInt(args[2]) : 5;
+        
+        byte[] sheet = createSheet(rows, cols);
+        Piece piece = createPiece(rows, cols);
+        
+        Painter withReader = (src, p, out) -> {
+            XMLEventReader reader = inFactory.createXMLEventReader(new ByteArrayInputStream(src));
+            reader = FilteringReader.builder(reader)
+                    .addFilter(QNAME.CONDITIONAL_FORMATTING)
+                    .build();
+            reader = SheetReader.of(reader, stylesManager(), p, context);
+            XMLEventWriter writer = outFactory.createXMLEventWriter(out, "UTF-8");
+            writer.add(reader);
+            writer.flush();
+        };
+        Painter withTransformer = (src, p, out) -> {
+            XMLStreamReader reader = inFactory.createXMLStreamReader(new ByteArrayInputStream(src));
+            XMLStreamWriter writer = outFactory.createXMLStreamWriter(out, "UTF-8");
+            SheetTransformer.of(reader, writer, stylesManager(), p, context, QNAME.CONDITIONAL_FORMATTING)
+                    .transform();
+        };
+        
+        System.out.printf("%d rows x %d cols, best of %d%n", rows, cols, trials);
+        // 1巡目はウォームアップとして捨てる。
+        for (int round = 0; round < 2; round++) {
+            measure("SheetReader", withReader, sheet, piece, trials, round == 1);
+            measure("SheetTransformer", withTransformer, sheet, piece, trials, round == 1);
+        }
+    }
+    
+    private static StylesManager stylesManager() throws XMLStreamException {
+        return StylesManager.of(inFactory.createXMLEventReader(
+                new ByteArrayInputStream(STYLES.getBytes(StandardCharsets.UTF_8))));
+    }
+    
+    private static byte[] createSheet(int rows, int cols) {
+        StringBuilder str = new StringBuilder();
+        str.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        str.append("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        for (int i = 0; i < rows; i++) {
+            str.append(String.format("<row r=\"%d\" spans=\"1:%d\">", i + 1, cols));
+            for (int j = 0; j < cols; j++) {
+                str.append(String.format("<c r=\"%s\"><v>%d</v></c>", CellReplica.getAddress(i, j), i * cols + j));
+            }
+            str.append("</row>");
+        }
+        str.append("</sheetData></worksheet>");
+        return str.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static Piece createPiece(int rows, int cols) {
+        // 100行ごとに余剰行を1行、100行ごとに差分セルを1セル設ける。
+        List<Integer> redundantRows = new ArrayList<>();
+        List<Pair<CellReplica>> diffCells = new ArrayList<>();
+        for (int i = 0; i < rows; i += 100) {
+            redundantRows.add(i);
+            CellReplica cell = CellReplica.of(i + 50, (i / 100) % cols, "");
+            diffCells.add(Pair.of(cell, cell));
+        }
+        return SResult.of(true, false,
+                redundantRows, Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(),
+                diffCells).pieces.a();
+    }
+    
+    private static void measure(
+            String label,
+            Painter painter,
+            byte[] sheet,
+            Piece piece,
+            int trials,
+            boolean print)
+            throws XMLStreamException {
+        
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long best = Long.MAX_VALUE;
+        long alloc = 0;
+        
+        for (int i = 0; i < trials; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(sheet.length * 2);
+            long alloc0 = mx.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            painter.paint(sheet, piece, out);
+            best = Math.min(best, System.nanoTime() - start);
+            alloc = mx.getThreadAllocatedBytes(threadId) - alloc0;
+        }
+        if (print) {
+            System.out.printf("%-16s : best %5d ms, alloc %5d MB%n", label, best / 1_000_000, alloc >> 20);
+        }
+    }
+    
+    // [instance members] ******************************************************
+    
+    private SheetTransformerBenchmark() {
+    }
+}
@@ -0,0 +1,210 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.hotchpotch.hogandiff.excel.TestFiles.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.Context;
+import xyz.hotchpotch.hogandiff.common.Pair;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult;
+import xyz.hotchpotch.hogandiff.diff.excel.SResult.Piece;
+import xyz.hotchpotch.hogandiff.excel.CellReplica;
+import xyz.hotchpotch.hogandiff.excel.xssf.XSSFUtils.QNAME;
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+class SheetTransformerTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    
+    private static final XMLInputFactory coalescingFactory = XMLInputFactory.newInstance();
+    static {
+        coalescingFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+    
+    private static final Context context = Context.Builder.of(new Properties()).build();
+    
+    private static Piece piece(
+            List<Integer> redundantRows,
+            List<Integer> redundantColumns,
+            CellReplica... diffCells) {
+        
+        List<Pair<CellReplica>> pairs = Arrays.stream(diffCells)
+                .map(cell -> Pair.of(cell, cell))
+                .collect(Collectors.toList());
+        return SResult.of(true, true,
+                redundantRows, Collections.emptyList(),
+                redundantColumns, Collections.emptyList(),
+                pairs).pieces.a();
+    }
+    
+    private static String read(ZipFile zip, String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream is = zip.getInputStream(zip.getEntry(name))) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static String paintWithReader(String sheet, String styles, Piece piece) throws XMLStreamException {
+        StylesManager manager = StylesManager.of(inFactory.createXMLEventReader(new StringReader(styles)));
+        XMLEventReader reader = FilteringReader.builder(inFactory.createXMLEventReader(new StringReader(sheet)))
+                .addFilter(QNAME.CONDITIONAL_FORMATTING)
+                .build();
+        reader = SheetReader.of(reader, manager, piece, context);
+        
+        StringWriter str = new StringWriter();
+        XMLEventWriter writer = outFactory.createXMLEventWriter(str);
+        writer.add(reader);
+        writer.flush();
+        return str.toString();
+    }
+    
+    private static String paintWithTransformer(String sheet, String styles, Piece piece) throws XMLStreamException {
+        StylesManager manager = StylesManager.of(inFactory.createXMLEventReader(new StringReader(styles)));
+        XMLStreamReader reader = inFactory.createXMLStreamReader(new StringReader(sheet));
+        
+        StringWriter str = new StringWriter();
+        XMLStreamWriter writer = outFactory.createXMLStreamWriter(str);
+        SheetTransformer.of(reader, writer, manager, piece, context, QNAME.CONDITIONAL_FORMATTING).transform();
+        return str.toString();
+    }
+    
+    /**
+     * 属性や名前空間の宣言の順序に依存しない形式で、XMLのイベントを列挙して返します。<br>
+     */
+    private static List<String> normalize(String xml) throws XMLStreamException {
+        List<String> events = new ArrayList<>();
+        XMLEventReader reader = coalescingFactory.createXMLEventReader(new StringReader(xml));
+        
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartDocument()) {
+                StartDocument start = (StartDocument) event;
+                events.add("<?xml " + start.getVersion() + " " + start.isStandalone() + "?>");
+                
+            } else if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                TreeSet<String> attrs = new TreeSet<>();
+                for (Iterator<?> itr = start.getAttributes(); itr.hasNext();) {
+                    Attribute attr = (Attribute) itr.next();
+                    attrs.add(attr.getName() + "=" + attr.getValue());
+                }
+                for (Iterator<?> itr = start.getNamespaces(); itr.hasNext();) {
+                    Namespace ns = (Namespace) itr.next();
+                    attrs.add("xmlns:" + ns.getPrefix() + "=" + ns.getNamespaceURI());
+                }
+                events.add("<" + start.getName() + " " + attrs + ">");
+                
+            } else if (event.isEndElement()) {
+                events.add("</" + event.asEndElement().getName() + ">");
+                
+            } else if (event.isCharacters()) {
+                events.add(event.asCharacters().getData());
+            }
+        }
+        return events;
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testTransform_SheetReaderとの同等性() throws IOException, XMLStreamException {
+        Piece[] pieces = {
+                piece(Collections.emptyList(), Collections.emptyList()),
+                piece(Collections.emptyList(), Collections.emptyList(),
+                        CellReplica.of(0, 0, ""), CellReplica.of(1, 2, ""), CellReplica.of(40, 7, "")),
+                piece(Arrays.asList(1, 4, 30), Arrays.asList(0, 2, 3, 10),
+                        CellReplica.of(2, 5, ""), CellReplica.of(6, 1, ""), CellReplica.of(40, 7, "")),
+        };
+        
+        try (ZipFile zip = new ZipFile(SheetLoader1_normal_xlsx)) {
+            String styles = read(zip, "xl/styles.xml");
+            List<String> sheets = zip.stream()
+                    .map(ZipEntry::getName)
+                    .filter(name -> name.matches("xl/worksheets/[^/]+\\.xml"))
+                    .collect(Collectors.toList());
+            assertFalse(sheets.isEmpty());
+            
+            // 同じシートに同じ色を付けた結果が、属性の順序を除いて SheetReader と同じであること
+            for (String name : sheets) {
+                String sheet = read(zip, name);
+                for (Piece piece : pieces) {
+                    assertEquals(
+                            normalize(paintWithReader(sheet, styles, piece)),
+                            normalize(paintWithTransformer(sheet, styles, piece)));
+                }
+            }
+        }
+    }
+    
+    @Test
+    void testTransform_r属性の省略() throws XMLStreamException {
+        String styles = "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<fills count=\"1\"><fill><patternFill patternType=\"none\"/></fill></fills>"
+                + "<cellXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" xfId=\"0\"/></cellXfs>"
+                + "</styleSheet>";
+        String sheet = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                + "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>"
+                + "<row><c><v>2</v></c><c><v>3</v></c></row>"
+                + "<row><c r=\"B3\"><v>4</v></c><c><v>5</v></c></row>"
+                + "</sheetData></worksheet>";
+        Piece piece = piece(Arrays.asList(3), Arrays.asList(0),
+                CellReplica.of(1, 1, ""), CellReplica.of(2, 2, ""), CellReplica.of(2, 3, ""));
+        
+        // r 属性を省略した行と列も、SheetReader と同じく直前の行・列の次の行・列として扱われること
+        assertEquals(
+                normalize(paintWithReader(sheet, styles, piece)),
+                normalize(paintWithTransformer(sheet, styles, piece)));
+    }
+    
+    @Test
+    void testTransform_standalone宣言() throws XMLStreamException {
+        String sheet = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<sheetData/></worksheet>";
+        String styles = "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"/>";
+        
+        // 元のXML宣言の standalone 宣言が引き継がれること
+        String actual = paintWithTransformer(sheet, styles, piece(Collections.emptyList(), Collections.emptyList()));
+        assertTrue(actual.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"));
+    }
+}
@@ -0,0 +1,86 @@
+package xyz.hotchpotch.hogandiff.excel.xssf.readers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.hotchpotch.hogandiff.excel.xssf.readers.SheetReader.StylesManager;
+
+class StylesReaderTest {
+    
+    // [static members] ********************************************************
+    
+    private static final XMLInputFactory inFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
+    
+    private static final String STYLES = "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+            + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+            + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\"/></cellStyleXfs>"
+            + "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" xfId=\"0\"/>"
+            + "<xf numFmtId=\"14\" fontId=\"1\" fillId=\"1\" xfId=\"0\"><alignment wrapText=\"1\"/></xf></cellXfs>"
+            + "</styleSheet>";
+    
+    private static XMLEventReader reader(String xml) throws XMLStreamException {
+        return inFactory.createXMLEventReader(new StringReader(xml));
+    }
+    
+    private static String write(XMLEventReader reader) throws XMLStreamException {
+        StringWriter str = new StringWriter();
+        XMLEventWriter writer = outFactory.createXMLEventWriter(str);
+        writer.add(reader);
+        writer.flush();
+        return str.toString();
+    }
+    
+    // [instance members] ******************************************************
+    
+    @Test
+    void testOf_パラメータ不正() throws XMLStreamException {
+        StylesManager manager = StylesManager.of(reader(STYLES));
+        
+        assertThrows(
+                NullPointerException.class,
+                () -> StylesReader.of(null, manager));
+        assertThrows(
+                NullPointerException.class,
+                () -> StylesReader.of(reader(STYLES), null));
+    }
+    
+    @Test
+    void testStylesReader() throws XMLStreamException {
+        StylesManager manager = StylesManager.of(reader(STYLES));
+        
+        // 既存のスタイルの後ろにインデックスが割り当てられ、同じ組み合わせには同じインデックスが返されること
+        assertEquals(2, manager.getNewStyle(1, (short) 10));
+        assertEquals(3, manager.getNewStyle(0, (short) 10));
+        assertEquals(4, manager.getNewStyle(1, (short) 13));
+        assertEquals(2, manager.getNewStyle(1, (short) 10));
+        
+        String actual = write(StylesReader.of(reader(STYLES), manager));
+        
+        assertTrue(actual.contains("<fills count=\"4\">"));
+        assertTrue(actual.contains("<fill><patternFill patternType=\"solid\"><fgColor indexed=\"10\"></fgColor>"
+                + "</patternFill></fill><fill><patternFill patternType=\"solid\"><fgColor indexed=\"13\"></fgColor>"
+                + "</patternFill></fill></fills>"));
+        assertTrue(actual.contains("<cellStyleXfs count=\"1\">"));
+        assertTrue(actual.contains("<cellXfs count=\"5\">"));
+        
+        // 複製元のスタイルの子要素が引き継がれ、塗りつぶしだけが置き換えられること
+        String xfs = actual.substring(actual.indexOf("<cellXfs"));
+        assertTrue(xfs.matches(".*<xf [^>]*fillId=\"2\"[^>]*numFmtId=\"14\"[^>]*><alignment wrapText=\"1\"/?>.*"
+                + "<xf [^>]*fillId=\"2\"[^>]*numFmtId=\"0\"[^>]*>.*"
+                + "<xf [^>]*fillId=\"3\"[^>]*numFmtId=\"14\"[^>]*><alignment wrapText=\"1\"/?>.*</cellXfs>.*"));
+        assertFalse(xfs.contains("fillId=\"1\" applyFill"));
+    }
+}